@@ -18,6 +18,8 @@
 package com.carrotdata.cache;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.carrotdata.cache.compression.CompressionCodec;
 import com.carrotdata.cache.io.FileIOEngine;
@@ -36,6 +38,12 @@ public class Builder {
   /** Cache IOEngine */
   IOEngine engine;
 
+  /** Lower tiers of a tiered cache */
+  List<Builder> tiers = new ArrayList<Builder>();
+
+  /** Types of lower tiers */
+  List<String> tierTypes = new ArrayList<String>();
+
   /**
    * Public constructor
    * @param cacheName
@@ -87,6 +95,73 @@ public class Builder {
     return new ObjectCache(c);
   }
 
+  /**
+   * Build sharded memory cache (number of shards is set by withCacheShards)
+   * @return sharded memory cache
+   * @throws IOException
+   */
+  public ShardedCache buildShardedMemoryCache() throws IOException {
+    return new ShardedCache(cacheName, conf, "memory");
+  }
+
+  /**
+   * Build sharded disk cache (number of shards is set by withCacheShards)
+   * @return sharded disk cache
+   * @throws IOException
+   */
+  public ShardedCache buildShardedDiskCache() throws IOException {
+    return new ShardedCache(cacheName, conf, "file");
+  }
+
+  /**
+   * Build tiered cache. This cache (memory) is the first tier, lower tiers are added by
+   * withMemoryTier and withDiskTier in order. Every tier is configured by its own builder
+   * (admission, promotion, compression etc)
+   * @return tiered cache
+   * @throws IOException
+   */
+  public TieredCache buildTieredCache() throws IOException {
+    Cache[] caches = new Cache[this.tiers.size() + 1];
+    try {
+      caches[0] = buildMemoryCache();
+      for (int i = 0; i < this.tiers.size(); i++) {
+        Builder tier = this.tiers.get(i);
+        tier.conf.addCacheNameType(tier.cacheName, this.tierTypes.get(i));
+        caches[i + 1] = tier.build();
+      }
+      return new TieredCache(caches);
+    } catch (IOException | RuntimeException e) {
+      for (Cache c : caches) {
+        if (c != null) {
+          c.dispose();
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * With next memory tier of a tiered cache
+   * @param tier tier builder
+   * @return builder instance
+   */
+  public Builder withMemoryTier(Builder tier) {
+    this.tiers.add(tier);
+    this.tierTypes.add("memory");
+    return this;
+  }
+
+  /**
+   * With next disk tier of a tiered cache (only the last tier can be a disk cache)
+   * @param tier tier builder
+   * @return builder instance
+   */
+  public Builder withDiskTier(Builder tier) {
+    this.tiers.add(tier);
+    this.tierTypes.add("file");
+    return this;
+  }
+
   /**
    * With cache maximum size
    * @param size maximum size
@@ -828,6 +903,36 @@ public class Builder {
     return this;
   }
   
+  /**
+   * With asynchronous eviction to victim cache
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withVictimEvictionAsync(boolean b) {
+    conf.setVictimEvictionAsync(cacheName, b);
+    return this;
+  }
+  
+  /**
+   * With staging buffer size for asynchronous eviction to victim cache
+   * @param size buffer size
+   * @return builder instance
+   */
+  public Builder withVictimEvictionBufferSize(int size) {
+    conf.setVictimEvictionBufferSize(cacheName, size);
+    return this;
+  }
+  
+  /**
+   * With maximum number of staging buffers for asynchronous eviction to victim cache
+   * @param n maximum number of buffers
+   * @return builder instance
+   */
+  public Builder withVictimEvictionMaxBuffers(int n) {
+    conf.setVictimEvictionMaxBuffers(cacheName, n);
+    return this;
+  }
+  
   /**
    * With cache asynchronous I/O pool size
    * @param size pool size
@@ -888,4 +993,464 @@ public class Builder {
     return cache;
   }
 
+  /**
+   * With scavenger pacing controller enabled
+   * @param v true or false
+   * @return builder instance
+   */
+  public Builder withScavengerPacingEnabled(boolean v) {
+    conf.setScavengerPacingEnabled(cacheName, v);
+    return this;
+  }
+
+  /**
+   * With scavenger pacing controller interval in ms
+   * @param interval interval in ms
+   * @return builder instance
+   */
+  public Builder withScavengerPacingInterval(long interval) {
+    conf.setScavengerPacingInterval(cacheName, interval);
+    return this;
+  }
+
+  /**
+   * With scavenger pacing controller look-ahead horizon in ms
+   * @param horizon horizon in ms
+   * @return builder instance
+   */
+  public Builder withScavengerPacingHorizon(long horizon) {
+    conf.setScavengerPacingHorizon(cacheName, horizon);
+    return this;
+  }
+
+  /**
+   * With scavenger pacing controller proportional gain
+   * @param gain proportional gain
+   * @return builder instance
+   */
+  public Builder withScavengerPacingProportionalGain(double gain) {
+    conf.setScavengerPacingProportionalGain(cacheName, gain);
+    return this;
+  }
+
+  /**
+   * With scavenger pacing controller integral gain
+   * @param gain integral gain
+   * @return builder instance
+   */
+  public Builder withScavengerPacingIntegralGain(double gain) {
+    conf.setScavengerPacingIntegralGain(cacheName, gain);
+    return this;
+  }
+
+  /**
+   * With scavenger detailed cost accounting enabled
+   * @param v true or false
+   * @return builder instance
+   */
+  public Builder withScavengerTelemetryEnabled(boolean v) {
+    conf.setScavengerTelemetryEnabled(cacheName, v);
+    return this;
+  }
+
+  /**
+   * With number of recent per-segment GC records to keep
+   * @param size history size
+   * @return builder instance
+   */
+  public Builder withScavengerTelemetryHistorySize(int size) {
+    conf.setScavengerTelemetryHistorySize(cacheName, size);
+    return this;
+  }
+
+  /**
+   * With scavenger GC records logging enabled
+   * @param v true or false
+   * @return builder instance
+   */
+  public Builder withScavengerTelemetryLogEnabled(boolean v) {
+    conf.setScavengerTelemetryLogEnabled(cacheName, v);
+    return this;
+  }
+
+  /**
+   * With TinyLFU frequency sketch expected number of items
+   * @param items number of items
+   * @return builder instance
+   */
+  public Builder withTinyLFUSketchItems(long items) {
+    conf.setTinyLFUSketchItems(cacheName, items);
+    return this;
+  }
+
+  /**
+   * With TinyLFU doorkeeper enabled
+   * @param enabled true or false
+   * @return builder instance
+   */
+  public Builder withTinyLFUDoorkeeperEnabled(boolean enabled) {
+    conf.setTinyLFUDoorkeeperEnabled(cacheName, enabled);
+    return this;
+  }
+
+  /**
+   * With S3-FIFO small region ratio
+   * @param ratio small region ratio
+   * @return builder instance
+   */
+  public Builder withS3FIFOSmallRatio(double ratio) {
+    conf.setS3FIFOSmallRatio(cacheName, ratio);
+    return this;
+  }
+
+  /**
+   * With S3-FIFO ghost queue ratio
+   * @param ratio ghost queue ratio
+   * @return builder instance
+   */
+  public Builder withS3FIFOGhostRatio(double ratio) {
+    conf.setS3FIFOGhostRatio(cacheName, ratio);
+    return this;
+  }
+
+  /**
+   * With lazy (CLOCK - style) promotion enabled
+   * @param enabled true or false
+   * @return builder instance
+   */
+  public Builder withEvictionLazyPromotion(boolean enabled) {
+    conf.setEvictionLazyPromotion(cacheName, enabled);
+    return this;
+  }
+
+  /**
+   * With miss ratio curve estimation enabled
+   * @param enabled true or false
+   * @return builder instance
+   */
+  public Builder withMRCEnabled(boolean enabled) {
+    conf.setMRCEnabled(cacheName, enabled);
+    return this;
+  }
+
+  /**
+   * With miss ratio curve key sampling rate
+   * @param rate sampling rate (0 - 1]
+   * @return builder instance
+   */
+  public Builder withMRCSamplingRate(double rate) {
+    conf.setMRCSamplingRate(cacheName, rate);
+    return this;
+  }
+
+  /**
+   * With miss ratio curve size multipliers
+   * @param multipliers comma - separated list of multipliers
+   * @return builder instance
+   */
+  public Builder withMRCSizeMultipliers(String multipliers) {
+    conf.setMRCSizeMultipliers(cacheName, multipliers);
+    return this;
+  }
+
+  /**
+   * With miss ratio curve simulated eviction policies
+   * @param policies comma - separated list of policies (LRU, FIFO)
+   * @return builder instance
+   */
+  public Builder withMRCPolicies(String policies) {
+    conf.setMRCPolicies(cacheName, policies);
+    return this;
+  }
+
+  /**
+   * With learned admission model learning rate
+   * @param rate learning rate
+   * @return builder instance
+   */
+  public Builder withMLAdmissionLearningRate(double rate) {
+    conf.setMLAdmissionLearningRate(cacheName, rate);
+    return this;
+  }
+
+  /**
+   * With learned admission model decision threshold
+   * @param threshold threshold (0 - 1)
+   * @return builder instance
+   */
+  public Builder withMLAdmissionThreshold(double threshold) {
+    conf.setMLAdmissionThreshold(cacheName, threshold);
+    return this;
+  }
+
+  /**
+   * With learned admission model history size
+   * @param size number of slots
+   * @return builder instance
+   */
+  public Builder withMLAdmissionHistorySize(int size) {
+    conf.setMLAdmissionHistorySize(cacheName, size);
+    return this;
+  }
+
+  /**
+   * With learned admission model key prefix length
+   * @param length prefix length
+   * @return builder instance
+   */
+  public Builder withMLAdmissionKeyPrefixLength(int length) {
+    conf.setMLAdmissionKeyPrefixLength(cacheName, length);
+    return this;
+  }
+
+  /**
+   * With learned admission model training interval in ms
+   * @param interval interval in ms
+   * @return builder instance
+   */
+  public Builder withMLAdmissionTrainIntervalMs(long interval) {
+    conf.setMLAdmissionTrainIntervalMs(cacheName, interval);
+    return this;
+  }
+
+  /**
+   * With minimum promotion frequency threshold
+   * @param threshold threshold (1 - 15)
+   * @return builder instance
+   */
+  public Builder withPromotionFrequencyThreshold(int threshold) {
+    conf.setPromotionFrequencyThreshold(cacheName, threshold);
+    return this;
+  }
+
+  /**
+   * With promotion write rate budget in bytes per second
+   * @param rate bytes per second (0 - unlimited)
+   * @return builder instance
+   */
+  public Builder withPromotionMaxBytesPerSec(long rate) {
+    conf.setPromotionMaxBytesPerSec(cacheName, rate);
+    return this;
+  }
+
+  /**
+   * With promotion frequency sketch expected number of items
+   * @param items number of items
+   * @return builder instance
+   */
+  public Builder withPromotionSketchItems(long items) {
+    conf.setPromotionSketchItems(cacheName, items);
+    return this;
+  }
+
+  /**
+   * With cache namespaces
+   * @param namespaces comma - separated list of name|prefix[|soft quota[|hard quota]]
+   * @return builder instance
+   */
+  public Builder withNamespaces(String namespaces) {
+    conf.setNamespaces(cacheName, namespaces);
+    return this;
+  }
+
+  /**
+   * With maximum number of hot items in on - heap L0 cache
+   * @param n maximum number of items
+   * @return builder instance
+   */
+  public Builder withHotKeysCacheMaxItems(int n) {
+    conf.setHotKeysCacheMaxItems(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With maximum size of a key - value pair in L0 cache
+   * @param size maximum size
+   * @return builder instance
+   */
+  public Builder withHotKeysCacheMaxItemSize(int size) {
+    conf.setHotKeysCacheMaxItemSize(cacheName, size);
+    return this;
+  }
+
+  /**
+   * With hot key detector sample interval
+   * @param n sample interval
+   * @return builder instance
+   */
+  public Builder withHotKeysSampleInterval(int n) {
+    conf.setHotKeysSampleInterval(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With number of counters in hot key detector
+   * @param n number of counters
+   * @return builder instance
+   */
+  public Builder withHotKeysDetectorCounters(int n) {
+    conf.setHotKeysDetectorCounters(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With victim cache single - flight reads enabled
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withVictimSingleFlightEnabled(boolean b) {
+    conf.setVictimSingleFlightEnabled(cacheName, b);
+    return this;
+  }
+
+  /**
+   * With number of cache shards
+   * @param n number of shards
+   * @return builder instance
+   */
+  public Builder withCacheShards(int n) {
+    conf.setCacheShards(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With segment pool enabled
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withSegmentPoolEnabled(boolean b) {
+    conf.setSegmentPoolEnabled(cacheName, b);
+    return this;
+  }
+
+  /**
+   * With maximum number of free segment buffers in the pool
+   * @param n maximum number of free buffers
+   * @return builder instance
+   */
+  public Builder withSegmentPoolMaxFree(int n) {
+    conf.setSegmentPoolMaxFree(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With number of segment buffers preallocated at startup
+   * @param n number of buffers
+   * @return builder instance
+   */
+  public Builder withSegmentPoolPreallocate(int n) {
+    conf.setSegmentPoolPreallocate(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With segment buffers huge page alignment
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withSegmentPoolHugePageAligned(boolean b) {
+    conf.setSegmentPoolHugePageAligned(cacheName, b);
+    return this;
+  }
+
+  /**
+   * With asynchronous block compression enabled
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withCacheCompressionAsyncEnabled(boolean b) {
+    conf.setCacheCompressionAsyncEnabled(cacheName, b);
+    return this;
+  }
+
+  /**
+   * With number of background compressor threads
+   * @param n number of threads
+   * @return builder instance
+   */
+  public Builder withCacheCompressionAsyncThreads(int n) {
+    conf.setCacheCompressionAsyncThreads(cacheName, n);
+    return this;
+  }
+
+  /**
+   * With decompressed block cache size in bytes
+   * @param size size in bytes
+   * @return builder instance
+   */
+  public Builder withCacheCompressionBlockCacheSize(long size) {
+    conf.setCacheCompressionBlockCacheSize(cacheName, size);
+    return this;
+  }
+
+  /**
+   * With compression bypass enabled
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withCacheCompressionBypassEnabled(boolean b) {
+    conf.setCacheCompressionBypassEnabled(cacheName, b);
+    return this;
+  }
+
+  /**
+   * With compression bypass entropy threshold
+   * @param threshold entropy in bits per byte (0 - 8)
+   * @return builder instance
+   */
+  public Builder withCacheCompressionBypassEntropyThreshold(double threshold) {
+    conf.setCacheCompressionBypassEntropyThreshold(cacheName, threshold);
+    return this;
+  }
+
+  /**
+   * With compression dictionary key classes
+   * @param prefixes comma - separated list of key prefixes
+   * @return builder instance
+   */
+  public Builder withCacheCompressionDictionaryKeyClasses(String prefixes) {
+    conf.setCacheCompressionDictionaryKeyClasses(cacheName, prefixes);
+    return this;
+  }
+
+  /**
+   * With restart interval of front coded keys (PrefixBlockDataWriter)
+   * @param interval restart interval
+   * @return builder instance
+   */
+  public Builder withBlockWriterPrefixRestartInterval(int interval) {
+    conf.setBlockWriterPrefixRestartInterval(cacheName, interval);
+    return this;
+  }
+
+  /**
+   * With value deduplication enabled
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withValueDedupEnabled(boolean b) {
+    conf.setValueDedupEnabled(cacheName, b);
+    return this;
+  }
+
+  /**
+   * With minimum size of a value to deduplicate
+   * @param size minimum value size
+   * @return builder instance
+   */
+  public Builder withValueDedupMinSize(int size) {
+    conf.setValueDedupMinSize(cacheName, size);
+    return this;
+  }
+
+  /**
+   * With victim cache admission of evicted items enabled
+   * @param b true or false
+   * @return builder instance
+   */
+  public Builder withVictimAdmissionEnabled(boolean b) {
+    conf.setVictimAdmissionEnabled(cacheName, b);
+    return this;
+  }
+
 }
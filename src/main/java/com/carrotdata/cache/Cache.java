@@ -22,6 +22,7 @@ import com.carrotdata.cache.compression.CodecFactory;
 import com.carrotdata.cache.compression.CompressionCodec;
 import com.carrotdata.cache.controllers.AdmissionController;
 import com.carrotdata.cache.controllers.PromotionController;
+import com.carrotdata.cache.controllers.ScavengerPacingController;
 import com.carrotdata.cache.controllers.ThroughputController;
 import com.carrotdata.cache.eviction.EvictionListener;
 import com.carrotdata.cache.index.IndexFormat;
@@ -30,8 +31,10 @@ import com.carrotdata.cache.io.*;
 import com.carrotdata.cache.io.FutureResult.CompletionHandler;
 import com.carrotdata.cache.io.IOEngine.IOEngineEvent;
 import com.carrotdata.cache.jmx.CacheJMXSink;
+import com.carrotdata.cache.jmx.NamespaceJMXSink;
 import com.carrotdata.cache.util.CacheConfig;
 import com.carrotdata.cache.util.Epoch;
+import com.carrotdata.cache.util.MissRatioCurveEstimator;
 import com.carrotdata.cache.util.UnsafeAccess;
 import com.carrotdata.cache.util.Utils;
 import org.apache.logging.log4j.LogManager;
@@ -168,6 +171,27 @@ public class Cache implements IOEngine.Listener, EvictionListener {
   /** Parent cache */
   Cache parentCache;
 
+  /** Asynchronous eviction pipeline to the victim cache */
+  VictimEvictionPipeline victimEvictionPipeline;
+
+  /** Tiered cache this cache is a tier of (optional) */
+  TieredCache tieredCache;
+
+  /** Index of this cache in a tiered cache */
+  int tierIndex;
+
+  /** Miss ratio curve estimator - optional */
+  MissRatioCurveEstimator mrcEstimator;
+
+  /** Namespaces - optional */
+  NamespaceManager namespaceManager;
+
+  /** On - heap L0 cache of hot keys - optional */
+  HotKeyCache hotKeyCache;
+
+  /** Single - flight coalescing of victim cache reads - optional */
+  SingleFlight singleFlight;
+
   /** Cache epoch */
   Epoch epoch;
 
@@ -238,7 +262,10 @@ public class Cache implements IOEngine.Listener, EvictionListener {
 
   volatile boolean cacheDisabled = false;
 
-  int scavengerNoThreads;
+  volatile int scavengerNoThreads;
+
+  /** Adaptive scavenger pacing controller (can be null) */
+  ScavengerPacingController scavengerPacingController;
 
   /** For testing only */
   boolean scavengerDisabled = false;
@@ -450,8 +477,12 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     initAdmissionController();
     initPromotionController();
     initThroughputController();
+    initMissRatioCurveEstimator();
+    initNamespaces();
+    initHotKeyCache();
     startThroughputController();
     startVacuumCleaner();
+    startScavengerPacingController();
   }
 
   private void initAllDuringLoad() throws IOException {
@@ -464,6 +495,9 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     initAdmissionController();
     initPromotionController();
     initThroughputController();
+    initMissRatioCurveEstimator();
+    initNamespaces();
+    initHotKeyCache();
   }
 
   /**
@@ -614,6 +648,39 @@ public class Cache implements IOEngine.Listener, EvictionListener {
 
   }
 
+  /**
+   * Initialize miss ratio curve estimator
+   */
+  private void initMissRatioCurveEstimator() {
+    this.mrcEstimator = MissRatioCurveEstimator.fromConfig(cacheName, this.maximumCacheSize);
+    if (this.mrcEstimator != null) {
+      LOG.info("Started miss ratio curve estimator, cache={} sampling rate={}", getName(),
+        this.mrcEstimator.getSamplingRate());
+    }
+  }
+
+  /**
+   * Initialize L0 cache of hot keys
+   */
+  private void initHotKeyCache() {
+    this.hotKeyCache = HotKeyCache.fromConfig(cacheName);
+    if (this.hotKeyCache != null) {
+      LOG.info("Started L0 hot keys cache, cache={} max items={} sample interval={}", getName(),
+        this.hotKeyCache.getMaxItems(), this.hotKeyCache.getSampleInterval());
+    }
+  }
+
+  /**
+   * Initialize namespaces
+   */
+  private void initNamespaces() {
+    this.namespaceManager = NamespaceManager.fromConfig(cacheName);
+    if (this.namespaceManager != null) {
+      LOG.info("Initialized {} namespaces, cache={}",
+        this.namespaceManager.getNamespaces().size(), getName());
+    }
+  }
+
   /**
    * Initialize admission controller
    * @throws IOException
@@ -628,11 +695,9 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     if (this.promotionController == null) {
       return;
     }
-    LOG.info("Before Started Promotion Controller [{}]",
-        this.admissionController.getClass().getName());
-
     this.promotionController.setCache(this);
-    LOG.info("Started Promotion Controller [{}]", this.admissionController.getClass().getName());
+    LOG.info("Started Promotion Controller [{}], cache={}",
+        this.promotionController.getClass().getName(), getName());
 
   }
 
@@ -700,6 +765,60 @@ public class Cache implements IOEngine.Listener, EvictionListener {
 
   }
 
+  private void startScavengerPacingController() {
+    if (!this.conf.isScavengerPacingEnabled(this.cacheName)) {
+      return;
+    }
+    this.scavengerPacingController = new ScavengerPacingController(this.cacheName, this.conf);
+    TimerTask task = new TimerTask() {
+      public void run() {
+        try {
+          adjustScavengerPacing();
+        } catch (Throwable e) {
+          LOG.error("startScavengerPacingController", e);
+        }
+      }
+    };
+    if (this.timer == null) {
+      this.timer = new Timer();
+    }
+    long interval = this.conf.getScavengerPacingInterval(this.cacheName);
+    this.timer.scheduleAtFixedRate(task, interval, interval);
+    LOG.info("Started scavenger pacing controller, interval={} ms", interval);
+  }
+
+  private void adjustScavengerPacing() {
+    ScavengerPacingController pc = this.scavengerPacingController;
+    if (pc == null || this.cacheDisabled) {
+      return;
+    }
+    Scavenger.Stats stats = Scavenger.getStatisticsForCache(this.cacheName);
+    pc.update(System.currentTimeMillis(), this.engine.getTotalAllocated(), getTotalWritesSize(),
+      stats.getTotalBytesFreed(), getTotalRejectedWrites());
+    this.scavengerNoThreads = pc.getNumberOfThreads();
+    this.scavengerStartMemoryRatio = pc.getStartRatio();
+    Scavenger.setDumpBelowRatio(this.cacheName, pc.getDumpBelowRatio());
+    if (pc.shouldStartScavenger(this.engine.getStorageAllocatedRatio())) {
+      startScavengers(false);
+    }
+  }
+
+  /**
+   * Get scavenger pacing controller
+   * @return controller or null
+   */
+  public ScavengerPacingController getScavengerPacingController() {
+    return this.scavengerPacingController;
+  }
+
+  /**
+   * Get current number of scavenger threads
+   * @return number of threads
+   */
+  public int getScavengerNumberOfThreads() {
+    return this.scavengerNoThreads;
+  }
+
   /**
    * Get cache type
    * @return cache type
@@ -826,6 +945,46 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     return this.admissionController;
   }
 
+  /**
+   * Get promotion controller
+   * @return promotion controller
+   */
+  public PromotionController getPromotionController() {
+    return this.promotionController;
+  }
+
+  /**
+   * Get namespace manager
+   * @return namespace manager or null if no namespaces are configured
+   */
+  public NamespaceManager getNamespaceManager() {
+    return this.namespaceManager;
+  }
+
+  /**
+   * Get single - flight coalescing of victim cache reads
+   * @return single flight or null if there is no victim cache or coalescing is disabled
+   */
+  public SingleFlight getSingleFlight() {
+    return this.singleFlight;
+  }
+
+  /**
+   * Get L0 cache of hot keys
+   * @return hot key cache or null if it is disabled
+   */
+  public HotKeyCache getHotKeyCache() {
+    return this.hotKeyCache;
+  }
+
+  /**
+   * Get miss ratio curve estimator
+   * @return estimator or null if estimation is disabled
+   */
+  public MissRatioCurveEstimator getMissRatioCurveEstimator() {
+    return this.mrcEstimator;
+  }
+
   /**
    * Sets admission controller
    * @param ac admission controller
@@ -913,10 +1072,41 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     this.totalGets.incrementAndGet();
   }
 
+  private void access(long keyPtr, int keySize, boolean hit) {
+    access();
+    if (this.mrcEstimator != null) {
+      this.mrcEstimator.get(Utils.hash64(keyPtr, keySize));
+    }
+    if (this.namespaceManager != null) {
+      this.namespaceManager.getNamespace(keyPtr, keySize).recordAccess(hit);
+    }
+  }
+
+  private void access(byte[] key, int keyOffset, int keySize, boolean hit) {
+    access();
+    if (this.mrcEstimator != null) {
+      this.mrcEstimator.get(Utils.hash64(key, keyOffset, keySize));
+    }
+    if (this.namespaceManager != null) {
+      this.namespaceManager.getNamespace(key, keyOffset, keySize).recordAccess(hit);
+    }
+  }
+
+  /**
+   * Expiration time of an item for L0 cache
+   * @param expire expiration time reported by index
+   * @return expiration time, 0 - no expire, -1 - item does not exist
+   */
+  private long hotKeyExpire(long expire) {
+    return this.engine.getMemoryIndex().getIndexFormat().isExpirationSupported() ? expire : 0;
+  }
+
   private void hit(long size) {
     this.totalHits.incrementAndGet();
     this.totalGetsSize.addAndGet(size);
-
+    if (this.tieredCache != null) {
+      this.tieredCache.onHit(this.tierIndex);
+    }
   }
 
   /***********************************************************
@@ -941,9 +1131,10 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     return put(keyPtr, keySize, valPtr, valSize, expire, rank, rank, false);
   }
 
-  private boolean shouldAdmitToMainQueue(long keyPtr, int keySize, int valueSize, boolean force) {
+  private boolean shouldAdmitToMainQueue(long keyPtr, int keySize, int valueSize, long expire,
+      int groupRank, boolean force) {
     if (!force && this.admissionController != null) {
-      return this.admissionController.admit(keyPtr, keySize, valueSize);
+      return this.admissionController.admit(keyPtr, keySize, valueSize, expire, groupRank);
     }
     return true;
   }
@@ -1047,7 +1238,17 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     // Check rank
     checkRank(rank);
     checkRank(groupRank);
-    if (!scavenger && !shouldAdmitToMainQueue(keyPtr, keySize, valSize, force)) {
+    if (!scavenger && this.mrcEstimator != null) {
+      this.mrcEstimator.put(Utils.hash64(keyPtr, keySize), Utils.kvSize(keySize, valSize));
+    }
+    NamespaceManager.Namespace ns = null;
+    if (this.namespaceManager != null) {
+      ns = this.namespaceManager.getNamespace(keyPtr, keySize);
+      if (!scavenger && !ns.checkHardQuota(Utils.kvSize(keySize, valSize))) {
+        return false;
+      }
+    }
+    if (!scavenger && !shouldAdmitToMainQueue(keyPtr, keySize, valSize, expire, groupRank, force)) {
       return false;
     }
 
@@ -1078,6 +1279,12 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         maybeWait();
       }
     } while (!result && System.currentTimeMillis() - start <= this.waitOnPutTimeMs);
+    if (result && ns != null) {
+      ns.recordWrite(Utils.kvSize(keySize, valSize));
+    }
+    if (!scavenger && this.hotKeyCache != null) {
+      this.hotKeyCache.invalidate(Utils.hash64(keyPtr, keySize));
+    }
     if (!result && !scavenger) {
       this.totalRejectedWrites.incrementAndGet();
     }
@@ -1092,9 +1299,9 @@ public class Cache implements IOEngine.Listener, EvictionListener {
   }
 
   private boolean shouldAdmitToMainQueue(byte[] key, int keyOffset, int keySize, int valueSize,
-      boolean force) {
+      long expire, int groupRank, boolean force) {
     if (!force && this.admissionController != null) {
-      return this.admissionController.admit(key, keyOffset, keySize, valueSize);
+      return this.admissionController.admit(key, keyOffset, keySize, valueSize, expire, groupRank);
     }
     return true;
   }
@@ -1241,7 +1448,18 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       }
       maybeWait();
     }
-    if (!scavenger && !shouldAdmitToMainQueue(key, keyOffset, keySize, valSize, force)) {
+    if (!scavenger && this.mrcEstimator != null) {
+      this.mrcEstimator.put(Utils.hash64(key, keyOffset, keySize), Utils.kvSize(keySize, valSize));
+    }
+    NamespaceManager.Namespace ns = null;
+    if (this.namespaceManager != null) {
+      ns = this.namespaceManager.getNamespace(key, keyOffset, keySize);
+      if (!scavenger && !ns.checkHardQuota(Utils.kvSize(keySize, valSize))) {
+        return false;
+      }
+    }
+    if (!scavenger && !shouldAdmitToMainQueue(key, keyOffset, keySize, valSize, expire, groupRank,
+          force)) {
       return false;
     }
 
@@ -1278,6 +1496,12 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         maybeWait();
       }
     } while (!result && System.currentTimeMillis() - start <= this.waitOnPutTimeMs);
+    if (result && ns != null) {
+      ns.recordWrite(Utils.kvSize(keySize, valSize));
+    }
+    if (!scavenger && this.hotKeyCache != null) {
+      this.hotKeyCache.invalidate(Utils.hash64(key, keyOffset, keySize));
+    }
     if (!result && !scavenger) {
       this.totalRejectedWrites.incrementAndGet();
     }
@@ -1364,7 +1588,25 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       return -1;
     }
     long result = -1;
-
+    HotKeyCache l0 = this.hotKeyCache;
+    long hotHash = 0;
+    long hotVersion = 0;
+    boolean sampled = false;
+    if (l0 != null) {
+      hotHash = Utils.hash64(keyPtr, keySize);
+      sampled = l0.sample();
+      if (!sampled) {
+        result = l0.get(hotHash, keyPtr, keySize, buffer, bufOffset);
+        if (result >= 0) {
+          if (result <= buffer.length - bufOffset) {
+            access(keyPtr, keySize, true);
+            hit(result);
+          }
+          return result;
+        }
+      }
+      hotVersion = l0.getVersion(hotHash);
+    }
     try {
       activeRequests.incrementAndGet();
       try {
@@ -1372,8 +1614,13 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       } catch (IOException e) {
         return result;
       }
+      if (sampled && l0.record(hotHash, keyPtr, keySize) && result >= 0
+          && result <= buffer.length - bufOffset) {
+        l0.put(hotHash, hotVersion, buffer, bufOffset, (int) result,
+          hotKeyExpire(this.engine.getMemoryIndex().getExpire(keyPtr, keySize)));
+      }
       if (result <= buffer.length - bufOffset) {
-        access();
+        access(keyPtr, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -1384,31 +1631,52 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         }
       }
       if (result < 0 && this.victimCache != null) {
-        result = this.victimCache.getKeyValue(keyPtr, keySize, hit, buffer, bufOffset);
-        if (this.victimCachePromoteOnHit && result >= 0 && result <= buffer.length - bufOffset) {
-          // put k-v into this cache, remove it from the victim cache
-          MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
-          if (this.promotionController == null) {
-            // We promote item based on its popularity in the victim cache
-            double popularity = mi.popularity(keyPtr, keySize);
-            if (popularity > this.victimCachePromoteThreshold) {
-              long expire = mi.getExpire(keyPtr, keySize);
-              boolean res = put(buffer, bufOffset, expire);
-              if (res) {
-                this.victimCache.delete(keyPtr, keySize);
-              }
+        SingleFlight.Flight flight = null;
+        if (this.singleFlight != null) {
+          flight = this.singleFlight.acquire(Utils.hash64(keyPtr, keySize), keyPtr, keySize);
+          if (flight != null && !flight.isLeader()) {
+            // Another thread is reading this key - wait for its result
+            result = this.singleFlight.await(flight, buffer, bufOffset);
+            if (result != SingleFlight.RETRY) {
+              return result;
             }
-          } else {
-            // verify with PC
-            int valSize = Utils.getValueSize(buffer, bufOffset);
-            if (this.promotionController.promote(keyPtr, keySize, valSize)) {
-              long expire = mi.getExpire(keyPtr, keySize);
-              boolean res = put(buffer, bufOffset, expire);
-              if (res) {
-                this.victimCache.delete(keyPtr, keySize);
+            flight = null;
+          }
+        }
+        // Followers read the item themselves if the leader fails
+        long published = SingleFlight.RETRY;
+        try {
+          result = this.victimCache.getKeyValue(keyPtr, keySize, hit, buffer, bufOffset);
+          published = result;
+          if (this.victimCachePromoteOnHit && result >= 0 && result <= buffer.length - bufOffset) {
+            // put k-v into this cache, remove it from the victim cache
+            MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
+            if (this.promotionController == null) {
+              // We promote item based on its popularity in the victim cache
+              double popularity = mi.popularity(keyPtr, keySize);
+              if (popularity > this.victimCachePromoteThreshold) {
+                long expire = mi.getExpire(keyPtr, keySize);
+                boolean res = put(buffer, bufOffset, expire);
+                if (res) {
+                  this.victimCache.delete(keyPtr, keySize);
+                }
+              }
+            } else {
+              // verify with PC
+              int valSize = Utils.getValueSize(buffer, bufOffset);
+              if (this.promotionController.promote(keyPtr, keySize, valSize)) {
+                long expire = mi.getExpire(keyPtr, keySize);
+                boolean res = put(buffer, bufOffset, expire);
+                if (res) {
+                  this.victimCache.delete(keyPtr, keySize);
+                }
               }
             }
           }
+        } finally {
+          if (flight != null) {
+            this.singleFlight.complete(flight, published, buffer, bufOffset);
+          }
         }
       }
       return result;
@@ -1459,7 +1727,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return;
       }
       if (result <= buffer.length - bufOffset) {
-        access();
+        access(keyPtr, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -1606,7 +1874,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return result;
       }
       if (result <= buffer.length - bufOffset) {
-        access();
+        access(keyPtr, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -1661,6 +1929,25 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     if (this.cacheDisabled) {
       return -1;
     }
+    HotKeyCache l0 = this.hotKeyCache;
+    long hotHash = 0;
+    long hotVersion = 0;
+    boolean sampled = false;
+    if (l0 != null) {
+      hotHash = Utils.hash64(key, keyOffset, keySize);
+      sampled = l0.sample();
+      if (!sampled) {
+        long result = l0.get(hotHash, key, keyOffset, keySize, buffer, bufOffset);
+        if (result >= 0) {
+          if (result <= buffer.length - bufOffset) {
+            access(key, keyOffset, keySize, true);
+            hit(result);
+          }
+          return result;
+        }
+      }
+      hotVersion = l0.getVersion(hotHash);
+    }
     try {
       activeRequests.incrementAndGet();
       long result = -1;
@@ -1671,9 +1958,14 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         // TODO: better mitigation
         return result;
       }
+      if (sampled && l0.record(hotHash, key, keyOffset, keySize) && result >= 0
+          && result <= buffer.length - bufOffset) {
+        l0.put(hotHash, hotVersion, buffer, bufOffset, (int) result,
+          hotKeyExpire(this.engine.getMemoryIndex().getExpire(key, keyOffset, keySize)));
+      }
 
       if (result <= buffer.length - bufOffset) {
-        access();
+        access(key, keyOffset, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -1684,34 +1976,56 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         }
       }
       if (result < 0 && this.victimCache != null) {
-        // TODO: optimize it
-        // getWithExpire and getWithExpireAndDelete API
-        // one call instead of three
-        result = this.victimCache.getKeyValue(key, keyOffset, keySize, hit, buffer, bufOffset);
-        if (this.victimCachePromoteOnHit && result >= 0 && result <= buffer.length - bufOffset) {
-          // put k-v into this cache, remove it from the victim cache
-          MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
-          if (this.promotionController == null) {
-            double popularity = mi.popularity(key, keyOffset, keySize);
-            // Promote only popular items
-            if (popularity > this.victimCachePromoteThreshold) {
-              long expire = mi.getExpire(key, keyOffset, keySize);
-              boolean res = put(buffer, bufOffset, expire);
-              if (res) {
-                this.victimCache.delete(key, keyOffset, keySize);
-              }
+        SingleFlight.Flight flight = null;
+        if (this.singleFlight != null) {
+          flight = this.singleFlight.acquire(Utils.hash64(key, keyOffset, keySize), key, keyOffset,
+            keySize);
+          if (flight != null && !flight.isLeader()) {
+            // Another thread is reading this key - wait for its result
+            result = this.singleFlight.await(flight, buffer, bufOffset);
+            if (result != SingleFlight.RETRY) {
+              return result;
             }
-          } else {
-            // verify with PC
-            int valSize = Utils.getValueSize(buffer, bufOffset);
-            if (this.promotionController.promote(key, keyOffset, keySize, valSize)) {
-              long expire = mi.getExpire(key, keyOffset, keySize);
-              boolean res = put(buffer, bufOffset, expire);
-              if (res) {
-                this.victimCache.delete(key, keyOffset, keySize);
+            flight = null;
+          }
+        }
+        // Followers read the item themselves if the leader fails
+        long published = SingleFlight.RETRY;
+        try {
+          // TODO: optimize it
+          // getWithExpire and getWithExpireAndDelete API
+          // one call instead of three
+          result = this.victimCache.getKeyValue(key, keyOffset, keySize, hit, buffer, bufOffset);
+          published = result;
+          if (this.victimCachePromoteOnHit && result >= 0 && result <= buffer.length - bufOffset) {
+            // put k-v into this cache, remove it from the victim cache
+            MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
+            if (this.promotionController == null) {
+              double popularity = mi.popularity(key, keyOffset, keySize);
+              // Promote only popular items
+              if (popularity > this.victimCachePromoteThreshold) {
+                long expire = mi.getExpire(key, keyOffset, keySize);
+                boolean res = put(buffer, bufOffset, expire);
+                if (res) {
+                  this.victimCache.delete(key, keyOffset, keySize);
+                }
+              }
+            } else {
+              // verify with PC
+              int valSize = Utils.getValueSize(buffer, bufOffset);
+              if (this.promotionController.promote(key, keyOffset, keySize, valSize)) {
+                long expire = mi.getExpire(key, keyOffset, keySize);
+                boolean res = put(buffer, bufOffset, expire);
+                if (res) {
+                  this.victimCache.delete(key, keyOffset, keySize);
+                }
               }
             }
           }
+        } finally {
+          if (flight != null) {
+            this.singleFlight.complete(flight, published, buffer, bufOffset);
+          }
         }
       }
       return result;
@@ -1764,7 +2078,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return;
       }
       if (result <= buffer.length - bufOffset) {
-        access();
+        access(key, keyOffset, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2225,7 +2539,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       }
 
       if (result <= buffer.length - bufOffset) {
-        access();
+        access(key, keyOffset, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2289,7 +2603,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return result;
       }
       if (result <= rem) {
-        access();
+        access(key, keyOff, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2300,30 +2614,52 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         }
       }
       if (result < 0 && this.victimCache != null) {
-        result = this.victimCache.getKeyValue(key, keyOff, keySize, hit, buffer);
-        if (this.victimCachePromoteOnHit && result >= 0 && result <= rem) {
-          // put k-v into this cache, remove it from the victim cache
-          MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
-          if (this.promotionController == null) {
-            double popularity = mi.popularity(key, keyOff, keySize);
-            if (popularity > this.victimCachePromoteThreshold) {
-              long expire = mi.getExpire(key, keyOff, keySize);
-              boolean res = put(buffer, expire);
-              if (res) {
-                this.victimCache.delete(key, keyOff, keySize);
-              }
+        SingleFlight.Flight flight = null;
+        if (this.singleFlight != null) {
+          flight =
+              this.singleFlight.acquire(Utils.hash64(key, keyOff, keySize), key, keyOff, keySize);
+          if (flight != null && !flight.isLeader()) {
+            // Another thread is reading this key - wait for its result
+            result = this.singleFlight.await(flight, buffer);
+            if (result != SingleFlight.RETRY) {
+              return result;
             }
-          } else {
-            // verify with PC
-            int valSize = Utils.getValueSize(buffer);
-            if (this.promotionController.promote(key, keyOff, keySize, valSize)) {
-              long expire = mi.getExpire(key, keyOff, keySize);
-              boolean res = put(buffer, expire);
-              if (res) {
-                this.victimCache.delete(key, keyOff, keySize);
+            flight = null;
+          }
+        }
+        // Followers read the item themselves if the leader fails
+        long published = SingleFlight.RETRY;
+        try {
+          result = this.victimCache.getKeyValue(key, keyOff, keySize, hit, buffer);
+          published = result;
+          if (this.victimCachePromoteOnHit && result >= 0 && result <= rem) {
+            // put k-v into this cache, remove it from the victim cache
+            MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
+            if (this.promotionController == null) {
+              double popularity = mi.popularity(key, keyOff, keySize);
+              if (popularity > this.victimCachePromoteThreshold) {
+                long expire = mi.getExpire(key, keyOff, keySize);
+                boolean res = put(buffer, expire);
+                if (res) {
+                  this.victimCache.delete(key, keyOff, keySize);
+                }
+              }
+            } else {
+              // verify with PC
+              int valSize = Utils.getValueSize(buffer);
+              if (this.promotionController.promote(key, keyOff, keySize, valSize)) {
+                long expire = mi.getExpire(key, keyOff, keySize);
+                boolean res = put(buffer, expire);
+                if (res) {
+                  this.victimCache.delete(key, keyOff, keySize);
+                }
               }
             }
           }
+        } finally {
+          if (flight != null) {
+            this.singleFlight.complete(flight, published, buffer);
+          }
         }
       }
       return result;
@@ -2376,7 +2712,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return;
       }
       if (result <= avail) {
-        access();
+        access(key, keyOffset, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2523,7 +2859,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return result;
       }
       if (result <= rem) {
-        access();
+        access(key, keyOffset, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2582,7 +2918,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return result;
       }
       if (result <= rem) {
-        access();
+        access(keyPtr, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2593,30 +2929,51 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         }
       }
       if (result < 0 && this.victimCache != null) {
-        result = this.victimCache.getKeyValue(keyPtr, keySize, hit, buffer);
-        if (this.victimCachePromoteOnHit && result >= 0 && result <= rem) {
-          // put k-v into this cache, remove it from the victim cache
-          MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
-          if (this.promotionController == null) {
-            double popularity = mi.popularity(keyPtr, keySize);
-            if (popularity > this.victimCachePromoteThreshold) {
-              long expire = mi.getExpire(keyPtr, keySize);
-              boolean res = put(buffer, expire);
-              if (res) {
-                this.victimCache.delete(keyPtr, keySize);
-              }
+        SingleFlight.Flight flight = null;
+        if (this.singleFlight != null) {
+          flight = this.singleFlight.acquire(Utils.hash64(keyPtr, keySize), keyPtr, keySize);
+          if (flight != null && !flight.isLeader()) {
+            // Another thread is reading this key - wait for its result
+            result = this.singleFlight.await(flight, buffer);
+            if (result != SingleFlight.RETRY) {
+              return result;
             }
-          } else {
-            // verify with PC
-            int valSize = Utils.getValueSize(buffer);
-            if (this.promotionController.promote(keyPtr, keySize, valSize)) {
-              long expire = mi.getExpire(keyPtr, keySize);
-              boolean res = put(buffer, expire);
-              if (res) {
-                this.victimCache.delete(keyPtr, keySize);
+            flight = null;
+          }
+        }
+        // Followers read the item themselves if the leader fails
+        long published = SingleFlight.RETRY;
+        try {
+          result = this.victimCache.getKeyValue(keyPtr, keySize, hit, buffer);
+          published = result;
+          if (this.victimCachePromoteOnHit && result >= 0 && result <= rem) {
+            // put k-v into this cache, remove it from the victim cache
+            MemoryIndex mi = this.victimCache.getEngine().getMemoryIndex();
+            if (this.promotionController == null) {
+              double popularity = mi.popularity(keyPtr, keySize);
+              if (popularity > this.victimCachePromoteThreshold) {
+                long expire = mi.getExpire(keyPtr, keySize);
+                boolean res = put(buffer, expire);
+                if (res) {
+                  this.victimCache.delete(keyPtr, keySize);
+                }
+              }
+            } else {
+              // verify with PC
+              int valSize = Utils.getValueSize(buffer);
+              if (this.promotionController.promote(keyPtr, keySize, valSize)) {
+                long expire = mi.getExpire(keyPtr, keySize);
+                boolean res = put(buffer, expire);
+                if (res) {
+                  this.victimCache.delete(keyPtr, keySize);
+                }
               }
             }
           }
+        } finally {
+          if (flight != null) {
+            this.singleFlight.complete(flight, published, buffer);
+          }
         }
       }
       return result;
@@ -2668,7 +3025,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
         return;
       }
       if (result <= avail) {
-        access();
+        access(keyPtr, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2814,7 +3171,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       }
 
       if (result <= rem) {
-        access();
+        access(keyPtr, keySize, result >= 0);
         if (result >= 0) {
           hit(result);
         }
@@ -2851,6 +3208,9 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     try {
       activeRequests.incrementAndGet();
       boolean result = engine.delete(keyPtr, keySize);
+      if (this.hotKeyCache != null) {
+        this.hotKeyCache.invalidate(Utils.hash64(keyPtr, keySize));
+      }
       if (!result && this.victimCache != null) {
         return this.victimCache.delete(keyPtr, keySize);
       }
@@ -2875,6 +3235,9 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     try {
       activeRequests.incrementAndGet();
       boolean result = engine.delete(key, keyOffset, keySize);
+      if (this.hotKeyCache != null) {
+        this.hotKeyCache.invalidate(Utils.hash64(key, keyOffset, keySize));
+      }
       if (!result && this.victimCache != null) {
         return this.victimCache.delete(key, keyOffset, keySize);
       }
@@ -2978,7 +3341,11 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     }
     try {
       activeRequests.incrementAndGet();
-      return this.engine.getMemoryIndex().getAndSetExpire(key, off, size, expire);
+      long result = this.engine.getMemoryIndex().getAndSetExpire(key, off, size, expire);
+      if (this.hotKeyCache != null) {
+        this.hotKeyCache.invalidate(Utils.hash64(key, off, size));
+      }
+      return result;
     } finally {
       activeRequests.decrementAndGet();
     }
@@ -2996,7 +3363,11 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     }
     try {
       activeRequests.incrementAndGet();
-      return this.engine.getMemoryIndex().getAndSetExpire(keyPtr, keySize, expire);
+      long result = this.engine.getMemoryIndex().getAndSetExpire(keyPtr, keySize, expire);
+      if (this.hotKeyCache != null) {
+        this.hotKeyCache.invalidate(Utils.hash64(keyPtr, keySize));
+      }
+      return result;
     } finally {
       activeRequests.decrementAndGet();
     }
@@ -3131,11 +3502,34 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     this.victimCache = c;
     this.victimCachePromoteOnHit = this.conf.getVictimCachePromotionOnHit(c.getName());
     this.victimCachePromoteThreshold = this.conf.getVictimPromotionThreshold(c.getName());
+    this.singleFlight =
+        this.conf.isVictimSingleFlightEnabled(c.getName()) ? new SingleFlight() : null;
     this.hybridCacheInverseMode = this.conf.getCacheHybridInverseMode(cacheName);
     this.victimCache.setParentCache(this);
     if (!this.asyncPreferred && c.isAsyncPreferred()) {
       initAsyncThreadPool();
     }
+    if (this.victimEvictionPipeline != null) {
+      this.victimEvictionPipeline.close();
+      this.victimEvictionPipeline = null;
+    }
+    if (this.conf.getVictimEvictionAsync(cacheName)) {
+      this.victimEvictionPipeline = new VictimEvictionPipeline(this, c);
+    }
+  }
+
+  /**
+   * Get asynchronous victim eviction pipeline
+   * @return pipeline or null
+   */
+  public VictimEvictionPipeline getVictimEvictionPipeline() {
+    return this.victimEvictionPipeline;
+  }
+
+  private void closeVictimEvictionPipeline() {
+    if (this.victimEvictionPipeline != null) {
+      this.victimEvictionPipeline.close();
+    }
   }
 
   /**
@@ -3419,6 +3813,42 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     dos.close();
   }
 
+  /**
+   * Loads namespaces data
+   * @throws IOException
+   */
+  private void loadNamespaces() throws IOException {
+    if (this.namespaceManager == null) {
+      return;
+    }
+    String snapshotDir = this.conf.getSnapshotDir(this.cacheName);
+    String file = CacheConfig.NAMESPACES_SNAPSHOT_NAME;
+    Path p = Paths.get(snapshotDir, file);
+    if (Files.exists(p) && Files.size(p) > 0) {
+      FileInputStream fis = new FileInputStream(p.toFile());
+      DataInputStream dis = new DataInputStream(fis);
+      this.namespaceManager.load(dis);
+      dis.close();
+    }
+  }
+
+  /**
+   * Saves namespaces data
+   * @throws IOException
+   */
+  private void saveNamespaces() throws IOException {
+    if (this.namespaceManager == null) {
+      return;
+    }
+    String snapshotDir = this.conf.getSnapshotDir(this.cacheName);
+    String file = CacheConfig.NAMESPACES_SNAPSHOT_NAME;
+    Path p = Paths.get(snapshotDir, file);
+    FileOutputStream fos = new FileOutputStream(p.toFile());
+    DataOutputStream dos = new DataOutputStream(fos);
+    this.namespaceManager.save(dos);
+    dos.close();
+  }
+
   /**
    * Loads throughput controller data
    * @throws IOException
@@ -3560,20 +3990,29 @@ public class Cache implements IOEngine.Listener, EvictionListener {
    * @throws IOException
    */
   public void save() throws IOException {
+    saveTier();
+    if (victimCache != null) {
+      victimCache.save();
+    }
+  }
+
+  /**
+   * Save cache data and meta-data, victim cache is not saved
+   * @throws IOException
+   */
+  void saveTier() throws IOException {
     LOG.info("Started saving cache ...");
     onEngineSaveLoad = null;
     onIndexSaveLoad = null;
     long startTime = System.currentTimeMillis();
     saveCache();
     saveAdmissionController();
+    saveNamespaces();
     saveThroughputController();
     saveScavengerStats();
 
     saveEngineAndIndex();
 
-    if (victimCache != null) {
-      victimCache.save();
-    }
     long endTime = System.currentTimeMillis();
     LOG.info("Cache saved in {}ms", endTime - startTime);
   }
@@ -3711,6 +4150,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       Runnable load = () -> {
         try {
           loadAdmissionControlller();
+          loadNamespaces();
           loadThroughputControlller();
           loadScavengerStats();
         } catch (IOException e) {
@@ -3735,6 +4175,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
 
       startThroughputController();
       startVacuumCleaner();
+      startScavengerPacingController();
       long endTime = System.currentTimeMillis();
       LOG.info("Cache loaded in {}ms", endTime - startTime);
     } catch (IOException e) {
@@ -3774,6 +4215,7 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     this.cacheDisabled = true;
     removeShutdownHook();
     stopScavengers();
+    closeVictimEvictionPipeline();
     // Disable cache
     waitForActiveRequestsFinished();
     cancelTimer();
@@ -3784,6 +4226,15 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       LOG.error("dispose", e);
     }
     this.engine.dispose();
+    if (this.hotKeyCache != null) {
+      this.hotKeyCache.clear();
+    }
+    if (this.admissionController != null) {
+      this.admissionController.dispose();
+    }
+    if (this.promotionController != null) {
+      this.promotionController.dispose();
+    }
     if (this.victimCache != null) {
       this.victimCache.dispose();
     }
@@ -3823,6 +4274,13 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       ObjectName name = new ObjectName(String.format("%s:name=%s", domainName, getName()));
       CacheJMXSink mbean = new CacheJMXSink(this);
       mbs.registerMBean(mbean, name);
+      if (this.namespaceManager != null) {
+        for (NamespaceManager.Namespace ns : this.namespaceManager.getNamespaces()) {
+          ObjectName nsName = new ObjectName(
+              String.format("%s:name=%s,namespace=%s", domainName, getName(), ns.getName()));
+          mbs.registerMBean(new NamespaceJMXSink(ns), nsName);
+        }
+      }
     } catch (Exception e) {
       LOG.error("Error:", e);
     }
@@ -3841,6 +4299,13 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     try {
       ObjectName name = new ObjectName(String.format("%s:name=%s", domainName, getName()));
       mbs.unregisterMBean(name);
+      if (this.namespaceManager != null) {
+        for (NamespaceManager.Namespace ns : this.namespaceManager.getNamespaces()) {
+          ObjectName nsName = new ObjectName(
+              String.format("%s:name=%s,namespace=%s", domainName, getName(), ns.getName()));
+          mbs.unregisterMBean(nsName);
+        }
+      }
     } catch (Exception e) {
       LOG.error("Error:", e);
     }
@@ -3878,6 +4343,8 @@ public class Cache implements IOEngine.Listener, EvictionListener {
       timer.cancel();
     }
     stopScavengers();
+    // Drain pending evictions before victim cache is shut down
+    closeVictimEvictionPipeline();
     
     shutdownAsyncIOPool();
     
@@ -3953,7 +4420,37 @@ public class Cache implements IOEngine.Listener, EvictionListener {
 
   }
 
+  /**
+   * Loads cache and all its victim caches from a file system
+   * @param cacheName cache name
+   * @return cache or null if there is no saved cache
+   * @throws IOException
+   */
   public static Cache loadCache(String cacheName) throws IOException {
+    Cache cache = loadTier(cacheName);
+    if (cache == null) {
+      return null;
+    }
+    String victimCacheName = cache.getCacheConfig().getVictimCacheName(cacheName);
+    if (victimCacheName != null) {
+      Cache victimCache = loadCache(victimCacheName);
+      if (victimCache == null) {
+        LOG.warn("Victim cache [{}] snapshot is missing, cache [{}] is loaded without victim",
+          victimCacheName, cacheName);
+      } else {
+        cache.setVictimCache(victimCache);
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Loads cache from a file system, victim cache is not loaded
+   * @param cacheName cache name
+   * @return cache or null if there is no saved cache
+   * @throws IOException
+   */
+  static Cache loadTier(String cacheName) throws IOException {
     CacheConfig conf = CacheConfig.getInstance();
     String snapshotDir = conf.getSnapshotDir(cacheName);
     LOG.debug("Load from snapshot dir:{}", snapshotDir);
@@ -3994,16 +4491,6 @@ public class Cache implements IOEngine.Listener, EvictionListener {
     Cache cache = new Cache();
     cache.setName(cacheName);
     cache.load();
-
-    conf = cache.getCacheConfig();
-    // TODO: check if it will work
-    String victimCacheName = conf.getVictimCacheName(cacheName);
-    if (victimCacheName != null) {
-      Cache victimCache = new Cache();
-      victimCache.setName(victimCacheName);
-      victimCache.load();
-      cache.setVictimCache(victimCache);
-    }
     return cache;
   }
 
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.HotKeyDetector;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * On - heap L0 cache of hot key - value pairs. Hot keys are detected by {@link HotKeyDetector} on
+ * a sample of GET requests, key - value pairs of hot keys found in the main cache are copied into
+ * a direct - mapped table of immutable entries. A lookup is a table load and a key comparison, no
+ * locks and no index access.
+ * <p>
+ * Consistency: every table slot has a version, which is incremented when an entry is invalidated
+ * (put, delete or expiration change of a key). Reader captures slot version before it reads the
+ * main cache and the entry is inserted only if the version has not changed, the version is
+ * re - checked after insert and the entry is removed if a concurrent invalidation won the race.
+ * Entries are stamped with the generation of the detector's hot set, when the hot set changes an
+ * entry is re - checked on its next lookup and removed if its key is no longer hot. Expired entries
+ * are never returned.
+ * <p>
+ * Cache uses L0 only on synchronous reads into a byte array (all get / getKeyValue overloads with a
+ * byte[] buffer and the ones returning byte[]). ByteBuffer, range and asynchronous reads bypass L0
+ * and are not sampled by detector, invalidation covers all write paths.
+ */
+public class HotKeyCache {
+
+  /**
+   * Immutable L0 entry
+   */
+  static final class Entry {
+    final long hash;
+    /* Serialized key - value pair */
+    final byte[] kv;
+    final int keyOffset;
+    final int keySize;
+    /* Expiration time, 0 - no expire */
+    final long expire;
+    /* Hot set generation the key was hot in */
+    final long generation;
+
+    Entry(long hash, byte[] kv, long expire, long generation) {
+      this.hash = hash;
+      this.kv = kv;
+      this.keySize = Utils.readUVInt(kv, 0);
+      int vSize = Utils.readUVInt(kv, Utils.sizeUVInt(this.keySize));
+      this.keyOffset = Utils.sizeUVInt(this.keySize) + Utils.sizeUVInt(vSize);
+      this.expire = expire;
+      this.generation = generation;
+    }
+
+    Entry(Entry e, long generation) {
+      this.hash = e.hash;
+      this.kv = e.kv;
+      this.keySize = e.keySize;
+      this.keyOffset = e.keyOffset;
+      this.expire = e.expire;
+      this.generation = generation;
+    }
+  }
+
+  private final AtomicReferenceArray<Entry> table;
+
+  private final AtomicLongArray versions;
+
+  private final int mask;
+
+  private final int maxItems;
+
+  private final int maxItemSize;
+
+  private final int sampleInterval;
+
+  private final HotKeyDetector detector;
+
+  /* Statistics: hits are counted on every L0 hit - use striped counters */
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder inserts = new LongAdder();
+
+  private final LongAdder invalidations = new LongAdder();
+
+  /**
+   * Creates L0 cache from configuration
+   * @param cacheName cache name
+   * @return L0 cache or null if it is disabled
+   */
+  public static HotKeyCache fromConfig(String cacheName) {
+    CacheConfig config = CacheConfig.getInstance();
+    int maxItems = config.getHotKeysCacheMaxItems(cacheName);
+    if (maxItems <= 0) {
+      return null;
+    }
+    int counters = config.getHotKeysDetectorCounters(cacheName);
+    if (counters <= 0) {
+      counters = 4 * maxItems;
+    }
+    return new HotKeyCache(maxItems, config.getHotKeysCacheMaxItemSize(cacheName),
+        config.getHotKeysSampleInterval(cacheName), counters);
+  }
+
+  /**
+   * Constructor
+   * @param maxItems maximum number of items
+   * @param maxItemSize maximum size of a serialized key - value pair
+   * @param sampleInterval detector samples one of every sampleInterval requests
+   * @param counters number of detector counters
+   */
+  public HotKeyCache(int maxItems, int maxItemSize, int sampleInterval, int counters) {
+    this.maxItems = maxItems;
+    this.maxItemSize = maxItemSize;
+    this.sampleInterval = Math.max(1, sampleInterval);
+    // Load factor 0.5 keeps collisions of hot keys rare
+    int size = (int) Math.min(Utils.nextPow2(2L * maxItems), 1 << 30);
+    this.table = new AtomicReferenceArray<Entry>(size);
+    this.versions = new AtomicLongArray(size);
+    this.mask = size - 1;
+    this.detector = new HotKeyDetector(maxItems, counters);
+  }
+
+  private int slot(long hash) {
+    return (int) (hash ^ (hash >>> 32)) & this.mask;
+  }
+
+  /**
+   * Should this request be sampled by hot key detector. Sampled requests bypass L0 cache
+   * @return true or false
+   */
+  public boolean sample() {
+    return this.sampleInterval == 1 || ThreadLocalRandom.current().nextInt(this.sampleInterval) == 0;
+  }
+
+  /**
+   * Get key - value pair
+   * @param hash key hash
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @param buffer buffer for key - value pair
+   * @param bufOffset buffer offset
+   * @return size of key - value pair (-1 - not found), if greater than available buffer space -
+   *     retry with a larger buffer
+   */
+  public long get(long hash, byte[] key, int keyOffset, int keySize, byte[] buffer,
+      int bufOffset) {
+    int slot = slot(hash);
+    Entry e = this.table.get(slot);
+    if (e == null || e.hash != hash || e.keySize != keySize
+        || !Utils.equals(e.kv, e.keyOffset, keySize, key, keyOffset, keySize)) {
+      return -1;
+    }
+    return copy(slot, e, buffer, bufOffset);
+  }
+
+  /**
+   * Get key - value pair
+   * @param hash key hash
+   * @param keyPtr key address
+   * @param keySize key size
+   * @param buffer buffer for key - value pair
+   * @param bufOffset buffer offset
+   * @return size of key - value pair (-1 - not found), if greater than available buffer space -
+   *     retry with a larger buffer
+   */
+  public long get(long hash, long keyPtr, int keySize, byte[] buffer, int bufOffset) {
+    int slot = slot(hash);
+    Entry e = this.table.get(slot);
+    if (e == null || e.hash != hash || e.keySize != keySize
+        || !Utils.equals(e.kv, e.keyOffset, keySize, keyPtr, keySize)) {
+      return -1;
+    }
+    return copy(slot, e, buffer, bufOffset);
+  }
+
+  private long copy(int slot, Entry e, byte[] buffer, int bufOffset) {
+    if (e.expire > 0 && e.expire <= System.currentTimeMillis()) {
+      this.table.compareAndSet(slot, e, null);
+      return -1;
+    }
+    // Generation must be read before the hot set
+    long gen = this.detector.getGeneration();
+    if (e.generation != gen) {
+      if (!this.detector.isHot(e.hash)) {
+        this.table.compareAndSet(slot, e, null);
+        return -1;
+      }
+      // Still hot, re - check on the next hot set change
+      this.table.compareAndSet(slot, e, new Entry(e, gen));
+    }
+    int size = e.kv.length;
+    if (size <= buffer.length - bufOffset) {
+      System.arraycopy(e.kv, 0, buffer, bufOffset, size);
+      this.hits.increment();
+    }
+    return size;
+  }
+
+  /**
+   * Get version of a key's slot, must be captured before main cache is read
+   * @param hash key hash
+   * @return version
+   */
+  public long getVersion(long hash) {
+    return this.versions.get(slot(hash));
+  }
+
+  /**
+   * Records sampled request in hot key detector
+   * @param hash key hash
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return true if key is hot
+   */
+  public boolean record(long hash, byte[] key, int keyOffset, int keySize) {
+    return this.detector.offer(hash, key, keyOffset, keySize);
+  }
+
+  /**
+   * Records sampled request in hot key detector
+   * @param hash key hash
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return true if key is hot
+   */
+  public boolean record(long hash, long keyPtr, int keySize) {
+    return this.detector.offer(hash, keyPtr, keySize);
+  }
+
+  /**
+   * Inserts key - value pair of a hot key
+   * @param hash key hash
+   * @param version slot version captured before the main cache was read
+   * @param buffer buffer with serialized key - value pair
+   * @param bufOffset buffer offset
+   * @param size size of key - value pair
+   * @param expire expiration time (0 - no expire, negative - unknown, item is not inserted)
+   * @return true if inserted
+   */
+  public boolean put(long hash, long version, byte[] buffer, int bufOffset, int size,
+      long expire) {
+    if (size > this.maxItemSize || expire < 0) {
+      return false;
+    }
+    int slot = slot(hash);
+    if (this.versions.get(slot) != version) {
+      return false;
+    }
+    byte[] kv = new byte[size];
+    System.arraycopy(buffer, bufOffset, kv, 0, size);
+    Entry e = new Entry(hash, kv, expire, this.detector.getGeneration());
+    this.table.set(slot, e);
+    if (this.versions.get(slot) != version) {
+      // Concurrent invalidation
+      this.table.compareAndSet(slot, e, null);
+      return false;
+    }
+    this.inserts.increment();
+    return true;
+  }
+
+  /**
+   * Invalidates key, must be called after main cache has been updated
+   * @param hash key hash
+   */
+  public void invalidate(long hash) {
+    int slot = slot(hash);
+    this.versions.incrementAndGet(slot);
+    if (this.table.getAndSet(slot, null) != null) {
+      this.invalidations.increment();
+    }
+  }
+
+  /**
+   * Removes all entries
+   */
+  public void clear() {
+    for (int i = 0; i <= this.mask; i++) {
+      this.versions.incrementAndGet(i);
+      this.table.set(i, null);
+    }
+  }
+
+  /**
+   * Get number of entries
+   * @return number of entries
+   */
+  public int size() {
+    int n = 0;
+    for (int i = 0; i <= this.mask; i++) {
+      if (this.table.get(i) != null) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Get hot keys with their estimated (sampled) counts
+   * @return list of key:count
+   */
+  public List<String> getHotKeys() {
+    return this.detector.getHotKeys();
+  }
+
+  /**
+   * Get hot key detector
+   * @return detector
+   */
+  public HotKeyDetector getDetector() {
+    return this.detector;
+  }
+
+  public int getMaxItems() {
+    return this.maxItems;
+  }
+
+  public int getMaxItemSize() {
+    return this.maxItemSize;
+  }
+
+  public int getSampleInterval() {
+    return this.sampleInterval;
+  }
+
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  public long getInserts() {
+    return this.inserts.sum();
+  }
+
+  public long getInvalidations() {
+    return this.invalidations.sum();
+  }
+}
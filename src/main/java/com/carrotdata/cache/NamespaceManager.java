@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.Persistent;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Namespaces (tenants) of a cache. A key belongs to the namespace with the longest matching key
+ * prefix, keys which do not match any prefix belong to the default namespace. For every namespace
+ * storage usage (bytes and number of items written and not yet recycled by scavenger), hits, misses
+ * and rejected writes are tracked.
+ * <p>
+ * Quotas: writes which would take a namespace over its hard quota are rejected; items of a
+ * namespace over its soft quota are evicted first when scavenger recycles their segments.
+ */
+public class NamespaceManager implements Persistent {
+
+  /** Name of a default namespace */
+  public final static String DEFAULT_NAMESPACE = "default";
+
+  /**
+   * Namespace
+   */
+  public static class Namespace {
+
+    private final String name;
+
+    private final byte[] prefix;
+
+    private final long softQuota;
+
+    private final long hardQuota;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong items = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong rejectedWrites = new AtomicLong();
+
+    private final AtomicLong evictedItems = new AtomicLong();
+
+    Namespace(String name, byte[] prefix, long softQuota, long hardQuota) {
+      this.name = name;
+      this.prefix = prefix;
+      this.softQuota = softQuota;
+      this.hardQuota = hardQuota;
+    }
+
+    boolean matches(long keyPtr, int keySize) {
+      int len = this.prefix.length;
+      return keySize >= len && Utils.equals(this.prefix, 0, len, keyPtr, len);
+    }
+
+    boolean matches(byte[] key, int keyOffset, int keySize) {
+      int len = this.prefix.length;
+      return keySize >= len && Utils.equals(this.prefix, 0, len, key, keyOffset, len);
+    }
+
+    /**
+     * Checks hard quota for a new write
+     * @param size write size
+     * @return true if write is allowed
+     */
+    boolean checkHardQuota(int size) {
+      if (this.hardQuota > 0 && this.usedBytes.get() + size > this.hardQuota) {
+        this.rejectedWrites.incrementAndGet();
+        return false;
+      }
+      return true;
+    }
+
+    void recordWrite(int size) {
+      this.usedBytes.addAndGet(size);
+      this.items.incrementAndGet();
+    }
+
+    void recordFree(int size, boolean evicted) {
+      this.usedBytes.addAndGet(-size);
+      this.items.decrementAndGet();
+      if (evicted) {
+        this.evictedItems.incrementAndGet();
+      }
+    }
+
+    void recordAccess(boolean hit) {
+      if (hit) {
+        this.hits.incrementAndGet();
+      } else {
+        this.misses.incrementAndGet();
+      }
+    }
+
+    /**
+     * Is namespace over its soft quota
+     * @return true or false
+     */
+    public boolean isOverSoftQuota() {
+      return this.softQuota > 0 && this.usedBytes.get() > this.softQuota;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public byte[] getPrefix() {
+      return this.prefix.clone();
+    }
+
+    public long getSoftQuota() {
+      return this.softQuota;
+    }
+
+    public long getHardQuota() {
+      return this.hardQuota;
+    }
+
+    public long getUsedBytes() {
+      return this.usedBytes.get();
+    }
+
+    public long getItems() {
+      return this.items.get();
+    }
+
+    public long getHits() {
+      return this.hits.get();
+    }
+
+    public long getMisses() {
+      return this.misses.get();
+    }
+
+    public long getRejectedWrites() {
+      return this.rejectedWrites.get();
+    }
+
+    public long getEvictedItems() {
+      return this.evictedItems.get();
+    }
+
+    public double getHitRate() {
+      long h = this.hits.get();
+      long total = h + this.misses.get();
+      return total == 0 ? 0 : (double) h / total;
+    }
+
+    void save(DataOutputStream dos) throws IOException {
+      dos.writeLong(this.usedBytes.get());
+      dos.writeLong(this.items.get());
+      dos.writeLong(this.hits.get());
+      dos.writeLong(this.misses.get());
+      dos.writeLong(this.rejectedWrites.get());
+      dos.writeLong(this.evictedItems.get());
+    }
+
+    void load(DataInputStream dis) throws IOException {
+      this.usedBytes.set(dis.readLong());
+      this.items.set(dis.readLong());
+      this.hits.set(dis.readLong());
+      this.misses.set(dis.readLong());
+      this.rejectedWrites.set(dis.readLong());
+      this.evictedItems.set(dis.readLong());
+    }
+  }
+
+  /* Namespaces sorted by prefix length, longest first */
+  private final Namespace[] namespaces;
+
+  private final Namespace defaultNamespace;
+
+  /**
+   * Constructor
+   * @param namespaces namespaces
+   */
+  NamespaceManager(List<Namespace> namespaces) {
+    List<Namespace> list = new ArrayList<Namespace>(namespaces);
+    Collections.sort(list, (a, b) -> b.prefix.length - a.prefix.length);
+    this.namespaces = list.toArray(new Namespace[list.size()]);
+    this.defaultNamespace = new Namespace(DEFAULT_NAMESPACE, new byte[0], 0, 0);
+  }
+
+  /**
+   * Creates namespace manager from configuration
+   * @param cacheName cache name
+   * @return namespace manager or null if no namespaces are configured
+   */
+  public static NamespaceManager fromConfig(String cacheName) {
+    CacheConfig conf = CacheConfig.getInstance();
+    String value = conf.getNamespaces(cacheName);
+    if (value == null || value.trim().length() == 0) {
+      return null;
+    }
+    List<Namespace> list = new ArrayList<Namespace>();
+    for (String def : value.split(",")) {
+      // Prefixes may contain ':' (tenant:type:id keys), fields are separated by '|'
+      String[] parts = def.trim().split("\\|");
+      if (parts.length < 2 || parts[0].length() == 0 || parts[1].length() == 0) {
+        throw new IllegalArgumentException("Illegal namespace definition: " + def);
+      }
+      long soft = parts.length > 2 ? conf.getLong(parts[2], 0) : 0;
+      long hard = parts.length > 3 ? conf.getLong(parts[3], 0) : 0;
+      list.add(new Namespace(parts[0], parts[1].getBytes(), soft, hard));
+    }
+    return new NamespaceManager(list);
+  }
+
+  /**
+   * Get namespace for a key
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return namespace
+   */
+  public Namespace getNamespace(long keyPtr, int keySize) {
+    for (Namespace ns : this.namespaces) {
+      if (ns.matches(keyPtr, keySize)) {
+        return ns;
+      }
+    }
+    return this.defaultNamespace;
+  }
+
+  /**
+   * Get namespace for a key
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return namespace
+   */
+  public Namespace getNamespace(byte[] key, int keyOffset, int keySize) {
+    for (Namespace ns : this.namespaces) {
+      if (ns.matches(key, keyOffset, keySize)) {
+        return ns;
+      }
+    }
+    return this.defaultNamespace;
+  }
+
+  /**
+   * Get namespace by name
+   * @param name name
+   * @return namespace or null
+   */
+  public Namespace getNamespace(String name) {
+    if (DEFAULT_NAMESPACE.equals(name)) {
+      return this.defaultNamespace;
+    }
+    for (Namespace ns : this.namespaces) {
+      if (ns.name.equals(name)) {
+        return ns;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get all namespaces, including default one
+   * @return list of namespaces
+   */
+  public List<Namespace> getNamespaces() {
+    List<Namespace> list = new ArrayList<Namespace>();
+    Collections.addAll(list, this.namespaces);
+    list.add(this.defaultNamespace);
+    return list;
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    List<Namespace> list = getNamespaces();
+    dos.writeInt(list.size());
+    for (Namespace ns : list) {
+      dos.writeUTF(ns.name);
+      ns.save(dos);
+    }
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    DataInputStream dis = Utils.toDataInputStream(is);
+    int n = dis.readInt();
+    for (int i = 0; i < n; i++) {
+      String name = dis.readUTF();
+      Namespace ns = getNamespace(name);
+      if (ns == null) {
+        // Namespace was removed from configuration, skip its data
+        ns = new Namespace(name, new byte[0], 0, 0);
+      }
+      ns.load(dis);
+    }
+  }
+}
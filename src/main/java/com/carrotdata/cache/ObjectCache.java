@@ -24,7 +24,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,8 +71,8 @@ public class ObjectCache {
   /** Object pool for Kryo outputs */
   static ObjectPool<Output> outputs;
 
-  /** To support loading cache **/
-  private Map<Object, Object> waitingKeys = new ConcurrentHashMap<>();
+  /** To support loading cache: keys being loaded and futures of their values **/
+  private Map<Object, CompletableFuture<Object>> waitingKeys = new ConcurrentHashMap<>();
 
   /* Each key class can have associated expiration time in milliseconds */
   private Map<Class<?>, Long> keyExpireMap = new ConcurrentHashMap<Class<?>, Long>();
@@ -249,31 +251,36 @@ public class ObjectCache {
     if (value != null) {
       return value;
     }
-    Object v = waitingKeys.get(key);
-    if (v != null) {
-      return waitAndGet(key);
-    } else {
-      Object prev = waitingKeys.putIfAbsent(key, Boolean.TRUE);
-      if (prev != null) {
-        return waitAndGet(key);
-      } else {
-        try {
-          value = valueLoader.call();
-          if (value != null) {
-            long expire = getExpireForKey(key);
-            // This time is relative
-            if (expire > 0) {
-              put(key, value, System.currentTimeMillis() + expire);
-            } else {
-              put(key, value, 0L);
-            }
-          }
-        } catch (Exception e) {
-          throw new IOException(e);
-        } finally {
-          waitingKeys.remove(key);
+    CompletableFuture<Object> future = waitingKeys.get(key);
+    if (future != null) {
+      return waitAndGet(key, future);
+    }
+    future = new CompletableFuture<Object>();
+    CompletableFuture<Object> prev = waitingKeys.putIfAbsent(key, future);
+    if (prev != null) {
+      return waitAndGet(key, prev);
+    }
+    try {
+      value = valueLoader.call();
+      if (value != null) {
+        long expire = getExpireForKey(key);
+        // This time is relative
+        if (expire > 0) {
+          put(key, value, System.currentTimeMillis() + expire);
+        } else {
+          put(key, value, 0L);
         }
       }
+      future.complete(value);
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+      throw new IOException(e);
+    } catch (Error e) {
+      // Waiters must not block forever
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      waitingKeys.remove(key, future);
     }
     return value;
   }
@@ -286,16 +293,17 @@ public class ObjectCache {
     return expire;
   }
 
-  private Object waitAndGet(Object key) throws IOException {
-    // Loading in progress
-    while (waitingKeys.get(key) != null) {
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException e) {
-      }
+  private Object waitAndGet(Object key, CompletableFuture<Object> future) throws IOException {
+    // Loading in progress - wait for the loader's result
+    Object value;
+    try {
+      value = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
     }
-    // Repeat call
-    Object value = get(key);
     if (value == null) {
       // Loader failed
       throw new IOException(String.format("Failed to load value for key %s", key.toString()));
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs I/O tasks of composite caches (shards of a sharded cache, tiers of a tiered cache) in
+ * parallel. All composite caches share one pool of daemon threads, tasks submitted from a pool
+ * thread (nested composite caches) run in the caller's thread.
+ */
+final class ParallelTasks {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelTasks.class);
+
+  private static final String NAME = "c2-io-task";
+
+  /* Task which returns a value and may throw IOException */
+  interface IOTask {
+    Object call() throws IOException;
+  }
+
+  /* Pool thread */
+  private static final class Worker extends Thread {
+    Worker(Runnable r, String name) {
+      super(r, name);
+      setDaemon(true);
+    }
+  }
+
+  private static ExecutorService service;
+
+  private ParallelTasks() {
+  }
+
+  private static synchronized ExecutorService getService() {
+    if (service == null) {
+      final AtomicInteger count = new AtomicInteger();
+      service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        r -> new Worker(r, NAME + "-" + count.getAndIncrement()));
+    }
+    return service;
+  }
+
+  /**
+   * Runs tasks in parallel and waits for completion. All tasks are run even if some of them fail
+   * @param tasks tasks
+   * @param op operation name
+   * @return task results
+   * @throws IOException first exception thrown by a task
+   */
+  static List<Object> runAll(List<IOTask> tasks, String op) throws IOException {
+    List<Object> result = new ArrayList<Object>();
+    IOException error = null;
+    if (tasks.size() <= 1 || Thread.currentThread() instanceof Worker) {
+      for (IOTask task : tasks) {
+        try {
+          result.add(task.call());
+        } catch (IOException | RuntimeException e) {
+          LOG.error(op, e);
+          if (error == null) {
+            error = toIOException(e);
+          }
+        }
+      }
+    } else {
+      ExecutorService service = getService();
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (IOTask task : tasks) {
+        futures.add(service.submit(() -> task.call()));
+      }
+      for (Future<Object> f : futures) {
+        try {
+          result.add(f.get());
+        } catch (ExecutionException e) {
+          LOG.error(op, e.getCause());
+          if (error == null) {
+            error = toIOException(e.getCause());
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    return result;
+  }
+
+  private static IOException toIOException(Throwable t) {
+    return t instanceof IOException ? (IOException) t : new IOException(t);
+  }
+}
@@ -41,14 +41,17 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.carrotdata.cache.controllers.AdmissionController;
 import com.carrotdata.cache.index.MemoryIndex;
 import com.carrotdata.cache.index.MemoryIndex.Result;
 import com.carrotdata.cache.index.MemoryIndex.ResultWithRankAndExpire;
+import com.carrotdata.cache.io.DedupValueStore;
 import com.carrotdata.cache.io.IOEngine;
 import com.carrotdata.cache.io.Segment;
 import com.carrotdata.cache.io.SegmentScanner;
 import com.carrotdata.cache.util.CacheConfig;
 import com.carrotdata.cache.util.Persistent;
+import com.carrotdata.cache.util.UnsafeAccess;
 import com.carrotdata.cache.util.Utils;
 
 public class Scavenger implements Runnable {
@@ -116,7 +119,7 @@ public class Scavenger implements Runnable {
 
     double dumpBelowRatioMax;
 
-    double dumpBelowRatio;
+    volatile double dumpBelowRatio;
 
     double adjStep;
 
@@ -127,9 +130,9 @@ public class Scavenger implements Runnable {
     Stats(String cacheName) {
       this.cacheName = cacheName;
       CacheConfig conf = CacheConfig.getInstance();
-      dumpBelowRatio = conf.getScavengerDumpEntryBelowMax(cacheName);
+      dumpBelowRatio = conf.getScavengerDumpEntryBelowMin(cacheName);
       dumpBelowRatioMin = dumpBelowRatio;
-      dumpBelowRatioMax = conf.getScavengerDumpEntryBelowMin(cacheName);
+      dumpBelowRatioMax = conf.getScavengerDumpEntryBelowMax(cacheName);
       adjStep = conf.getScavengerDumpEntryBelowAdjStep(cacheName);
       stopRatio = conf.getScavengerStopMemoryRatio(cacheName);
       minActiveRatio = conf.getMinimumActiveDatasetRatio(cacheName);
@@ -395,7 +398,7 @@ public class Scavenger implements Runnable {
   private static Map<String, AtomicInteger> vacuumCleanersMap =
       new ConcurrentHashMap<String, AtomicInteger>();
 
-  private static int maxInstances = 1; // TODO: make it configurable
+  private int maxInstances = 1;
 
   private static AtomicLong rollingId = new AtomicLong();
 
@@ -410,13 +413,40 @@ public class Scavenger implements Runnable {
   
   private boolean victimEvictAll = false;
   
+  /* Asynchronous victim eviction pipeline, can be null */
+  private VictimEvictionPipeline victimPipeline;
+  
+  /* Victim cache admission controller, applied to evicted items, can be null */
+  private AdmissionController victimAdmission;
+  
+  /* Current staging batch of evicted items */
+  private VictimEvictionPipeline.Batch victimBatch;
+  
+  /* Cost accounting */
+  private ScavengerTelemetry telemetry;
+  
+  /* Detailed cost accounting */
+  private boolean telemetryDetailed;
+  
+  /* Current segment record */
+  private final ScavengerTelemetry.SegmentRecord segmentRecord =
+      new ScavengerTelemetry.SegmentRecord();
+  
   public Scavenger(Cache cache) {
     this.cache = cache;
     this.diskCache = cache.isDiskCache();
     this.config = CacheConfig.getInstance();
     String cacheName = this.cache.getName();
-    maxInstances = config.getScavengerNumberOfThreads(cacheName);
+    // Can be adjusted at runtime by scavenger pacing controller
+    maxInstances = cache.getScavengerNumberOfThreads();
     victimEvictAll = config.getVictimEvictAll(cacheName);
+    victimPipeline = cache.getVictimEvictionPipeline();
+    Cache victimCache = cache.getVictimCache();
+    if (victimCache != null && config.isVictimAdmissionEnabled(victimCache.getName())) {
+      victimAdmission = victimCache.getAdmissionController();
+    }
+    telemetry = ScavengerTelemetry.getTelemetryForCache(cacheName);
+    telemetryDetailed = telemetry.isDetailed();
     // Update stats
     stats = statsMap.get(cache.getName());
 
@@ -475,6 +505,7 @@ public class Scavenger implements Runnable {
     vacuumCleanersMap.put(cacheName, new AtomicInteger());
     initPoolForCacheName(cacheName);
     removeStatisticsForCache(cacheName);
+    ScavengerTelemetry.removeTelemetryForCache(cacheName);
   }
 
   public static int getActiveThreadsCount(String cacheName) {
@@ -528,6 +559,7 @@ public class Scavenger implements Runnable {
     DateFormat format = DateFormat.getDateTimeInstance();
     Segment s = null;
     boolean rejected = false;
+    ScavengerTelemetry.RunRecord runRecord = null;
     try {
       AtomicInteger numInstances = numInstancesMap.get(cache.getName());
       if (numInstances.incrementAndGet() > maxInstances && 
@@ -552,6 +584,7 @@ public class Scavenger implements Runnable {
       boolean finished = false;
 
       int segmentsProcessed = 0;
+      runRecord = telemetry.startRun(this.vacuumMode);
 
       while (!finished) {
         if (Thread.interrupted()) {
@@ -587,6 +620,7 @@ public class Scavenger implements Runnable {
           // we should clean
           dumpBelowRatio = 0;
         }
+        startSegmentRecord(s, runRecord.runId);
         engine.startRecycling(s);
         long maxExpire = s.getInfo().getMaxExpireAt();
         if (s.getInfo().getTotalActiveItems() == 0
@@ -594,7 +628,10 @@ public class Scavenger implements Runnable {
           stats.totalEmptySegments.incrementAndGet();
         }
         try {
+          long segStart = System.nanoTime();
           finished = cleanSegment(s);
+          segmentRecord.totalTimeNs = System.nanoTime() - segStart;
+          telemetry.recordSegment(runRecord, segmentRecord);
           if (finished && beforeStallDetected) {
             // continue with purging low rank elements
             finished = false;
@@ -620,6 +657,11 @@ public class Scavenger implements Runnable {
       LOG.error("May be FATAL", e);
       // TODO
     } finally {
+      // Hand over remaining evicted items to the victim cache writer
+      flushVictimBatch();
+      if (runRecord != null) {
+        telemetry.finishRun(runRecord);
+      }
       AtomicInteger numInstances = numInstancesMap.get(cache.getName());
       numInstances.decrementAndGet();
       if (this.vacuumMode) {
@@ -640,6 +682,26 @@ public class Scavenger implements Runnable {
     }
   }
 
+  private void startSegmentRecord(Segment s, long runId) {
+    ScavengerTelemetry.SegmentRecord r = this.segmentRecord;
+    r.reset();
+    r.runId = runId;
+    r.timestamp = System.currentTimeMillis();
+    r.segmentId = s.getId();
+    Segment.Info info = s.getInfo();
+    int total = s.getTotalItems();
+    r.liveRatio = total > 0 ? (double) s.getAliveItems() / total : 0.0;
+    long maxExpire = info.getMaxExpireAt();
+    if (maxExpire > 0 && maxExpire <= r.timestamp) {
+      r.reason = ScavengerTelemetry.Reason.EXPIRED;
+    } else if (info.getTotalActiveItems() == 0) {
+      r.reason = ScavengerTelemetry.Reason.EMPTY;
+    } else {
+      r.reason =
+          this.vacuumMode ? ScavengerTelemetry.Reason.VACUUM : ScavengerTelemetry.Reason.SELECTOR;
+    }
+  }
+
   private boolean shouldStopOn(Segment s) {
     long expire = s.getInfo().getMaxExpireAt();
     long n = s.getAliveItems();
@@ -679,8 +741,21 @@ public class Scavenger implements Runnable {
       stats.totalBytesScanned.addAndGet(dataSize);
       stats.totalItemsFreed.addAndGet(s.getTotalItems());
       stats.totalItemsScanned.addAndGet(s.getTotalItems());
+      segmentRecord.bytesFreed = dataSize;
+      segmentRecord.itemsScanned = s.getTotalItems();
+      DedupValueStore dedup = this.cache.getEngine().getDedupValueStore();
+      if (dedup != null && s.getTotalReferences() == 0) {
+        dedup = null;
+      }
+      NamespaceManager nsm = this.cache.getNamespaceManager();
+      if (dedup != null || nsm != null) {
+        // Segment is dumped w/o index lookups, but its references and namespace storage
+        // must be released
+        releaseSegment(s, dedup, nsm);
+      }
       result = false; // not finished yet
     } else {
+      segmentRecord.bytesRead = dataSize;
       result = cleanSegmentInternal(s);
     }
     stats.totalSegmentsScanned.incrementAndGet();
@@ -689,6 +764,55 @@ public class Scavenger implements Runnable {
     return result;
   }
 
+  /**
+   * Releases all references to deduplicated values and namespace storage of items stored in a
+   * segment
+   * @param s segment
+   * @param dedup value store (can be null)
+   * @param nsm namespace manager (can be null)
+   * @throws IOException
+   */
+  private void releaseSegment(Segment s, DedupValueStore dedup, NamespaceManager nsm)
+      throws IOException {
+    SegmentScanner sc = null;
+    byte[] ref = new byte[DedupValueStore.REFERENCE_SIZE];
+    byte[] key = null;
+    try {
+      sc = this.cache.getEngine().getScanner(s); // acquires read lock
+      boolean isDirect = sc.isDirect();
+      while (sc.hasNext()) {
+        int keySize = sc.keyLength();
+        int valSize = sc.valueLength();
+        if (nsm != null) {
+          NamespaceManager.Namespace ns;
+          if (isDirect) {
+            ns = nsm.getNamespace(sc.keyAddress(), keySize);
+          } else {
+            key = checkBuffer(key == null ? new byte[keySize] : key, keySize, false);
+            sc.getKey(key, 0);
+            ns = nsm.getNamespace(key, 0, keySize);
+          }
+          ns.recordFree(Utils.kvSize(keySize, valSize), false);
+        }
+        if (dedup != null && valSize == ref.length) {
+          if (isDirect) {
+            UnsafeAccess.copy(sc.valueAddress(), ref, 0, ref.length);
+          } else {
+            sc.getValue(ref, 0);
+          }
+          if (DedupValueStore.isReference(ref, 0, ref.length)) {
+            dedup.release(ref, 0);
+          }
+        }
+        sc.next();
+      }
+    } finally {
+      if (sc != null) {
+        sc.close();
+      }
+    }
+  }
+
   private byte[] checkBuffer(byte[] buffer, int requiredSize, boolean isDirect) {
     if (isDirect) {
       return buffer;
@@ -699,6 +823,82 @@ public class Scavenger implements Runnable {
     return buffer;
   }
 
+  /**
+   * Stages evicted item for asynchronous put into the victim cache
+   * @return true if staged, false - caller must put item synchronously
+   */
+  private boolean stageForVictim(long keyPtr, int keySize, long valuePtr, int valSize,
+      long expire, int rank, int groupRank) {
+    if (!acquireVictimBatch(keySize, valSize)) {
+      return false;
+    }
+    if (victimBatch.append(keyPtr, keySize, valuePtr, valSize, expire, rank, groupRank)) {
+      return true;
+    }
+    // Batch is full
+    flushVictimBatch();
+    if (!acquireVictimBatch(keySize, valSize)) {
+      return false;
+    }
+    return victimBatch.append(keyPtr, keySize, valuePtr, valSize, expire, rank, groupRank);
+  }
+
+  /**
+   * Stages evicted item for asynchronous put into the victim cache
+   * @return true if staged, false - caller must put item synchronously
+   */
+  private boolean stageForVictim(byte[] key, int keySize, byte[] value, int valSize, long expire,
+      int rank, int groupRank) {
+    if (!acquireVictimBatch(keySize, valSize)) {
+      return false;
+    }
+    if (victimBatch.append(key, 0, keySize, value, 0, valSize, expire, rank, groupRank)) {
+      return true;
+    }
+    // Batch is full
+    flushVictimBatch();
+    if (!acquireVictimBatch(keySize, valSize)) {
+      return false;
+    }
+    return victimBatch.append(key, 0, keySize, value, 0, valSize, expire, rank, groupRank);
+  }
+
+  /**
+   * Applies victim cache admission controller to an item, which is put synchronously into the
+   * victim cache (victim.admission.enabled)
+   * @return true if admitted, false - item must be dropped
+   */
+  private boolean admitToVictim(long keyPtr, int keySize, int valSize) {
+    return victimAdmission == null || victimAdmission.admit(keyPtr, keySize, valSize);
+  }
+
+  /**
+   * Applies victim cache admission controller to an item, which is put synchronously into the
+   * victim cache (victim.admission.enabled)
+   * @return true if admitted, false - item must be dropped
+   */
+  private boolean admitToVictim(byte[] key, int keySize, int valSize) {
+    return victimAdmission == null || victimAdmission.admit(key, 0, keySize, valSize);
+  }
+
+  private boolean acquireVictimBatch(int keySize, int valSize) {
+    if (victimPipeline == null || victimPipeline.isClosed()) {
+      return false;
+    }
+    if (victimBatch == null) {
+      // Can block if all batches are in flight (back pressure)
+      victimBatch = victimPipeline.acquire();
+    }
+    return victimBatch != null && victimBatch.fits(keySize, valSize);
+  }
+
+  private void flushVictimBatch() {
+    if (victimBatch != null) {
+      victimPipeline.submit(victimBatch);
+      victimBatch = null;
+    }
+  }
+
   @SuppressWarnings("unused")
   private boolean cleanSegmentInternal(Segment s) throws IOException {
     IOEngine engine = this.cache.getEngine();
@@ -711,6 +911,13 @@ public class Scavenger implements Runnable {
     int notFound = 0;
     int submitted = 0;
     ResultWithRankAndExpire result = new ResultWithRankAndExpire();
+    ScavengerTelemetry.SegmentRecord record = this.segmentRecord;
+    boolean detailed = this.telemetryDetailed;
+    AdmissionController ac = this.cache.getAdmissionController();
+    NamespaceManager nsm = this.cache.getNamespaceManager();
+    DedupValueStore dedup = engine.getDedupValueStore();
+    byte[] ref = dedup != null ? new byte[DedupValueStore.REFERENCE_SIZE] : null;
+    long t = 0;
     try {
 
       sc = engine.getScanner(s); // acquires read lock
@@ -726,13 +933,31 @@ public class Scavenger implements Runnable {
         final int totalSize = Utils.kvSize(keySize, valSize);
         stats.totalBytesScanned.addAndGet(totalSize);
         double ratio = dumpBelowRatio; // beforeStallDetected? 0: dumpBelowRatio;
-        if (isDirect) {
-          result = index.checkDeleteKeyForScavenger(s.getId(), keyPtr, keySize, result, ratio);
-        } else {
+        if (!isDirect) {
           keyBuffer = checkBuffer(keyBuffer, keySize, isDirect);
           sc.getKey(keyBuffer, 0);
-          result =
-              index.checkDeleteKeyForScavenger(s.getId(), keyBuffer, 0, keySize, result, ratio);
+        }
+        NamespaceManager.Namespace ns = null;
+        if (nsm != null) {
+          ns = isDirect ? nsm.getNamespace(keyPtr, keySize)
+              : nsm.getNamespace(keyBuffer, 0, keySize);
+          if (ns.isOverSoftQuota()) {
+            // Namespace over its soft quota is evicted first
+            ratio = 1.0;
+          }
+        }
+        if (detailed) {
+          t = System.nanoTime();
+        }
+        if (isDirect) {
+          result = index.checkDeleteKeyForScavenger(s.getId(), keyPtr, keySize, totalSize, result,
+            ratio);
+        } else {
+          result = index.checkDeleteKeyForScavenger(s.getId(), keyBuffer, 0, keySize, totalSize,
+            result, ratio);
+        }
+        if (detailed) {
+          record.indexTimeNs += System.nanoTime() - t;
         }
         Result res = result.getResult();
         int rank = result.getRank();
@@ -744,16 +969,27 @@ public class Scavenger implements Runnable {
           case EXPIRED:
             stats.totalBytesExpired.addAndGet(totalSize);
             stats.totalBytesFreed.addAndGet(totalSize);
+            record.bytesFreed += totalSize;
             //stats.totalItemsExpired.incrementAndGet();
             expired++;
             break;
           case NOT_FOUND:// Actually deleted or overwritten
             stats.totalBytesFreed.addAndGet(totalSize);
+            record.bytesFreed += totalSize;
             notFound++;
             break;
           case DELETED:
             // Update stats
             stats.totalBytesFreed.addAndGet(totalSize);
+            record.bytesFreed += totalSize;
+            if (ac != null) {
+              // Let admission controller know about eviction victim
+              if (isDirect) {
+                ac.onEviction(keyPtr, keySize, valSize);
+              } else {
+                ac.onEviction(keyBuffer, 0, keySize, valSize);
+              }
+            }
             // Return Item back to AQ
             // TODO: fix this code. We need to move data to a victim cache on
             // memory index eviction.
@@ -763,19 +999,76 @@ public class Scavenger implements Runnable {
             submitted++;
             break;
         }
+        if (ns != null) {
+          // Storage of this copy is freed, re - written item is accounted on put
+          ns.recordFree(totalSize, res == Result.DELETED);
+        }
         Cache c = res == Result.OK ? this.cache : this.cache.getVictimCache();
-        // In case of OK resubmit back to the cache, in case of DELETED and victim cache is not null
-        // submit to victim cache
-        // sanity check
-        if (c != null && (res == Result.OK || (res == Result.DELETED && (victimEvictAll || hitCount > 0)))) {
+        boolean isReference = false;
+        if (dedup != null && valSize == DedupValueStore.REFERENCE_SIZE) {
+          if (isDirect) {
+            UnsafeAccess.copy(valuePtr, ref, 0, valSize);
+          } else {
+            sc.getValue(ref, 0);
+          }
+          isReference = DedupValueStore.isReference(ref, 0, valSize);
+        }
+        if (isReference && res != Result.OK) {
+          // Re - written reference is moved as is, freed one must be released. Victim cache
+          // gets the value itself
+          if (c != null && res == Result.DELETED && (victimEvictAll || hitCount > 0)) {
+            byte[] value = dedup.getValue(ref, 0);
+            if (value != null) {
+              byte[] key = keyBuffer;
+              if (isDirect) {
+                key = new byte[keySize];
+                UnsafeAccess.copy(keyPtr, key, 0, keySize);
+              }
+              if (!stageForVictim(key, keySize, value, value.length, expire, rank, groupRank)
+                  && admitToVictim(key, keySize, value.length)) {
+                c.put(key, 0, keySize, value, 0, value.length, expire, rank, groupRank, true, true);
+              }
+              record.bytesToVictim += Utils.kvSize(keySize, value.length);
+            }
+          }
+          dedup.release(ref, 0);
+        } else if (c != null && (res == Result.OK || (res == Result.DELETED && (victimEvictAll || hitCount > 0)))) {
           // Put value back into the cache or victim cache - it has high popularity
+          if (detailed) {
+            t = System.nanoTime();
+          }
+          boolean written = false;
           if (isDirect) {
-            c.put(keyPtr, keySize, valuePtr, valSize, expire, rank, groupRank, true, true);
+            if (res == Result.OK || (!stageForVictim(keyPtr, keySize, valuePtr, valSize, expire,
+              rank, groupRank) && admitToVictim(keyPtr, keySize, valSize))) {
+              written =
+                  c.put(keyPtr, keySize, valuePtr, valSize, expire, rank, groupRank, true, true);
+            }
           } else {
             valueBuffer = checkBuffer(valueBuffer, valSize, isDirect);
             sc.getValue(valueBuffer, 0);
-            c.put(keyBuffer, 0, keySize, valueBuffer, 0, valSize, expire, rank, groupRank, true,
-              true);
+            if (res == Result.OK || (!stageForVictim(keyBuffer, keySize, valueBuffer, valSize,
+              expire, rank, groupRank) && admitToVictim(keyBuffer, keySize, valSize))) {
+              written = c.put(keyBuffer, 0, keySize, valueBuffer, 0, valSize, expire, rank,
+                groupRank, true, true);
+            }
+          }
+          if (isReference && !written) {
+            // Reference was not moved, segment is recycled - nobody else can release it
+            dedup.release(ref, 0);
+          }
+          if (res == Result.OK) {
+            record.bytesRewritten += totalSize;
+            record.itemsRewritten++;
+          } else {
+            record.bytesToVictim += totalSize;
+          }
+          if (detailed) {
+            if (res == Result.OK) {
+              record.rewriteTimeNs += System.nanoTime() - t;
+            } else {
+              record.victimTimeNs += System.nanoTime() - t;
+            }
           }
         }
         // Update storage usage (uncompressed)
@@ -791,6 +1084,7 @@ public class Scavenger implements Runnable {
     // means Scavenger MUST stop and log warning
     // Mostly for testing - in a real application properly configured
     // should never happen
+    record.itemsScanned += scanned;
     stats.totalItemsExpired.addAndGet(expired);
     stats.totalItemsFreed.addAndGet(deleted + expired + notFound);
     stats.totalItemsScanned.addAndGet(scanned);
@@ -880,6 +1174,23 @@ public class Scavenger implements Runnable {
     return true;
   }
 
+  /**
+   * Set dump entry below ratio for a cache, value is bounded by minimum and maximum
+   * @param cacheName cache name
+   * @param ratio new ratio
+   * @return true if ratio was set, false - no statistics found for the cache
+   */
+  public static boolean setDumpBelowRatio(String cacheName, double ratio) {
+    Stats stats = statsMap.get(cacheName);
+    if (stats == null) {
+      return false;
+    }
+    ratio = Math.max(ratio, stats.dumpBelowRatioMin);
+    ratio = Math.min(ratio, stats.dumpBelowRatioMax);
+    stats.dumpBelowRatio = ratio;
+    return true;
+  }
+
   public static void waitForFinish() {
     for (AtomicInteger numInstances : numInstancesMap.values()) {
       while (numInstances.get() > 0) {
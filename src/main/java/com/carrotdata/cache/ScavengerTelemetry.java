@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+/**
+ * Scavenger cost accounting. Keeps cumulative GC cost counters (time spent in index probes,
+ * re-insertion, eviction to victim cache and the rest of a segment scan), bounded history of
+ * per-segment records and the last run record. Records can be optionally written to a dedicated
+ * logger (com.carrotdata.cache.ScavengerTelemetry), which can be bound to a rolling file appender
+ * in the logging configuration.
+ */
+public class ScavengerTelemetry {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(ScavengerTelemetry.class);
+
+  /**
+   * Why segment was selected for recycling
+   */
+  public static enum Reason {
+    /* All items expired */
+    EXPIRED,
+    /* No active items */
+    EMPTY,
+    /* Selected by recycling selector */
+    SELECTOR,
+    /* Selected by recycling selector in vacuum mode */
+    VACUUM
+  }
+
+  /**
+   * Per - segment GC record
+   */
+  public static class SegmentRecord {
+    long runId;
+    long timestamp;
+    int segmentId;
+    Reason reason;
+    double liveRatio;
+    long itemsScanned;
+    long itemsRewritten;
+    long bytesRead;
+    long bytesFreed;
+    long bytesRewritten;
+    long bytesToVictim;
+    long totalTimeNs;
+    long indexTimeNs;
+    long rewriteTimeNs;
+    long victimTimeNs;
+
+    void reset() {
+      runId = 0;
+      timestamp = 0;
+      segmentId = -1;
+      reason = null;
+      liveRatio = 0;
+      itemsScanned = 0;
+      itemsRewritten = 0;
+      bytesRead = 0;
+      bytesFreed = 0;
+      bytesRewritten = 0;
+      bytesToVictim = 0;
+      totalTimeNs = 0;
+      indexTimeNs = 0;
+      rewriteTimeNs = 0;
+      victimTimeNs = 0;
+    }
+
+    SegmentRecord copy() {
+      SegmentRecord r = new SegmentRecord();
+      r.runId = runId;
+      r.timestamp = timestamp;
+      r.segmentId = segmentId;
+      r.reason = reason;
+      r.liveRatio = liveRatio;
+      r.itemsScanned = itemsScanned;
+      r.itemsRewritten = itemsRewritten;
+      r.bytesRead = bytesRead;
+      r.bytesFreed = bytesFreed;
+      r.bytesRewritten = bytesRewritten;
+      r.bytesToVictim = bytesToVictim;
+      r.totalTimeNs = totalTimeNs;
+      r.indexTimeNs = indexTimeNs;
+      r.rewriteTimeNs = rewriteTimeNs;
+      r.victimTimeNs = victimTimeNs;
+      return r;
+    }
+
+    /**
+     * Time spent scanning (reading and parsing segment data) in ns
+     * @return scan time
+     */
+    public long getScanTimeNs() {
+      return Math.max(0, totalTimeNs - indexTimeNs - rewriteTimeNs - victimTimeNs);
+    }
+
+    public long getRunId() {
+      return runId;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public int getSegmentId() {
+      return segmentId;
+    }
+
+    public Reason getReason() {
+      return reason;
+    }
+
+    public double getLiveRatio() {
+      return liveRatio;
+    }
+
+    public long getItemsScanned() {
+      return itemsScanned;
+    }
+
+    public long getItemsRewritten() {
+      return itemsRewritten;
+    }
+
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public long getBytesFreed() {
+      return bytesFreed;
+    }
+
+    public long getBytesRewritten() {
+      return bytesRewritten;
+    }
+
+    public long getBytesToVictim() {
+      return bytesToVictim;
+    }
+
+    public long getTotalTimeNs() {
+      return totalTimeNs;
+    }
+
+    public long getIndexTimeNs() {
+      return indexTimeNs;
+    }
+
+    public long getRewriteTimeNs() {
+      return rewriteTimeNs;
+    }
+
+    public long getVictimTimeNs() {
+      return victimTimeNs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "run=%d segment=%d reason=%s live=%.3f items=%d rewritten=%d read=%d freed=%d "
+            + "rewritten_bytes=%d victim_bytes=%d time_us=%d scan_us=%d index_us=%d "
+            + "rewrite_us=%d victim_us=%d",
+        runId, segmentId, reason, liveRatio, itemsScanned, itemsRewritten, bytesRead, bytesFreed,
+        bytesRewritten, bytesToVictim, totalTimeNs / 1000, getScanTimeNs() / 1000,
+        indexTimeNs / 1000, rewriteTimeNs / 1000, victimTimeNs / 1000);
+    }
+  }
+
+  /**
+   * Per - run GC record
+   */
+  public static class RunRecord {
+    long runId;
+    long startTime;
+    long duration;
+    int segments;
+    long bytesRead;
+    long bytesFreed;
+    long bytesRewritten;
+    long bytesToVictim;
+    boolean vacuum;
+
+    void add(SegmentRecord r) {
+      segments++;
+      bytesRead += r.bytesRead;
+      bytesFreed += r.bytesFreed;
+      bytesRewritten += r.bytesRewritten;
+      bytesToVictim += r.bytesToVictim;
+    }
+
+    public long getRunId() {
+      return runId;
+    }
+
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public long getDuration() {
+      return duration;
+    }
+
+    public int getSegments() {
+      return segments;
+    }
+
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public long getBytesFreed() {
+      return bytesFreed;
+    }
+
+    public long getBytesRewritten() {
+      return bytesRewritten;
+    }
+
+    public long getBytesToVictim() {
+      return bytesToVictim;
+    }
+
+    public boolean isVacuum() {
+      return vacuum;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "run=%d vacuum=%s duration_ms=%d segments=%d read=%d freed=%d rewritten_bytes=%d "
+            + "victim_bytes=%d",
+        runId, vacuum, duration, segments, bytesRead, bytesFreed, bytesRewritten, bytesToVictim);
+    }
+  }
+
+  private static ConcurrentHashMap<String, ScavengerTelemetry> telemetryMap =
+      new ConcurrentHashMap<String, ScavengerTelemetry>();
+
+  /**
+   * Get telemetry for a cache
+   * @param cacheName cache name
+   * @return telemetry
+   */
+  public static ScavengerTelemetry getTelemetryForCache(String cacheName) {
+    ScavengerTelemetry t = telemetryMap.get(cacheName);
+    if (t == null) {
+      t = new ScavengerTelemetry(cacheName);
+      ScavengerTelemetry tt = telemetryMap.putIfAbsent(cacheName, t);
+      if (tt != null) {
+        return tt;
+      }
+    }
+    return t;
+  }
+
+  /**
+   * Remove telemetry for a cache
+   * @param cacheName cache name
+   */
+  public static void removeTelemetryForCache(String cacheName) {
+    telemetryMap.remove(cacheName);
+  }
+
+  /* Cache name */
+  private final String cacheName;
+
+  /* Detailed (timing) accounting enabled */
+  private final boolean detailed;
+
+  /* Log records */
+  private final boolean logEnabled;
+
+  /* Recent segment records */
+  private final SegmentRecord[] history;
+
+  /* Next history slot */
+  private long historyIndex;
+
+  private volatile RunRecord lastRun;
+
+  private final AtomicLong runIds = new AtomicLong();
+
+  /* Cumulative counters */
+  private final AtomicLong totalSegments = new AtomicLong();
+
+  private final AtomicLong totalBytesRead = new AtomicLong();
+
+  private final AtomicLong totalBytesRewritten = new AtomicLong();
+
+  private final AtomicLong totalBytesToVictim = new AtomicLong();
+
+  private final AtomicLong totalTimeNs = new AtomicLong();
+
+  private final AtomicLong totalIndexTimeNs = new AtomicLong();
+
+  private final AtomicLong totalRewriteTimeNs = new AtomicLong();
+
+  private final AtomicLong totalVictimTimeNs = new AtomicLong();
+
+  private final AtomicLong[] totalByReason = new AtomicLong[Reason.values().length];
+
+  ScavengerTelemetry(String cacheName) {
+    this.cacheName = cacheName;
+    CacheConfig conf = CacheConfig.getInstance();
+    this.detailed = conf.isScavengerTelemetryEnabled(cacheName);
+    this.logEnabled = conf.isScavengerTelemetryLogEnabled(cacheName);
+    this.history = new SegmentRecord[Math.max(1, conf.getScavengerTelemetryHistorySize(cacheName))];
+    for (int i = 0; i < totalByReason.length; i++) {
+      totalByReason[i] = new AtomicLong();
+    }
+  }
+
+  /**
+   * Is detailed (timing) accounting enabled
+   * @return true or false
+   */
+  public boolean isDetailed() {
+    return this.detailed;
+  }
+
+  RunRecord startRun(boolean vacuum) {
+    RunRecord r = new RunRecord();
+    r.runId = runIds.incrementAndGet();
+    r.startTime = System.currentTimeMillis();
+    r.vacuum = vacuum;
+    return r;
+  }
+
+  void finishRun(RunRecord r) {
+    r.duration = System.currentTimeMillis() - r.startTime;
+    if (r.segments == 0) {
+      return;
+    }
+    this.lastRun = r;
+    if (logEnabled) {
+      LOG.info("[{}] {}", cacheName, r);
+    }
+  }
+
+  void recordSegment(RunRecord run, SegmentRecord r) {
+    run.add(r);
+    totalSegments.incrementAndGet();
+    totalBytesRead.addAndGet(r.bytesRead);
+    totalBytesRewritten.addAndGet(r.bytesRewritten);
+    totalBytesToVictim.addAndGet(r.bytesToVictim);
+    totalTimeNs.addAndGet(r.totalTimeNs);
+    totalIndexTimeNs.addAndGet(r.indexTimeNs);
+    totalRewriteTimeNs.addAndGet(r.rewriteTimeNs);
+    totalVictimTimeNs.addAndGet(r.victimTimeNs);
+    if (r.reason != null) {
+      totalByReason[r.reason.ordinal()].incrementAndGet();
+    }
+    SegmentRecord copy = r.copy();
+    synchronized (history) {
+      history[(int) (historyIndex++ % history.length)] = copy;
+    }
+    if (logEnabled) {
+      LOG.info("[{}] {}", cacheName, copy);
+    }
+  }
+
+  /**
+   * Get recent segment records, most recent last
+   * @return list of records
+   */
+  public List<SegmentRecord> getRecentSegments() {
+    List<SegmentRecord> list = new ArrayList<SegmentRecord>();
+    synchronized (history) {
+      long start = Math.max(0, historyIndex - history.length);
+      for (long i = start; i < historyIndex; i++) {
+        list.add(history[(int) (i % history.length)]);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Get last run record
+   * @return last run or null
+   */
+  public RunRecord getLastRun() {
+    return this.lastRun;
+  }
+
+  public long getTotalSegments() {
+    return totalSegments.get();
+  }
+
+  public long getTotalBytesRead() {
+    return totalBytesRead.get();
+  }
+
+  public long getTotalBytesRewritten() {
+    return totalBytesRewritten.get();
+  }
+
+  public long getTotalBytesToVictim() {
+    return totalBytesToVictim.get();
+  }
+
+  public long getTotalTimeNs() {
+    return totalTimeNs.get();
+  }
+
+  public long getTotalIndexTimeNs() {
+    return totalIndexTimeNs.get();
+  }
+
+  public long getTotalRewriteTimeNs() {
+    return totalRewriteTimeNs.get();
+  }
+
+  public long getTotalVictimTimeNs() {
+    return totalVictimTimeNs.get();
+  }
+
+  /**
+   * Total scan time: total time minus index probes, re-insertion and eviction to victim
+   * @return scan time in ns
+   */
+  public long getTotalScanTimeNs() {
+    return Math.max(0, getTotalTimeNs() - getTotalIndexTimeNs() - getTotalRewriteTimeNs()
+        - getTotalVictimTimeNs());
+  }
+
+  /**
+   * Get number of segments recycled for a given reason
+   * @param reason reason
+   * @return number of segments
+   */
+  public long getTotalSegments(Reason reason) {
+    return totalByReason[reason.ordinal()].get();
+  }
+}
@@ -0,0 +1,1513 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Cache.Type;
+import com.carrotdata.cache.ParallelTasks.IOTask;
+import com.carrotdata.cache.io.FutureResultByteArray;
+import com.carrotdata.cache.io.FutureResultByteBuffer;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Sharded cache. Consists of N independent caches (shards), every shard has its own IO engine,
+ * memory index, scavenger, statistics and data directory. Keys are routed to shards by hash, so
+ * contention on per - engine locks and counters is spread across shards.
+ * <p>
+ * Shard i of a cache 'name' is a regular cache with name 'name-shard-i'. All cache - specific
+ * properties of 'name' are copied to every shard, maximum cache size is divided evenly between
+ * shards and shard data directories are located under 'root/name/', where 'root' is a cache root
+ * directory of 'name'. Number of shards is set by {@link CacheConfig#CACHE_SHARDS_KEY}.
+ * <p>
+ * Save, load and shutdown are performed for all shards in parallel.
+ */
+public class ShardedCache {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedCache.class);
+
+  /* Cache name */
+  private final String cacheName;
+
+  /* Cache configuration */
+  private final CacheConfig conf;
+
+  /* Shards */
+  private final Cache[] shards;
+
+  /* Victim cache */
+  private ShardedCache victimCache;
+
+  /* Operation performed for every shard */
+  private interface ShardTask {
+    Object run(Cache shard) throws IOException;
+  }
+
+  /**
+   * Constructor
+   * @param cacheName cache name
+   * @param conf cache configuration
+   * @param type cache type ("memory" or "file")
+   * @throws IOException
+   */
+  public ShardedCache(String cacheName, CacheConfig conf, String type) throws IOException {
+    this.cacheName = cacheName;
+    this.conf = conf;
+    int n = conf.getCacheShards(cacheName);
+    if (n < 1) {
+      throw new IllegalArgumentException(
+          String.format("Illegal number of shards %d for cache [%s]", n, cacheName));
+    }
+    configureShards(cacheName, conf, n);
+    this.shards = new Cache[n];
+    try {
+      for (int i = 0; i < n; i++) {
+        String name = shardName(cacheName, i);
+        conf.addCacheNameType(name, type);
+        this.shards[i] = new Cache(name, conf);
+      }
+    } catch (IOException | RuntimeException e) {
+      for (Cache c : this.shards) {
+        if (c != null) {
+          c.dispose();
+        }
+      }
+      throw e;
+    }
+    LOG.info("Created sharded cache [{}] type={} shards={}", cacheName, type, n);
+  }
+
+  private ShardedCache(String cacheName, CacheConfig conf, Cache[] shards) {
+    this.cacheName = cacheName;
+    this.conf = conf;
+    this.shards = shards;
+  }
+
+  /**
+   * Get shard name
+   * @param cacheName cache name
+   * @param i shard index
+   * @return shard cache name
+   */
+  public static String shardName(String cacheName, int i) {
+    return cacheName + "-shard-" + i;
+  }
+
+  /**
+   * Copies cache - specific properties to shards, sets shard data directories and shard maximum
+   * size
+   * @param cacheName cache name
+   * @param conf cache configuration
+   * @param n number of shards
+   */
+  static void configureShards(String cacheName, CacheConfig conf, int n) {
+    String prefix = cacheName + ".";
+    String[] dirs = conf.getCacheRootDirs(cacheName);
+    for (int i = 0; i < dirs.length; i++) {
+      dirs[i] += File.separator + cacheName;
+    }
+    long maxSize = conf.getCacheMaximumSize(cacheName) / n;
+    // Copy the key set first, properties are modified in the loop
+    List<String> keys = new ArrayList<String>(conf.getProperties().stringPropertyNames());
+    for (int i = 0; i < n; i++) {
+      String name = shardName(cacheName, i);
+      for (String key : keys) {
+        if (!key.startsWith(prefix)) {
+          continue;
+        }
+        String suffix = key.substring(prefix.length());
+        if (suffix.equals(CacheConfig.CACHE_SHARDS_KEY)
+            || suffix.equals(CacheConfig.CACHE_VICTIM_NAME_KEY)) {
+          continue;
+        }
+        conf.setProperty(name + "." + suffix, conf.getProperty(key, null));
+      }
+      conf.setCacheRootDirs(name, dirs);
+      conf.setCacheMaximumSize(name, maxSize);
+    }
+  }
+
+  /**
+   * Loads sharded cache from a file system
+   * @param cacheName cache name
+   * @return cache or null if there is no saved cache
+   * @throws IOException
+   */
+  public static ShardedCache loadCache(String cacheName) throws IOException {
+    CacheConfig conf = CacheConfig.getInstance();
+    int n = conf.getCacheShards(cacheName);
+    configureShards(cacheName, conf, n);
+    Cache[] shards = new Cache[n];
+    List<IOTask> tasks = new ArrayList<IOTask>();
+    for (int i = 0; i < n; i++) {
+      final int index = i;
+      tasks.add(() -> {
+        shards[index] = Cache.loadCache(shardName(cacheName, index));
+        return shards[index] != null;
+      });
+    }
+    boolean complete = true;
+    try {
+      for (Object loaded : ParallelTasks.runAll(tasks, "load")) {
+        complete &= (Boolean) loaded;
+      }
+    } catch (IOException e) {
+      disposeAll(shards);
+      throw e;
+    }
+    if (!complete) {
+      LOG.warn("Snapshot of sharded cache [{}] is missing or incomplete", cacheName);
+      disposeAll(shards);
+      return null;
+    }
+    ShardedCache cache = new ShardedCache(cacheName, conf, shards);
+    String victimName = conf.getVictimCacheName(cacheName);
+    if (victimName != null && shards[0].getVictimCache() != null) {
+      Cache[] victims = new Cache[n];
+      for (int i = 0; i < n; i++) {
+        victims[i] = shards[i].getVictimCache();
+      }
+      cache.victimCache = new ShardedCache(victimName, conf, victims);
+    }
+    return cache;
+  }
+
+  private static void disposeAll(Cache[] shards) {
+    for (Cache c : shards) {
+      if (c != null) {
+        c.dispose();
+      }
+    }
+  }
+
+  private List<Object> forAllShards(String op, ShardTask task) throws IOException {
+    List<IOTask> tasks = new ArrayList<IOTask>();
+    for (Cache c : this.shards) {
+      tasks.add(() -> task.run(c));
+    }
+    return ParallelTasks.runAll(tasks, op);
+  }
+
+  /**
+   * Get cache name
+   * @return cache name
+   */
+  public String getName() {
+    return this.cacheName;
+  }
+
+  /**
+   * Get cache configuration
+   * @return cache configuration
+   */
+  public CacheConfig getCacheConfig() {
+    return this.conf;
+  }
+
+  /**
+   * Get cache type
+   * @return cache type
+   */
+  public Type getCacheType() {
+    return this.shards[0].getCacheType();
+  }
+
+  /**
+   * Is memory cache
+   * @return true or false
+   */
+  public boolean isMemoryCache() {
+    return this.shards[0].isMemoryCache();
+  }
+
+  /**
+   * Is disk cache
+   * @return true or false
+   */
+  public boolean isDiskCache() {
+    return this.shards[0].isDiskCache();
+  }
+
+  /**
+   * Get number of shards
+   * @return number of shards
+   */
+  public int getNumberOfShards() {
+    return this.shards.length;
+  }
+
+  /**
+   * Get shard
+   * @param i shard index
+   * @return shard
+   */
+  public Cache getShard(int i) {
+    return this.shards[i];
+  }
+
+  /**
+   * Get shard index for a key hash
+   * @param hash key hash
+   * @return shard index
+   */
+  int shardIndex(long hash) {
+    // Memory index uses high bits of the hash, shards are selected by the low ones
+    return (int) Long.remainderUnsigned(hash, this.shards.length);
+  }
+
+  /**
+   * Get shard for a key
+   * @param key key buffer
+   * @param off key offset
+   * @param size key size
+   * @return shard
+   */
+  public Cache getShardFor(byte[] key, int off, int size) {
+    if (this.shards.length == 1) {
+      return this.shards[0];
+    }
+    return this.shards[shardIndex(Utils.hash64(key, off, size))];
+  }
+
+  /**
+   * Get shard for a key
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return shard
+   */
+  public Cache getShardFor(long keyPtr, int keySize) {
+    if (this.shards.length == 1) {
+      return this.shards[0];
+    }
+    return this.shards[shardIndex(Utils.hash64(keyPtr, keySize))];
+  }
+
+  /**
+   * Sets victim cache. Victim cache must have the same number of shards, shard i of this cache
+   * evicts to shard i of the victim cache
+   * @param victim victim cache
+   */
+  public void setVictimCache(ShardedCache victim) {
+    if (victim.getNumberOfShards() != this.shards.length) {
+      throw new IllegalArgumentException(
+          String.format("Victim cache [%s] has %d shards, expected %d", victim.getName(),
+            victim.getNumberOfShards(), this.shards.length));
+    }
+    for (int i = 0; i < this.shards.length; i++) {
+      this.shards[i].setVictimCache(victim.shards[i]);
+      // Victim shard names are required to load shards with their victims
+      this.conf.setProperty(this.shards[i].getName() + "." + CacheConfig.CACHE_VICTIM_NAME_KEY,
+        victim.shards[i].getName());
+    }
+    this.conf.setProperty(this.cacheName + "." + CacheConfig.CACHE_VICTIM_NAME_KEY,
+      victim.getName());
+    this.victimCache = victim;
+  }
+
+  /**
+   * Get victim cache
+   * @return victim cache or null
+   */
+  public ShardedCache getVictimCache() {
+    return this.victimCache;
+  }
+
+  /***************************************************************************
+   * Put API
+   */
+
+  /**
+   * Put item into the cache
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param valPtr  value address
+   * @param valSize value size
+   * @param expire  - expiration (0 - no expire)
+   * @return true on success, false - otherwise
+   */
+  public boolean put(long keyPtr, int keySize, long valPtr, int valSize, long expire)
+      throws IOException {
+    return getShardFor(keyPtr, keySize).put(keyPtr, keySize, valPtr, valSize, expire);
+  }
+
+  /**
+   * Put item into a cache
+   * @param keyPtr    key address
+   * @param keySize   key size
+   * @param valPtr    value address
+   * @param valSize   value size
+   * @param expire    expiration time (absolute) in ms
+   * @param rank      popularity rank
+   * @param groupRank grouping rank
+   * @param force     if true - bypass admission controller
+   * @return true on success, false - otherwise
+   * @throws IOException
+   */
+  public boolean put(long keyPtr, int keySize, long valPtr, int valSize, long expire, int rank,
+      int groupRank, boolean force) throws IOException {
+    return getShardFor(keyPtr, keySize).put(keyPtr, keySize, valPtr, valSize, expire, rank,
+      groupRank, force);
+  }
+
+  /**
+   * Put item into the cache with grouping rank - API for new items
+   * @param keyPtr    key address
+   * @param keySize   key size
+   * @param valPtr    value address
+   * @param valSize   value size
+   * @param expire    expiration (0 - no expire)
+   * @param groupRank grouping rank
+   * @return true on success, false - otherwise
+   */
+  public boolean putWithGroupRank(long keyPtr, int keySize, long valPtr, int valSize, long expire,
+      int groupRank) throws IOException {
+    return getShardFor(keyPtr, keySize).putWithGroupRank(keyPtr, keySize, valPtr, valSize, expire,
+      groupRank);
+  }
+
+  /**
+   * Put item into the cache
+   * @param key       key
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param value     value
+   * @param valOffset value offset
+   * @param valSize   value size
+   * @param expire    - expiration (0 - no expire)
+   * @return true on success, false - otherwise
+   */
+  public boolean put(byte[] key, int keyOffset, int keySize, byte[] value, int valOffset,
+      int valSize, long expire) throws IOException {
+    return getShardFor(key, keyOffset, keySize).put(key, keyOffset, keySize, value, valOffset,
+      valSize, expire);
+  }
+
+  /**
+   * Put item into the cache
+   * @param key       key
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param value     value
+   * @param valOffset value offset
+   * @param valSize   value size
+   * @param expire    - expiration (0 - no expire)
+   * @param force     if true - bypass admission controller
+   * @return true on success, false - otherwise
+   */
+  public boolean put(byte[] key, int keyOffset, int keySize, byte[] value, int valOffset,
+      int valSize, long expire, boolean force) throws IOException {
+    return getShardFor(key, keyOffset, keySize).put(key, keyOffset, keySize, value, valOffset,
+      valSize, expire, force);
+  }
+
+  /**
+   * Put item into the cache
+   * @param key       key
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param value     value
+   * @param valOffset value offset
+   * @param valSize   value size
+   * @param expire    - expiration (0 - no expire)
+   * @param rank      item's popularity rank
+   * @param force     if true - bypass admission controller
+   * @return true on success, false - otherwise
+   */
+  public boolean put(byte[] key, int keyOffset, int keySize, byte[] value, int valOffset,
+      int valSize, long expire, int rank, boolean force) throws IOException {
+    return getShardFor(key, keyOffset, keySize).put(key, keyOffset, keySize, value, valOffset,
+      valSize, expire, rank, force);
+  }
+
+  /**
+   * Put item into the cache with grouping rank - API for new items
+   * @param key       key
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param value     value
+   * @param valOffset value offset
+   * @param valSize   value size
+   * @param expire    expiration (0 - no expire)
+   * @param groupRank grouping rank
+   * @return true on success, false - otherwise
+   * @throws IOException
+   */
+  public boolean putWithGroupRank(byte[] key, int keyOffset, int keySize, byte[] value,
+      int valOffset, int valSize, long expire, int groupRank) throws IOException {
+    return getShardFor(key, keyOffset, keySize).putWithGroupRank(key, keyOffset, keySize, value,
+      valOffset, valSize, expire, groupRank);
+  }
+
+  /**
+   * Put item into the cache
+   * @param key    key
+   * @param value  value
+   * @param expire - expiration (0 - no expire)
+   * @return true on success, false - otherwise
+   */
+  public boolean put(byte[] key, byte[] value, long expire) throws IOException {
+    return getShardFor(key, 0, key.length).put(key, value, expire);
+  }
+
+  /**
+   * To write streams to the cache. Stream must be closed after using
+   * @param key    stream key
+   * @param off    offset
+   * @param len    length
+   * @param expire stream expiration
+   * @return output stream to write data to
+   */
+  public OutputStream getOutputStream(byte[] key, int off, int len, long expire) {
+    return getShardFor(key, off, len).getOutputStream(key, off, len, expire);
+  }
+
+  /***************************************************************************
+   * Get API
+   */
+
+  /**
+   * Get cached item (if any)
+   * @param keyPtr    key address
+   * @param keySize   key size
+   * @param buffer    buffer for item
+   * @param bufOffset buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(long keyPtr, int keySize, byte[] buffer, int bufOffset)
+      throws IOException {
+    return getShardFor(keyPtr, keySize).getKeyValue(keyPtr, keySize, buffer, bufOffset);
+  }
+
+  /**
+   * Get cached item and key (if any)
+   * @param keyPtr    key address
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param buffer    buffer for item
+   * @param bufOffset buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(long keyPtr, int keySize, boolean hit, byte[] buffer, int bufOffset)
+      throws IOException {
+    return getShardFor(keyPtr, keySize).getKeyValue(keyPtr, keySize, hit, buffer, bufOffset);
+  }
+
+  /**
+   * Get cached item and key (if any) - asynchronous
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param future  future result
+   * @throws IOException
+   */
+  public void getKeyValueAsync(long keyPtr, int keySize, boolean hit,
+      FutureResultByteArray future) {
+    getShardFor(keyPtr, keySize).getKeyValueAsync(keyPtr, keySize, hit, future);
+  }
+
+  /**
+   * Get cached item only (if any)
+   * @param keyPtr    key address
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param buffer    buffer for item
+   * @param bufOffset buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long get(long keyPtr, int keySize, boolean hit, byte[] buffer, int bufOffset)
+      throws IOException {
+    return getShardFor(keyPtr, keySize).get(keyPtr, keySize, hit, buffer, bufOffset);
+  }
+
+  /**
+   * Get cached item value only (if any)
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param future  future result
+   * @throws IOException
+   */
+  public void getAsync(long keyPtr, int keySize, boolean hit, FutureResultByteArray future)
+      throws IOException {
+    getShardFor(keyPtr, keySize).getAsync(keyPtr, keySize, hit, future);
+  }
+
+  /**
+   * Get cached value range (if any)
+   * @param keyPtr     key address
+   * @param keySize    key size
+   * @param rangeStart range start
+   * @param rangeSize  range size
+   * @param hit        if true - its a hit
+   * @param buffer     buffer for item
+   * @param bufOffset  buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getRange(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
+      byte[] buffer, int bufOffset) throws IOException {
+    return getShardFor(keyPtr, keySize).getRange(keyPtr, keySize, rangeStart, rangeSize, hit,
+      buffer, bufOffset);
+  }
+
+  /**
+   * Get cached item (with hit == true)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param buffer    buffer for item
+   * @param bufOffset buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(byte[] key, int keyOffset, int keySize, byte[] buffer, int bufOffset)
+      throws IOException {
+    return getShardFor(key, keyOffset, keySize).getKeyValue(key, keyOffset, keySize, buffer,
+      bufOffset);
+  }
+
+  /**
+   * Get cached item and key (if any)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param buffer    buffer for item
+   * @param bufOffset buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer,
+      int bufOffset) throws IOException {
+    return getShardFor(key, keyOffset, keySize).getKeyValue(key, keyOffset, keySize, hit, buffer,
+      bufOffset);
+  }
+
+  /**
+   * Get cached item and key (if any) - asynchronous
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param future    future result
+   * @throws IOException
+   */
+  public void getKeyValueAsync(byte[] key, int keyOffset, int keySize, boolean hit,
+      FutureResultByteArray future) {
+    getShardFor(key, keyOffset, keySize).getKeyValueAsync(key, keyOffset, keySize, hit, future);
+  }
+
+  /**
+   * To read stream data from cache. Stream must be closed after using
+   * @param key stream's key
+   * @param off key offset
+   * @param len key length
+   * @return input stream to read data from
+   * @throws IOException
+   */
+  public InputStream getInputStream(byte[] key, int off, int len) throws IOException {
+    return getShardFor(key, off, len).getInputStream(key, off, len);
+  }
+
+  /**
+   * Get cached value only (if any)
+   * @param key key buffer
+   * @return value or null
+   * @throws IOException
+   */
+  public byte[] get(byte[] key) throws IOException {
+    return getShardFor(key, 0, key.length).get(key);
+  }
+
+  /**
+   * Get cached value only (if any)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @return value or null
+   * @throws IOException
+   */
+  public byte[] get(byte[] key, int keyOffset, int keySize) throws IOException {
+    return getShardFor(key, keyOffset, keySize).get(key, keyOffset, keySize);
+  }
+
+  /**
+   * Get cached value only (if any)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @return value or null
+   * @throws IOException
+   */
+  public byte[] get(byte[] key, int keyOffset, int keySize, boolean hit) throws IOException {
+    return getShardFor(key, keyOffset, keySize).get(key, keyOffset, keySize, hit);
+  }
+
+  /**
+   * Get cached key-value pair (if any) returned value must be processed in the same thread
+   * @param key key buffer
+   * @return key - value pair
+   * @throws IOException
+   */
+  public byte[] getKeyValue(byte[] key) throws IOException {
+    return getShardFor(key, 0, key.length).getKeyValue(key);
+  }
+
+  /**
+   * Get cached key-value pair (if any) returned value must be processed in the same thread
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @return key - value pair
+   * @throws IOException
+   */
+  public byte[] getKeyValue(byte[] key, int keyOffset, int keySize) throws IOException {
+    return getShardFor(key, keyOffset, keySize).getKeyValue(key, keyOffset, keySize);
+  }
+
+  /**
+   * Get cached key-value pair (if any) returned value must be processed in the same thread
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @return key - value pair
+   * @throws IOException
+   */
+  public byte[] getKeyValue(byte[] key, int keyOffset, int keySize, boolean hit)
+      throws IOException {
+    return getShardFor(key, keyOffset, keySize).getKeyValue(key, keyOffset, keySize, hit);
+  }
+
+  /**
+   * Get cached value only (if any)
+   * @param keyPtr  key buffer address
+   * @param keySize key size
+   * @return value or null
+   * @throws IOException
+   */
+  public byte[] get(long keyPtr, int keySize) throws IOException {
+    return getShardFor(keyPtr, keySize).get(keyPtr, keySize);
+  }
+
+  /**
+   * Get cached value only (if any)
+   * @param keyPtr  key buffer address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @return value or null
+   * @throws IOException
+   */
+  public byte[] get(long keyPtr, int keySize, boolean hit) throws IOException {
+    return getShardFor(keyPtr, keySize).get(keyPtr, keySize, hit);
+  }
+
+  /**
+   * Get cached key-value pair (if any) returned value must be processed in the same thread
+   * @param keyPtr  key buffer address
+   * @param keySize key size
+   * @return key - value pair
+   * @throws IOException
+   */
+  public byte[] getKeyValue(long keyPtr, int keySize) throws IOException {
+    return getShardFor(keyPtr, keySize).getKeyValue(keyPtr, keySize);
+  }
+
+  /**
+   * Get cached key-value pair (if any) returned value must be processed in the same thread
+   * @param keyPtr  key buffer
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @return key - value pair
+   * @throws IOException
+   */
+  public byte[] getKeyValue(long keyPtr, int keySize, boolean hit) throws IOException {
+    return getShardFor(keyPtr, keySize).getKeyValue(keyPtr, keySize, hit);
+  }
+
+  /**
+   * Get cached item only (if any)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param buffer    buffer
+   * @param bufOffset buffer offset
+   * @return size of a value
+   * @throws IOException
+   */
+  public long get(byte[] key, int keyOffset, int keySize, byte[] buffer, int bufOffset)
+      throws IOException {
+    return getShardFor(key, keyOffset, keySize).get(key, keyOffset, keySize, buffer, bufOffset);
+  }
+
+  /**
+   * Get cached item only (if any)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param buffer    buffer for item
+   * @param bufOffset buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long get(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer,
+      int bufOffset) throws IOException {
+    return getShardFor(key, keyOffset, keySize).get(key, keyOffset, keySize, hit, buffer,
+      bufOffset);
+  }
+
+  /**
+   * Get cached item only (if any) - async
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param future    buffer with future
+   * @throws IOException
+   */
+  public void getAsync(byte[] key, int keyOffset, int keySize, boolean hit,
+      FutureResultByteArray future) throws IOException {
+    getShardFor(key, keyOffset, keySize).getAsync(key, keyOffset, keySize, hit, future);
+  }
+
+  /**
+   * Get cached value range
+   * @param key        key buffer
+   * @param keyOffset  key offset
+   * @param keySize    key size
+   * @param rangeStart range start
+   * @param rangeSize  range size
+   * @param hit        if true - its a hit
+   * @param buffer     buffer for item
+   * @param bufOffset  buffer offset
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getRange(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
+      boolean hit, byte[] buffer, int bufOffset) throws IOException {
+    return getShardFor(key, keyOffset, keySize).getRange(key, keyOffset, keySize, rangeStart,
+      rangeSize, hit, buffer, bufOffset);
+  }
+
+  /**
+   * Get cached item (if any)
+   * @param key     key buffer
+   * @param keyOff  key offset
+   * @param keySize key size
+   * @param buffer  byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(byte[] key, int keyOff, int keySize, ByteBuffer buffer)
+      throws IOException {
+    return getShardFor(key, keyOff, keySize).getKeyValue(key, keyOff, keySize, buffer);
+  }
+
+  /**
+   * Get cached item and key (if any)
+   * @param key     key buffer
+   * @param keyOff  key offset
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param buffer  byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(byte[] key, int keyOff, int keySize, boolean hit, ByteBuffer buffer)
+      throws IOException {
+    return getShardFor(key, keyOff, keySize).getKeyValue(key, keyOff, keySize, hit, buffer);
+  }
+
+  /**
+   * Get cached item and key (if any) - asynchronous
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param future    future result
+   * @throws IOException
+   */
+  public void getKeyValueAsync(byte[] key, int keyOffset, int keySize, boolean hit,
+      FutureResultByteBuffer future) {
+    getShardFor(key, keyOffset, keySize).getKeyValueAsync(key, keyOffset, keySize, hit, future);
+  }
+
+  /**
+   * Get cached item value only (if any)
+   * @param key     key buffer
+   * @param keyOff  key offset
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param buffer  byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long get(byte[] key, int keyOff, int keySize, boolean hit, ByteBuffer buffer)
+      throws IOException {
+    return getShardFor(key, keyOff, keySize).get(key, keyOff, keySize, hit, buffer);
+  }
+
+  /**
+   * Get cached item value only (if any)
+   * @param key       key buffer
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @param hit       if true - its a hit
+   * @param future    future result
+   * @throws IOException
+   */
+  public void getAsync(byte[] key, int keyOffset, int keySize, boolean hit,
+      FutureResultByteBuffer future) throws IOException {
+    getShardFor(key, keyOffset, keySize).getAsync(key, keyOffset, keySize, hit, future);
+  }
+
+  /**
+   * Get cached value range (if any)
+   * @param key        key buffer
+   * @param keyOffset  key offset
+   * @param keySize    key size
+   * @param rangeStart range start
+   * @param rangeSize  range size
+   * @param hit        if true - its a hit
+   * @param buffer     byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getRange(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
+      boolean hit, ByteBuffer buffer) throws IOException {
+    return getShardFor(key, keyOffset, keySize).getRange(key, keyOffset, keySize, rangeStart,
+      rangeSize, hit, buffer);
+  }
+
+  /**
+   * Get cached item (if any)
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param buffer  byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(long keyPtr, int keySize, ByteBuffer buffer) throws IOException {
+    return getShardFor(keyPtr, keySize).getKeyValue(keyPtr, keySize, buffer);
+  }
+
+  /**
+   * Get cached item and key (if any)
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param buffer  byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getKeyValue(long keyPtr, int keySize, boolean hit, ByteBuffer buffer)
+      throws IOException {
+    return getShardFor(keyPtr, keySize).getKeyValue(keyPtr, keySize, hit, buffer);
+  }
+
+  /**
+   * Get cached item and key (if any) - asynchronous
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param future  future result
+   * @throws IOException
+   */
+  public void getKeyValueAsync(long keyPtr, int keySize, boolean hit,
+      FutureResultByteBuffer future) {
+    getShardFor(keyPtr, keySize).getKeyValueAsync(keyPtr, keySize, hit, future);
+  }
+
+  /**
+   * Get cached item only (if any)
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param buffer  byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long get(long keyPtr, int keySize, boolean hit, ByteBuffer buffer) throws IOException {
+    return getShardFor(keyPtr, keySize).get(keyPtr, keySize, hit, buffer);
+  }
+
+  /**
+   * Get cached item value only (if any)
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param hit     if true - its a hit
+   * @param future  future result
+   * @throws IOException
+   */
+  public void getAsync(long keyPtr, int keySize, boolean hit, FutureResultByteBuffer future)
+      throws IOException {
+    getShardFor(keyPtr, keySize).getAsync(keyPtr, keySize, hit, future);
+  }
+
+  /**
+   * Get cached value range (if any)
+   * @param keyPtr     key address
+   * @param keySize    key size
+   * @param rangeStart range start
+   * @param rangeSize  range size
+   * @param hit        if true - its a hit
+   * @param buffer     byte buffer for item
+   * @return size of an item (-1 - not found), if is greater than bufSize - retry with a properly
+   *     adjusted buffer
+   * @throws IOException
+   */
+  public long getRange(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
+      ByteBuffer buffer) throws IOException {
+    return getShardFor(keyPtr, keySize).getRange(keyPtr, keySize, rangeStart, rangeSize, hit,
+      buffer);
+  }
+
+  /***************************************************************************
+   * Delete, expire and exists API
+   */
+
+  /**
+   * Delete cached item
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @return true - success, false - does not exist
+   * @throws IOException
+   */
+  public boolean delete(long keyPtr, int keySize) throws IOException {
+    return getShardFor(keyPtr, keySize).delete(keyPtr, keySize);
+  }
+
+  /**
+   * Delete cached item
+   * @param key       key
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @return true - success, false - does not exist
+   * @throws IOException
+   */
+  public boolean delete(byte[] key, int keyOffset, int keySize) throws IOException {
+    return getShardFor(key, keyOffset, keySize).delete(key, keyOffset, keySize);
+  }
+
+  /**
+   * Delete cached item
+   * @param key key buffer
+   * @return true - success, false - does not exist
+   * @throws IOException
+   */
+  public boolean delete(byte[] key) throws IOException {
+    return getShardFor(key, 0, key.length).delete(key);
+  }
+
+  /**
+   * Expire cached item
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @return true - success, false - does not exist
+   * @throws IOException
+   */
+  public boolean expire(long keyPtr, int keySize) throws IOException {
+    return getShardFor(keyPtr, keySize).expire(keyPtr, keySize);
+  }
+
+  /**
+   * Expire cached item
+   * @param key       key
+   * @param keyOffset key offset
+   * @param keySize   key size
+   * @return true - success, false - does not exist
+   * @throws IOException
+   */
+  public boolean expire(byte[] key, int keyOffset, int keySize) throws IOException {
+    return getShardFor(key, keyOffset, keySize).expire(key, keyOffset, keySize);
+  }
+
+  /**
+   * Expire cached item
+   * @param key key
+   * @return true - success, false - does not exist
+   * @throws IOException
+   */
+  public boolean expire(byte[] key) throws IOException {
+    return getShardFor(key, 0, key.length).expire(key);
+  }
+
+  /**
+   * Get expiration time of a key
+   * @param key  key buffer
+   * @param off  offset
+   * @param size key size
+   * @return time, 0 - no expire, -1 - does not exists or not supported
+   */
+  public long getExpire(byte[] key, int off, int size) {
+    return getShardFor(key, off, size).getExpire(key, off, size);
+  }
+
+  /**
+   * Get expiration time
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @return time in ms since you know when, -1 not supported or does not exists
+   */
+  public long getExpire(long keyPtr, int keySize) {
+    return getShardFor(keyPtr, keySize).getExpire(keyPtr, keySize);
+  }
+
+  /**
+   * Get and set expiration time of a key
+   * @param key    key buffer
+   * @param off    offset
+   * @param size   key size
+   * @param expire new expiration time
+   * @return time, 0 - no expire, -1 - does not exists or not supported
+   */
+  public long getAndSetExpire(byte[] key, int off, int size, long expire) {
+    return getShardFor(key, off, size).getAndSetExpire(key, off, size, expire);
+  }
+
+  /**
+   * Get and set expiration time
+   * @param keyPtr  key address
+   * @param keySize key size
+   * @param expire  new expiration time
+   * @return time in ms since you know when, -1 not supported or does not exists
+   */
+  public long getAndSetExpire(long keyPtr, int keySize, long expire) {
+    return getShardFor(keyPtr, keySize).getAndSetExpire(keyPtr, keySize, expire);
+  }
+
+  /**
+   * Does key exist in the cache
+   * @param key key
+   * @return true or false
+   */
+  public boolean maybeExists(byte[] key) {
+    return getShardFor(key, 0, key.length).maybeExists(key);
+  }
+
+  /**
+   * Does key exist (false positive are possible, but not false negatives)
+   * @param key  key buffer
+   * @param off  key offset
+   * @param size key size
+   * @return true or false
+   */
+  public boolean maybeExists(byte[] key, int off, int size) {
+    return getShardFor(key, off, size).maybeExists(key, off, size);
+  }
+
+  /**
+   * Does key exist (false positive are possible, but not false negatives)
+   * @param keyPtr key address
+   * @param size   key size
+   * @return true or false
+   */
+  public boolean maybeExists(long keyPtr, int size) {
+    return getShardFor(keyPtr, size).maybeExists(keyPtr, size);
+  }
+
+  /**
+   * Does key exist (exact)
+   * @param key  key buffer
+   * @param off  key offset
+   * @param size key size
+   * @return true or false
+   * @throws IOException
+   */
+  public boolean existsExact(byte[] key, int off, int size) throws IOException {
+    return getShardFor(key, off, size).existsExact(key, off, size);
+  }
+
+  /**
+   * Does key exist (exact)
+   * @param keyPtr key buffer
+   * @param size   key size
+   * @return true or false
+   * @throws IOException
+   */
+  public boolean existsExact(long keyPtr, int size) throws IOException {
+    return getShardFor(keyPtr, size).existsExact(keyPtr, size);
+  }
+
+  /**
+   * Touches the key
+   * @param key  key buffer
+   * @param off  key offset
+   * @param size key size
+   * @return true or false (key does not exist)
+   */
+  public boolean touch(byte[] key, int off, int size) {
+    return getShardFor(key, off, size).touch(key, off, size);
+  }
+
+  /***************************************************************************
+   * Statistics (aggregated over all shards)
+   */
+
+  /**
+   * Get total used memory (storage)
+   * @return used memory
+   */
+  public long getRawDataSize() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getRawDataSize();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total used memory (storage) when compression is on
+   * @return used memory
+   */
+  public long getStorageUsedActual() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getStorageUsedActual();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total allocated memory
+   * @return total allocated memory for storage
+   */
+  public long getStorageAllocated() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getStorageAllocated();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total allocated memory: storage + index + memory buffer pool
+   * @return total allocated memory
+   */
+  public long getTotalAllocated() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalAllocated();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total used memory (storage + index + memory buffers) when compression is on
+   * @return used memory
+   */
+  public long getTotalUsed() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalUsed();
+    }
+    return sum;
+  }
+
+  /**
+   * Total number of cached items (accessible or not)
+   * @return number
+   */
+  public long size() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.size();
+    }
+    return sum;
+  }
+
+  /**
+   * Total number of active items (accessible)
+   * @return active number
+   */
+  public long activeSize() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.activeSize();
+    }
+    return sum;
+  }
+
+  /**
+   * Gets memory limit
+   * @return memory limit in bytes
+   */
+  public long getMaximumCacheSize() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getMaximumCacheSize();
+    }
+    return sum;
+  }
+
+  /**
+   * Get memory used as a fraction of memory limit
+   * @return memory used fraction
+   */
+  public double getStorageAllocatedRatio() {
+    long max = getMaximumCacheSize();
+    if (max == 0) return 0;
+    return (double) getStorageUsedActual() / max;
+  }
+
+  /**
+   * Get memory used as a fraction of memory limit
+   * @return memory used fraction
+   */
+  public double getTotalAllocatedRatio() {
+    long max = getMaximumCacheSize();
+    if (max == 0) return 0;
+    return (double) getTotalAllocated() / max;
+  }
+
+  /**
+   * Get total gets
+   * @return total gets
+   */
+  public long getTotalGets() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalGets();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total failed gets
+   * @return total failed gets
+   */
+  public long getTotalFailedGets() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalFailedGets();
+    }
+    return sum;
+  }
+
+  /**
+   * Total gets size
+   * @return size
+   */
+  public long getTotalGetsSize() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalGetsSize();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total hits
+   * @return total hits
+   */
+  public long getTotalHits() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalHits();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total writes
+   * @return total writes
+   */
+  public long getTotalWrites() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalWrites();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total writes size
+   * @return total writes size
+   */
+  public long getTotalWritesSize() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalWritesSize();
+    }
+    return sum;
+  }
+
+  /**
+   * Get total rejected writes
+   * @return total rejected writes
+   */
+  public long getTotalRejectedWrites() {
+    long sum = 0;
+    for (Cache c : this.shards) {
+      sum += c.getTotalRejectedWrites();
+    }
+    return sum;
+  }
+
+  /**
+   * Get cache hit rate
+   * @return cache hit rate
+   */
+  public double getHitRate() {
+    return (double) getTotalHits() / getTotalGets();
+  }
+
+  /**
+   * For hybrid caches
+   * @return hybrid cache hit rate
+   */
+  public double getOverallHitRate() {
+    if (this.victimCache == null) {
+      return getHitRate();
+    }
+    return (double) (getTotalHits() + this.victimCache.getTotalHits()) / getTotalGets();
+  }
+
+  /**
+   * Prints statistics of all shards
+   */
+  public void printStats() {
+    LOG.info(
+      "ShardedCache[{}]: shards={} storage size={} data size={} items={} active items={}"
+          + " hit rate={}, gets={}, failed gets={}, puts={}, rejected puts={} bytes written={}",
+      this.cacheName, this.shards.length, getTotalAllocated(), getRawDataSize(), size(),
+      activeSize(), getHitRate(), getTotalGets(), getTotalFailedGets(), getTotalWrites(),
+      getTotalRejectedWrites(), getTotalWritesSize());
+    if (this.victimCache != null) {
+      this.victimCache.printStats();
+    }
+  }
+
+  /***************************************************************************
+   * Life cycle
+   */
+
+  /**
+   * Disables scavengers of all shards
+   */
+  public void disableScavengers() {
+    for (Cache c : this.shards) {
+      c.disableScavengers();
+    }
+  }
+
+  /**
+   * Registers JMX metrics of all shards in a default domain
+   */
+  public void registerJMXMetricsSink() {
+    for (Cache c : this.shards) {
+      c.registerJMXMetricsSink();
+    }
+  }
+
+  /**
+   * Registers JMX metrics of all shards
+   * @param domainName JMX domain name
+   */
+  public void registerJMXMetricsSink(String domainName) {
+    for (Cache c : this.shards) {
+      c.registerJMXMetricsSink(domainName);
+    }
+  }
+
+  /**
+   * Unregisters JMX metrics of all shards from a default domain
+   */
+  public void unregisterJMXMetricsSink() {
+    for (Cache c : this.shards) {
+      c.unregisterJMXMetricsSink();
+    }
+  }
+
+  /**
+   * Unregisters JMX metrics of all shards
+   * @param domainName JMX domain name
+   */
+  public void unregisterJMXMetricsSink(String domainName) {
+    for (Cache c : this.shards) {
+      c.unregisterJMXMetricsSink(domainName);
+    }
+  }
+
+  /**
+   * Saves all shards (and their victim caches) in parallel
+   * @throws IOException
+   */
+  public void save() throws IOException {
+    long start = System.currentTimeMillis();
+    forAllShards("save", c -> {
+      c.save();
+      return null;
+    });
+    LOG.info("Sharded cache [{}] saved in {}ms", this.cacheName,
+      System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Shuts down all shards in parallel
+   * @return total size of saved data
+   * @throws IOException
+   */
+  public long shutdown() throws IOException {
+    long size = 0;
+    for (Object v : forAllShards("shutdown", c -> c.shutdown())) {
+      size += Math.max(0, (Long) v);
+    }
+    return size;
+  }
+
+  /**
+   * Disposes all shards
+   */
+  public void dispose() {
+    for (Cache c : this.shards) {
+      c.dispose();
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Single - flight coalescing of concurrent reads of the same key. The first reader of a key
+ * becomes a leader and performs the read (and promotion), readers which arrive while the read is
+ * in progress wait for the leader and get a copy of its result. Used for reads which miss the
+ * main cache and go to the victim cache (disk I/O).
+ */
+public class SingleFlight {
+
+  /** Result returned to a follower, which must perform the read itself */
+  public final static long RETRY = -2;
+
+  /**
+   * Read in progress
+   */
+  static final class Flight {
+    final long hash;
+    /* Key copy, hash collisions are not coalesced */
+    final byte[] key;
+    /* Leader's flight, null - this is a leader */
+    final Flight leader;
+    final CountDownLatch done;
+    /* Result size */
+    volatile long result = RETRY;
+    /* Key - value pair (if leader's buffer was large enough) */
+    volatile byte[] kv;
+
+    Flight(long hash, byte[] key) {
+      this.hash = hash;
+      this.key = key;
+      this.leader = null;
+      this.done = new CountDownLatch(1);
+    }
+
+    Flight(Flight leader) {
+      this.hash = leader.hash;
+      this.key = leader.key;
+      this.leader = leader;
+      this.done = null;
+    }
+
+    boolean isLeader() {
+      return this.leader == null;
+    }
+  }
+
+  private final ConcurrentHashMap<Long, Flight> flights = new ConcurrentHashMap<Long, Flight>();
+
+  private final AtomicLong totalCoalesced = new AtomicLong();
+
+  /**
+   * Joins a read of a key
+   * @param hash key hash
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return flight, if it is not a leader - caller must wait for the result, null - read can not
+   *     be coalesced (hash collision with another key)
+   */
+  Flight acquire(long hash, byte[] key, int keyOffset, int keySize) {
+    Flight f = this.flights.get(hash);
+    if (f == null) {
+      byte[] copy = new byte[keySize];
+      System.arraycopy(key, keyOffset, copy, 0, keySize);
+      f = new Flight(hash, copy);
+      Flight prev = this.flights.putIfAbsent(hash, f);
+      if (prev == null) {
+        return f;
+      }
+      f = prev;
+    }
+    if (!Utils.equals(f.key, 0, f.key.length, key, keyOffset, keySize)) {
+      return null;
+    }
+    return follower(f);
+  }
+
+  /**
+   * Joins a read of a key
+   * @param hash key hash
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return flight, if it is not a leader - caller must wait for the result, null - read can not
+   *     be coalesced (hash collision with another key)
+   */
+  Flight acquire(long hash, long keyPtr, int keySize) {
+    Flight f = this.flights.get(hash);
+    if (f == null) {
+      byte[] copy = new byte[keySize];
+      UnsafeAccess.copy(keyPtr, copy, 0, keySize);
+      f = new Flight(hash, copy);
+      Flight prev = this.flights.putIfAbsent(hash, f);
+      if (prev == null) {
+        return f;
+      }
+      f = prev;
+    }
+    if (!Utils.equals(f.key, 0, f.key.length, keyPtr, keySize)) {
+      return null;
+    }
+    return follower(f);
+  }
+
+  private Flight follower(Flight f) {
+    this.totalCoalesced.incrementAndGet();
+    return new Flight(f);
+  }
+
+  /**
+   * Completes leader's read and wakes up followers
+   * @param f flight
+   * @param result read result
+   * @param buffer buffer with key - value pair
+   * @param bufOffset buffer offset
+   */
+  void complete(Flight f, long result, byte[] buffer, int bufOffset) {
+    if (result > 0 && result <= buffer.length - bufOffset) {
+      byte[] kv = new byte[(int) result];
+      System.arraycopy(buffer, bufOffset, kv, 0, kv.length);
+      f.kv = kv;
+    }
+    finish(f, result);
+  }
+
+  /**
+   * Completes leader's read and wakes up followers
+   * @param f flight
+   * @param result read result
+   * @param buffer buffer with key - value pair at its current position
+   */
+  void complete(Flight f, long result, ByteBuffer buffer) {
+    if (result > 0 && result <= buffer.remaining()) {
+      byte[] kv = new byte[(int) result];
+      buffer.duplicate().get(kv);
+      f.kv = kv;
+    }
+    finish(f, result);
+  }
+
+  private void finish(Flight f, long result) {
+    // Leader's buffer too small - followers read themselves
+    f.result = result >= 0 && f.kv == null ? RETRY : result;
+    this.flights.remove(f.hash, f);
+    f.done.countDown();
+  }
+
+  /**
+   * Waits for leader's result
+   * @param f follower's flight
+   * @param buffer buffer for key - value pair
+   * @param bufOffset buffer offset
+   * @return size of key - value pair, -1 - not found, {@link #RETRY} - caller must read itself
+   */
+  long await(Flight f, byte[] buffer, int bufOffset) {
+    Flight leader = waitFor(f);
+    if (leader == null) {
+      return RETRY;
+    }
+    byte[] kv = leader.kv;
+    long result = leader.result;
+    if (kv != null && kv.length <= buffer.length - bufOffset) {
+      System.arraycopy(kv, 0, buffer, bufOffset, kv.length);
+    }
+    return result;
+  }
+
+  /**
+   * Waits for leader's result
+   * @param f follower's flight
+   * @param buffer buffer for key - value pair (position is not changed)
+   * @return size of key - value pair, -1 - not found, {@link #RETRY} - caller must read itself
+   */
+  long await(Flight f, ByteBuffer buffer) {
+    Flight leader = waitFor(f);
+    if (leader == null) {
+      return RETRY;
+    }
+    byte[] kv = leader.kv;
+    long result = leader.result;
+    if (kv != null && kv.length <= buffer.remaining()) {
+      buffer.duplicate().put(kv);
+    }
+    return result;
+  }
+
+  private Flight waitFor(Flight f) {
+    Flight leader = f.leader;
+    try {
+      leader.done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    return leader;
+  }
+
+  /**
+   * Get number of reads which waited for another reader
+   * @return number of coalesced reads
+   */
+  public long getTotalCoalesced() {
+    return this.totalCoalesced.get();
+  }
+
+  /**
+   * Get number of reads in progress
+   * @return number of reads
+   */
+  public int size() {
+    return this.flights.size();
+  }
+}
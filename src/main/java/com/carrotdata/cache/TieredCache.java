@@ -0,0 +1,534 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Cache.Type;
+import com.carrotdata.cache.ParallelTasks.IOTask;
+import com.carrotdata.cache.util.CacheConfig;
+
+/**
+ * Tiered cache. Consists of an ordered chain of caches (tiers), for example RAM, compressed RAM
+ * and SSD. Every tier is a victim cache of the previous one: items evicted by a tier's scavenger
+ * are streamed to the next tier through {@link VictimEvictionPipeline}, a miss in a tier is
+ * served by the next tier and the found item may be promoted back.
+ * <p>
+ * Every tier is a regular cache configured by its own name: admission controller of a tier
+ * decides which demoted items are accepted, promotion from a tier to the previous one is
+ * controlled by 'victim.promotion.on.hit' and 'victim.promotion.threshold' of a tier and by
+ * the promotion controller of the previous tier. All tiers except the last one must be memory
+ * caches.
+ * <p>
+ * Tiered cache keeps end - to - end statistics: every GET is attributed to the tier which has
+ * served it (or to misses) together with its latency. Save and load are performed for all tiers
+ * in parallel. The chain is recorded in configuration ('victim.name' of every tier), therefore it
+ * can be restored by {@link #loadCache(String)} from the name of the first tier.
+ */
+public class TieredCache {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(TieredCache.class);
+
+  /**
+   * GET statistics of a tier: number of served requests and latency histogram. Latencies are
+   * recorded in nanoseconds into power of 2 buckets, percentiles are upper bounds of buckets.
+   */
+  public static class TierStats {
+
+    private final static int BUCKETS = 64;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalTime = new AtomicLong();
+
+    private final AtomicLong maxTime = new AtomicLong();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    void add(long time) {
+      time = Math.max(0, time);
+      this.count.incrementAndGet();
+      this.totalTime.addAndGet(time);
+      this.histogram.incrementAndGet(Math.max(0, BUCKETS - 1 - Long.numberOfLeadingZeros(time)));
+      long max = this.maxTime.get();
+      while (time > max && !this.maxTime.compareAndSet(max, time)) {
+        max = this.maxTime.get();
+      }
+    }
+
+    /**
+     * Get number of requests
+     * @return number of requests
+     */
+    public long getCount() {
+      return this.count.get();
+    }
+
+    /**
+     * Get total latency
+     * @return total latency in ns
+     */
+    public long getTotalTime() {
+      return this.totalTime.get();
+    }
+
+    /**
+     * Get average latency
+     * @return average latency in ns
+     */
+    public double getAverageLatency() {
+      long n = this.count.get();
+      return n == 0 ? 0 : (double) this.totalTime.get() / n;
+    }
+
+    /**
+     * Get maximum latency
+     * @return maximum latency in ns
+     */
+    public long getMaxLatency() {
+      return this.maxTime.get();
+    }
+
+    /**
+     * Get latency percentile (approximate)
+     * @param p percentile (0.0 - 1.0)
+     * @return latency in ns
+     */
+    public long getLatencyPercentile(double p) {
+      long n = this.count.get();
+      if (n == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(p * n));
+      long sum = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        sum += this.histogram.get(i);
+        if (sum >= rank) {
+          long bound = i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+          return Math.min(bound, getMaxLatency());
+        }
+      }
+      return getMaxLatency();
+    }
+  }
+
+  /* Cache name (name of the first tier) */
+  private final String cacheName;
+
+  /* Cache configuration */
+  private final CacheConfig conf;
+
+  /* Tiers */
+  private final Cache[] tiers;
+
+  /* Per tier GET statistics */
+  private final TierStats[] stats;
+
+  /* Statistics of misses */
+  private final TierStats missStats = new TierStats();
+
+  /* Tier which has served the current GET in this thread (-1 - none) */
+  private final ThreadLocal<int[]> servedBy = ThreadLocal.withInitial(() -> new int[] { -1 });
+
+  /**
+   * Constructor. Links tiers into a chain, every tier becomes a victim cache of the previous one
+   * with asynchronous eviction enabled
+   * @param tiers tiers, from the top (fastest) to the bottom
+   */
+  public TieredCache(Cache... tiers) {
+    if (tiers.length == 0) {
+      throw new IllegalArgumentException("Tiered cache must have at least one tier");
+    }
+    for (int i = 0; i < tiers.length - 1; i++) {
+      if (tiers[i].getCacheType() == Type.DISK) {
+        throw new IllegalArgumentException(String
+            .format("Tier %d [%s] is a disk cache, only the last tier can be a disk cache", i,
+              tiers[i].getName()));
+      }
+    }
+    this.cacheName = tiers[0].getName();
+    this.conf = tiers[0].getCacheConfig();
+    this.tiers = tiers;
+    this.stats = new TierStats[tiers.length];
+    for (int i = tiers.length - 1; i >= 0; i--) {
+      this.stats[i] = new TierStats();
+      if (i < tiers.length - 1) {
+        String name = tiers[i].getName();
+        this.conf.setVictimEvictionAsync(name, true);
+        // Victim names are required to load the chain
+        this.conf.setProperty(name + "." + CacheConfig.CACHE_VICTIM_NAME_KEY,
+          tiers[i + 1].getName());
+        tiers[i].setVictimCache(tiers[i + 1]);
+      }
+      tiers[i].tieredCache = this;
+      tiers[i].tierIndex = i;
+    }
+    LOG.info("Created tiered cache [{}] tiers={}", this.cacheName, tiers.length);
+  }
+
+  /**
+   * Loads tiered cache from a file system. Tiers are loaded in parallel
+   * @param cacheName name of the first tier
+   * @return cache or null if there is no saved cache
+   * @throws IOException
+   */
+  public static TieredCache loadCache(String cacheName) throws IOException {
+    CacheConfig conf = CacheConfig.getInstance();
+    List<String> names = new ArrayList<String>();
+    for (String name = cacheName; name != null; name = conf.getVictimCacheName(name)) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException(
+            String.format("Cycle in tiered cache [%s] at tier [%s]", cacheName, name));
+      }
+      names.add(name);
+    }
+    int n = names.size();
+    Cache[] tiers = new Cache[n];
+    List<IOTask> tasks = new ArrayList<IOTask>();
+    for (int i = 0; i < n; i++) {
+      final int index = i;
+      tasks.add(() -> {
+        tiers[index] = Cache.loadTier(names.get(index));
+        return tiers[index] != null;
+      });
+    }
+    boolean complete = true;
+    try {
+      for (Object loaded : ParallelTasks.runAll(tasks, "load")) {
+        complete &= (Boolean) loaded;
+      }
+    } catch (IOException e) {
+      disposeAll(tiers);
+      throw e;
+    }
+    if (!complete) {
+      LOG.warn("Snapshot of tiered cache [{}] is missing or incomplete", cacheName);
+      disposeAll(tiers);
+      return null;
+    }
+    return new TieredCache(tiers);
+  }
+
+  private static void disposeAll(Cache[] tiers) {
+    for (Cache c : tiers) {
+      if (c != null) {
+        c.dispose();
+      }
+    }
+  }
+
+  /**
+   * Called by a tier on every hit
+   * @param tier tier index
+   */
+  void onHit(int tier) {
+    this.servedBy.get()[0] = tier;
+  }
+
+  private long startGet() {
+    this.servedBy.get()[0] = -1;
+    return System.nanoTime();
+  }
+
+  private long endGet(long start, long result) {
+    long time = System.nanoTime() - start;
+    int[] served = this.servedBy.get();
+    int tier = served[0];
+    served[0] = -1;
+    if (result < 0) {
+      this.missStats.add(time);
+    } else {
+      // Results without a hit (coalesced reads, small buffer) are attributed to the first tier
+      this.stats[Math.max(0, tier)].add(time);
+    }
+    return result;
+  }
+
+  /**
+   * Get cache name
+   * @return name of the first tier
+   */
+  public String getName() {
+    return this.cacheName;
+  }
+
+  /**
+   * Get cache configuration
+   * @return cache configuration
+   */
+  public CacheConfig getCacheConfig() {
+    return this.conf;
+  }
+
+  /**
+   * Get number of tiers
+   * @return number of tiers
+   */
+  public int getNumberOfTiers() {
+    return this.tiers.length;
+  }
+
+  /**
+   * Get tier
+   * @param i tier index
+   * @return tier
+   */
+  public Cache getTier(int i) {
+    return this.tiers[i];
+  }
+
+  /**
+   * Get GET statistics of a tier
+   * @param i tier index
+   * @return statistics
+   */
+  public TierStats getTierStats(int i) {
+    return this.stats[i];
+  }
+
+  /**
+   * Get statistics of GETs which were not served by any tier
+   * @return statistics
+   */
+  public TierStats getMissStats() {
+    return this.missStats;
+  }
+
+  /***************************************************************************
+   * Cache API (delegated to the first tier)
+   */
+
+  public boolean put(long keyPtr, int keySize, long valPtr, int valSize, long expire)
+      throws IOException {
+    return this.tiers[0].put(keyPtr, keySize, valPtr, valSize, expire);
+  }
+
+  public boolean put(byte[] key, int keyOffset, int keySize, byte[] value, int valOffset,
+      int valSize, long expire) throws IOException {
+    return this.tiers[0].put(key, keyOffset, keySize, value, valOffset, valSize, expire);
+  }
+
+  public boolean put(byte[] key, byte[] value, long expire) throws IOException {
+    return this.tiers[0].put(key, value, expire);
+  }
+
+  public long getKeyValue(long keyPtr, int keySize, boolean hit, byte[] buffer, int bufOffset)
+      throws IOException {
+    long start = startGet();
+    return endGet(start, this.tiers[0].getKeyValue(keyPtr, keySize, hit, buffer, bufOffset));
+  }
+
+  public long getKeyValue(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer,
+      int bufOffset) throws IOException {
+    long start = startGet();
+    return endGet(start,
+      this.tiers[0].getKeyValue(key, keyOffset, keySize, hit, buffer, bufOffset));
+  }
+
+  public long get(long keyPtr, int keySize, boolean hit, byte[] buffer, int bufOffset)
+      throws IOException {
+    long start = startGet();
+    return endGet(start, this.tiers[0].get(keyPtr, keySize, hit, buffer, bufOffset));
+  }
+
+  public long get(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer,
+      int bufOffset) throws IOException {
+    long start = startGet();
+    return endGet(start, this.tiers[0].get(key, keyOffset, keySize, hit, buffer, bufOffset));
+  }
+
+  public long get(byte[] key, int keyOff, int keySize, boolean hit, ByteBuffer buffer)
+      throws IOException {
+    long start = startGet();
+    return endGet(start, this.tiers[0].get(key, keyOff, keySize, hit, buffer));
+  }
+
+  public long get(long keyPtr, int keySize, boolean hit, ByteBuffer buffer) throws IOException {
+    long start = startGet();
+    return endGet(start, this.tiers[0].get(keyPtr, keySize, hit, buffer));
+  }
+
+  public byte[] get(byte[] key) throws IOException {
+    long start = startGet();
+    byte[] value = this.tiers[0].get(key);
+    endGet(start, value == null ? -1 : value.length);
+    return value;
+  }
+
+  public boolean delete(long keyPtr, int keySize) throws IOException {
+    return this.tiers[0].delete(keyPtr, keySize);
+  }
+
+  public boolean delete(byte[] key, int keyOffset, int keySize) throws IOException {
+    return this.tiers[0].delete(key, keyOffset, keySize);
+  }
+
+  public boolean delete(byte[] key) throws IOException {
+    return this.tiers[0].delete(key);
+  }
+
+  public boolean expire(byte[] key, int keyOffset, int keySize) throws IOException {
+    return this.tiers[0].expire(key, keyOffset, keySize);
+  }
+
+  public boolean existsExact(byte[] key, int off, int size) throws IOException {
+    return this.tiers[0].existsExact(key, off, size);
+  }
+
+  /***************************************************************************
+   * Statistics
+   */
+
+  /**
+   * Get total number of GETs
+   * @return total gets
+   */
+  public long getTotalGets() {
+    return this.tiers[0].getTotalGets();
+  }
+
+  /**
+   * Get total number of hits in all tiers
+   * @return total hits
+   */
+  public long getTotalHits() {
+    long sum = 0;
+    for (Cache c : this.tiers) {
+      sum += c.getTotalHits();
+    }
+    return sum;
+  }
+
+  /**
+   * Get overall hit rate
+   * @return hit rate
+   */
+  public double getHitRate() {
+    return (double) getTotalHits() / getTotalGets();
+  }
+
+  /**
+   * Get end - to - end hit rate of a tier: fraction of all GETs which were served by the tier
+   * @param i tier index
+   * @return hit rate
+   */
+  public double getTierHitRate(int i) {
+    return (double) this.tiers[i].getTotalHits() / getTotalGets();
+  }
+
+  public long size() {
+    long sum = 0;
+    for (Cache c : this.tiers) {
+      sum += c.size();
+    }
+    return sum;
+  }
+
+  public long getStorageAllocated() {
+    long sum = 0;
+    for (Cache c : this.tiers) {
+      sum += c.getStorageAllocated();
+    }
+    return sum;
+  }
+
+  public long getMaximumCacheSize() {
+    long sum = 0;
+    for (Cache c : this.tiers) {
+      sum += c.getMaximumCacheSize();
+    }
+    return sum;
+  }
+
+  public void printStats() {
+    LOG.info("TieredCache[{}]: tiers={} gets={} hit rate={} misses={} miss avg latency={}ns",
+      this.cacheName, this.tiers.length, getTotalGets(), getHitRate(), this.missStats.getCount(),
+      this.missStats.getAverageLatency());
+    for (int i = 0; i < this.tiers.length; i++) {
+      Cache c = this.tiers[i];
+      TierStats s = this.stats[i];
+      VictimEvictionPipeline p = c.getVictimEvictionPipeline();
+      LOG.info(
+        "  tier {} [{}]: items={} storage size={} gets={} hits={} hit rate={} served={}"
+            + " avg latency={}ns p99 latency={}ns demoted={}",
+        i, c.getName(), c.size(), c.getStorageAllocated(), c.getTotalGets(), c.getTotalHits(),
+        getTierHitRate(i), s.getCount(), s.getAverageLatency(), s.getLatencyPercentile(0.99),
+        p == null ? 0 : p.getTotalItems());
+    }
+  }
+
+  /***************************************************************************
+   * Life cycle
+   */
+
+  public void disableScavengers() {
+    for (Cache c : this.tiers) {
+      c.disableScavengers();
+    }
+  }
+
+  /**
+   * Saves all tiers in parallel. Pending demotions are written to their tiers first
+   * @throws IOException
+   */
+  public void save() throws IOException {
+    long start = System.currentTimeMillis();
+    for (Cache c : this.tiers) {
+      VictimEvictionPipeline p = c.getVictimEvictionPipeline();
+      if (p != null) {
+        p.flush();
+      }
+    }
+    List<IOTask> tasks = new ArrayList<IOTask>();
+    for (Cache c : this.tiers) {
+      tasks.add(() -> {
+        c.saveTier();
+        return null;
+      });
+    }
+    ParallelTasks.runAll(tasks, "save");
+    LOG.info("Tiered cache [{}] saved in {}ms", this.cacheName,
+      System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Shuts down all tiers, from the top to the bottom (every tier drains its demotions before the
+   * next one is shut down)
+   * @return total size of saved data
+   * @throws IOException
+   */
+  public long shutdown() throws IOException {
+    return this.tiers[0].shutdown();
+  }
+
+  /**
+   * Disposes all tiers (every tier disposes its victim cache)
+   */
+  public void dispose() {
+    this.tiers[0].dispose();
+  }
+}
@@ -0,0 +1,485 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.controllers.AdmissionController;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Asynchronous eviction pipeline from a parent cache to its victim cache. Scavenger threads copy
+ * evicted items into off-heap staging batches, full batches are handed over to a single writer
+ * thread, which puts them into the victim cache. The number of staging batches is bounded, when
+ * all of them are in flight, scavenger waits for the writer (back pressure).
+ */
+public class VictimEvictionPipeline {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(VictimEvictionPipeline.class);
+
+  public final static String NAME = "cc-victim-evictor";
+
+  /*
+   * Record header: expire (8), rank (4), group rank (4), key size (4), value size (4)
+   */
+  private final static int RECORD_HEADER_SIZE = Utils.SIZEOF_LONG + 4 * Utils.SIZEOF_INT;
+
+  /**
+   * Staging batch of evicted items
+   */
+  public static class Batch {
+
+    /* Buffer address */
+    private long address;
+
+    /* Buffer capacity */
+    private int capacity;
+
+    /* Current write position */
+    private int position;
+
+    /* Number of records */
+    private int count;
+
+    Batch(int capacity) {
+      this.capacity = capacity;
+      this.address = UnsafeAccess.malloc(capacity);
+    }
+
+    /**
+     * Appends item to the batch
+     * @param keyPtr key address
+     * @param keySize key size
+     * @param valuePtr value address
+     * @param valueSize value size
+     * @param expire expiration time
+     * @param rank popularity rank
+     * @param groupRank group rank
+     * @return true on success, false - batch is full
+     */
+    public boolean append(long keyPtr, int keySize, long valuePtr, int valueSize, long expire,
+        int rank, int groupRank) {
+      long ptr = reserve(keySize, valueSize, expire, rank, groupRank);
+      if (ptr == 0) {
+        return false;
+      }
+      UnsafeAccess.copy(keyPtr, ptr, keySize);
+      UnsafeAccess.copy(valuePtr, ptr + keySize, valueSize);
+      return true;
+    }
+
+    /**
+     * Appends item to the batch
+     * @param key key buffer
+     * @param keyOffset key offset
+     * @param keySize key size
+     * @param value value buffer
+     * @param valueOffset value offset
+     * @param valueSize value size
+     * @param expire expiration time
+     * @param rank popularity rank
+     * @param groupRank group rank
+     * @return true on success, false - batch is full
+     */
+    public boolean append(byte[] key, int keyOffset, int keySize, byte[] value, int valueOffset,
+        int valueSize, long expire, int rank, int groupRank) {
+      long ptr = reserve(keySize, valueSize, expire, rank, groupRank);
+      if (ptr == 0) {
+        return false;
+      }
+      UnsafeAccess.copy(key, keyOffset, ptr, keySize);
+      UnsafeAccess.copy(value, valueOffset, ptr + keySize, valueSize);
+      return true;
+    }
+
+    private long reserve(int keySize, int valueSize, long expire, int rank, int groupRank) {
+      int required = RECORD_HEADER_SIZE + keySize + valueSize;
+      if (position + required > capacity) {
+        return 0;
+      }
+      long ptr = address + position;
+      UnsafeAccess.putLong(ptr, expire);
+      ptr += Utils.SIZEOF_LONG;
+      UnsafeAccess.putInt(ptr, rank);
+      ptr += Utils.SIZEOF_INT;
+      UnsafeAccess.putInt(ptr, groupRank);
+      ptr += Utils.SIZEOF_INT;
+      UnsafeAccess.putInt(ptr, keySize);
+      ptr += Utils.SIZEOF_INT;
+      UnsafeAccess.putInt(ptr, valueSize);
+      ptr += Utils.SIZEOF_INT;
+      position += required;
+      count++;
+      return ptr;
+    }
+
+    /**
+     * Can this batch ever accommodate a given item
+     * @param keySize key size
+     * @param valueSize value size
+     * @return true or false
+     */
+    public boolean fits(int keySize, int valueSize) {
+      return RECORD_HEADER_SIZE + keySize + valueSize <= capacity;
+    }
+
+    /**
+     * Is batch empty
+     * @return true or false
+     */
+    public boolean isEmpty() {
+      return count == 0;
+    }
+
+    /**
+     * Number of records
+     * @return number of records
+     */
+    public int size() {
+      return count;
+    }
+
+    /**
+     * Data size in bytes
+     * @return data size
+     */
+    public int dataSize() {
+      return position;
+    }
+
+    void reset() {
+      position = 0;
+      count = 0;
+    }
+
+    void dispose() {
+      if (address != 0) {
+        UnsafeAccess.free(address);
+        address = 0;
+      }
+    }
+  }
+
+  /* Parent cache */
+  private final Cache cache;
+
+  /* Victim cache */
+  private final Cache victimCache;
+
+  /* Free batches */
+  private final ArrayBlockingQueue<Batch> freeBatches;
+
+  /* Writer thread */
+  private final ExecutorService writer;
+
+  /* Batch size */
+  private final int batchSize;
+
+  /* Maximum number of batches */
+  private final int maxBatches;
+
+  /* Apply victim cache admission controller to evicted items */
+  private final boolean admission;
+
+  /* Number of allocated batches */
+  private final AtomicInteger allocatedBatches = new AtomicInteger();
+
+  /* Batches submitted, but not written yet */
+  private final AtomicInteger pendingBatches = new AtomicInteger();
+
+  private volatile boolean closed = false;
+
+  /* Statistics */
+  private final AtomicLong totalBatches = new AtomicLong();
+
+  private final AtomicLong totalItems = new AtomicLong();
+
+  private final AtomicLong totalBytes = new AtomicLong();
+
+  private final AtomicLong totalFailedItems = new AtomicLong();
+
+  private final AtomicLong totalRejectedItems = new AtomicLong();
+
+  private final AtomicLong totalWaits = new AtomicLong();
+
+  private final AtomicLong totalWaitTime = new AtomicLong();
+
+  /**
+   * Constructor
+   * @param cache parent cache
+   * @param victimCache victim cache
+   */
+  public VictimEvictionPipeline(Cache cache, Cache victimCache) {
+    this.cache = cache;
+    this.victimCache = victimCache;
+    CacheConfig conf = cache.getCacheConfig();
+    String cacheName = cache.getName();
+    this.batchSize = conf.getVictimEvictionBufferSize(cacheName);
+    this.maxBatches = Math.max(2, conf.getVictimEvictionMaxBuffers(cacheName));
+    this.admission = conf.isVictimAdmissionEnabled(victimCache.getName());
+    this.freeBatches = new ArrayBlockingQueue<Batch>(this.maxBatches);
+    this.writer = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r);
+      t.setName(NAME + "-" + cacheName);
+      t.setDaemon(true);
+      return t;
+    });
+    LOG.info("Started victim eviction pipeline for cache [{}] batch size={} max batches={}",
+      cacheName, this.batchSize, this.maxBatches);
+  }
+
+  /**
+   * Acquires free batch, waits if all batches are in flight
+   * @return batch or null if pipeline is closed
+   */
+  public Batch acquire() {
+    if (closed) {
+      return null;
+    }
+    Batch b = freeBatches.poll();
+    if (b != null) {
+      return b;
+    }
+    if (allocatedBatches.incrementAndGet() <= maxBatches) {
+      return new Batch(batchSize);
+    }
+    allocatedBatches.decrementAndGet();
+    // Back pressure: wait for the writer
+    totalWaits.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      while (!closed) {
+        try {
+          b = freeBatches.poll(10, TimeUnit.MILLISECONDS);
+          if (b != null) {
+            return b;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      return null;
+    } finally {
+      totalWaitTime.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Submits batch to the writer. Empty batch is returned back to the pool.
+   * @param b batch
+   */
+  public void submit(Batch b) {
+    if (b == null) {
+      return;
+    }
+    if (b.isEmpty()) {
+      release(b);
+      return;
+    }
+    pendingBatches.incrementAndGet();
+    try {
+      writer.submit(() -> {
+        try {
+          write(b);
+        } finally {
+          pendingBatches.decrementAndGet();
+        }
+      });
+    } catch (Exception e) {
+      // writer was shut down - write batch in a caller's thread
+      try {
+        write(b);
+      } finally {
+        pendingBatches.decrementAndGet();
+      }
+    }
+  }
+
+  private void write(Batch b) {
+    long ptr = b.address;
+    long limit = ptr + b.position;
+    try {
+      while (ptr < limit) {
+        long expire = UnsafeAccess.toLong(ptr);
+        ptr += Utils.SIZEOF_LONG;
+        int rank = UnsafeAccess.toInt(ptr);
+        ptr += Utils.SIZEOF_INT;
+        int groupRank = UnsafeAccess.toInt(ptr);
+        ptr += Utils.SIZEOF_INT;
+        int keySize = UnsafeAccess.toInt(ptr);
+        ptr += Utils.SIZEOF_INT;
+        int valueSize = UnsafeAccess.toInt(ptr);
+        ptr += Utils.SIZEOF_INT;
+        AdmissionController ac = this.admission ? victimCache.getAdmissionController() : null;
+        if (ac != null && !ac.admit(ptr, keySize, valueSize)) {
+          totalRejectedItems.incrementAndGet();
+        } else {
+          boolean result = false;
+          try {
+            result = victimCache.put(ptr, keySize, ptr + keySize, valueSize, expire, rank,
+              groupRank, true, true);
+          } catch (IOException e) {
+            LOG.error("Victim eviction", e);
+          }
+          if (!result) {
+            totalFailedItems.incrementAndGet();
+          }
+        }
+        ptr += keySize + valueSize;
+      }
+      totalBatches.incrementAndGet();
+      totalItems.addAndGet(b.count);
+      totalBytes.addAndGet(b.position);
+    } finally {
+      release(b);
+    }
+  }
+
+  private void release(Batch b) {
+    b.reset();
+    if (closed || !freeBatches.offer(b)) {
+      b.dispose();
+      allocatedBatches.decrementAndGet();
+    }
+  }
+
+  /**
+   * Waits until all submitted batches are written to the victim cache
+   */
+  public void flush() {
+    while (pendingBatches.get() > 0) {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drains all pending batches and releases resources
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    flush();
+    closed = true;
+    writer.shutdown();
+    boolean terminated = false;
+    while (!terminated) {
+      try {
+        terminated = writer.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        //
+      }
+    }
+    Batch b = null;
+    while ((b = freeBatches.poll()) != null) {
+      b.dispose();
+      allocatedBatches.decrementAndGet();
+    }
+    LOG.info("Victim eviction pipeline for cache [{}] closed", cache.getName());
+  }
+
+  /**
+   * Is pipeline closed
+   * @return true or false
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Get total batches written
+   * @return total batches
+   */
+  public long getTotalBatches() {
+    return totalBatches.get();
+  }
+
+  /**
+   * Get total items written
+   * @return total items
+   */
+  public long getTotalItems() {
+    return totalItems.get();
+  }
+
+  /**
+   * Get total bytes written (including record headers)
+   * @return total bytes
+   */
+  public long getTotalBytes() {
+    return totalBytes.get();
+  }
+
+  /**
+   * Get total items rejected by the victim cache
+   * @return total failed items
+   */
+  public long getTotalFailedItems() {
+    return totalFailedItems.get();
+  }
+
+  /**
+   * Get total number of items rejected by victim cache admission controller
+   * @return total rejected items
+   */
+  public long getTotalRejectedItems() {
+    return totalRejectedItems.get();
+  }
+
+  /**
+   * Get number of times scavenger waited for a free batch
+   * @return total waits
+   */
+  public long getTotalWaits() {
+    return totalWaits.get();
+  }
+
+  /**
+   * Get total time scavenger waited for a free batch in ns
+   * @return total wait time
+   */
+  public long getTotalWaitTime() {
+    return totalWaitTime.get();
+  }
+
+  /**
+   * Get number of batches in flight
+   * @return number of pending batches
+   */
+  public int getPendingBatches() {
+    return pendingBatches.get();
+  }
+}
@@ -106,6 +106,8 @@ public class CodecFactory {
   private Type getCodecType(String sType) {
     if (sType.equalsIgnoreCase(Type.ZSTD.name())) {
       return Type.ZSTD;
+    } else if (sType.equalsIgnoreCase(Type.LZ4.name())) {
+      return Type.LZ4;
     }
     return null;
   }
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import java.util.Arrays;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * Cheap compressibility estimator used by codecs to bypass compression of blocks which are
+ * already compressed or encrypted. Estimates order-0 entropy of a block from a byte histogram of
+ * a sample (evenly spaced runs of {@link #RUN_SIZE} bytes, {@link #SAMPLE_SIZE} bytes total).
+ * Block is considered incompressible if estimated entropy is above the threshold (bits per byte).
+ * Thread - safe.
+ */
+public class CompressibilityEstimator {
+
+  /** Sample size */
+  static final int SAMPLE_SIZE = 1024;
+
+  /** Sampled run size */
+  static final int RUN_SIZE = 16;
+
+  /** Blocks smaller than this are always compressed */
+  static final int MIN_BLOCK_SIZE = 256;
+
+  /* Precomputed c * log2(c) */
+  private static final double[] NLOGN = new double[SAMPLE_SIZE + 1];
+
+  static {
+    for (int i = 1; i <= SAMPLE_SIZE; i++) {
+      NLOGN[i] = i * Math.log(i) / Math.log(2);
+    }
+  }
+
+  private static ThreadLocal<int[]> histograms = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[256];
+    }
+  };
+
+  /* Entropy threshold in bits per byte */
+  private final double threshold;
+
+  /* Codec statistics */
+  private final CompressionCodec.Stats stats;
+
+  /**
+   * Constructor
+   * @param threshold entropy threshold (bits per byte)
+   * @param stats codec statistics to record bypassed blocks to
+   */
+  public CompressibilityEstimator(double threshold, CompressionCodec.Stats stats) {
+    this.threshold = threshold;
+    this.stats = stats;
+  }
+
+  /**
+   * Checks if block is worth compressing, records statistics
+   * @param ptr block address
+   * @param len block size
+   * @return true - compress, false - store uncompressed
+   */
+  public boolean isCompressible(long ptr, int len) {
+    if (len < MIN_BLOCK_SIZE) {
+      return true;
+    }
+    long start = System.nanoTime();
+    double entropy = entropy(ptr, len);
+    long time = System.nanoTime() - start;
+    if (entropy > this.threshold) {
+      this.stats.recordBypass(len, time);
+      return false;
+    }
+    this.stats.recordEstimation(time);
+    return true;
+  }
+
+  /**
+   * Get entropy threshold
+   * @return threshold (bits per byte)
+   */
+  public double getThreshold() {
+    return this.threshold;
+  }
+
+  /**
+   * Estimates entropy of a memory block
+   * @param ptr block address
+   * @param len block size
+   * @return entropy in bits per byte
+   */
+  public static double entropy(long ptr, int len) {
+    if (len <= 0) {
+      return 0.;
+    }
+    int[] hist = histograms.get();
+    Arrays.fill(hist, 0);
+    int n;
+    if (len <= SAMPLE_SIZE) {
+      for (int i = 0; i < len; i++) {
+        hist[UnsafeAccess.toByte(ptr + i) & 0xff]++;
+      }
+      n = len;
+    } else {
+      int runs = SAMPLE_SIZE / RUN_SIZE;
+      long stride = (len - RUN_SIZE) / (runs - 1);
+      for (int r = 0; r < runs; r++) {
+        long addr = ptr + r * stride;
+        for (int i = 0; i < RUN_SIZE; i += Long.BYTES) {
+          long v = UnsafeAccess.toLong(addr + i);
+          for (int k = 0; k < Long.BYTES; k++) {
+            hist[(int) (v >>> (k << 3)) & 0xff]++;
+          }
+        }
+      }
+      n = runs * RUN_SIZE;
+    }
+    double sum = 0;
+    int nonZero = 0;
+    for (int i = 0; i < hist.length; i++) {
+      int c = hist[i];
+      if (c > 0) {
+        sum += NLOGN[c];
+        nonZero++;
+      }
+    }
+    // Plug-in estimate with Miller-Madow bias correction (sample underestimates entropy)
+    double h = (NLOGN[n] - sum) / n + (nonZero - 1) / (2 * n * Math.log(2));
+    return Math.min(8., h);
+  }
+}
@@ -0,0 +1,789 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.compression.CompressionCodec.Type;
+import com.carrotdata.cache.io.IOEngine;
+import com.carrotdata.cache.io.Segment;
+import com.carrotdata.cache.io.SegmentScanner;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.Percentile;
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Compression benchmark and codec selection tool. Takes a sample of key - value records (for
+ * example, dumped from a saved cache with {@link #dump(Cache, OutputStream, long)}), packs records
+ * into blocks the way compressed data writers do and sweeps codecs, compression levels, dictionary
+ * sizes and block sizes. For every configuration it reports compression ratio, compression and
+ * decompression throughput and per - GET decode latency percentiles: a GET decompresses item's
+ * block and locates the item in it. Blocks which do not compress are stored as is, like data
+ * writers do.
+ * <p>
+ * Dictionaries are trained on the first part of the sample, all configurations are measured on the
+ * rest of it. The recommended configuration has the best compression ratio among configurations,
+ * whose p99 decode latency is within a budget (a multiple of the lowest p99 observed).
+ * <p>
+ * Sample file is a sequence of records: key size (varint), value size (varint), key, value.
+ * <p>
+ * Usage: CompressionBenchmark sample_file [-codecs ZSTD,LZ4] [-levels 1,3,6] [-dict-sizes
+ * 0,16384,65536] [-block-sizes 4096,8192,16384] [-gets number] [-latency-budget multiplier]
+ * <p>
+ * To dump a saved cache: CompressionBenchmark -dump cache_name sample_file [max_size]
+ */
+public class CompressionBenchmark {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(CompressionBenchmark.class);
+
+  /** Fraction of a sample used for dictionary training */
+  public final static double TRAINING_RATIO = 0.25;
+
+  /** Default p99 decode latency budget, as a multiple of the lowest p99 */
+  public final static double DEFAULT_LATENCY_BUDGET = 2.0;
+
+  /* Maximum number of training passes over training blocks */
+  private final static int MAX_TRAINING_PASSES = 100;
+
+  /* Maximum number of latency samples kept for percentiles */
+  private final static int MAX_LATENCY_SAMPLES = 10000;
+
+  /**
+   * Benchmark result of one configuration
+   */
+  public static class Result {
+    private Type type;
+    private int level;
+    private int dictSize;
+    private int blockSize;
+    private int blocks;
+    private long rawSize;
+    private long storedSize;
+    private long compressionTime;
+    private long decompressionTime;
+    private long[] latencies;
+
+    /* Percentiles of decode latency */
+    private final static double[] PERCENTILES = new double[] { 0.5, 0.99, 0.999 };
+
+    Result(Type type, int level, int dictSize, int blockSize) {
+      this.type = type;
+      this.level = level;
+      this.dictSize = dictSize;
+      this.blockSize = blockSize;
+    }
+
+    /**
+     * Get codec type
+     * @return codec type
+     */
+    public Type getCodecType() {
+      return this.type;
+    }
+
+    /**
+     * Get compression level
+     * @return compression level (0 - codec does not support levels)
+     */
+    public int getCompressionLevel() {
+      return this.level;
+    }
+
+    /**
+     * Get dictionary size
+     * @return dictionary size (0 - no dictionary)
+     */
+    public int getDictionarySize() {
+      return this.dictSize;
+    }
+
+    /**
+     * Get block size
+     * @return block size
+     */
+    public int getBlockSize() {
+      return this.blockSize;
+    }
+
+    /**
+     * Get number of blocks
+     * @return number of blocks
+     */
+    public int getNumberOfBlocks() {
+      return this.blocks;
+    }
+
+    /**
+     * Get compression ratio, block meta overhead included
+     * @return compression ratio
+     */
+    public double getCompressionRatio() {
+      return this.storedSize == 0 ? 0. : (double) this.rawSize / this.storedSize;
+    }
+
+    /**
+     * Get compression throughput
+     * @return bytes per second
+     */
+    public double getCompressionThroughput() {
+      return this.compressionTime == 0 ? 0.
+          : (double) this.rawSize * 1000000000 / this.compressionTime;
+    }
+
+    /**
+     * Get decompression throughput
+     * @return bytes per second
+     */
+    public double getDecompressionThroughput() {
+      return this.decompressionTime == 0 ? 0.
+          : (double) this.rawSize * 1000000000 / this.decompressionTime;
+    }
+
+    /**
+     * Get median per - GET decode latency
+     * @return latency in nanoseconds
+     */
+    public long getLatencyP50() {
+      return this.latencies[0];
+    }
+
+    /**
+     * Get 99th percentile of per - GET decode latency
+     * @return latency in nanoseconds
+     */
+    public long getLatencyP99() {
+      return this.latencies[1];
+    }
+
+    /**
+     * Get 99.9th percentile of per - GET decode latency
+     * @return latency in nanoseconds
+     */
+    public long getLatencyP999() {
+      return this.latencies[2];
+    }
+
+    /**
+     * Get configuration of this result in a cache configuration file format
+     * @return list of properties
+     */
+    public List<String> toConfig() {
+      List<String> list = new ArrayList<String>();
+      list.add(CacheConfig.CACHE_COMPRESSION_ENABLED_KEY + "=true");
+      list.add(CacheConfig.CACHE_COMPRESSION_CODEC_KEY + "=" + this.type.name());
+      list.add(CacheConfig.CACHE_COMPRESSION_BLOCK_SIZE_KEY + "=" + this.blockSize);
+      if (this.type == Type.ZSTD) {
+        list.add(CacheConfig.CACHE_COMPRESSION_LEVEL_KEY + "=" + this.level);
+        list.add(CacheConfig.CACHE_COMPRESSION_DICTIONARY_ENABLED_KEY + "=" + (this.dictSize > 0));
+        if (this.dictSize > 0) {
+          list.add(CacheConfig.CACHE_COMPRESSION_DICTIONARY_SIZE_KEY + "=" + this.dictSize);
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "codec=%s level=%d dict=%d block=%d ratio=%.3f compression=%.1fMB/s "
+            + "decompression=%.1fMB/s get p50=%.2fus p99=%.2fus p999=%.2fus",
+        this.type, this.level, this.dictSize, this.blockSize, getCompressionRatio(),
+        getCompressionThroughput() / (1 << 20), getDecompressionThroughput() / (1 << 20),
+        getLatencyP50() / 1000., getLatencyP99() / 1000., getLatencyP999() / 1000.);
+    }
+  }
+
+  /**
+   * Block of records
+   */
+  private static class Block {
+    /* Raw data address */
+    long ptr;
+    /* Raw data size */
+    int size;
+    /* Record offsets */
+    int[] offsets;
+    /* Compressed data address (0 - stored as is) */
+    long cptr;
+    /* Compressed data size */
+    int csize;
+
+    void free() {
+      UnsafeAccess.free(this.ptr);
+      freeCompressed();
+    }
+
+    void freeCompressed() {
+      if (this.cptr != 0) {
+        UnsafeAccess.free(this.cptr);
+        this.cptr = 0;
+      }
+    }
+  }
+
+  /* Training records */
+  private List<byte[]> trainingRecords;
+
+  /* Measured records */
+  private List<byte[]> records;
+
+  private Type[] codecs = new Type[] { Type.ZSTD, Type.LZ4 };
+
+  private int[] levels = new int[] { 1, 3, 6 };
+
+  private int[] dictSizes = new int[] { 0, 16 * 1024, 64 * 1024 };
+
+  private int[] blockSizes = new int[] { 4 * 1024, 8 * 1024, 16 * 1024 };
+
+  private int gets = 100000;
+
+  private int trial;
+
+  /**
+   * Constructor
+   * @param sample sample records (see {@link #readSample(InputStream, long)})
+   */
+  public CompressionBenchmark(List<byte[]> sample) {
+    if (sample.size() < 2) {
+      throw new IllegalArgumentException("Sample is too small: " + sample.size() + " records");
+    }
+    int n = Math.max(1, (int) (sample.size() * TRAINING_RATIO));
+    this.trainingRecords = sample.subList(0, n);
+    this.records = sample.subList(n, sample.size());
+  }
+
+  /**
+   * Set codecs to benchmark
+   * @param codecs codec types
+   * @return this
+   */
+  public CompressionBenchmark withCodecs(Type... codecs) {
+    this.codecs = codecs;
+    return this;
+  }
+
+  /**
+   * Set compression levels to benchmark (for codecs, which support levels)
+   * @param levels compression levels
+   * @return this
+   */
+  public CompressionBenchmark withLevels(int... levels) {
+    this.levels = levels;
+    return this;
+  }
+
+  /**
+   * Set dictionary sizes to benchmark (for codecs, which support dictionaries), 0 - no dictionary
+   * @param sizes dictionary sizes
+   * @return this
+   */
+  public CompressionBenchmark withDictionarySizes(int... sizes) {
+    this.dictSizes = sizes;
+    return this;
+  }
+
+  /**
+   * Set block sizes to benchmark
+   * @param sizes block sizes
+   * @return this
+   */
+  public CompressionBenchmark withBlockSizes(int... sizes) {
+    this.blockSizes = sizes;
+    return this;
+  }
+
+  /**
+   * Set number of GET operations for decode latency measurement
+   * @param gets number of operations
+   * @return this
+   */
+  public CompressionBenchmark withGets(int gets) {
+    this.gets = gets;
+    return this;
+  }
+
+  /**
+   * Runs all configurations
+   * @return results
+   * @throws IOException
+   */
+  public List<Result> run() throws IOException {
+    List<Result> results = new ArrayList<Result>();
+    Path rootDir = Files.createTempDirectory("compression-benchmark");
+    try {
+      for (Type type : this.codecs) {
+        CompressionCodec codec = type.newCodec();
+        // Codec's levels and dictionaries are swept only if it supports them
+        int[] levels = type == Type.ZSTD ? this.levels : new int[] { 0 };
+        int[] dictSizes = codec.supportDictionary() ? this.dictSizes : new int[] { 0 };
+        for (int blockSize : this.blockSizes) {
+          for (int level : levels) {
+            for (int dictSize : dictSizes) {
+              Result r = run(type, level, dictSize, blockSize, rootDir.toString());
+              if (r != null) {
+                LOG.info("{}", r);
+                results.add(r);
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      delete(rootDir.toFile());
+    }
+    return results;
+  }
+
+  /**
+   * Runs one configuration
+   * @param type codec type
+   * @param level compression level
+   * @param dictSize dictionary size
+   * @param blockSize block size
+   * @param rootDir root directory for codec data (dictionaries)
+   * @return result or null if dictionary training failed
+   * @throws IOException
+   */
+  Result run(Type type, int level, int dictSize, int blockSize, String rootDir)
+      throws IOException {
+    // Codecs keep their state per cache name
+    String cacheName = "compression-benchmark-" + (++this.trial);
+    CacheConfig config = CacheConfig.getInstance();
+    config.setCacheRootDirs(cacheName, new String[] { rootDir });
+    config.setCacheCompressionEnabled(cacheName, true);
+    config.setCacheCompressionCodecType(cacheName, type.name());
+    config.setCacheCompressionLevel(cacheName, level);
+    config.setCacheCompressionDictionaryEnabled(cacheName, dictSize > 0);
+    if (dictSize > 0) {
+      config.setCacheCompressionDictionarySize(cacheName, dictSize);
+    }
+    config.setCacheCompressionDictionaryTrainingAsync(cacheName, false);
+    config.setCacheCompressionBypassEnabled(cacheName, false);
+    config.setAdaptiveCompressionEnabled(cacheName, false);
+    config.setSaveOnShutdown(cacheName, false);
+    CompressionCodec codec = type.newCodec();
+    codec.init(cacheName);
+
+    Result result = new Result(type, level, dictSize, blockSize);
+    List<Block> blocks = toBlocks(this.records, blockSize);
+    try {
+      if (dictSize > 0 && !train(codec, blockSize)) {
+        LOG.warn("Dictionary training failed: codec={} dict={} block={}", type, dictSize,
+          blockSize);
+        return null;
+      }
+      int dictId = codec.getCurrentDictionaryVersion();
+      int maxSize = 0;
+      for (Block b : blocks) {
+        maxSize = Math.max(maxSize, b.size);
+      }
+      int bufferSize = 2 * maxSize + 1024;
+      long buffer = UnsafeAccess.malloc(bufferSize);
+      try {
+        // First pass warms up codec contexts
+        compress(codec, blocks, dictId, buffer, bufferSize, null);
+        compress(codec, blocks, dictId, buffer, bufferSize, result);
+        decompress(codec, blocks, dictId, buffer, bufferSize, null);
+        decompress(codec, blocks, dictId, buffer, bufferSize, result);
+        get(codec, blocks, dictId, buffer, bufferSize, result);
+      } finally {
+        UnsafeAccess.free(buffer);
+      }
+      return result;
+    } finally {
+      for (Block b : blocks) {
+        b.free();
+      }
+    }
+  }
+
+  /**
+   * Trains dictionary on training records
+   * @param codec codec
+   * @param blockSize block size
+   * @return true on success
+   */
+  private boolean train(CompressionCodec codec, int blockSize) {
+    List<Block> blocks = toBlocks(this.trainingRecords, blockSize);
+    try {
+      // Training starts when codec is asked, small samples are fed repeatedly
+      for (int i = 0; i < MAX_TRAINING_PASSES && codec.getCurrentDictionaryVersion() == 0; i++) {
+        for (Block b : blocks) {
+          if (!codec.isTrainingRequired()) {
+            break;
+          }
+          codec.addTrainingData(b.ptr, b.size);
+        }
+      }
+      return codec.getCurrentDictionaryVersion() > 0;
+    } finally {
+      for (Block b : blocks) {
+        b.free();
+      }
+    }
+  }
+
+  private void compress(CompressionCodec codec, List<Block> blocks, int dictId, long buffer,
+      int bufferSize, Result result) {
+    long time = 0, stored = 0, raw = 0;
+    for (Block b : blocks) {
+      b.freeCompressed();
+      long start = System.nanoTime();
+      int size = codec.compress(b.ptr, b.size, dictId, buffer, bufferSize);
+      time += System.nanoTime() - start;
+      if (size > 0 && size < b.size) {
+        b.cptr = UnsafeAccess.malloc(size);
+        b.csize = size;
+        UnsafeAccess.copy(buffer, b.cptr, size);
+      }
+      raw += b.size;
+      stored += (b.cptr != 0 ? b.csize : b.size) + CompressionCodec.COMP_META_SIZE;
+    }
+    if (result != null) {
+      result.blocks = blocks.size();
+      result.rawSize = raw;
+      result.storedSize = stored;
+      result.compressionTime = time;
+    }
+  }
+
+  private void decompress(CompressionCodec codec, List<Block> blocks, int dictId, long buffer,
+      int bufferSize, Result result) throws IOException {
+    long time = 0;
+    for (Block b : blocks) {
+      if (b.cptr == 0) {
+        continue;
+      }
+      long start = System.nanoTime();
+      int size = codec.decompress(b.cptr, b.csize, buffer, bufferSize, dictId);
+      time += System.nanoTime() - start;
+      if (size != b.size) {
+        throw new IOException(
+            String.format("Decompression failed: codec=%s expected=%d actual=%d",
+              codec.getCodecType(), b.size, size));
+      }
+    }
+    if (result != null) {
+      result.decompressionTime = time;
+    }
+  }
+
+  /**
+   * Random GETs: decompress item's block and locate item in it
+   */
+  private void get(CompressionCodec codec, List<Block> blocks, int dictId, long buffer,
+      int bufferSize, Result result) {
+    int n = 0;
+    for (Block b : blocks) {
+      n += b.offsets.length;
+    }
+    // Records are selected uniformly
+    int[] blockIndex = new int[n];
+    int[] recordIndex = new int[n];
+    for (int i = 0, k = 0; i < blocks.size(); i++) {
+      for (int j = 0; j < blocks.get(i).offsets.length; j++, k++) {
+        blockIndex[k] = i;
+        recordIndex[k] = j;
+      }
+    }
+    Percentile p = new Percentile(Math.min(this.gets / 10 + 1, MAX_LATENCY_SAMPLES), this.gets);
+    Random r = new Random(this.trial);
+    for (int i = 0; i < this.gets; i++) {
+      int k = r.nextInt(n);
+      Block b = blocks.get(blockIndex[k]);
+      long keyPtr = b.ptr + b.offsets[recordIndex[k]];
+      int keySize = Utils.readUVInt(keyPtr);
+      int valueSize = Utils.readUVInt(keyPtr + Utils.sizeUVInt(keySize));
+      keyPtr += Utils.sizeUVInt(keySize) + Utils.sizeUVInt(valueSize);
+
+      long start = System.nanoTime();
+      long ptr = b.ptr;
+      if (b.cptr != 0) {
+        codec.decompress(b.cptr, b.csize, buffer, bufferSize, dictId);
+        ptr = buffer;
+      }
+      locate(ptr, b.size, keyPtr, keySize);
+      p.add(System.nanoTime() - start);
+    }
+    result.latencies = new long[Result.PERCENTILES.length];
+    for (int i = 0; i < Result.PERCENTILES.length; i++) {
+      result.latencies[i] = p.value(Result.PERCENTILES[i]);
+    }
+  }
+
+  private static long locate(long ptr, int size, long keyPtr, int keySize) {
+    long end = ptr + size;
+    while (ptr < end) {
+      int kSize = Utils.readUVInt(ptr);
+      int kSizeSize = Utils.sizeUVInt(kSize);
+      int vSize = Utils.readUVInt(ptr + kSizeSize);
+      int vSizeSize = Utils.sizeUVInt(vSize);
+      if (Utils.equals(ptr + kSizeSize + vSizeSize, kSize, keyPtr, keySize)) {
+        return ptr;
+      }
+      ptr += kSizeSize + vSizeSize + kSize + vSize;
+    }
+    return -1;
+  }
+
+  /**
+   * Packs records into blocks. Block is closed when the next record does not fit, a record larger
+   * than block size makes a block on its own
+   */
+  private static List<Block> toBlocks(List<byte[]> records, int blockSize) {
+    List<Block> blocks = new ArrayList<Block>();
+    int from = 0;
+    while (from < records.size()) {
+      int size = records.get(from).length;
+      int to = from + 1;
+      while (to < records.size() && size + records.get(to).length <= blockSize) {
+        size += records.get(to).length;
+        to++;
+      }
+      Block b = new Block();
+      b.ptr = UnsafeAccess.malloc(size);
+      b.size = size;
+      b.offsets = new int[to - from];
+      int off = 0;
+      for (int i = from; i < to; i++) {
+        byte[] rec = records.get(i);
+        UnsafeAccess.copy(rec, 0, b.ptr + off, rec.length);
+        b.offsets[i - from] = off;
+        off += rec.length;
+      }
+      blocks.add(b);
+      from = to;
+    }
+    return blocks;
+  }
+
+  /**
+   * Get recommended configuration: the best compression ratio among configurations, whose p99
+   * decode latency is within a budget
+   * @param results benchmark results
+   * @param latencyBudget p99 latency budget as a multiple of the lowest p99
+   * @return recommended configuration or null if results are empty
+   */
+  public static Result recommend(List<Result> results, double latencyBudget) {
+    long minLatency = Long.MAX_VALUE;
+    for (Result r : results) {
+      minLatency = Math.min(minLatency, r.getLatencyP99());
+    }
+    double limit = minLatency * latencyBudget;
+    return results.stream().filter(r -> r.getLatencyP99() <= limit)
+        .max(Comparator.comparingDouble(Result::getCompressionRatio)
+            .thenComparingDouble(Result::getDecompressionThroughput))
+        .orElse(null);
+  }
+
+  /**
+   * Reads sample records
+   * @param is input stream
+   * @param maxSize maximum sample size in bytes
+   * @return list of records
+   * @throws IOException
+   */
+  public static List<byte[]> readSample(InputStream is, long maxSize) throws IOException {
+    List<byte[]> list = new ArrayList<byte[]>();
+    long size = 0;
+    int keySize;
+    while (size < maxSize && (keySize = readUVInt(is)) >= 0) {
+      int valueSize = readUVInt(is);
+      if (valueSize < 0) {
+        throw new IOException("Unexpected end of sample");
+      }
+      int off = Utils.sizeUVInt(keySize) + Utils.sizeUVInt(valueSize);
+      byte[] rec = new byte[off + keySize + valueSize];
+      off = Utils.writeUVInt(rec, 0, keySize);
+      off += Utils.writeUVInt(rec, off, valueSize);
+      if (is.readNBytes(rec, off, rec.length - off) != rec.length - off) {
+        throw new IOException("Unexpected end of sample");
+      }
+      list.add(rec);
+      size += rec.length;
+    }
+    return list;
+  }
+
+  /* Returns -1 at the end of stream */
+  private static int readUVInt(InputStream is) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = is.read();
+      if (b < 0) {
+        if (shift == 0) {
+          return -1;
+        }
+        throw new IOException("Unexpected end of sample");
+      }
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Dumps sample records from sealed data segments of a cache
+   * @param cache cache
+   * @param os output stream
+   * @param maxSize maximum sample size in bytes
+   * @return sample size
+   * @throws IOException
+   */
+  public static long dump(Cache cache, OutputStream os, long maxSize) throws IOException {
+    IOEngine engine = cache.getEngine();
+    byte[] buf = new byte[1024];
+    long size = 0;
+    for (int i = 0; i < engine.getNumberOfSegments() && size < maxSize; i++) {
+      Segment s = engine.getSegmentById(i);
+      if (s == null || !s.isSealed()) {
+        continue;
+      }
+      SegmentScanner sc = engine.getScanner(s);
+      try {
+        while (sc.hasNext() && size < maxSize) {
+          int keySize = sc.keyLength();
+          int valueSize = sc.valueLength();
+          int off = Utils.sizeUVInt(keySize) + Utils.sizeUVInt(valueSize);
+          int len = off + keySize + valueSize;
+          if (buf.length < len) {
+            buf = new byte[len];
+          }
+          off = Utils.writeUVInt(buf, 0, keySize);
+          off += Utils.writeUVInt(buf, off, valueSize);
+          sc.getKey(buf, off);
+          sc.getValue(buf, off + keySize);
+          os.write(buf, 0, len);
+          size += len;
+          sc.next();
+        }
+      } finally {
+        sc.close();
+      }
+    }
+    os.flush();
+    return size;
+  }
+
+  private static void delete(File f) {
+    File[] files = f.listFiles();
+    if (files != null) {
+      for (File ff : files) {
+        delete(ff);
+      }
+    }
+    f.delete();
+  }
+
+  private static int[] toInts(String s) {
+    return Arrays.stream(s.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+  }
+
+  private static void usage() {
+    LOG.error("Usage: CompressionBenchmark sample_file [-codecs ZSTD,LZ4] [-levels 1,3,6] "
+        + "[-dict-sizes 0,16384,65536] [-block-sizes 4096,8192,16384] [-gets number] "
+        + "[-latency-budget multiplier]");
+    LOG.error("       CompressionBenchmark -dump cache_name sample_file [max_size]");
+    System.exit(1);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      usage();
+    }
+    if (args[0].equals("-dump")) {
+      if (args.length < 3) {
+        usage();
+      }
+      long maxSize = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+      Cache cache = Cache.loadCache(args[1]);
+      if (cache == null) {
+        LOG.error("Failed to load cache {}", args[1]);
+        System.exit(1);
+      }
+      try (FileOutputStream fos = new FileOutputStream(args[2])) {
+        long size = dump(cache, fos, maxSize);
+        LOG.info("Dumped {} bytes of cache {} to {}", size, args[1], args[2]);
+      } finally {
+        cache.dispose();
+      }
+      return;
+    }
+    List<byte[]> sample;
+    try (InputStream is = Files.newInputStream(Path.of(args[0]))) {
+      sample = readSample(is, Long.MAX_VALUE);
+    }
+    CompressionBenchmark benchmark = new CompressionBenchmark(sample);
+    double latencyBudget = DEFAULT_LATENCY_BUDGET;
+    for (int i = 1; i < args.length - 1; i += 2) {
+      String v = args[i + 1];
+      switch (args[i]) {
+        case "-codecs":
+          benchmark.withCodecs(Arrays.stream(v.split(",")).map(String::trim).map(Type::valueOf)
+              .toArray(Type[]::new));
+          break;
+        case "-levels":
+          benchmark.withLevels(toInts(v));
+          break;
+        case "-dict-sizes":
+          benchmark.withDictionarySizes(toInts(v));
+          break;
+        case "-block-sizes":
+          benchmark.withBlockSizes(toInts(v));
+          break;
+        case "-gets":
+          benchmark.withGets(Integer.parseInt(v));
+          break;
+        case "-latency-budget":
+          latencyBudget = Double.parseDouble(v);
+          break;
+        default:
+          usage();
+      }
+    }
+    LOG.info("Sample={} records={}", args[0], sample.size());
+    List<Result> results = benchmark.run();
+    Result best = recommend(results, latencyBudget);
+    if (best == null) {
+      LOG.error("No results");
+      return;
+    }
+    LOG.info("Recommended configuration (p99 decode latency budget x{}): {}", latencyBudget, best);
+    for (String s : best.toConfig()) {
+      LOG.info("{}", s);
+    }
+  }
+}
@@ -38,6 +38,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.carrotdata.cache.compression.lz4.LZ4CompressionCodec;
 import com.carrotdata.cache.compression.zstd.ZstdCompressionCodec;
 import com.carrotdata.cache.util.Persistent;
 import com.carrotdata.cache.util.Utils;
@@ -60,6 +61,13 @@ public interface CompressionCodec extends Persistent {
       public CompressionCodec newCodec() {
         throw new RuntimeException("codec type is undefined");
       }
+    },
+
+    LZ4 {
+      @Override
+      public CompressionCodec newCodec() {
+        return new LZ4CompressionCodec();
+      }
     };
 
     public abstract CompressionCodec newCodec();
@@ -95,6 +103,31 @@ public interface CompressionCodec extends Persistent {
      */
     private AtomicLong decompressionTime = new AtomicLong();
 
+    /**
+     * Number of blocks stored uncompressed by compression bypass
+     */
+    private AtomicLong bypassedBlocks = new AtomicLong();
+
+    /**
+     * Raw size of blocks stored uncompressed by compression bypass (total)
+     */
+    private AtomicLong bypassed = new AtomicLong();
+
+    /**
+     * Compressibility estimation time (nanoseconds)
+     */
+    private AtomicLong estimationTime = new AtomicLong();
+
+    /**
+     * Raw size of blocks which were compressed without any gain (total)
+     */
+    private AtomicLong incompressible = new AtomicLong();
+
+    /**
+     * Time spent on compression of incompressible blocks (nanoseconds)
+     */
+    private AtomicLong incompressibleTime = new AtomicLong();
+
     /**
      * Compression level
      */
@@ -221,6 +254,109 @@ public interface CompressionCodec extends Persistent {
       return (double) total * 1000000000 / time;
     }
 
+    /**
+     * Records block which was not compressed by compression bypass
+     * @param len block size
+     * @param time estimation time (nanoseconds)
+     */
+    public void recordBypass(int len, long time) {
+      this.bypassedBlocks.incrementAndGet();
+      this.bypassed.addAndGet(len);
+      this.estimationTime.addAndGet(time);
+    }
+
+    /**
+     * Records block which passed compressibility estimation
+     * @param time estimation time (nanoseconds)
+     */
+    public void recordEstimation(long time) {
+      this.estimationTime.addAndGet(time);
+    }
+
+    /**
+     * Records block which was compressed without any gain
+     * @param len block size
+     * @param time compression time (nanoseconds)
+     */
+    public void recordIncompressible(int len, long time) {
+      this.incompressible.addAndGet(len);
+      this.incompressibleTime.addAndGet(time);
+    }
+
+    /**
+     * Get number of blocks stored uncompressed by compression bypass
+     * @return number of blocks
+     */
+    public long getBypassedBlocks() {
+      return this.bypassedBlocks.get();
+    }
+
+    /**
+     * Get total size of data stored uncompressed by compression bypass
+     * @return size
+     */
+    public long getBypassedSize() {
+      return this.bypassed.get();
+    }
+
+    /**
+     * Get total size of data which was compressed without any gain
+     * @return size
+     */
+    public long getIncompressibleSize() {
+      return this.incompressible.get();
+    }
+
+    /**
+     * Get bypass rate: fraction of data submitted to compression which was stored uncompressed
+     * without calling compressor
+     * @return bypass rate
+     */
+    public double getBypassRate() {
+      long bypassed = this.bypassed.get();
+      long total = bypassed + this.compressedRaw.get() + this.incompressible.get();
+      return total == 0 ? 0. : (double) bypassed / total;
+    }
+
+    /**
+     * Get total compressibility estimation time
+     * @return time in nanoseconds
+     */
+    public long getEstimationTime() {
+      return this.estimationTime.get();
+    }
+
+    /**
+     * Get time wasted on compression of incompressible blocks
+     * @return time in nanoseconds
+     */
+    public long getIncompressibleTime() {
+      return this.incompressibleTime.get();
+    }
+
+    /**
+     * Get estimated CPU time saved by compression bypass: time which compression of bypassed data
+     * would take at the observed throughput of incompressible blocks (or of all blocks if there
+     * are no such observations) minus time spent on estimation
+     * @return time in nanoseconds
+     */
+    public long getEstimatedSavedTime() {
+      long bypassed = this.bypassed.get();
+      if (bypassed == 0) {
+        return 0;
+      }
+      long size = this.incompressible.get();
+      long time = this.incompressibleTime.get();
+      if (size == 0 || time == 0) {
+        size = this.compressedRaw.get();
+        time = this.compressionTime.get();
+      }
+      if (size == 0) {
+        return 0;
+      }
+      return (long) ((double) bypassed * time / size) - this.estimationTime.get();
+    }
+
     @Override
     public void save(OutputStream os) throws IOException {
       DataOutputStream dos = Utils.toDataOutputStream(os);
@@ -233,6 +369,11 @@ public interface CompressionCodec extends Persistent {
       dos.writeLong(getDecompressed().get());
       dos.writeLong(getCompressionTime().get());
       dos.writeLong(getDecompressionTime().get());
+      dos.writeLong(this.bypassedBlocks.get());
+      dos.writeLong(this.bypassed.get());
+      dos.writeLong(this.estimationTime.get());
+      dos.writeLong(this.incompressible.get());
+      dos.writeLong(this.incompressibleTime.get());
     }
 
     @Override
@@ -247,6 +388,11 @@ public interface CompressionCodec extends Persistent {
       this.setDecompressed(new AtomicLong(dis.readLong()));
       this.setCompressionTime(new AtomicLong(dis.readLong()));
       this.setDecompressionTime(new AtomicLong(dis.readLong()));
+      this.bypassedBlocks.set(dis.readLong());
+      this.bypassed.set(dis.readLong());
+      this.estimationTime.set(dis.readLong());
+      this.incompressible.set(dis.readLong());
+      this.incompressibleTime.set(dis.readLong());
     }
 
     public AtomicLong getDecompressedRaw() {
@@ -433,6 +579,36 @@ public interface CompressionCodec extends Persistent {
    */
   public void addTrainingData(long ptr, int size);
 
+  /**
+   * Get current dictionary version of a key class (see {@link KeyClassifier}). Dictionary
+   * versions are unique across all classes of a cache. Codecs which do not support key classes
+   * use one dictionary sequence for all classes
+   * @param keyClass key class
+   * @return version (0 - no dictionary yet)
+   */
+  public default int getCurrentDictionaryVersion(int keyClass) {
+    return getCurrentDictionaryVersion();
+  }
+
+  /**
+   * Is training required for a key class
+   * @param keyClass key class
+   * @return true or false
+   */
+  public default boolean isTrainingRequired(int keyClass) {
+    return isTrainingRequired();
+  }
+
+  /**
+   * Add data to training session of a key class
+   * @param keyClass key class
+   * @param ptr address
+   * @param size size
+   */
+  public default void addTrainingData(int keyClass, long ptr, int size) {
+    addTrainingData(ptr, size);
+  }
+
   /**
    * Get recommended training data size (minimum 100 x dictionary size)
    * @return data size
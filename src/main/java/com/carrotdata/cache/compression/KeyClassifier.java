@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Maps keys to compression dictionary classes by key prefix. Keys starting with the i-th
+ * configured prefix belong to the class i (1 - based), all other keys belong to the default class
+ * 0. The first matching prefix wins.
+ */
+public class KeyClassifier {
+
+  /** Maximum number of classes (including default), key class is a part of write batch id */
+  public static final int MAX_CLASSES = 128;
+
+  /* Key prefixes */
+  private final byte[][] prefixes;
+
+  /**
+   * Creates key classifier for a cache
+   * @param cacheName cache name
+   * @return classifier (never null)
+   */
+  public static KeyClassifier fromConfig(String cacheName) {
+    String value = CacheConfig.getInstance().getCacheCompressionDictionaryKeyClasses(cacheName);
+    List<String> list = new ArrayList<String>();
+    if (value != null) {
+      for (String s : value.split(",")) {
+        s = s.trim();
+        if (s.length() > 0) {
+          list.add(s);
+        }
+      }
+    }
+    return new KeyClassifier(list.toArray(new String[list.size()]));
+  }
+
+  /**
+   * Constructor
+   * @param prefixes key prefixes
+   */
+  public KeyClassifier(String... prefixes) {
+    if (prefixes.length >= MAX_CLASSES) {
+      throw new IllegalArgumentException(
+          String.format("Too many key classes: %d, maximum is %d", prefixes.length,
+            MAX_CLASSES - 1));
+    }
+    this.prefixes = new byte[prefixes.length][];
+    for (int i = 0; i < prefixes.length; i++) {
+      this.prefixes[i] = prefixes[i].getBytes();
+    }
+  }
+
+  /**
+   * Get number of classes including default one
+   * @return number of classes
+   */
+  public int getNumberOfClasses() {
+    return this.prefixes.length + 1;
+  }
+
+  /**
+   * Get key class
+   * @param key key buffer
+   * @param off key offset
+   * @param size key size
+   * @return class (0 - default)
+   */
+  public int getKeyClass(byte[] key, int off, int size) {
+    for (int i = 0; i < this.prefixes.length; i++) {
+      byte[] p = this.prefixes[i];
+      if (p.length <= size && Utils.compareTo(p, 0, p.length, key, off, p.length) == 0) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get key class
+   * @param keyPtr key address
+   * @param size key size
+   * @return class (0 - default)
+   */
+  public int getKeyClass(long keyPtr, int size) {
+    for (int i = 0; i < this.prefixes.length; i++) {
+      byte[] p = this.prefixes[i];
+      if (p.length <= size && Utils.compareTo(p, 0, p.length, keyPtr, p.length) == 0) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+}
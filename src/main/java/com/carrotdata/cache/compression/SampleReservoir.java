@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Bounded lock - free collection of dictionary training samples. Samples are kept in a fixed
+ * off - heap ring of equal size slots (4 bytes of sample length followed by sample data), samples
+ * larger than a slot are truncated to a randomly positioned chunk of a slot size. Once the ring is
+ * full, new samples replace random ones with reservoir sampling (algorithm R), so the collected
+ * set is a uniform sample of everything offered.
+ * <p>
+ * Writers never block: a sample which hits a slot being written by another thread is dropped.
+ * Reservoir is a one - shot object: {@link #freeze()} stops collection, waits for in - flight
+ * writers and returns samples, after that memory can be released with {@link #dispose()}.
+ */
+public class SampleReservoir {
+
+  /** Default slot size */
+  public static final int DEFAULT_SLOT_SIZE = 1024;
+
+  /** Reservoir is ready after this number of offered samples per slot */
+  public static final int SAMPLING_WINDOW_FACTOR = 2;
+
+  /* Slots memory */
+  private final long memory;
+
+  /* Slot size (including length) */
+  private final int slotSize;
+
+  /* Number of slots */
+  private final int numSlots;
+
+  /* Slot write locks */
+  private final AtomicIntegerArray locks;
+
+  /* Total offered samples */
+  private final AtomicLong seen = new AtomicLong();
+
+  /* Number of writers in progress */
+  private final AtomicInteger writers = new AtomicInteger();
+
+  /* Collection is stopped */
+  private volatile boolean frozen;
+
+  /* Memory was released */
+  private volatile boolean disposed;
+
+  /**
+   * Constructor
+   * @param capacity total capacity in bytes
+   * @param slotSize maximum sample size
+   */
+  public SampleReservoir(long capacity, int slotSize) {
+    this.slotSize = slotSize + Utils.SIZEOF_INT;
+    this.numSlots = (int) Math.max(1, capacity / slotSize);
+    this.memory = UnsafeAccess.mallocZeroed((long) this.numSlots * this.slotSize);
+    this.locks = new AtomicIntegerArray(this.numSlots);
+  }
+
+  /**
+   * Offers a sample
+   * @param ptr sample address
+   * @param size sample size
+   * @return true if reservoir is ready for training
+   */
+  public boolean add(long ptr, int size) {
+    if (size <= 0) {
+      return isReady();
+    }
+    int slot = acquireSlot();
+    if (slot < 0) {
+      return isReady();
+    }
+    try {
+      int len = Math.min(size, this.slotSize - Utils.SIZEOF_INT);
+      int off = len < size ? ThreadLocalRandom.current().nextInt(size - len + 1) : 0;
+      long dst = this.memory + (long) slot * this.slotSize;
+      UnsafeAccess.copy(ptr + off, dst + Utils.SIZEOF_INT, len);
+      UnsafeAccess.putInt(dst, len);
+    } finally {
+      releaseSlot(slot);
+    }
+    return isReady();
+  }
+
+  /**
+   * Offers a sample
+   * @param buf sample buffer
+   * @param bufOffset offset
+   * @param size sample size
+   * @return true if reservoir is ready for training
+   */
+  public boolean add(byte[] buf, int bufOffset, int size) {
+    if (size <= 0) {
+      return isReady();
+    }
+    int slot = acquireSlot();
+    if (slot < 0) {
+      return isReady();
+    }
+    try {
+      int len = Math.min(size, this.slotSize - Utils.SIZEOF_INT);
+      int off = len < size ? ThreadLocalRandom.current().nextInt(size - len + 1) : 0;
+      long dst = this.memory + (long) slot * this.slotSize;
+      UnsafeAccess.copy(buf, bufOffset + off, dst + Utils.SIZEOF_INT, len);
+      UnsafeAccess.putInt(dst, len);
+    } finally {
+      releaseSlot(slot);
+    }
+    return isReady();
+  }
+
+  /**
+   * Selects slot for a new sample and locks it
+   * @return slot index or -1 (sample is dropped)
+   */
+  private int acquireSlot() {
+    this.writers.incrementAndGet();
+    if (this.frozen) {
+      this.writers.decrementAndGet();
+      return -1;
+    }
+    long n = this.seen.getAndIncrement();
+    long slot = n < this.numSlots ? n : ThreadLocalRandom.current().nextLong(n + 1);
+    if (slot >= this.numSlots || !this.locks.compareAndSet((int) slot, 0, 1)) {
+      this.writers.decrementAndGet();
+      return -1;
+    }
+    return (int) slot;
+  }
+
+  private void releaseSlot(int slot) {
+    this.locks.set(slot, 0);
+    this.writers.decrementAndGet();
+  }
+
+  /**
+   * Is reservoir ready for training: every slot was filled and enough samples were offered
+   * @return true or false
+   */
+  public boolean isReady() {
+    return this.seen.get() >= (long) SAMPLING_WINDOW_FACTOR * this.numSlots;
+  }
+
+  /**
+   * Stops collection, waits for writers in progress and returns collected samples
+   * @return samples
+   */
+  public byte[][] freeze() {
+    this.frozen = true;
+    while (this.writers.get() > 0) {
+      Thread.onSpinWait();
+    }
+    if (this.disposed) {
+      return new byte[0][];
+    }
+    int n = (int) Math.min(this.numSlots, this.seen.get());
+    int count = 0;
+    byte[][] samples = new byte[n][];
+    for (int i = 0; i < n; i++) {
+      long ptr = this.memory + (long) i * this.slotSize;
+      int len = UnsafeAccess.toInt(ptr);
+      if (len == 0) {
+        // Slot was locked by a concurrent writer when it was selected first time
+        continue;
+      }
+      byte[] b = new byte[len];
+      UnsafeAccess.copy(ptr + Utils.SIZEOF_INT, b, 0, len);
+      samples[count++] = b;
+    }
+    if (count < n) {
+      byte[][] tmp = new byte[count][];
+      System.arraycopy(samples, 0, tmp, 0, count);
+      samples = tmp;
+    }
+    return samples;
+  }
+
+  /**
+   * Releases memory, reservoir stops accepting samples
+   */
+  public synchronized void dispose() {
+    if (this.disposed) {
+      return;
+    }
+    this.frozen = true;
+    while (this.writers.get() > 0) {
+      Thread.onSpinWait();
+    }
+    this.disposed = true;
+    UnsafeAccess.free(this.memory);
+  }
+
+  /**
+   * Get number of slots
+   * @return number of slots
+   */
+  public int getNumberOfSlots() {
+    return this.numSlots;
+  }
+
+  /**
+   * Get total number of offered samples
+   * @return number of samples
+   */
+  public long getSeen() {
+    return this.seen.get();
+  }
+
+  /**
+   * Get allocated memory
+   * @return allocated memory
+   */
+  public long getAllocatedMemory() {
+    return (long) this.numSlots * this.slotSize;
+  }
+}
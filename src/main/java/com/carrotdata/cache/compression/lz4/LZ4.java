@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression.lz4;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * Pure Java implementation of the LZ4 block format. All routines address memory as (base, offset)
+ * pairs: base is null for off-heap memory (offset is an absolute address) or a byte array (offset
+ * is relative to {@link UnsafeAccess#BYTE_ARRAY_BASE_OFFSET}), so the same code works directly on
+ * off - heap segments and on heap buffers without any JNI calls.
+ * <p>
+ * Compressor is a greedy single - probe hash matcher (equivalent of LZ4 "fast" mode with
+ * acceleration 1). Output is compatible with the reference LZ4 block decoder.
+ */
+public final class LZ4 {
+
+  static final int MIN_MATCH = 4;
+
+  /* Last 5 bytes are always literals */
+  static final int LAST_LITERALS = 5;
+
+  /* Last match must start at least 12 bytes before end of a block */
+  static final int MFLIMIT = 12;
+
+  static final int MAX_DISTANCE = 0xffff;
+
+  static final int HASH_LOG = 12;
+
+  /** Size of a hash table required by the compressor */
+  public static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+
+  /* Search step increases every 2^SKIP_TRIGGER failed probes */
+  static final int SKIP_TRIGGER = 6;
+
+  private static final int ML_MASK = 0xf;
+
+  private static final int RUN_MASK = 0xf;
+
+  private static final boolean littleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+  private LZ4() {
+  }
+
+  /**
+   * Maximum compressed size for a given input size (worst case - incompressible data)
+   * @param len input size
+   * @return maximum compressed size
+   */
+  public static int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  private static int hash(int v) {
+    return (v * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  /**
+   * Compress block of data
+   * @param src source base (null for off - heap)
+   * @param srcOff source offset (address)
+   * @param srcLen source length
+   * @param dst destination base (null for off - heap)
+   * @param dstOff destination offset (address), destination must be able to accommodate
+   *          {@link #maxCompressedLength(int)} bytes
+   * @param table hash table of {@link #HASH_TABLE_SIZE} entries
+   * @return compressed size
+   */
+  public static int compress(Object src, long srcOff, int srcLen, Object dst, long dstOff,
+      int[] table) {
+    long op = dstOff;
+    int anchor = 0;
+    if (srcLen > MFLIMIT) {
+      Arrays.fill(table, -1);
+      final int limit = srcLen - MFLIMIT;
+      final long matchLimit = srcOff + srcLen - LAST_LITERALS;
+      int ip = 0;
+      int searchCount = 1 << SKIP_TRIGGER;
+      while (ip < limit) {
+        int seq = UnsafeAccess.toIntNative(src, srcOff + ip);
+        int h = hash(seq);
+        int ref = table[h];
+        table[h] = ip;
+        if (ref < 0 || ip - ref > MAX_DISTANCE
+            || UnsafeAccess.toIntNative(src, srcOff + ref) != seq) {
+          ip += searchCount++ >>> SKIP_TRIGGER;
+          continue;
+        }
+        searchCount = 1 << SKIP_TRIGGER;
+        // Extend match backwards
+        while (ip > anchor && ref > 0 && UnsafeAccess.toByte(src, srcOff + ip - 1)
+            == UnsafeAccess.toByte(src, srcOff + ref - 1)) {
+          ip--;
+          ref--;
+        }
+        int matchLen = MIN_MATCH
+            + matchLength(src, srcOff + ip + MIN_MATCH, srcOff + ref + MIN_MATCH, matchLimit);
+        op = writeSequence(src, srcOff + anchor, ip - anchor, ip - ref, matchLen, dst, op);
+        ip += matchLen;
+        anchor = ip;
+        if (ip < limit) {
+          int p = ip - 2;
+          table[hash(UnsafeAccess.toIntNative(src, srcOff + p))] = p;
+        }
+      }
+    }
+    op = writeLastLiterals(src, srcOff + anchor, srcLen - anchor, dst, op);
+    return (int) (op - dstOff);
+  }
+
+  private static int matchLength(Object base, long a, long b, long limit) {
+    final long start = a;
+    while (a <= limit - 8) {
+      long diff = UnsafeAccess.toLongNative(base, a) ^ UnsafeAccess.toLongNative(base, b);
+      if (diff != 0) {
+        int bits =
+            littleEndian ? Long.numberOfTrailingZeros(diff) : Long.numberOfLeadingZeros(diff);
+        return (int) (a - start) + (bits >>> 3);
+      }
+      a += 8;
+      b += 8;
+    }
+    while (a < limit && UnsafeAccess.toByte(base, a) == UnsafeAccess.toByte(base, b)) {
+      a++;
+      b++;
+    }
+    return (int) (a - start);
+  }
+
+  private static long writeSequence(Object src, long lit, int litLen, int offset, int matchLen,
+      Object dst, long op) {
+    final long token = op++;
+    int ml = matchLen - MIN_MATCH;
+    int t = (Math.min(litLen, RUN_MASK) << 4) | Math.min(ml, ML_MASK);
+    UnsafeAccess.putByte(dst, token, (byte) t);
+    if (litLen >= RUN_MASK) {
+      op = writeLength(dst, op, litLen - RUN_MASK);
+    }
+    UnsafeAccess.copy(src, lit, dst, op, litLen);
+    op += litLen;
+    UnsafeAccess.putByte(dst, op++, (byte) offset);
+    UnsafeAccess.putByte(dst, op++, (byte) (offset >>> 8));
+    if (ml >= ML_MASK) {
+      op = writeLength(dst, op, ml - ML_MASK);
+    }
+    return op;
+  }
+
+  private static long writeLastLiterals(Object src, long lit, int litLen, Object dst, long op) {
+    UnsafeAccess.putByte(dst, op++, (byte) (Math.min(litLen, RUN_MASK) << 4));
+    if (litLen >= RUN_MASK) {
+      op = writeLength(dst, op, litLen - RUN_MASK);
+    }
+    UnsafeAccess.copy(src, lit, dst, op, litLen);
+    return op + litLen;
+  }
+
+  private static long writeLength(Object dst, long op, int len) {
+    while (len >= 255) {
+      UnsafeAccess.putByte(dst, op++, (byte) 255);
+      len -= 255;
+    }
+    UnsafeAccess.putByte(dst, op++, (byte) len);
+    return op;
+  }
+
+  /**
+   * Decompress block of data. All reads and writes are bounds checked, malformed input results in
+   * a negative return value.
+   * @param src source base (null for off - heap)
+   * @param srcOff source offset (address)
+   * @param srcLen compressed size
+   * @param dst destination base (null for off - heap)
+   * @param dstOff destination offset (address)
+   * @param dstCapacity destination capacity
+   * @return decompressed size or -1 if input is malformed or destination is too small
+   */
+  public static int decompress(Object src, long srcOff, int srcLen, Object dst, long dstOff,
+      int dstCapacity) {
+    long ip = srcOff;
+    final long srcEnd = srcOff + srcLen;
+    long op = dstOff;
+    final long dstEnd = dstOff + dstCapacity;
+    while (ip < srcEnd) {
+      int token = UnsafeAccess.toByte(src, ip++) & 0xff;
+      int litLen = token >>> 4;
+      if (litLen == RUN_MASK) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            return -1;
+          }
+          b = UnsafeAccess.toByte(src, ip++) & 0xff;
+          litLen += b;
+        } while (b == 255);
+      }
+      if (litLen > srcEnd - ip || litLen > dstEnd - op) {
+        return -1;
+      }
+      UnsafeAccess.copy(src, ip, dst, op, litLen);
+      ip += litLen;
+      op += litLen;
+      if (ip == srcEnd) {
+        // Last sequence has no match part
+        break;
+      }
+      if (srcEnd - ip < 2) {
+        return -1;
+      }
+      int offset =
+          (UnsafeAccess.toByte(src, ip) & 0xff) | ((UnsafeAccess.toByte(src, ip + 1) & 0xff) << 8);
+      ip += 2;
+      if (offset == 0 || offset > op - dstOff) {
+        return -1;
+      }
+      int matchLen = token & ML_MASK;
+      if (matchLen == ML_MASK) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            return -1;
+          }
+          b = UnsafeAccess.toByte(src, ip++) & 0xff;
+          matchLen += b;
+        } while (b == 255);
+      }
+      matchLen += MIN_MATCH;
+      if (matchLen > dstEnd - op) {
+        return -1;
+      }
+      copyMatch(dst, op, offset, matchLen);
+      op += matchLen;
+    }
+    return (int) (op - dstOff);
+  }
+
+  private static void copyMatch(Object dst, long op, int offset, int matchLen) {
+    final long ref = op - offset;
+    if (offset >= matchLen) {
+      UnsafeAccess.copy(dst, ref, dst, op, matchLen);
+    } else if (offset >= 8) {
+      // Overlapping match: copy in chunks which do not overlap with a source
+      int done = 0;
+      while (done < matchLen) {
+        int n = Math.min(offset, matchLen - done);
+        UnsafeAccess.copy(dst, ref + done, dst, op + done, n);
+        done += n;
+      }
+    } else {
+      for (int i = 0; i < matchLen; i++) {
+        UnsafeAccess.putByte(dst, op + i, UnsafeAccess.toByte(dst, ref + i));
+      }
+    }
+  }
+}
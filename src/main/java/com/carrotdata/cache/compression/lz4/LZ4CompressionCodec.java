@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression.lz4;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.compression.CompressibilityEstimator;
+import com.carrotdata.cache.compression.CompressionCodec;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * LZ4 compression codec (pure Java, see {@link LZ4}). Trades compression ratio for a much faster
+ * compression and decompression compared to ZSTD. Dictionaries are not supported: dictionary id
+ * passed to compress/decompress is ignored and codec never requires training. Uses thread - local
+ * buffers, the same invariant as for ZSTD codec applies: TLS must be enabled, see
+ * CacheConfig::isCacheTLSSupported
+ */
+public class LZ4CompressionCodec implements CompressionCodec {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(LZ4CompressionCodec.class);
+
+  private static int INIT_BUFFER_SIZE = 1 << 16;
+
+  static {
+    INIT_BUFFER_SIZE = CacheConfig.getInstance().getCacheTLSInitialBufferSize(null);
+  }
+
+  private static ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[INIT_BUFFER_SIZE];
+    }
+  };
+
+  private static ThreadLocal<int[]> hashTables = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[LZ4.HASH_TABLE_SIZE];
+    }
+  };
+
+  /**
+   * Cache name
+   */
+  private String cacheName;
+
+  /**
+   * Codec statistics
+   */
+  private Stats stats = new Stats(0, 0, Type.LZ4);
+
+  /**
+   * Compression bypass estimator (null - disabled)
+   */
+  private CompressibilityEstimator estimator;
+
+  @Override
+  public void init(String cacheName) throws IOException {
+    this.cacheName = cacheName;
+    CacheConfig config = CacheConfig.getInstance();
+    if (config.isCacheCompressionBypassEnabled(cacheName)) {
+      this.estimator = new CompressibilityEstimator(
+          config.getCacheCompressionBypassEntropyThreshold(cacheName), this.stats);
+    }
+    LOG.debug("Initialized LZ4 codec for cache [{}]", cacheName);
+  }
+
+  private byte[] getBuffer(int required) {
+    byte[] buf = buffers.get();
+    if (buf.length < required) {
+      buf = new byte[required];
+      buffers.set(buf);
+    }
+    return buf;
+  }
+
+  @Override
+  public int compress(long ptr, int len, int dictId) {
+    if (this.estimator != null && !this.estimator.isCompressible(ptr, len)) {
+      // store uncompressed
+      return len;
+    }
+    byte[] buf = getBuffer(LZ4.maxCompressedLength(len));
+    long startTime = System.nanoTime();
+    int compressedSize =
+        LZ4.compress(null, ptr, len, buf, UnsafeAccess.BYTE_ARRAY_BASE_OFFSET, hashTables.get());
+    long endTime = System.nanoTime();
+    if (compressedSize >= len) {
+      // do not copy
+      this.stats.recordIncompressible(len, endTime - startTime);
+      return compressedSize;
+    }
+    UnsafeAccess.copy(buf, 0, ptr, compressedSize);
+    this.stats.getCompressedRaw().addAndGet(len);
+    this.stats.getCompressed().addAndGet(compressedSize);
+    this.stats.getCompressionTime().addAndGet(endTime - startTime);
+    return compressedSize;
+  }
+
+  @Override
+  public int compress(long ptr, int len, int dictId, long buffer, int bufferSize) {
+    if (this.estimator != null && !this.estimator.isCompressible(ptr, len)) {
+      // store uncompressed
+      return len;
+    }
+    long startTime = System.nanoTime();
+    int compressedSize;
+    if (bufferSize >= LZ4.maxCompressedLength(len)) {
+      compressedSize = LZ4.compress(null, ptr, len, null, buffer, hashTables.get());
+    } else {
+      byte[] buf = getBuffer(LZ4.maxCompressedLength(len));
+      compressedSize =
+          LZ4.compress(null, ptr, len, buf, UnsafeAccess.BYTE_ARRAY_BASE_OFFSET, hashTables.get());
+      if (compressedSize > bufferSize) {
+        // Does not fit: report as not compressible
+        this.stats.recordIncompressible(len, System.nanoTime() - startTime);
+        return len;
+      }
+      UnsafeAccess.copy(buf, 0, buffer, compressedSize);
+    }
+    long endTime = System.nanoTime();
+    if (compressedSize >= len) {
+      this.stats.recordIncompressible(len, endTime - startTime);
+      return compressedSize;
+    }
+    this.stats.getCompressedRaw().addAndGet(len);
+    this.stats.getCompressed().addAndGet(compressedSize);
+    this.stats.getCompressionTime().addAndGet(endTime - startTime);
+    return compressedSize;
+  }
+
+  @Override
+  public int decompress(long ptr, int size, byte[] buffer, int dictId) {
+    long startTime = System.nanoTime();
+    int decompressedSize = LZ4.decompress(null, ptr, size, buffer,
+      UnsafeAccess.BYTE_ARRAY_BASE_OFFSET, buffer.length);
+    if (decompressedSize < 0) {
+      return 0; // failed
+    }
+    long endTime = System.nanoTime();
+    updateDecompressionStats(size, decompressedSize, endTime - startTime);
+    return decompressedSize;
+  }
+
+  @Override
+  public int decompress(long ptr, int size, long buffer, int bufferSize, int dictId) {
+    long startTime = System.nanoTime();
+    int decompressedSize = LZ4.decompress(null, ptr, size, null, buffer, bufferSize);
+    if (decompressedSize < 0) {
+      return 0; // failed
+    }
+    long endTime = System.nanoTime();
+    updateDecompressionStats(size, decompressedSize, endTime - startTime);
+    return decompressedSize;
+  }
+
+  @Override
+  public int decompress(byte[] src, int srcOffset, int srcSize, byte[] buffer, int dictId) {
+    if (srcOffset < 0 || srcSize < 0 || srcOffset + srcSize > src.length) {
+      return 0;
+    }
+    long startTime = System.nanoTime();
+    int decompressedSize =
+        LZ4.decompress(src, UnsafeAccess.BYTE_ARRAY_BASE_OFFSET + srcOffset, srcSize, buffer,
+          UnsafeAccess.BYTE_ARRAY_BASE_OFFSET, buffer.length);
+    if (decompressedSize < 0) {
+      return 0; // failed
+    }
+    long endTime = System.nanoTime();
+    updateDecompressionStats(srcSize, decompressedSize, endTime - startTime);
+    return decompressedSize;
+  }
+
+  private void updateDecompressionStats(int size, int decompressedSize, long time) {
+    this.stats.getDecompressedRaw().addAndGet(decompressedSize);
+    this.stats.getDecompressed().addAndGet(size);
+    this.stats.getDecompressionTime().addAndGet(time);
+  }
+
+  @Override
+  public boolean supportDictionary() {
+    return false;
+  }
+
+  @Override
+  public Type getCodecType() {
+    return Type.LZ4;
+  }
+
+  @Override
+  public boolean isTrainingRequired() {
+    return false;
+  }
+
+  @Override
+  public void addTrainingData(byte[]... data) {
+    // Dictionaries are not supported
+  }
+
+  @Override
+  public void addTrainingData(byte[] data, int off, int len) {
+    // Dictionaries are not supported
+  }
+
+  @Override
+  public void addTrainingData(long ptr, int size) {
+    // Dictionaries are not supported
+  }
+
+  @Override
+  public int getRecommendedTrainingDataSize() {
+    return 0;
+  }
+
+  @Override
+  public Stats getStats() {
+    return this.stats;
+  }
+
+  /**
+   * Get cache name
+   * @return cache name
+   */
+  public String getCacheName() {
+    return this.cacheName;
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    this.stats.save(os);
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    this.stats.load(is);
+  }
+}
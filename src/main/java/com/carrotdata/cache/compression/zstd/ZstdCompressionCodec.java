@@ -26,13 +26,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +44,10 @@ import com.github.luben.zstd.ZstdDecompressCtx;
 import com.github.luben.zstd.ZstdDictCompress;
 import com.github.luben.zstd.ZstdDictDecompress;
 import com.github.luben.zstd.ZstdDictTrainer;
+import com.carrotdata.cache.compression.CompressibilityEstimator;
 import com.carrotdata.cache.compression.CompressionCodec;
+import com.carrotdata.cache.compression.KeyClassifier;
+import com.carrotdata.cache.compression.SampleReservoir;
 import com.carrotdata.cache.util.CacheConfig;
 import com.carrotdata.cache.util.UnsafeAccess;
 import com.carrotdata.cache.util.Utils;
@@ -51,6 +56,11 @@ import com.carrotdata.cache.util.Utils;
  * This class is a singleton for each cache instance, with each cache having its own codec. It makes
  * extensive use of thread-local storage objects and, as a result, necessitates a fixed thread pool
  * within the application. Invariant: TLS is enabled, see CacheConfig::isCacheTLSSupported
+ * <p>
+ * Dictionaries are trained separately for every key class (see {@link KeyClassifier}): each class
+ * has its own training data, sequence of dictionary versions and compression ratio tracking.
+ * Dictionary versions are allocated from one sequence, so a version found in a block header
+ * identifies the dictionary regardless of the class.
  */
 public class ZstdCompressionCodec implements CompressionCodec {
   /** Logger */
@@ -127,6 +137,78 @@ public class ZstdCompressionCodec implements CompressionCodec {
     decompContextMap.set(new HashMap<String, HashMap<Integer, ZstdDecompressCtx>>());
   }
 
+  /**
+   * Dictionary training state of a key class
+   */
+  final class KeyClassState {
+
+    /* Key class */
+    final int keyClass;
+
+    /* Current dictionary version of the class (0 - no dictionary) */
+    volatile int currentDictVersion;
+
+    /* Dictionary versions of the class, oldest first */
+    final List<Integer> versions = new ArrayList<Integer>();
+
+    /* Training session (collection or training itself) is in progress */
+    final AtomicBoolean trainingInProgress = new AtomicBoolean(false);
+
+    /* Training samples, not null - samples are being collected */
+    final AtomicReference<SampleReservoir> reservoir = new AtomicReference<SampleReservoir>();
+
+    /* Last training finish time */
+    volatile long lastTrainFinishedTime;
+
+    /* Maximum compression ratio (moving) */
+    volatile double maxCompressionRatio = 1.0d;
+
+    /* Raw data size */
+    final AtomicLong rawDataSize = new AtomicLong();
+
+    /* Compressed data size */
+    final AtomicLong compDataSize = new AtomicLong();
+
+    KeyClassState(int keyClass) {
+      this.keyClass = keyClass;
+    }
+
+    void update(int len, int compressedSize) {
+      rawDataSize.addAndGet(len);
+      compDataSize.addAndGet(compressedSize);
+      double raw = rawDataSize.get();
+      if (raw < 1_000_000) return;
+      double compressed = compDataSize.get();
+      double r = raw / compressed;
+      if (r > maxCompressionRatio) {
+        maxCompressionRatio = r;
+      }
+    }
+
+    double getCompRatio() {
+      double raw = rawDataSize.get();
+      if (raw < 1_000_000) return 1.d;
+      double compressed = compDataSize.get();
+      double r = raw / compressed;
+      return r;
+    }
+
+    /**
+     * Dictionary is retired if the class has at least maximum number of newer dictionaries
+     * @param id dictionary version
+     * @return true or false
+     */
+    synchronized boolean isRetired(int id) {
+      int index = versions.indexOf(id);
+      return index >= 0 && versions.size() - index > maxDictionaries;
+    }
+
+    synchronized void addVersion(int id) {
+      versions.add(id);
+      currentDictVersion = id;
+    }
+  }
+
   /**
    * Cache name
    */
@@ -141,22 +223,14 @@ public class ZstdCompressionCodec implements CompressionCodec {
   /* Dictionary enabled */
   private boolean dictionaryEnabled;
 
-  /* Current dictionary level (maximum) */
-  private volatile int currentDictVersion;
-
-  /* Training in progress */
-  private AtomicBoolean trainingInProgress = new AtomicBoolean(false);
-
-  /**
-   * Finalizing training
-   */
-  private AtomicBoolean finalizingTraining = new AtomicBoolean(false);
+  /* Maximum dictionary version across all key classes */
+  private int maxDictVersion;
 
-  /* Current size of a training data */
-  private AtomicInteger trainingDataSize;
+  /* Key class states */
+  private KeyClassState[] classes = new KeyClassState[] { new KeyClassState(0) };
 
-  /* List of data pointers for training */
-  private ConcurrentLinkedQueue<Long> trainingData;
+  /* Dictionary version -> key class state */
+  private Map<Integer, KeyClassState> dictOwners = new ConcurrentHashMap<Integer, KeyClassState>();
 
   /* Is dictionary training in async mode */
   private boolean trainingAsync;
@@ -170,20 +244,8 @@ public class ZstdCompressionCodec implements CompressionCodec {
   /** Retraining trigger value */
   private double retrainTriggerValue;
   
-  /** Last training finish time */
-  private long lastTrainFinishedTime;
-  
   private boolean adaptiveMode;
   
-  /** Maximum compression ratio (moving)*/
-  private volatile double maxCompressionRatio = 1.0d;
-  
-  /** Raw data size */
-  private AtomicLong rawDataSize = new AtomicLong();
-  
-  /** Compressed data size */
-  private AtomicLong compDataSize = new AtomicLong();
-  
   private int maxDictionaries;
   
   /**
@@ -191,8 +253,30 @@ public class ZstdCompressionCodec implements CompressionCodec {
    */
   private Stats stats;
 
+  /**
+   * Compression bypass estimator (null - disabled)
+   */
+  private CompressibilityEstimator estimator;
+
+  private KeyClassState getKeyClassState(int keyClass) {
+    KeyClassState[] cls = this.classes;
+    return keyClass >= 0 && keyClass < cls.length ? cls[keyClass] : cls[0];
+  }
+
+  private void updateCompressionRatio(int dictId, int len, int compressedSize) {
+    // Blocks compressed without dictionary are not tracked
+    KeyClassState cls = dictId > 0 ? this.dictOwners.get(dictId) : null;
+    if (cls != null) {
+      cls.update(len, compressedSize);
+    }
+  }
+
   @Override
   public int compress(long ptr, int len, int dictId) {
+    if (this.estimator != null && !this.estimator.isCompressible(ptr, len)) {
+      // store uncompressed
+      return len;
+    }
     byte[] buf = getBuffer(len);
     ZstdCompressCtx currentCtx = getCompressContext(dictId);
 
@@ -200,11 +284,10 @@ public class ZstdCompressionCodec implements CompressionCodec {
     int compressedSize = currentCtx.compressNativeByteArray(buf, 0, buf.length, ptr, len);
     long endTime = System.nanoTime();
 
-    rawDataSize.addAndGet(len);
-    compDataSize.addAndGet(compressedSize);
-    updateMaxCompression();
+    updateCompressionRatio(dictId, len, compressedSize);
     if (compressedSize >= len) {
       // do not copy
+      this.stats.recordIncompressible(len, endTime - startTime);
       return compressedSize;
     }
     UnsafeAccess.copy(buf, 0, ptr, compressedSize);
@@ -217,14 +300,20 @@ public class ZstdCompressionCodec implements CompressionCodec {
 
   @Override
   public int compress(long ptr, int len, int dictId, long buffer, int bufferSize) {
+    if (this.estimator != null && !this.estimator.isCompressible(ptr, len)) {
+      // store uncompressed
+      return len;
+    }
     // sanity check?
     ZstdCompressCtx currentCtx = getCompressContext(dictId);
     long startTime = System.nanoTime();
     int compressedSize = currentCtx.compressNativeNative(buffer, bufferSize, ptr, len);
     long endTime = System.nanoTime();
-    rawDataSize.addAndGet(len);
-    compDataSize.addAndGet(compressedSize);
-    updateMaxCompression();
+    updateCompressionRatio(dictId, len, compressedSize);
+    if (compressedSize >= len) {
+      this.stats.recordIncompressible(len, endTime - startTime);
+      return compressedSize;
+    }
     this.stats.getCompressedRaw().addAndGet(len);
     this.stats.getCompressed().addAndGet(compressedSize);
     this.stats.getCompressionTime().addAndGet(endTime - startTime);
@@ -232,25 +321,6 @@ public class ZstdCompressionCodec implements CompressionCodec {
     return compressedSize;
   }
 
-  
-  private void updateMaxCompression() {
-    double raw = rawDataSize.get();
-    if (raw < 1_000_000) return;
-    double compressed = compDataSize.get();
-    double r = raw / compressed;
-    if (r > maxCompressionRatio) {
-      maxCompressionRatio = r;
-    }
-  }
-  
-  private double getCompRatio() {
-    double raw = rawDataSize.get();
-    if (raw < 1_000_000) return 1.d;
-    double compressed = compDataSize.get();
-    double r = raw / compressed;
-    return r;
-  }
-  
   private ZstdCompressCtx getCompressContext(int dictId) {
     // compression context using current dictionary id
     HashMap<Integer, ZstdCompressCtx> ctxMap = compContextMap.get().get(this.cacheName);
@@ -261,6 +331,9 @@ public class ZstdCompressionCodec implements CompressionCodec {
       Map<Integer, byte[]> dictMap = dictCacheMap.get(this.cacheName);
       if (dictMap != null) {
         for (Map.Entry<Integer, byte[]> e : dictMap.entrySet()) {
+          if (isRetired(e.getKey())) {
+            continue;
+          }
           ZstdDictCompress dictCompress = new ZstdDictCompress(e.getValue(), this.compLevel);
           ZstdCompressCtx compContext = new ZstdCompressCtx();
           compContext.loadDict(dictCompress);
@@ -268,7 +341,7 @@ public class ZstdCompressionCodec implements CompressionCodec {
           ctxMap.put(e.getKey(), compContext);
         }
       } else {
-        dictCacheMap.putIfAbsent(cacheName, new HashMap<Integer, byte[]>());
+        dictCacheMap.putIfAbsent(cacheName, new ConcurrentHashMap<Integer, byte[]>());
       }
       compContextMap.get().put(this.cacheName, ctxMap);
       // Initialize dictionary id = 0 (no dictionary)
@@ -289,43 +362,80 @@ public class ZstdCompressionCodec implements CompressionCodec {
     return currentCtxt;
   }
 
+  /**
+   * Dictionary is retired if its key class has at least maximum number of newer dictionaries
+   * (or it was deleted). Contexts of retired dictionaries are released.
+   * @param id dictionary version
+   * @return true or false
+   */
+  private boolean isRetired(int id) {
+    if (id == 0) {
+      return false;
+    }
+    KeyClassState cls = this.dictOwners.get(id);
+    if (cls == null) {
+      Map<Integer, byte[]> dictMap = dictCacheMap.get(this.cacheName);
+      return dictMap == null || !dictMap.containsKey(id);
+    }
+    return cls.isRetired(id);
+  }
+
   private void checkCleanupCompContexts(HashMap<Integer, ZstdCompressCtx> ctxMap) {
-    if (ctxMap == null || ctxMap.size() < this.maxDictionaries) {
+    if (ctxMap == null || ctxMap.size() < this.maxDictionaries * this.classes.length) {
       return;
     }
-    int startId = this.currentDictVersion - this.maxDictionaries;
-    for(int id = startId; id >= 0; id--) {
-      ZstdCompressCtx ctx = ctxMap.get(id);
-      if (ctx != null) {
-        ctx.close();
-        ctxMap.remove(id);
-        LOG.trace("Deleted compression context object for {}", id);
-      } else {
-        break;
+    Iterator<Map.Entry<Integer, ZstdCompressCtx>> it = ctxMap.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Integer, ZstdCompressCtx> e = it.next();
+      if (isRetired(e.getKey())) {
+        e.getValue().close();
+        it.remove();
+        LOG.trace("Deleted compression context object for {}", e.getKey());
       }
     }
   }
   
   private void checkCleanupDecompContexts(HashMap<Integer, ZstdDecompressCtx> ctxMap) {
-    if (ctxMap == null || ctxMap.size() < this.maxDictionaries) {
+    if (ctxMap == null || ctxMap.size() < this.maxDictionaries * this.classes.length) {
       return;
     }
-    int startId = this.currentDictVersion - this.maxDictionaries;
-    for(int id = startId; id >= 0; id--) {
-      ZstdDecompressCtx ctx = ctxMap.get(id);
-      if (ctx != null) {
-        ctx.close();
-        ctxMap.remove(id);
-        LOG.trace("Deleted decompression context object for {}", id);
-      } else {
-        break;
+    Iterator<Map.Entry<Integer, ZstdDecompressCtx>> it = ctxMap.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Integer, ZstdDecompressCtx> e = it.next();
+      if (isRetired(e.getKey())) {
+        e.getValue().close();
+        it.remove();
+        LOG.trace("Deleted decompression context object for {}", e.getKey());
       }
     }
   }
   
   @Override
   public int getCurrentDictionaryVersion() {
-    return this.currentDictVersion;
+    return this.classes[0].currentDictVersion;
+  }
+
+  @Override
+  public int getCurrentDictionaryVersion(int keyClass) {
+    return getKeyClassState(keyClass).currentDictVersion;
+  }
+
+  /**
+   * Get number of key classes
+   * @return number of classes
+   */
+  public int getNumberOfKeyClasses() {
+    return this.classes.length;
+  }
+
+  /**
+   * Get compression ratio of blocks compressed with dictionaries of a key class since the last
+   * training of the class
+   * @param keyClass key class
+   * @return compression ratio (1.0 - not enough data)
+   */
+  public double getCompressionRatio(int keyClass) {
+    return getKeyClassState(keyClass).getCompRatio();
   }
 
   private ZstdDecompressCtx getDecompressContext(int dictId) {
@@ -338,13 +448,16 @@ public class ZstdCompressionCodec implements CompressionCodec {
       Map<Integer, byte[]> dictMap = dictCacheMap.get(this.cacheName);
       if (dictMap != null) {
         for (Map.Entry<Integer, byte[]> e : dictMap.entrySet()) {
+          if (isRetired(e.getKey())) {
+            continue;
+          }
           ZstdDictDecompress dictDecompress = new ZstdDictDecompress(e.getValue());
           ZstdDecompressCtx decompContext = new ZstdDecompressCtx();
           decompContext.loadDict(dictDecompress);
           ctxMap.put(e.getKey(), decompContext);
         }
       } else {
-        dictCacheMap.putIfAbsent(cacheName, new HashMap<Integer, byte[]>());
+        dictCacheMap.putIfAbsent(cacheName, new ConcurrentHashMap<Integer, byte[]>());
       }
       decompContextMap.get().put(this.cacheName, ctxMap);
       // Initialize dictionary id = 0 (no dictionary)
@@ -362,7 +475,7 @@ public class ZstdCompressionCodec implements CompressionCodec {
       ZstdDictDecompress dictCompress = new ZstdDictDecompress(dict);
       currentCtxt = new ZstdDecompressCtx();
       currentCtxt.loadDict(dictCompress);
-      ctxMap.put(this.currentDictVersion, currentCtxt);
+      ctxMap.put(dictId, currentCtxt);
     }
     return currentCtxt;
   }
@@ -443,9 +556,18 @@ public class ZstdCompressionCodec implements CompressionCodec {
     this.retrainTriggerValue = config.getCompressionRetrainTriggerValue(cacheName);
     this.adaptiveMode = config.isAdaptiveCompressionEnabled(cacheName);
     this.maxDictionaries = config.getCompressionMaxDictionaries(cacheName);
+    int numClasses = KeyClassifier.fromConfig(cacheName).getNumberOfClasses();
+    this.classes = new KeyClassState[numClasses];
+    for (int i = 0; i < numClasses; i++) {
+      this.classes[i] = new KeyClassState(i);
+    }
     String dictDir = config.getCacheDictionaryDir(cacheName);
     File dir = new File(dictDir);
     this.stats = new Stats(compLevel, dictSize, Type.ZSTD);
+    if (config.isCacheCompressionBypassEnabled(cacheName)) {
+      this.estimator = new CompressibilityEstimator(
+          config.getCacheCompressionBypassEntropyThreshold(cacheName), this.stats);
+    }
     if (!dir.exists()) {
       boolean result = dir.mkdirs();
       // nothing to load
@@ -473,14 +595,22 @@ public class ZstdCompressionCodec implements CompressionCodec {
     return id;
   }
 
+  private int getKeyClassFromName(String name) {
+    // dict.<id> (default class) or dict.<id>.<class>
+    String[] parts = name.split("\\.");
+    return parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+  }
+
   private void loadDictionaries(File dir) throws IOException {
     if (!this.persistentDicts) {
       return;
     }
     int maxId = 0;
-    HashMap<Integer, byte[]> map = new HashMap<Integer, byte[]>();
+    Map<Integer, byte[]> map = new ConcurrentHashMap<Integer, byte[]>();
     dictCacheMap.put(cacheName, map);
     File[] list = dir.listFiles();
+    List<Integer> ids = new ArrayList<Integer>();
+    Map<Integer, Integer> idClasses = new HashMap<Integer, Integer>();
     for (File f : list) {
       byte[] data = Files.readAllBytes(Path.of(f.toURI()));
       String name = f.getName();
@@ -489,37 +619,54 @@ public class ZstdCompressionCodec implements CompressionCodec {
         maxId = id;
       }
       map.put(id, data);
+      ids.add(id);
+      idClasses.put(id, getKeyClassFromName(name));
+    }
+    ids.sort(null);
+    for (int id : ids) {
+      int keyClass = idClasses.get(id);
+      if (keyClass >= this.classes.length) {
+        // Key classes were reconfigured: dictionary is kept for decompression only
+        continue;
+      }
+      KeyClassState cls = this.classes[keyClass];
+      cls.addVersion(id);
+      this.dictOwners.put(id, cls);
     }
-    this.currentDictVersion = maxId;
+    this.maxDictVersion = maxId;
   }
 
-  private void saveDictionary(int id, byte[] data) throws IOException {
+  private void saveDictionary(int keyClass, int id, byte[] data) throws IOException {
     if (!this.persistentDicts) {
       return;
     }
     CacheConfig config = CacheConfig.getInstance();
     String dictDir = config.getCacheDictionaryDir(cacheName);
     File dir = new File(dictDir);
-    String name = makeDictFileName(id);
+    String name = makeDictFileName(keyClass, id);
     File dictFile = new File(dir, name);
     FileOutputStream fos = new FileOutputStream(dictFile);
     fos.write(data);
     fos.close();
   }
   
-  private void checkMaxDictionaries() throws IOException {
+  private void checkMaxDictionaries(KeyClassState cls) throws IOException {
+    if (!this.persistentDicts) {
+      return;
+    }
     CacheConfig config = CacheConfig.getInstance();
     String dictDir = config.getCacheDictionaryDir(cacheName);
     File dir = new File(dictDir);
-    File[] files = dir.listFiles();
     Map<Integer, byte[]> dictMap = dictCacheMap.get(this.cacheName);
-    if (files.length > this.maxDictionaries) {
-      int startId = this.currentDictVersion - this.maxDictionaries;
-      for (int id = startId; id >=0; id--) {
-        String name = makeDictFileName(id);
+    synchronized (cls) {
+      while (cls.versions.size() > this.maxDictionaries) {
+        int id = cls.versions.get(0);
+        String name = makeDictFileName(cls.keyClass, id);
         File dictFile = new File(dir, name);
         if (dictFile.delete()) {
           dictMap.remove(id);
+          this.dictOwners.remove(id);
+          cls.versions.remove(0);
           LOG.debug("Deleted dictionary file {}", name);
         } else {
           break;
@@ -528,8 +675,8 @@ public class ZstdCompressionCodec implements CompressionCodec {
     }
   }
   
-  private String makeDictFileName(int id) {
-    return "dict." + id;
+  private String makeDictFileName(int keyClass, int id) {
+    return keyClass == 0 ? "dict." + id : "dict." + id + "." + keyClass;
   }
 
   private void initCompContext(int id, byte[] dict) {
@@ -569,82 +716,92 @@ public class ZstdCompressionCodec implements CompressionCodec {
   public void save(OutputStream os) throws IOException {
     stats.save(os);
     DataOutputStream dos = Utils.toDataOutputStream(os);
-    dos.writeLong(lastTrainFinishedTime);
-    dos.writeDouble(maxCompressionRatio);
+    dos.writeInt(this.classes.length);
+    for (KeyClassState cls : this.classes) {
+      dos.writeLong(cls.lastTrainFinishedTime);
+      dos.writeDouble(cls.maxCompressionRatio);
+    }
   }
 
   @Override
   public void load(InputStream is) throws IOException {
     stats.load(is);
     DataInputStream dis = Utils.toDataInputStream(is);
-    this.lastTrainFinishedTime = dis.readLong();
-    this.maxCompressionRatio = dis.readDouble();
+    int n = dis.readInt();
+    for (int i = 0; i < n; i++) {
+      long lastTrainFinishedTime = dis.readLong();
+      double maxCompressionRatio = dis.readDouble();
+      if (i < this.classes.length) {
+        this.classes[i].lastTrainFinishedTime = lastTrainFinishedTime;
+        this.classes[i].maxCompressionRatio = maxCompressionRatio;
+      }
+    }
   }
 
-  private synchronized void startTraining() {
-    if (this.trainingInProgress.get()) return;
-    boolean success = this.trainingInProgress.compareAndSet(false, true);
-    if (!success) {
+  private void startTraining(KeyClassState cls) {
+    if (!cls.trainingInProgress.compareAndSet(false, true)) {
       return;
     }
-    this.trainingDataSize = new AtomicInteger();
-    this.trainingData = new ConcurrentLinkedQueue<Long>();
+    cls.reservoir.set(
+      new SampleReservoir(getRecommendedTrainingDataSize(), SampleReservoir.DEFAULT_SLOT_SIZE));
   }
 
   @Override
-  public synchronized void addTrainingData(byte[]... data) {
-    if (!trainingInProgress.get() || finalizingTraining.get()) {
-      return;
-    }
+  public void addTrainingData(byte[]... data) {
     for (byte[] b : data) {
-      long ptr = UnsafeAccess.malloc(b.length + Utils.SIZEOF_INT);
-      UnsafeAccess.copy(b, 0, ptr + Utils.SIZEOF_INT, b.length);
-      UnsafeAccess.putInt(ptr, b.length);
-      this.trainingData.add(ptr);
-      this.trainingDataSize.addAndGet(b.length);
-      checkFinishTraining();
+      addTrainingData(b, 0, b.length);
     }
   }
 
   @Override
-  public synchronized void addTrainingData(byte[] data, int off, int len) {
-    if (!trainingInProgress.get() || finalizingTraining.get()) {
-      return;
+  public void addTrainingData(byte[] data, int off, int len) {
+    KeyClassState cls = this.classes[0];
+    SampleReservoir r = cls.reservoir.get();
+    if (r != null && r.add(data, off, len)) {
+      finishTraining(cls, r);
     }
-    long ptr = UnsafeAccess.malloc(len + Utils.SIZEOF_INT);
-    UnsafeAccess.copy(data, 0, ptr + Utils.SIZEOF_INT, len);
-    UnsafeAccess.putInt(ptr, len);
-    this.trainingData.add(ptr);
-    this.trainingDataSize.addAndGet(len);
-    checkFinishTraining();
   }
 
   @Override
-  public synchronized void addTrainingData(long ptr, int size) {
-    if (!trainingInProgress.get() || finalizingTraining.get()) {
-      return;
+  public void addTrainingData(long ptr, int size) {
+    addTrainingData(0, ptr, size);
+  }
+
+  @Override
+  public void addTrainingData(int keyClass, long ptr, int size) {
+    KeyClassState cls = getKeyClassState(keyClass);
+    SampleReservoir r = cls.reservoir.get();
+    if (r != null && r.add(ptr, size)) {
+      finishTraining(cls, r);
     }
-    long $ptr = UnsafeAccess.malloc(size + Utils.SIZEOF_INT);
-    UnsafeAccess.copy(ptr, $ptr + Utils.SIZEOF_INT, size);
-    UnsafeAccess.putInt($ptr, size);
-    this.trainingData.add($ptr);
-    this.trainingDataSize.addAndGet(size);
-    checkFinishTraining();
   }
 
   @Override
   public boolean isTrainingRequired() {
+    return isTrainingRequired(0);
+  }
+
+  @Override
+  public boolean isTrainingRequired(int keyClass) {
     if (!this.dictionaryEnabled) {
       return false;
     }
-    boolean required = this.currentDictVersion == 0;
-    if (this.adaptiveMode && !required && (System.currentTimeMillis() - this.lastTrainFinishedTime) > this.retrainCheckInterval) {
+    KeyClassState cls = getKeyClassState(keyClass);
+    if (cls.reservoir.get() != null) {
+      // Collecting samples
+      return true;
+    } else if (cls.trainingInProgress.get()) {
+      // Training in background, no samples required
+      return false;
+    }
+    boolean required = cls.currentDictVersion == 0;
+    if (this.adaptiveMode && !required && (System.currentTimeMillis() - cls.lastTrainFinishedTime) > this.retrainCheckInterval) {
       // check again
-      double r = getCompRatio();
-      required = r * this.retrainTriggerValue < this.maxCompressionRatio;
+      double r = cls.getCompRatio();
+      required = r * this.retrainTriggerValue < cls.maxCompressionRatio;
     }
-    if (required && !this.trainingInProgress.get()) {
-      startTraining();
+    if (required) {
+      startTraining(cls);
     }
     return required;
   }
@@ -654,58 +811,67 @@ public class ZstdCompressionCodec implements CompressionCodec {
     return 100 * this.dictSize;
   }
 
-  private void checkFinishTraining() {
-    if (this.dictionaryEnabled && this.trainingDataSize.get() >= getRecommendedTrainingDataSize()) {
-      finishTraining();
-    }
+  private synchronized int nextDictionaryVersion() {
+    return ++this.maxDictVersion;
   }
 
-  @SuppressWarnings("unused")
-  private void finishTraining() {
-    if (!finalizingTraining.compareAndSet(false, true)) {
+  /**
+   * Stops sample collection and trains new dictionary. Only one writer wins the reservoir, the
+   * others keep writing without waiting. New dictionary becomes visible to writers atomically,
+   * when the current version of the key class is updated.
+   * @param cls key class state
+   * @param reservoir samples
+   */
+  private void finishTraining(KeyClassState cls, SampleReservoir reservoir) {
+    if (!cls.reservoir.compareAndSet(reservoir, null)) {
       return;
     }
 
     Runnable r = () -> {
-      byte[] dict;
-      ZstdDictTrainer trainer = new ZstdDictTrainer(this.trainingDataSize.get(), this.dictSize);
-      LOG.debug("Start training");
-      for (Long ptr : this.trainingData) {
-        int size = UnsafeAccess.toInt(ptr);
-        byte[] data = new byte[size];
-        UnsafeAccess.copy(ptr + Utils.SIZEOF_INT, data, 0, size);
-        trainer.addSample(data);
-      }
       long start = System.currentTimeMillis();
-      dict = trainer.trainSamples();
-      long end = System.currentTimeMillis();
-      Map<Integer, byte[]> dictMap = dictCacheMap.get(this.cacheName);
-      dictMap.put(this.currentDictVersion + 1, dict);
-      this.currentDictVersion++;
-      // Deallocate resources
-      this.trainingDataSize.set(0);
-      while (!this.trainingData.isEmpty()) {
-        long ptr = this.trainingData.poll();
-        UnsafeAccess.free(ptr);
-      }
-      this.trainingInProgress.set(false);
-      this.finalizingTraining.set(false);
+      int version = 0;
       try {
-        saveDictionary(this.currentDictVersion, dict);
-        checkMaxDictionaries();
+        byte[][] samples = reservoir.freeze();
+        reservoir.dispose();
+        int size = 0;
+        for (byte[] b : samples) {
+          size += b.length;
+        }
+        LOG.debug("Start training, key class={} samples={} size={}", cls.keyClass,
+          samples.length, size);
+        ZstdDictTrainer trainer = new ZstdDictTrainer(size, this.dictSize);
+        for (byte[] b : samples) {
+          trainer.addSample(b);
+        }
+        byte[] dict = trainer.trainSamples();
+        version = nextDictionaryVersion();
+        Map<Integer, byte[]> dictMap = dictCacheMap.computeIfAbsent(this.cacheName,
+          k -> new ConcurrentHashMap<Integer, byte[]>());
+        dictMap.put(version, dict);
+        this.dictOwners.put(version, cls);
+        cls.maxCompressionRatio = 1.0;
+        cls.rawDataSize.set(0);
+        cls.compDataSize.set(0);
+        // Writers switch to the new dictionary here
+        cls.addVersion(version);
+        saveDictionary(cls.keyClass, version, dict);
+        checkMaxDictionaries(cls);
       } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+        LOG.error("Failed to save dictionary " + version, e);
+      } catch (RuntimeException e) {
+        LOG.error("Dictionary training failed, key class=" + cls.keyClass, e);
+      } finally {
+        cls.lastTrainFinishedTime = System.currentTimeMillis();
+        cls.trainingInProgress.set(false);
       }
-      this.lastTrainFinishedTime = System.currentTimeMillis();
-      this.maxCompressionRatio = 1.0;
-      this.rawDataSize.set(0);
-      this.compDataSize.set(0);
-      LOG.debug("Finished training in {} ms", System.currentTimeMillis() - start);
+      LOG.debug("Finished training in {} ms, key class={} version={}",
+        System.currentTimeMillis() - start, cls.keyClass, version);
     };
     if (this.trainingAsync) {
       // Run training session
-      new Thread(r).start();
+      Thread t = new Thread(r, "zstd-dictionary-trainer-" + this.cacheName);
+      t.setDaemon(true);
+      t.start();
     } else {
       r.run();
     }
@@ -55,6 +55,39 @@ public interface AdmissionController extends Persistent, ThroughputControllable
     return true;
   }
 
+  /**
+   * Returns if item should be admitted to the cache. Controllers which take item's expiration time
+   * and group rank into account override this method, default delegates to
+   * {@link #admit(long, int, int)}
+   * @param keyPtr key's address
+   * @param keySize item's key size
+   * @param valueSize value size
+   * @param expire expiration time (absolute, ms), 0 - no expiration
+   * @param groupRank group rank
+   * @return true if item must be admitted to the cache, false - otherwise
+   */
+  public default boolean admit(long keyPtr, int keySize, int valueSize, long expire,
+      int groupRank) {
+    return admit(keyPtr, keySize, valueSize);
+  }
+
+  /**
+   * Returns if item should be admitted to the cache. Controllers which take item's expiration time
+   * and group rank into account override this method, default delegates to
+   * {@link #admit(byte[], int, int, int)}
+   * @param key item key buffer
+   * @param keyOffset item key buffer offset
+   * @param keySize item's key size
+   * @param valueSize value size
+   * @param expire expiration time (absolute, ms), 0 - no expiration
+   * @param groupRank group rank
+   * @return true if item must be admitted to the cache, false - otherwise
+   */
+  public default boolean admit(byte[] key, int keyOffset, int keySize, int valueSize, long expire,
+      int groupRank) {
+    return admit(key, keyOffset, keySize, valueSize);
+  }
+
   /**
    * Called on each items access
    * @param key keys buffer
@@ -103,4 +136,29 @@ public interface AdmissionController extends Persistent, ThroughputControllable
   public default boolean shouldEvictToVictimCache(long ibPtr, long ptr) {
     return true;
   }
+
+  /**
+   * Called by scavenger when item is evicted from the cache
+   * @param keyPtr key's address
+   * @param keySize key's size
+   * @param valueSize value's size
+   */
+  public default void onEviction(long keyPtr, int keySize, int valueSize) {
+  }
+
+  /**
+   * Called by scavenger when item is evicted from the cache
+   * @param key keys buffer
+   * @param off offset
+   * @param size keys size
+   * @param valueSize value's size
+   */
+  public default void onEviction(byte[] key, int off, int size, int valueSize) {
+  }
+
+  /**
+   * Releases resources (off - heap memory) held by the controller
+   */
+  public default void dispose() {
+  }
 }
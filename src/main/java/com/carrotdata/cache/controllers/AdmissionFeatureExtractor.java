@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Extracts per - request features for learned admission models. Features are written into a
+ * caller provided array, so extraction does not allocate. Layout:
+ * <p>
+ * 0 - bias (1.0)
+ * <p>
+ * 1 - key - value size, log2(size) / 32
+ * <p>
+ * 2 - key was seen before (1.0 or 0.0)
+ * <p>
+ * 3 - inter - arrival time, log(1 + seconds) / log(1 + day), 0 if key was not seen
+ * <p>
+ * 4 - item has TTL (1.0 or 0.0)
+ * <p>
+ * 5 - TTL, log(1 + seconds) / log(1 + month)
+ * <p>
+ * 6 - group rank / number of ranks
+ * <p>
+ * Key prefix is a categorical feature, it is hashed into one of a fixed number of buckets (see
+ * {@link #prefixBucket(long, int)}).
+ * <p>
+ * Inter - arrival times come from a compact history sketch: direct - mapped table of last access
+ * times (deciseconds) indexed by key hash. Collisions are not resolved, which is acceptable for an
+ * approximate feature.
+ */
+public class AdmissionFeatureExtractor {
+
+  public final static int F_BIAS = 0;
+
+  public final static int F_SIZE = 1;
+
+  public final static int F_SEEN = 2;
+
+  public final static int F_INTERARRIVAL = 3;
+
+  public final static int F_HAS_TTL = 4;
+
+  public final static int F_TTL = 5;
+
+  public final static int F_GROUP_RANK = 6;
+
+  /** Number of dense features */
+  public final static int NUM_FEATURES = 7;
+
+  private final static double LOG_DAY = Math.log(1 + 86400);
+
+  private final static double LOG_MONTH = Math.log(1 + 30 * 86400);
+
+  /* Last access times in deciseconds since start + 1, 0 - never */
+  private final int[] history;
+
+  private final int historyMask;
+
+  private final long startTime;
+
+  private final int prefixLength;
+
+  private final int numBuckets;
+
+  private final int numRanks;
+
+  /**
+   * Constructor
+   * @param historySize history sketch size (rounded up to a power of 2)
+   * @param prefixLength key prefix length
+   * @param numBuckets number of key prefix buckets (power of 2)
+   * @param numRanks number of group ranks
+   */
+  public AdmissionFeatureExtractor(int historySize, int prefixLength, int numBuckets,
+      int numRanks) {
+    int size = (int) Utils.nextPow2(Math.max(historySize, 16));
+    this.history = new int[size];
+    this.historyMask = size - 1;
+    this.startTime = System.currentTimeMillis();
+    this.prefixLength = prefixLength;
+    this.numBuckets = numBuckets;
+    this.numRanks = Math.max(1, numRanks);
+  }
+
+  /**
+   * Get key prefix bucket
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return bucket
+   */
+  public int prefixBucket(long keyPtr, int keySize) {
+    long h = Utils.hash64(keyPtr, Math.min(keySize, this.prefixLength));
+    return (int) (h & (this.numBuckets - 1));
+  }
+
+  /**
+   * Get key prefix bucket
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return bucket
+   */
+  public int prefixBucket(byte[] key, int keyOffset, int keySize) {
+    long h = Utils.hash64(key, keyOffset, Math.min(keySize, this.prefixLength));
+    return (int) (h & (this.numBuckets - 1));
+  }
+
+  /**
+   * Get number of key prefix buckets
+   * @return number of buckets
+   */
+  public int getNumberOfBuckets() {
+    return this.numBuckets;
+  }
+
+  /**
+   * Records key access in the history sketch
+   * @param hash key hash
+   * @param now current time (ms)
+   */
+  public void record(long hash, long now) {
+    this.history[(int) (hash & this.historyMask)] = time(now);
+  }
+
+  private int time(long now) {
+    return (int) ((now - this.startTime) / 100) + 1;
+  }
+
+  /**
+   * Extracts features and records access in the history sketch
+   * @param hash key hash
+   * @param kvSize key - value size
+   * @param expire expiration time (absolute, ms), 0 - no expiration
+   * @param groupRank group rank
+   * @param now current time (ms)
+   * @param out features array
+   * @param off offset in the array
+   */
+  public void extract(long hash, int kvSize, long expire, int groupRank, long now, float[] out,
+      int off) {
+    int slot = (int) (hash & this.historyMask);
+    int last = this.history[slot];
+    int current = time(now);
+    this.history[slot] = current;
+    out[off + F_BIAS] = 1f;
+    out[off + F_SIZE] = (float) ((63 - Long.numberOfLeadingZeros(Math.max(1, kvSize))) / 32.0);
+    if (last > 0) {
+      double seconds = Math.max(0, current - last) / 10.0;
+      out[off + F_SEEN] = 1f;
+      out[off + F_INTERARRIVAL] = (float) Math.min(1.0, Math.log(1 + seconds) / LOG_DAY);
+    } else {
+      out[off + F_SEEN] = 0f;
+      out[off + F_INTERARRIVAL] = 0f;
+    }
+    if (expire > 0) {
+      double seconds = Math.max(0, expire - now) / 1000.0;
+      out[off + F_HAS_TTL] = 1f;
+      out[off + F_TTL] = (float) Math.min(1.0, Math.log(1 + seconds) / LOG_MONTH);
+    } else {
+      out[off + F_HAS_TTL] = 0f;
+      out[off + F_TTL] = 0f;
+    }
+    out[off + F_GROUP_RANK] = (float) groupRank / this.numRanks;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.FrequencySketch;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Promotion controller backed by a decaying frequency sketch of victim cache hits. Every hit in the
+ * victim cache, which is a promotion candidate, is recorded in the sketch, and the key is promoted
+ * only if its estimated recent frequency reaches the current threshold, so one - hit items are not
+ * promoted and do not churn the parent cache.
+ * <p>
+ * When a promotion write rate budget is set, the threshold adapts once per second: it is increased
+ * when the observed promotion rate exceeds the budget and decreased (down to the configured
+ * minimum) when the rate is below half of the budget. In addition, promotions are rejected for the
+ * rest of a second once the budget for this second is exhausted.
+ */
+public class FrequencyPromotionController extends BasePromotionController {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(FrequencyPromotionController.class);
+
+  /* Maximum threshold - sketch counters saturate at 15 (+1 for doorkeeper) */
+  private final static int MAX_THRESHOLD = 16;
+
+  /* Adaptation interval */
+  private final static long INTERVAL_MS = 1000;
+
+  private FrequencySketch sketch;
+
+  private int minThreshold;
+
+  private volatile int threshold;
+
+  private long maxBytesPerSec;
+
+  /* Bytes promoted in the current interval */
+  private final AtomicLong intervalBytes = new AtomicLong();
+
+  private volatile long intervalStart = System.currentTimeMillis();
+
+  private final AtomicBoolean adjusting = new AtomicBoolean();
+
+  /* Statistics */
+  private final AtomicLong totalPromoted = new AtomicLong();
+
+  private final AtomicLong totalPromotedBytes = new AtomicLong();
+
+  private final AtomicLong totalRejected = new AtomicLong();
+
+  @Override
+  public void setCache(Cache cache) throws IOException {
+    super.setCache(cache);
+    CacheConfig conf = cache.getCacheConfig();
+    String cacheName = cache.getName();
+    long items = conf.getPromotionSketchItems(cacheName);
+    if (items <= 0) {
+      long avgSize = Math.max(1, conf.getEstimatedAvgKeyValueSize(cacheName));
+      items = cache.getMaximumCacheSize() / avgSize;
+    }
+    this.sketch = new FrequencySketch(items, true);
+    this.minThreshold =
+        Math.max(1, Math.min(MAX_THRESHOLD, conf.getPromotionFrequencyThreshold(cacheName)));
+    this.threshold = this.minThreshold;
+    this.maxBytesPerSec = conf.getPromotionMaxBytesPerSec(cacheName);
+    LOG.info("Frequency promotion controller for cache [{}] items={} threshold={} budget={}",
+      cacheName, items, this.threshold, this.maxBytesPerSec);
+  }
+
+  @Override
+  public boolean promote(long keyPtr, int keySize, int valueSize) {
+    return promote(Utils.hash64(keyPtr, keySize), Utils.kvSize(keySize, valueSize));
+  }
+
+  @Override
+  public boolean promote(byte[] key, int keyOffset, int keySize, int valueSize) {
+    return promote(Utils.hash64(key, keyOffset, keySize), Utils.kvSize(keySize, valueSize));
+  }
+
+  private boolean promote(long hash, int kvSize) {
+    this.sketch.increment(hash);
+    maybeAdjust(System.currentTimeMillis());
+    if (this.sketch.frequency(hash) < this.threshold) {
+      this.totalRejected.incrementAndGet();
+      return false;
+    }
+    if (this.maxBytesPerSec > 0) {
+      long bytes = this.intervalBytes.addAndGet(kvSize);
+      if (bytes > this.maxBytesPerSec * INTERVAL_MS / 1000) {
+        // Budget for this interval is exhausted
+        this.intervalBytes.addAndGet(-kvSize);
+        this.totalRejected.incrementAndGet();
+        return false;
+      }
+    } else {
+      this.intervalBytes.addAndGet(kvSize);
+    }
+    this.totalPromoted.incrementAndGet();
+    this.totalPromotedBytes.addAndGet(kvSize);
+    return true;
+  }
+
+  /**
+   * Adapts threshold to the promotion rate budget, once per interval
+   * @param now current time
+   */
+  void maybeAdjust(long now) {
+    long start = this.intervalStart;
+    if (now - start < INTERVAL_MS || !this.adjusting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long bytes = this.intervalBytes.getAndSet(0);
+      this.intervalStart = now;
+      if (this.maxBytesPerSec <= 0) {
+        return;
+      }
+      double rate = bytes * 1000.0 / (now - start);
+      int t = this.threshold;
+      // Rate is capped by the budget, so hitting the cap also means 'over budget'
+      if (rate >= this.maxBytesPerSec * 0.9 && t < MAX_THRESHOLD) {
+        this.threshold = t + 1;
+      } else if (rate < this.maxBytesPerSec * 0.5 && t > this.minThreshold) {
+        this.threshold = t - 1;
+      }
+    } finally {
+      this.adjusting.set(false);
+    }
+  }
+
+  /**
+   * Get current frequency threshold
+   * @return threshold
+   */
+  public int getThreshold() {
+    return this.threshold;
+  }
+
+  /**
+   * Get frequency sketch
+   * @return sketch
+   */
+  public FrequencySketch getSketch() {
+    return this.sketch;
+  }
+
+  /**
+   * Get total promoted items
+   * @return total promoted
+   */
+  public long getTotalPromoted() {
+    return this.totalPromoted.get();
+  }
+
+  /**
+   * Get total promoted bytes
+   * @return total promoted bytes
+   */
+  public long getTotalPromotedBytes() {
+    return this.totalPromotedBytes.get();
+  }
+
+  /**
+   * Get total rejected promotions
+   * @return total rejected
+   */
+  public long getTotalRejected() {
+    return this.totalRejected.get();
+  }
+
+  @Override
+  public void dispose() {
+    if (this.sketch != null) {
+      this.sketch.dispose();
+    }
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    super.save(os);
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    dos.writeInt(this.threshold);
+    this.sketch.save(dos);
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    super.load(is);
+    DataInputStream dis = Utils.toDataInputStream(is);
+    this.threshold = dis.readInt();
+    this.sketch.load(dis);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import java.io.IOException;
+
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Size - aware (GDSF - style) admission controller. Priority of an item is its estimated frequency
+ * multiplied by the ratio of the estimated average key - value size to the item's key - value size,
+ * so a large value must be accessed proportionally more often than a small one to be admitted.
+ * Recency is accounted for by the frequency sketch aging. The candidate is compared against the
+ * average priority of eviction victims, as in {@link TinyLFUAdmissionController}.
+ * <p>
+ * This optimizes object hit ratio on mixed - size workloads at the expense of byte hit ratio.
+ */
+public class GDSFAdmissionController extends TinyLFUAdmissionController {
+
+  /* Reference (average) key - value size */
+  private double avgSize;
+
+  @Override
+  public void setCache(Cache cache) throws IOException {
+    super.setCache(cache);
+    this.avgSize = Math.max(1, cache.getCacheConfig().getEstimatedAvgKeyValueSize(cache.getName()));
+  }
+
+  @Override
+  protected double priority(long hash, int keySize, int valueSize) {
+    int size = Utils.kvSize(keySize, Math.max(0, valueSize));
+    return super.priority(hash, keySize, valueSize) * this.avgSize / Math.max(1, size);
+  }
+
+  /**
+   * Get reference key - value size
+   * @return size
+   */
+  public double getReferenceSize() {
+    return this.avgSize;
+  }
+}
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Admission controller driven by an online - learned model. For every put candidate features are
+ * extracted ({@link AdmissionFeatureExtractor}) and scored by a {@link LogisticRegressionModel},
+ * which predicts probability that the key is reused (hit or re - written) while it is still
+ * tracked. Candidate is admitted if the probability is not less than the configured threshold.
+ * While storage usage is below scavenger start ratio, or the model has not seen enough examples
+ * yet, all items are admitted.
+ * <p>
+ * Labels: every decision is kept in a direct - mapped table of pending decisions. A pending decision
+ * becomes a positive example when the key is hit or put again, and a negative example when the item
+ * is evicted by scavenger or its slot is taken by another key. Labeled examples are queued and the
+ * model is retrained incrementally by a background thread, scoring on the put path does not
+ * allocate.
+ * <p>
+ * Quality metrics: admitted items later hit, admitted items evicted (or forgotten) without a hit,
+ * rejected items which were requested again.
+ */
+public class LearnedAdmissionController extends BaseAdmissionController {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(LearnedAdmissionController.class);
+
+  /* Number of key prefix buckets */
+  private final static int NUM_BUCKETS = 1024;
+
+  /* Training queue capacity */
+  private final static int QUEUE_SIZE = 8192;
+
+  /* Minimum number of training examples before model is used */
+  private final static long WARMUP_EXAMPLES = 1000;
+
+  /* Number of lock stripes for pending table */
+  private final static int NUM_LOCKS = 64;
+
+  private final static byte EMPTY = 0;
+
+  private final static byte ADMITTED = 1;
+
+  private final static byte REJECTED = 2;
+
+  private final static int F = AdmissionFeatureExtractor.NUM_FEATURES;
+
+  private AdmissionFeatureExtractor extractor;
+
+  private LogisticRegressionModel model;
+
+  /* Pending decisions */
+  private long[] pendingHash;
+
+  private byte[] pendingState;
+
+  private int[] pendingBucket;
+
+  private float[] pendingFeatures;
+
+  private int pendingMask;
+
+  private final Object[] locks = new Object[NUM_LOCKS];
+
+  /* Training queue */
+  private final Object queueLock = new Object();
+
+  private float[] queueFeatures;
+
+  private int[] queueBucket;
+
+  private boolean[] queueLabel;
+
+  private int queueCount;
+
+  /* Trainer private copies */
+  private float[] trainFeatures;
+
+  private int[] trainBucket;
+
+  private boolean[] trainLabel;
+
+  private ScheduledExecutorService trainer;
+
+  private double threshold;
+
+  private double startRatio;
+
+  /* Statistics */
+  private final AtomicLong totalAdmitted = new AtomicLong();
+
+  private final AtomicLong totalRejected = new AtomicLong();
+
+  private final AtomicLong admittedHit = new AtomicLong();
+
+  private final AtomicLong admittedNotHit = new AtomicLong();
+
+  private final AtomicLong rejectedReused = new AtomicLong();
+
+  private volatile long droppedExamples;
+
+  public LearnedAdmissionController() {
+    for (int i = 0; i < NUM_LOCKS; i++) {
+      this.locks[i] = new Object();
+    }
+  }
+
+  @Override
+  public void setCache(Cache cache) throws IOException {
+    super.setCache(cache);
+    CacheConfig conf = cache.getCacheConfig();
+    String cacheName = cache.getName();
+    int historySize = (int) Utils.nextPow2(Math.max(16, conf.getMLAdmissionHistorySize(cacheName)));
+    this.extractor = new AdmissionFeatureExtractor(historySize,
+        conf.getMLAdmissionKeyPrefixLength(cacheName), NUM_BUCKETS,
+        conf.getNumberOfPopularityRanks(cacheName));
+    this.model = new LogisticRegressionModel(F, NUM_BUCKETS,
+        conf.getMLAdmissionLearningRate(cacheName));
+    this.pendingHash = new long[historySize];
+    this.pendingState = new byte[historySize];
+    this.pendingBucket = new int[historySize];
+    this.pendingFeatures = new float[historySize * F];
+    this.pendingMask = historySize - 1;
+    this.queueFeatures = new float[QUEUE_SIZE * F];
+    this.queueBucket = new int[QUEUE_SIZE];
+    this.queueLabel = new boolean[QUEUE_SIZE];
+    this.trainFeatures = new float[QUEUE_SIZE * F];
+    this.trainBucket = new int[QUEUE_SIZE];
+    this.trainLabel = new boolean[QUEUE_SIZE];
+    this.threshold = conf.getMLAdmissionThreshold(cacheName);
+    this.startRatio = conf.getScavengerStartMemoryRatio(cacheName);
+    long interval = conf.getMLAdmissionTrainIntervalMs(cacheName);
+    this.trainer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r);
+      t.setName("learned-admission-" + cacheName);
+      t.setDaemon(true);
+      return t;
+    });
+    this.trainer.scheduleWithFixedDelay(() -> train(), interval, interval, TimeUnit.MILLISECONDS);
+    LOG.info("Learned admission controller for cache [{}] history={} threshold={}", cacheName,
+      historySize, this.threshold);
+  }
+
+  @Override
+  public boolean admit(long keyPtr, int keySize, int valueSize) {
+    return admit(keyPtr, keySize, valueSize, 0, 0);
+  }
+
+  @Override
+  public boolean admit(byte[] key, int keyOffset, int keySize, int valueSize) {
+    return admit(key, keyOffset, keySize, valueSize, 0, 0);
+  }
+
+  @Override
+  public boolean admit(long keyPtr, int keySize, int valueSize, long expire, int groupRank) {
+    long hash = Utils.hash64(keyPtr, keySize);
+    int bucket = this.extractor.prefixBucket(keyPtr, keySize);
+    return admitHash(hash, bucket, Utils.kvSize(keySize, valueSize), expire, groupRank);
+  }
+
+  @Override
+  public boolean admit(byte[] key, int keyOffset, int keySize, int valueSize, long expire,
+      int groupRank) {
+    long hash = Utils.hash64(key, keyOffset, keySize);
+    int bucket = this.extractor.prefixBucket(key, keyOffset, keySize);
+    return admitHash(hash, bucket, Utils.kvSize(keySize, valueSize), expire, groupRank);
+  }
+
+  private boolean admitHash(long hash, int bucket, int kvSize, long expire, int groupRank) {
+    long now = System.currentTimeMillis();
+    int slot = (int) (hash & this.pendingMask);
+    boolean admit;
+    synchronized (this.locks[slot & (NUM_LOCKS - 1)]) {
+      byte state = this.pendingState[slot];
+      if (state != EMPTY) {
+        // Same key re - written - reused, other key - previous one was not reused in time
+        label(slot, this.pendingHash[slot] == hash);
+      }
+      int off = slot * F;
+      this.extractor.extract(hash, kvSize, expire, groupRank, now, this.pendingFeatures, off);
+      admit = this.model.getExamples() < WARMUP_EXAMPLES
+          || this.cache.getStorageAllocatedRatio() < this.startRatio
+          || this.model.predict(this.pendingFeatures, off, bucket) >= this.threshold;
+      this.pendingHash[slot] = hash;
+      this.pendingBucket[slot] = bucket;
+      this.pendingState[slot] = admit ? ADMITTED : REJECTED;
+    }
+    if (admit) {
+      this.totalAdmitted.incrementAndGet();
+    } else {
+      this.totalRejected.incrementAndGet();
+    }
+    return admit;
+  }
+
+  @Override
+  public void access(byte[] key, int off, int size) {
+    access(Utils.hash64(key, off, size));
+  }
+
+  @Override
+  public void access(long keyPtr, int keySize) {
+    access(Utils.hash64(keyPtr, keySize));
+  }
+
+  private void access(long hash) {
+    this.extractor.record(hash, System.currentTimeMillis());
+    int slot = (int) (hash & this.pendingMask);
+    synchronized (this.locks[slot & (NUM_LOCKS - 1)]) {
+      if (this.pendingState[slot] != EMPTY && this.pendingHash[slot] == hash) {
+        label(slot, true);
+      }
+    }
+  }
+
+  @Override
+  public void onEviction(long keyPtr, int keySize, int valueSize) {
+    evicted(Utils.hash64(keyPtr, keySize));
+  }
+
+  @Override
+  public void onEviction(byte[] key, int off, int size, int valueSize) {
+    evicted(Utils.hash64(key, off, size));
+  }
+
+  private void evicted(long hash) {
+    int slot = (int) (hash & this.pendingMask);
+    synchronized (this.locks[slot & (NUM_LOCKS - 1)]) {
+      if (this.pendingState[slot] == ADMITTED && this.pendingHash[slot] == hash) {
+        label(slot, false);
+      }
+    }
+  }
+
+  /**
+   * Labels pending decision and queues training example, must be called under slot's lock
+   * @param slot slot
+   * @param reused true if key was reused
+   */
+  private void label(int slot, boolean reused) {
+    byte state = this.pendingState[slot];
+    if (state == ADMITTED) {
+      if (reused) {
+        this.admittedHit.incrementAndGet();
+      } else {
+        this.admittedNotHit.incrementAndGet();
+      }
+    } else if (reused) {
+      this.rejectedReused.incrementAndGet();
+    }
+    this.pendingState[slot] = EMPTY;
+    synchronized (this.queueLock) {
+      if (this.queueCount == QUEUE_SIZE) {
+        this.droppedExamples++;
+        return;
+      }
+      int n = this.queueCount++;
+      System.arraycopy(this.pendingFeatures, slot * F, this.queueFeatures, n * F, F);
+      this.queueBucket[n] = this.pendingBucket[slot];
+      this.queueLabel[n] = reused;
+    }
+  }
+
+  /**
+   * Runs one training pass over queued examples (background thread)
+   */
+  void train() {
+    int n;
+    synchronized (this.queueLock) {
+      n = this.queueCount;
+      if (n == 0) {
+        return;
+      }
+      System.arraycopy(this.queueFeatures, 0, this.trainFeatures, 0, n * F);
+      System.arraycopy(this.queueBucket, 0, this.trainBucket, 0, n);
+      System.arraycopy(this.queueLabel, 0, this.trainLabel, 0, n);
+      this.queueCount = 0;
+    }
+    try {
+      for (int i = 0; i < n; i++) {
+        this.model.update(this.trainFeatures, i * F, this.trainBucket[i], this.trainLabel[i]);
+      }
+      this.model.publish();
+    } catch (Throwable t) {
+      LOG.error("Training failed:", t);
+    }
+  }
+
+  /**
+   * Get model
+   * @return model
+   */
+  public LogisticRegressionModel getModel() {
+    return this.model;
+  }
+
+  /**
+   * Get feature extractor
+   * @return feature extractor
+   */
+  public AdmissionFeatureExtractor getFeatureExtractor() {
+    return this.extractor;
+  }
+
+  /**
+   * Get total admitted items
+   * @return total admitted
+   */
+  public long getTotalAdmitted() {
+    return this.totalAdmitted.get();
+  }
+
+  /**
+   * Get total rejected items
+   * @return total rejected
+   */
+  public long getTotalRejected() {
+    return this.totalRejected.get();
+  }
+
+  /**
+   * Get number of admitted items which were later hit (or re - written)
+   * @return number of items
+   */
+  public long getAdmittedHit() {
+    return this.admittedHit.get();
+  }
+
+  /**
+   * Get number of admitted items which were evicted or forgotten without a hit
+   * @return number of items
+   */
+  public long getAdmittedNotHit() {
+    return this.admittedNotHit.get();
+  }
+
+  /**
+   * Get number of rejected items which were requested again
+   * @return number of items
+   */
+  public long getRejectedReused() {
+    return this.rejectedReused.get();
+  }
+
+  /**
+   * Get admission precision: fraction of labeled admitted items which were later hit
+   * @return precision (NaN - no labeled items)
+   */
+  public double getPrecision() {
+    long hit = this.admittedHit.get();
+    long total = hit + this.admittedNotHit.get();
+    return total == 0 ? Double.NaN : (double) hit / total;
+  }
+
+  /**
+   * Get number of training examples dropped due to a full queue
+   * @return number of dropped examples
+   */
+  public long getDroppedExamples() {
+    return this.droppedExamples;
+  }
+
+  @Override
+  public void dispose() {
+    if (this.trainer != null) {
+      this.trainer.shutdownNow();
+    }
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    super.save(os);
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    dos.writeLong(this.admittedHit.get());
+    dos.writeLong(this.admittedNotHit.get());
+    dos.writeLong(this.rejectedReused.get());
+    this.model.save(dos);
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    super.load(is);
+    DataInputStream dis = Utils.toDataInputStream(is);
+    this.admittedHit.set(dis.readLong());
+    this.admittedNotHit.set(dis.readLong());
+    this.rejectedReused.set(dis.readLong());
+    this.model.load(dis);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.carrotdata.cache.util.Persistent;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Online logistic regression over dense features (see {@link AdmissionFeatureExtractor}) and a
+ * hashed categorical feature (key prefix bucket). Model is trained by a single background thread
+ * with SGD on a private copy of weights, which is published (copy - on - write) after each
+ * training run. Scoring reads the published weights and does not allocate.
+ */
+public class LogisticRegressionModel implements Persistent {
+
+  /* Number of dense features */
+  private final int numFeatures;
+
+  /* Number of categorical buckets */
+  private final int numBuckets;
+
+  /* Learning rate */
+  private final double learningRate;
+
+  /* Published weights: dense first, then buckets */
+  private volatile double[] weights;
+
+  /* Training copy of weights */
+  private double[] training;
+
+  /* Number of training examples */
+  private volatile long examples;
+
+  /* Log - loss moving average (progressive validation) */
+  private volatile double logLoss = Double.NaN;
+
+  /**
+   * Constructor
+   * @param numFeatures number of dense features
+   * @param numBuckets number of categorical buckets
+   * @param learningRate learning rate
+   */
+  public LogisticRegressionModel(int numFeatures, int numBuckets, double learningRate) {
+    this.numFeatures = numFeatures;
+    this.numBuckets = numBuckets;
+    this.learningRate = learningRate;
+    this.training = new double[numFeatures + numBuckets];
+    this.weights = this.training.clone();
+  }
+
+  /**
+   * Predicts probability of a positive label
+   * @param x features
+   * @param off offset of features
+   * @param bucket categorical bucket
+   * @return probability
+   */
+  public double predict(float[] x, int off, int bucket) {
+    return sigmoid(dot(this.weights, x, off, bucket));
+  }
+
+  private double dot(double[] w, float[] x, int off, int bucket) {
+    double z = w[this.numFeatures + bucket];
+    for (int i = 0; i < this.numFeatures; i++) {
+      z += w[i] * x[off + i];
+    }
+    return z;
+  }
+
+  private static double sigmoid(double z) {
+    return 1.0 / (1.0 + Math.exp(-z));
+  }
+
+  /**
+   * Trains model on one example (training thread only). Changes become visible to
+   * {@link #predict(float[], int, int)} after {@link #publish()}
+   * @param x features
+   * @param off offset of features
+   * @param bucket categorical bucket
+   * @param label label
+   */
+  public void update(float[] x, int off, int bucket, boolean label) {
+    double[] w = this.training;
+    double p = sigmoid(dot(w, x, off, bucket));
+    double y = label ? 1.0 : 0.0;
+    // Loss before update (progressive validation)
+    double loss = -Math.log(Math.max(1e-9, label ? p : 1.0 - p));
+    double l = this.logLoss;
+    this.logLoss = Double.isNaN(l) ? loss : l + 0.001 * (loss - l);
+    double g = this.learningRate * (p - y);
+    for (int i = 0; i < this.numFeatures; i++) {
+      w[i] -= g * x[off + i];
+    }
+    w[this.numFeatures + bucket] -= g;
+    this.examples++;
+  }
+
+  /**
+   * Publishes trained weights
+   */
+  public void publish() {
+    this.weights = this.training.clone();
+  }
+
+  /**
+   * Get number of training examples seen
+   * @return number of examples
+   */
+  public long getExamples() {
+    return this.examples;
+  }
+
+  /**
+   * Get moving average of log - loss, measured on examples before training on them
+   * @return log loss (NaN - no examples yet)
+   */
+  public double getLogLoss() {
+    return this.logLoss;
+  }
+
+  /**
+   * Get published weights (copy)
+   * @return weights
+   */
+  public double[] getWeights() {
+    return this.weights.clone();
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    double[] w = this.weights;
+    dos.writeInt(w.length);
+    for (double v : w) {
+      dos.writeDouble(v);
+    }
+    dos.writeLong(this.examples);
+    dos.writeDouble(this.logLoss);
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    DataInputStream dis = Utils.toDataInputStream(is);
+    int n = dis.readInt();
+    if (n != this.numFeatures + this.numBuckets) {
+      throw new IOException(String.format("Model size mismatch: expected %d, found %d",
+        this.numFeatures + this.numBuckets, n));
+    }
+    double[] w = new double[n];
+    for (int i = 0; i < n; i++) {
+      w[i] = dis.readDouble();
+    }
+    this.training = w;
+    this.weights = w.clone();
+    this.examples = dis.readLong();
+    this.logLoss = dis.readDouble();
+  }
+}
@@ -53,4 +53,10 @@ public interface PromotionController extends Persistent, ThroughputControllable
   public default boolean promote(byte[] key, int keyOffset, int keySize, int valueSize) {
     return true;
   }
+
+  /**
+   * Releases resources (off - heap memory) held by the controller
+   */
+  public default void dispose() {
+  }
 }
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+/**
+ * Closed - loop scavenger pacing controller. Periodically observes storage usage, fill rate (bytes
+ * written by clients per second), recycle rate (bytes freed by scavenger per second) and rejected
+ * writes and computes a single control output in [0, 1] using a PI control law on a projected
+ * storage usage:
+ * <p>
+ * projected = usage + (fill rate - recycle rate) * horizon / max size
+ * <p>
+ * error = (projected - stop ratio) / (1 - stop ratio)
+ * <p>
+ * The output is then mapped onto scavenger parameters: number of threads, start threshold (between
+ * scavenger.ratio.start and scavenger.ratio.stop) and dump entry below ratio (between
+ * scavenger.dump.entry.below.min and scavenger.dump.entry.below.max). Rejected writes saturate the
+ * integral term, time-to-full shorter than the horizon is used as a feed - forward term.
+ * <p>
+ * Controller only computes decisions, cache applies them.
+ */
+public class ScavengerPacingController {
+
+  /* Cache name */
+  private String cacheName;
+
+  /* Maximum cache size */
+  private long maxSize;
+
+  /* Segment size */
+  private long segmentSize;
+
+  /* Configured start ratio (upper bound for start threshold) */
+  private double startRatioMax;
+
+  /* Stop ratio (set point and lower bound for start threshold) */
+  private double stopRatio;
+
+  /* Dump entry below ratio - minimum */
+  private double dumpBelowRatioMin;
+
+  /* Dump entry below ratio - maximum */
+  private double dumpBelowRatioMax;
+
+  /* Maximum number of scavenger threads */
+  private int maxThreads;
+
+  /* Proportional gain */
+  private double kp;
+
+  /* Integral gain */
+  private double ki;
+
+  /* Look - ahead horizon in seconds */
+  private double horizon;
+
+  /* Previous observation */
+  private long lastTime;
+
+  private long lastBytesWritten;
+
+  private long lastBytesFreed;
+
+  private long lastRejectedWrites;
+
+  /* Controller state */
+  private double integral;
+
+  /* Observed values */
+  private volatile double fillRate;
+
+  private volatile double recycleRate;
+
+  private volatile double rejectedWritesRate;
+
+  private volatile long freeSegments;
+
+  private volatile double usage;
+
+  private volatile double projectedUsage;
+
+  /* Decisions */
+  private volatile double output;
+
+  private volatile int numberOfThreads;
+
+  private volatile double startRatio;
+
+  private volatile double dumpBelowRatio;
+
+  private volatile long totalUpdates;
+
+  /**
+   * Constructor
+   * @param cacheName cache name
+   * @param conf cache configuration
+   */
+  public ScavengerPacingController(String cacheName, CacheConfig conf) {
+    this.cacheName = cacheName;
+    this.maxSize = conf.getCacheMaximumSize(cacheName);
+    this.segmentSize = conf.getCacheSegmentSize(cacheName);
+    this.startRatioMax = conf.getScavengerStartMemoryRatio(cacheName);
+    this.stopRatio = Math.min(conf.getScavengerStopMemoryRatio(cacheName), this.startRatioMax);
+    this.dumpBelowRatioMin = conf.getScavengerDumpEntryBelowMin(cacheName);
+    this.dumpBelowRatioMax =
+        Math.max(conf.getScavengerDumpEntryBelowMax(cacheName), this.dumpBelowRatioMin);
+    this.maxThreads = Math.max(1, conf.getScavengerNumberOfThreads(cacheName));
+    this.kp = conf.getScavengerPacingProportionalGain(cacheName);
+    this.ki = conf.getScavengerPacingIntegralGain(cacheName);
+    this.horizon = conf.getScavengerPacingHorizon(cacheName) / 1000.0;
+    // Initial decisions - same as static configuration
+    this.numberOfThreads = this.maxThreads;
+    this.startRatio = this.startRatioMax;
+    this.dumpBelowRatio = this.dumpBelowRatioMin;
+  }
+
+  /**
+   * Update controller with new observations and recompute decisions
+   * @param time current time in ms
+   * @param allocated storage allocated in bytes
+   * @param bytesWritten total bytes written by clients
+   * @param bytesFreed total bytes freed by scavenger
+   * @param rejectedWrites total rejected writes
+   */
+  public synchronized void update(long time, long allocated, long bytesWritten, long bytesFreed,
+      long rejectedWrites) {
+    if (this.lastTime == 0) {
+      this.lastTime = time;
+      this.lastBytesWritten = bytesWritten;
+      this.lastBytesFreed = bytesFreed;
+      this.lastRejectedWrites = rejectedWrites;
+      return;
+    }
+    double dt = (time - this.lastTime) / 1000.0;
+    if (dt <= 0) {
+      return;
+    }
+    this.fillRate = (bytesWritten - this.lastBytesWritten) / dt;
+    this.recycleRate = (bytesFreed - this.lastBytesFreed) / dt;
+    this.rejectedWritesRate = (rejectedWrites - this.lastRejectedWrites) / dt;
+    this.lastTime = time;
+    this.lastBytesWritten = bytesWritten;
+    this.lastBytesFreed = bytesFreed;
+    this.lastRejectedWrites = rejectedWrites;
+
+    long freeBytes = Math.max(0, this.maxSize - allocated);
+    this.freeSegments = freeBytes / this.segmentSize;
+    this.usage = (double) allocated / this.maxSize;
+    double netRate = this.fillRate - this.recycleRate;
+    this.projectedUsage = this.usage + netRate * this.horizon / this.maxSize;
+
+    double range = 1.0 - this.stopRatio;
+    double error = range > 0 ? (this.projectedUsage - this.stopRatio) / range : 1.0;
+    // Integral with anti - windup
+    this.integral = clamp(this.integral + this.ki * error * dt, 0, 1);
+    if (this.rejectedWritesRate > 0) {
+      // Writes are being rejected - go full speed
+      this.integral = 1.0;
+    }
+    double u = clamp(this.kp * error + this.integral, 0, 1);
+    // Feed - forward: time to run out of free space
+    if (netRate > 0) {
+      double timeToFull = freeBytes / netRate;
+      if (timeToFull < this.horizon) {
+        u = Math.max(u, 1.0 - timeToFull / this.horizon);
+      }
+    }
+    this.output = u;
+    this.numberOfThreads = Math.max(1, (int) Math.ceil(u * this.maxThreads));
+    this.startRatio = this.startRatioMax - u * (this.startRatioMax - this.stopRatio);
+    this.dumpBelowRatio =
+        this.dumpBelowRatioMin + u * (this.dumpBelowRatioMax - this.dumpBelowRatioMin);
+    this.totalUpdates++;
+  }
+
+  private static double clamp(double v, double min, double max) {
+    return v < min ? min : v > max ? max : v;
+  }
+
+  /**
+   * Should scavenger be started at a given storage usage
+   * @param usage storage allocated ratio
+   * @return true or false
+   */
+  public boolean shouldStartScavenger(double usage) {
+    return usage >= this.startRatio;
+  }
+
+  /**
+   * Get cache name
+   * @return cache name
+   */
+  public String getCacheName() {
+    return this.cacheName;
+  }
+
+  /**
+   * Get controller output [0, 1]
+   * @return output
+   */
+  public double getOutput() {
+    return this.output;
+  }
+
+  /**
+   * Get number of scavenger threads
+   * @return number of threads
+   */
+  public int getNumberOfThreads() {
+    return this.numberOfThreads;
+  }
+
+  /**
+   * Get scavenger start threshold
+   * @return start ratio
+   */
+  public double getStartRatio() {
+    return this.startRatio;
+  }
+
+  /**
+   * Get scavenger dump entry below ratio
+   * @return dump below ratio
+   */
+  public double getDumpBelowRatio() {
+    return this.dumpBelowRatio;
+  }
+
+  /**
+   * Get observed fill rate (bytes/sec)
+   * @return fill rate
+   */
+  public double getFillRate() {
+    return this.fillRate;
+  }
+
+  /**
+   * Get observed recycle rate (bytes/sec)
+   * @return recycle rate
+   */
+  public double getRecycleRate() {
+    return this.recycleRate;
+  }
+
+  /**
+   * Get observed rejected writes rate (writes/sec)
+   * @return rejected writes rate
+   */
+  public double getRejectedWritesRate() {
+    return this.rejectedWritesRate;
+  }
+
+  /**
+   * Get number of free segments
+   * @return free segments
+   */
+  public long getFreeSegments() {
+    return this.freeSegments;
+  }
+
+  /**
+   * Get storage usage at the last update
+   * @return usage
+   */
+  public double getUsage() {
+    return this.usage;
+  }
+
+  /**
+   * Get projected storage usage
+   * @return projected usage
+   */
+  public double getProjectedUsage() {
+    return this.projectedUsage;
+  }
+
+  /**
+   * Get total number of updates
+   * @return total updates
+   */
+  public long getTotalUpdates() {
+    return this.totalUpdates;
+  }
+}
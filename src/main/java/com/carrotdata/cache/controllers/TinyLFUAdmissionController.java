@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.FrequencySketch;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * TinyLFU admission controller. Every put and every hit records the key in an off - heap
+ * {@link FrequencySketch}. While storage usage is below scavenger start ratio all items are
+ * admitted. Otherwise a candidate is admitted only if its estimated frequency is greater than the
+ * frequency of an eviction victim.
+ * <p>
+ * Cache evicts whole segments (scavenger), not single items, therefore there is no single victim
+ * to compare with at admission time. Instead, scavenger reports every evicted item and controller
+ * keeps exponentially weighted moving average of their frequencies, which is used as a victim
+ * frequency.
+ */
+public class TinyLFUAdmissionController extends BaseAdmissionController {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(TinyLFUAdmissionController.class);
+
+  /* Weight of a new sample in victim frequency average */
+  private final static double ALPHA = 0.01;
+
+  /* Frequency sketch */
+  private FrequencySketch sketch;
+
+  /* Victim frequency average (negative - no evictions yet) */
+  private volatile double victimFrequency = -1;
+
+  /* Storage usage below which all items are admitted */
+  private double startRatio;
+
+  /* Statistics */
+  private final AtomicLong totalAdmitted = new AtomicLong();
+
+  private final AtomicLong totalRejected = new AtomicLong();
+
+  @Override
+  public void setCache(Cache cache) throws IOException {
+    super.setCache(cache);
+    CacheConfig conf = cache.getCacheConfig();
+    String cacheName = cache.getName();
+    long items = conf.getTinyLFUSketchItems(cacheName);
+    if (items <= 0) {
+      long avgSize = Math.max(1, conf.getEstimatedAvgKeyValueSize(cacheName));
+      items = cache.getMaximumCacheSize() / avgSize;
+    }
+    boolean doorkeeper = conf.isTinyLFUDoorkeeperEnabled(cacheName);
+    this.sketch = new FrequencySketch(items, doorkeeper);
+    this.startRatio = conf.getScavengerStartMemoryRatio(cacheName);
+    LOG.info("TinyLFU admission controller for cache [{}] items={} sketch size={} doorkeeper={}",
+      cacheName, items, this.sketch.getAllocatedMemory(), doorkeeper);
+  }
+
+  @Override
+  public boolean admit(long keyPtr, int keySize, int valueSize) {
+    return admitHash(Utils.hash64(keyPtr, keySize), keySize, valueSize);
+  }
+
+  @Override
+  public boolean admit(byte[] key, int keyOffset, int keySize, int valueSize) {
+    return admitHash(Utils.hash64(key, keyOffset, keySize), keySize, valueSize);
+  }
+
+  private boolean admitHash(long hash, int keySize, int valueSize) {
+    this.sketch.increment(hash);
+    double victim = this.victimFrequency;
+    if (victim < 0 || this.cache.getStorageAllocatedRatio() < this.startRatio
+        || priority(hash, keySize, valueSize) > victim) {
+      this.totalAdmitted.incrementAndGet();
+      return true;
+    }
+    this.totalRejected.incrementAndGet();
+    return false;
+  }
+
+  @Override
+  public void access(byte[] key, int off, int size) {
+    this.sketch.increment(Utils.hash64(key, off, size));
+  }
+
+  @Override
+  public void access(long keyPtr, int keySize) {
+    this.sketch.increment(Utils.hash64(keyPtr, keySize));
+  }
+
+  @Override
+  public void onEviction(long keyPtr, int keySize, int valueSize) {
+    updateVictimFrequency(priority(Utils.hash64(keyPtr, keySize), keySize, valueSize));
+  }
+
+  @Override
+  public void onEviction(byte[] key, int off, int size, int valueSize) {
+    updateVictimFrequency(priority(Utils.hash64(key, off, size), size, valueSize));
+  }
+
+  /**
+   * Priority of an item, admission candidate is compared against average priority of eviction
+   * victims. Default is the estimated frequency, subclasses may take item's size into account
+   * @param hash key hash
+   * @param keySize key size
+   * @param valueSize value size
+   * @return priority
+   */
+  protected double priority(long hash, int keySize, int valueSize) {
+    return this.sketch.frequency(hash);
+  }
+
+  private void updateVictimFrequency(double freq) {
+    // Races between scavenger threads may lose some samples - this is fine for an average
+    double v = this.victimFrequency;
+    this.victimFrequency = v < 0 ? freq : v + ALPHA * (freq - v);
+  }
+
+  /**
+   * Get current victim frequency (average victim priority)
+   * @return victim frequency (negative if there were no evictions yet)
+   */
+  public double getVictimFrequency() {
+    return this.victimFrequency;
+  }
+
+  /**
+   * Get frequency sketch
+   * @return sketch
+   */
+  public FrequencySketch getSketch() {
+    return this.sketch;
+  }
+
+  /**
+   * Get total admitted items
+   * @return total admitted
+   */
+  public long getTotalAdmitted() {
+    return this.totalAdmitted.get();
+  }
+
+  /**
+   * Get total rejected items
+   * @return total rejected
+   */
+  public long getTotalRejected() {
+    return this.totalRejected.get();
+  }
+
+  @Override
+  public void dispose() {
+    if (this.sketch != null) {
+      this.sketch.dispose();
+    }
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    super.save(os);
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    dos.writeDouble(this.victimFrequency);
+    this.sketch.save(dos);
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    super.load(is);
+    DataInputStream dis = Utils.toDataInputStream(is);
+    this.victimFrequency = dis.readDouble();
+    this.sketch.load(dis);
+  }
+}
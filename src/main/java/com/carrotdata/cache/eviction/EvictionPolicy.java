@@ -19,7 +19,11 @@ package com.carrotdata.cache.eviction;
 
 public interface EvictionPolicy {
   static enum Action {
-    PROMOTE, DELETE
+    /* Move item inside index block */
+    PROMOTE,
+    DELETE,
+    /* Only record hit in the index entry, do not move the item */
+    MARK
   }
 
   public default void setCacheName(String cacheName) {
@@ -89,4 +93,37 @@ public interface EvictionPolicy {
   public default int getDefaultRankForInsert() {
     return 0;
   }
+
+  /**
+   * Get rank for a new item (not an update) being inserted into the main index
+   * @param hash key's hash
+   * @param kvSize key - value size or -1 if unknown
+   * @param rank requested rank
+   * @return rank to insert with
+   */
+  public default int getInsertRank(long hash, int kvSize, int rank) {
+    return rank;
+  }
+
+  /**
+   * Called by scavenger for a live (not expired) item, whose data segment is being recycled.
+   * Decides if item must be evicted or re-inserted and with which rank. Default: items in the lower
+   * dumpBelowRatio part of the index block are evicted, others keep their rank
+   * @param hash key's hash
+   * @param cacheItemIndex index of a current item (0- based)
+   * @param totalItems total number of items in Index-Data-Block
+   * @param numRanks number of ranks
+   * @param hitCount item's hit count
+   * @param kvSize key - value size or -1 if unknown
+   * @param dumpBelowRatio scavenger dump below ratio
+   * @return rank to re-insert item with or -1 if item must be evicted
+   */
+  public default int getRankOnRecycle(long hash, int cacheItemIndex, int totalItems, int numRanks,
+      int hitCount, int kvSize, double dumpBelowRatio) {
+    double popularity = ((double) (totalItems - cacheItemIndex)) / totalItems;
+    if (popularity <= dumpBelowRatio) {
+      return -1;
+    }
+    return getRankForIndex(numRanks, cacheItemIndex, totalItems);
+  }
 }
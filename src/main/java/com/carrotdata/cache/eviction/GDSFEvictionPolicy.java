@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.eviction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+/**
+ * Size - aware (GDSF - style) eviction policy. Hits promote items as in SLRU. In addition, item's
+ * key - value size is taken into account:
+ * <p>
+ * 1. New items are inserted log2(size / average size) ranks below (or above for small items) the
+ * default insert rank.
+ * <p>
+ * 2. When scavenger recycles item's segment, its priority is computed as recency x (1 + hit count) x
+ * (average size / size), where recency is the relative position in the index block (1 - head, 0 -
+ * tail). Item is evicted if priority is below dump below ratio, otherwise it is re-inserted with a
+ * rank corresponding to its priority.
+ * <p>
+ * Average size is the estimated average key - value size of the cache. When size is not known (index
+ * format does not store it) items are treated as average sized, so the policy degrades to SLRU.
+ */
+public class GDSFEvictionPolicy extends SLRUEvictionPolicy {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(GDSFEvictionPolicy.class);
+
+  /* Number of popularity ranks */
+  private int numRanks;
+
+  /* Reference (average) key - value size */
+  private double avgSize;
+
+  /**
+   * Default constructor
+   */
+  public GDSFEvictionPolicy() {
+    super();
+    this.numRanks = CacheConfig.DEFAULT_CACHE_POPULARITY_NUMBER_RANKS;
+    this.avgSize = CacheConfig.DEFAULT_ESTIMATED_AVG_KV_SIZE;
+  }
+
+  /**
+   * Constructor
+   * @param ns number of SLRU segments
+   * @param ip insert point
+   * @param numRanks number of popularity ranks
+   * @param avgSize average key - value size
+   */
+  public GDSFEvictionPolicy(int ns, int ip, int numRanks, int avgSize) {
+    super(ns, ip);
+    this.numRanks = numRanks;
+    this.avgSize = Math.max(1, avgSize);
+  }
+
+  @Override
+  public void setCacheName(String cacheName) {
+    super.setCacheName(cacheName);
+    CacheConfig config = CacheConfig.getInstance();
+    this.numRanks = config.getNumberOfPopularityRanks(cacheName);
+    this.avgSize = Math.max(1, config.getEstimatedAvgKeyValueSize(cacheName));
+    LOG.info("GDSF eviction policy for cache [{}]: ranks={} average size={}", cacheName,
+      this.numRanks, this.avgSize);
+  }
+
+  @Override
+  public int getInsertRank(long hash, int kvSize, int rank) {
+    if (kvSize <= 0) {
+      return rank;
+    }
+    int shift = (int) Math.floor(Math.log(kvSize / this.avgSize) / Math.log(2));
+    return clamp(rank + shift);
+  }
+
+  @Override
+  public int getRankOnRecycle(long hash, int cacheItemIndex, int totalItems, int numRanks,
+      int hitCount, int kvSize, double dumpBelowRatio) {
+    double recency = ((double) (totalItems - cacheItemIndex)) / totalItems;
+    double sizeFactor = kvSize > 0 ? this.avgSize / kvSize : 1.0;
+    double priority = recency * (1 + hitCount) * sizeFactor;
+    if (priority <= dumpBelowRatio) {
+      return -1;
+    }
+    int rank = (int) ((1.0 - Math.min(priority, 1.0)) * numRanks);
+    return Math.max(0, Math.min(numRanks - 1, rank));
+  }
+
+  private int clamp(int rank) {
+    return Math.max(0, Math.min(this.numRanks - 1, rank));
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.eviction;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Compact ghost queue of recently evicted keys. Stores 32 bit key fingerprints together with a
+ * sequence number of insertion in a direct mapped table (8 bytes per entry). Entry is a member of
+ * the queue if it was added no more than capacity insertions ago, so old entries expire in FIFO
+ * order without explicit removal. Collisions overwrite older entries, which is acceptable for the
+ * ghost queue purpose.
+ */
+public class GhostQueue {
+
+  /* Fingerprint (high 32 bits) and sequence number (low 32 bits) */
+  private final long[] table;
+
+  /* Table mask */
+  private final int mask;
+
+  /* Queue capacity */
+  private final int capacity;
+
+  /* Insertion sequence */
+  private final AtomicInteger sequence = new AtomicInteger();
+
+  /**
+   * Constructor
+   * @param capacity number of keys to remember
+   */
+  public GhostQueue(long capacity) {
+    capacity = Math.max(16, Math.min(capacity, 1 << 29));
+    this.capacity = (int) capacity;
+    int size = (int) Utils.nextPow2(2 * capacity);
+    this.table = new long[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Adds key's hash to the queue
+   * @param hash key's hash
+   */
+  public void add(long hash) {
+    int seq = this.sequence.incrementAndGet();
+    this.table[index(hash)] = ((long) fingerprint(hash) << 32) | (seq & 0xffffffffL);
+  }
+
+  /**
+   * Is key in the queue
+   * @param hash key's hash
+   * @return true or false
+   */
+  public boolean contains(long hash) {
+    long v = this.table[index(hash)];
+    if ((int) (v >>> 32) != fingerprint(hash)) {
+      return false;
+    }
+    int age = this.sequence.get() - (int) v;
+    return age >= 0 && age < this.capacity;
+  }
+
+  /**
+   * Get queue capacity
+   * @return capacity
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  private int index(long hash) {
+    return (int) hash & this.mask;
+  }
+
+  private static int fingerprint(long hash) {
+    int fp = (int) (hash >>> 32);
+    // 0 is reserved for empty slots
+    return fp == 0 ? 1 : fp;
+  }
+}
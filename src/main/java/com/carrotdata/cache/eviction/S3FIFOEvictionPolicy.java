@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.eviction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+/**
+ * S3-FIFO eviction policy expressed through popularity ranks. Lower ranks of an index block form
+ * a small probationary FIFO region, the rest is the main FIFO region. New items are inserted into
+ * the head of the small region, items found in the ghost queue (recently evicted from the small
+ * region) are inserted into the head of the main region. Hits do not move items, they only set
+ * item's hit bit.
+ * <p>
+ * Decisions are made when scavenger recycles item's data segment (segments are recycled in a
+ * FIFO order): probationary item with a hit is moved to the main region, without hit - evicted
+ * and remembered in the ghost queue; main region item with a hit is re-inserted into the head of
+ * the main region, without hit - evicted.
+ */
+public class S3FIFOEvictionPolicy implements EvictionPolicy {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(S3FIFOEvictionPolicy.class);
+
+  /* Number of ranks */
+  private int numRanks;
+
+  /* First rank of the small (probationary) region */
+  private int smallRank;
+
+  /* Ghost queue */
+  private GhostQueue ghost;
+
+  /**
+   * Default constructor
+   */
+  public S3FIFOEvictionPolicy() {
+    this.numRanks = CacheConfig.DEFAULT_CACHE_POPULARITY_NUMBER_RANKS;
+    this.smallRank = smallRank(this.numRanks, CacheConfig.DEFAULT_S3FIFO_SMALL_RATIO);
+    this.ghost = new GhostQueue(0);
+  }
+
+  /**
+   * Constructor
+   * @param numRanks number of ranks
+   * @param smallRatio small region ratio
+   * @param ghostCapacity ghost queue capacity
+   */
+  public S3FIFOEvictionPolicy(int numRanks, double smallRatio, long ghostCapacity) {
+    this.numRanks = numRanks;
+    this.smallRank = smallRank(numRanks, smallRatio);
+    this.ghost = new GhostQueue(ghostCapacity);
+  }
+
+  private static int smallRank(int numRanks, double smallRatio) {
+    int rank = (int) Math.round((1.0 - smallRatio) * numRanks);
+    return Math.max(1, Math.min(numRanks - 1, rank));
+  }
+
+  @Override
+  public void setCacheName(String cacheName) {
+    CacheConfig config = CacheConfig.getInstance();
+    this.numRanks = config.getNumberOfPopularityRanks(cacheName);
+    this.smallRank = smallRank(this.numRanks, config.getS3FIFOSmallRatio(cacheName));
+    long avgSize = Math.max(1, config.getEstimatedAvgKeyValueSize(cacheName));
+    long items = config.getCacheMaximumSize(cacheName) / avgSize;
+    long capacity = (long) (items * config.getS3FIFOGhostRatio(cacheName));
+    this.ghost = new GhostQueue(capacity);
+    LOG.info("S3-FIFO eviction policy for cache [{}]: small region starts at rank {} of {}, ghost={}",
+      cacheName, this.smallRank, this.numRanks, this.ghost.getCapacity());
+  }
+
+  @Override
+  public int getPromotionIndex(long cacheItemPtr, int cacheItemIndex, int totalItems) {
+    // Items are not moved on hit
+    return cacheItemIndex;
+  }
+
+  @Override
+  public int getEvictionCandidateIndex(long idbPtr, int totalItems) {
+    return totalItems - 1;
+  }
+
+  @Override
+  public int getInsertIndex(long idbPtr, int totalItems) {
+    return getStartIndexForRank(this.numRanks, this.smallRank, totalItems);
+  }
+
+  @Override
+  public Action actionOnHit() {
+    return Action.MARK;
+  }
+
+  @Override
+  public int getDefaultRankForInsert() {
+    return this.smallRank;
+  }
+
+  @Override
+  public int getInsertRank(long hash, int kvSize, int rank) {
+    if (rank == this.smallRank && this.ghost.contains(hash)) {
+      // Recently evicted from the small region - goes to the main region
+      return 0;
+    }
+    return rank;
+  }
+
+  @Override
+  public int getRankOnRecycle(long hash, int cacheItemIndex, int totalItems, int numRanks,
+      int hitCount, int kvSize, double dumpBelowRatio) {
+    int rank = getRankForIndex(numRanks, cacheItemIndex, totalItems);
+    if (hitCount > 0) {
+      // Promote to (or re-insert into) the head of the main region
+      return 0;
+    }
+    if (rank >= this.smallRank) {
+      this.ghost.add(hash);
+    }
+    return -1;
+  }
+
+  /**
+   * Get first rank of the small region
+   * @return rank
+   */
+  public int getSmallRank() {
+    return this.smallRank;
+  }
+
+  /**
+   * Get ghost queue
+   * @return ghost queue
+   */
+  public GhostQueue getGhostQueue() {
+    return this.ghost;
+  }
+}
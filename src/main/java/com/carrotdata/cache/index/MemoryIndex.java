@@ -32,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.carrotdata.cache.eviction.EvictionPolicy;
+import com.carrotdata.cache.eviction.EvictionPolicy.Action;
 import com.carrotdata.cache.eviction.FIFOEvictionPolicy;
 import com.carrotdata.cache.expire.AbstractExpireSupport;
 import com.carrotdata.cache.io.IOEngine;
@@ -238,6 +239,9 @@ public final class MemoryIndex implements Persistent {
   /* Expiration check probability */
   private double expCheckProb;
 
+  /* Lazy promotion: hits only mark entries, reordering is done by scavenger */
+  private boolean lazyPromotion;
+
   public MemoryIndex() {
     this.cacheConfig = CacheConfig.getInstance();
     initLocks();
@@ -491,6 +495,27 @@ public final class MemoryIndex implements Persistent {
     this.evictionPolicy = policy;
   }
 
+  /**
+   * Is lazy promotion enabled
+   * @return true or false
+   */
+  public boolean isLazyPromotion() {
+    return this.lazyPromotion;
+  }
+
+  /**
+   * Set lazy promotion
+   * @param b true or false
+   */
+  public void setLazyPromotion(boolean b) {
+    this.lazyPromotion = b;
+  }
+
+  private boolean isMarkOnHit() {
+    return this.lazyPromotion && this.indexType == Type.MQ
+        || this.evictionPolicy.actionOnHit() == Action.MARK;
+  }
+
   /**
    * Get current eviction policy
    * @return eviction policy
@@ -567,6 +592,7 @@ public final class MemoryIndex implements Persistent {
     }
     this.numRanks = this.cacheConfig.getNumberOfPopularityRanks(this.cacheName);
     this.expCheckProb = this.cacheConfig.getCacheProactiveExpirationFactor(this.cacheName);
+    this.lazyPromotion = this.cacheConfig.isEvictionLazyPromotion(this.cacheName);
     int initSlotPower = cacheConfig.getStartIndexNumberOfSlotsPower(this.cacheName);
     int startNumberOfSlots = 1 << initSlotPower;
     // TODO: must be positive
@@ -1303,14 +1329,16 @@ public final class MemoryIndex implements Persistent {
           if (indexSize > bufSize) {
             return indexSize;
           }
+          final boolean markOnly = isMarkOnHit();
           // Update hits
-          if (hit) {
+          if (hit && (!markOnly || this.indexFormat.getHitCount($ptr) == 0)) {
+            // In mark only mode read - check first, so hot entries are not written on every hit
             this.indexFormat.hit($ptr);
           }
           // Save item size and item location to a buffer
           UnsafeAccess.copy($ptr, buf, indexSize);
 
-          if (hit && count > 0) {
+          if (hit && count > 0 && !markOnly) {
             // ask parent where to move
             int idx = this.evictionPolicy.getPromotionIndex(ptr, count, numEntries);
             int off = indexBlockHeaderSize + idx * indexEntrySize; // offsetFor(ptr, idx);
@@ -1513,12 +1541,28 @@ public final class MemoryIndex implements Persistent {
    */
   public ResultWithRankAndExpire checkDeleteKeyForScavenger(int sid, byte[] key, int keyOffset,
       int keySize, ResultWithRankAndExpire result, double dumpBelowRatio) {
+    return checkDeleteKeyForScavenger(sid, key, keyOffset, keySize, -1, result, dumpBelowRatio);
+  }
+
+  /**
+   * This method is used exclusively by the Scavenger
+   * @param sid segment id
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @param kvSize key - value size (-1 - unknown)
+   * @param result result
+   * @param dumpBelowRatio
+   * @return operation result (OK, NOT_FOUND, EXPIRED, DELETED)
+   */
+  public ResultWithRankAndExpire checkDeleteKeyForScavenger(int sid, byte[] key, int keyOffset,
+      int keySize, int kvSize, ResultWithRankAndExpire result, double dumpBelowRatio) {
     int slot = 0;
     try {
       slot = lock(key, keyOffset, keySize);
       long hash = Utils.hash64(key, keyOffset, keySize);
       long ptr = getIndexBlockForHash(hash);
-      return checkDeleteKeyForScavenger(sid, ptr, hash, result, dumpBelowRatio);
+      return checkDeleteKeyForScavenger(sid, ptr, hash, kvSize, result, dumpBelowRatio);
     } finally {
       unlock(slot);
     }
@@ -1535,19 +1579,34 @@ public final class MemoryIndex implements Persistent {
    */
   public ResultWithRankAndExpire checkDeleteKeyForScavenger(int sid, long keyPtr, int keySize,
       ResultWithRankAndExpire result, double dumpBelowRatio) {
+    return checkDeleteKeyForScavenger(sid, keyPtr, keySize, -1, result, dumpBelowRatio);
+  }
+
+  /**
+   * This method is used exclusively by the Scavenger
+   * @param sid segment id
+   * @param keyPtr key address
+   * @param keySize key size
+   * @param kvSize key - value size (-1 - unknown)
+   * @param result result
+   * @param dumpBelowRatio
+   * @return operation result (OK, NOT_FOUND, EXPIRED, DELETED)
+   */
+  public ResultWithRankAndExpire checkDeleteKeyForScavenger(int sid, long keyPtr, int keySize,
+      int kvSize, ResultWithRankAndExpire result, double dumpBelowRatio) {
     int slot = 0;
     try {
       slot = lock(keyPtr, keySize);
       long hash = Utils.hash64(keyPtr, keySize);
       long ptr = getIndexBlockForHash(hash);
-      return checkDeleteKeyForScavenger(sid, ptr, hash, result, dumpBelowRatio);
+      return checkDeleteKeyForScavenger(sid, ptr, hash, kvSize, result, dumpBelowRatio);
     } finally {
       unlock(slot);
     }
   }
 
   private ResultWithRankAndExpire checkDeleteKeyForScavenger(int sid, long ptr, long hash,
-      ResultWithRankAndExpire result, double dumpBelowRatio) {
+      int kvSize, ResultWithRankAndExpire result, double dumpBelowRatio) {
     int numEntries = numEntries(ptr);
     // ATTN: we do not check keys directly - only hashes, for small hashes this may result in
     // collisions. Addressed by checking segment ids
@@ -1586,13 +1645,34 @@ public final class MemoryIndex implements Persistent {
             // update total expired counter
             this.expiredEvictedBalance.incrementAndGet();
           } else {
-            // Check popularity
-            double popularity = ((double) (numEntries - count)) / numEntries;
-            if (popularity <= dumpBelowRatio) {
+            int newRank;
+            int to = -1;
+            if (this.lazyPromotion && hitCount > 0
+                && this.evictionPolicy.actionOnHit() == Action.PROMOTE) {
+              // Lazy (CLOCK - style) promotion: referenced item gets a second chance and
+              // is moved to where it would have been promoted on hit
+              to = count > 0 ? this.evictionPolicy.getPromotionIndex(ptr, count, numEntries) : 0;
+              newRank = this.evictionPolicy.getRankForIndex(this.numRanks, to, numEntries);
+            } else {
+              // Check popularity
+              if (kvSize < 0) {
+                kvSize = this.indexFormat.getKeyValueSize($ptr);
+              }
+              newRank = this.evictionPolicy.getRankOnRecycle(hash, count, numEntries,
+                this.numRanks, hitCount, kvSize, dumpBelowRatio);
+              if (newRank >= 0 && newRank != rank) {
+                to = this.evictionPolicy.getStartIndexForRank(this.numRanks, newRank, numEntries);
+              }
+            }
+            if (newRank < 0) {
               // Delete item as having low popularity
               result.setResultRankExpire(Result.DELETED, rank, hitCount, expire);
             } else {
-              result.setResultRankExpire(Result.OK, rank, hitCount, expire);
+              if (to >= 0) {
+                // Item is relocated here, update (re-insert) keeps the position
+                moveEntry(ptr, count, to);
+              }
+              result.setResultRankExpire(Result.OK, newRank, hitCount, expire);
             }
           }
           if (result.getResult() == Result.DELETED || result.getResult() == Result.EXPIRED) {
@@ -1610,6 +1690,30 @@ public final class MemoryIndex implements Persistent {
     return result;
   }
 
+  /**
+   * Moves entry inside index block, entries in between are shifted (fixed size entries only)
+   * @param ptr index block address
+   * @param from current index of the entry
+   * @param to new index of the entry
+   */
+  private void moveEntry(long ptr, int from, int to) {
+    if (from == to || !this.indexFormat.isFixedSize()) {
+      return;
+    }
+    final int entrySize = this.indexFormat.indexEntrySize();
+    final long start = ptr + this.indexBlockHeaderSize;
+    byte[] buf = new byte[entrySize];
+    UnsafeAccess.copy(start + (long) from * entrySize, buf, 0, entrySize);
+    if (to < from) {
+      UnsafeAccess.copy(start + (long) to * entrySize, start + (long) (to + 1) * entrySize,
+        (long) (from - to) * entrySize);
+    } else {
+      UnsafeAccess.copy(start + (long) (from + 1) * entrySize, start + (long) from * entrySize,
+        (long) (to - from) * entrySize);
+    }
+    UnsafeAccess.copy(buf, 0, start + (long) to * entrySize, entrySize);
+  }
+
   /**
    * Get expiration time from a index block by hash
    * @param hash key's hash
@@ -2462,6 +2566,10 @@ public final class MemoryIndex implements Persistent {
     final int deletedIndex = delete(ptr, hash);
     final boolean insert = deletedIndex < 0;
     final int numEntries = numEntries(ptr);
+    if (insert && indexType == Type.MQ) {
+      int kvSize = this.indexFormat.getKeyValueSize(indexPtr);
+      rank = this.evictionPolicy.getInsertRank(hash, kvSize, rank);
+    }
     int insertIndex =
         indexType == Type.MQ ? evictionPolicy.getStartIndexForRank(numRanks, rank, numEntries)
             : evictionPolicy.getInsertIndex(ptr, numEntries);
@@ -2768,6 +2876,7 @@ public final class MemoryIndex implements Persistent {
   public void load(InputStream is) throws IOException {
     this.numRanks = this.cacheConfig.getNumberOfPopularityRanks(this.cacheName);
     this.expCheckProb = this.cacheConfig.getCacheProactiveExpirationFactor(this.cacheName);
+    this.lazyPromotion = this.cacheConfig.isEvictionLazyPromotion(this.cacheName);
     DataInputStream dis = Utils.toDataInputStream(is);
     // Read index type
     this.cacheName = dis.readUTF();
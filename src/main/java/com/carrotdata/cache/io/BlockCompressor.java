@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.compression.CompressionCodec;
+
+/**
+ * Pool of background compressor threads. Sealed write batches are compressed here into their own
+ * output buffers, which takes block compression (and dictionary training data collection) off the
+ * put path. Compressed block is written to a data segment later by the owner of the batch.
+ * <p>
+ * Compression lag is the time between sealing of a batch and completion of its compression.
+ */
+public class BlockCompressor {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(BlockCompressor.class);
+
+  private static final String NAME = "c2-block-compressor";
+
+  /* Compressor threads */
+  private final ExecutorService service;
+
+  /* Number of blocks submitted and not compressed yet */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /* Total compressed blocks */
+  private final AtomicLong totalCompressed = new AtomicLong();
+
+  /* Total compression lag (nanoseconds) */
+  private final AtomicLong totalLag = new AtomicLong();
+
+  /* Maximum compression lag (nanoseconds) */
+  private final AtomicLong maxLag = new AtomicLong();
+
+  /* Number of times a writer had to wait for compression completion */
+  private final AtomicLong totalWaits = new AtomicLong();
+
+  /* Total writers wait time (nanoseconds) */
+  private final AtomicLong totalWaitTime = new AtomicLong();
+
+  /**
+   * Constructor
+   * @param cacheName cache name
+   * @param threads number of compressor threads
+   */
+  public BlockCompressor(String cacheName, int threads) {
+    final AtomicInteger count = new AtomicInteger();
+    this.service = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+      Thread t = new Thread(r);
+      t.setName(NAME + "-" + cacheName + "-" + count.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    });
+    LOG.info("Started {} block compressor threads for cache [{}]", threads, cacheName);
+  }
+
+  /**
+   * Submits sealed batch for compression. If compressor is shut down, batch is left
+   * uncompressed and will be compressed by the writer.
+   * @param sb sealed batch
+   * @param codec compression codec
+   */
+  void submit(final StagedWriteBatch sb, final CompressionCodec codec) {
+    sb.setSealTime(System.nanoTime());
+    pending.incrementAndGet();
+    try {
+      Future<?> f = this.service.submit(() -> {
+        try {
+          compress(sb, codec);
+        } finally {
+          pending.decrementAndGet();
+        }
+      });
+      sb.setTask(f);
+    } catch (RejectedExecutionException e) {
+      pending.decrementAndGet();
+      sb.setTask(null);
+    }
+  }
+
+  private void compress(StagedWriteBatch sb, CompressionCodec codec) {
+    long src = sb.memory();
+    int len = sb.position();
+    int keyClass = sb.getKeyClass();
+    if (codec.isTrainingRequired(keyClass)) {
+      codec.addTrainingData(keyClass, src, len);
+    }
+    long dst = sb.getCompressionBuffer(2 * len);
+    int dictVersion = codec.getCurrentDictionaryVersion(keyClass);
+    int compressed = codec.compress(src, len, dictVersion, dst, sb.getCompressionBufferSize());
+    sb.setCompressed(compressed, dictVersion);
+    long lag = System.nanoTime() - sb.getSealTime();
+    totalCompressed.incrementAndGet();
+    totalLag.addAndGet(lag);
+    long max = maxLag.get();
+    while (lag > max && !maxLag.compareAndSet(max, lag)) {
+      max = maxLag.get();
+    }
+  }
+
+  /**
+   * Waits for compression of a sealed batch
+   * @param sb sealed batch
+   * @return true if batch was compressed, false - batch must be compressed by a caller
+   */
+  boolean await(StagedWriteBatch sb) {
+    Future<?> f = sb.getTask();
+    if (f == null) {
+      return false;
+    }
+    if (f.isDone()) {
+      return sb.awaitCompressed();
+    }
+    totalWaits.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      return sb.awaitCompressed();
+    } finally {
+      totalWaitTime.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Shuts down compressor threads, waits for submitted blocks
+   */
+  public void shutdown() {
+    this.service.shutdown();
+    try {
+      this.service.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Get number of blocks waiting for compression
+   * @return number of blocks
+   */
+  public int getPendingBlocks() {
+    return this.pending.get();
+  }
+
+  /**
+   * Get total number of blocks compressed
+   * @return number of blocks
+   */
+  public long getTotalCompressedBlocks() {
+    return this.totalCompressed.get();
+  }
+
+  /**
+   * Get average compression lag in microseconds
+   * @return average lag
+   */
+  public double getAverageLagMicros() {
+    long n = this.totalCompressed.get();
+    if (n == 0) {
+      return 0.;
+    }
+    return (double) this.totalLag.get() / (1000 * n);
+  }
+
+  /**
+   * Get maximum compression lag in microseconds
+   * @return maximum lag
+   */
+  public long getMaxLagMicros() {
+    return this.maxLag.get() / 1000;
+  }
+
+  /**
+   * Get number of times writers waited for a compression completion
+   * @return number of waits
+   */
+  public long getTotalWaits() {
+    return this.totalWaits.get();
+  }
+
+  /**
+   * Get total writers wait time in microseconds
+   * @return wait time
+   */
+  public long getTotalWaitTimeMicros() {
+    return this.totalWaitTime.get() / 1000;
+  }
+}
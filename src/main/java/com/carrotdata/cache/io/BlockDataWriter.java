@@ -47,7 +47,7 @@ public class BlockDataWriter implements DataWriter {
 
     processEmptySegment(s);
 
-    long addr = getAppendAddress(s, keySize, valueSize);
+    long addr = getAppendAddress(s, Utils.requiredSize(keySize, valueSize));
     if (addr < 0) {
       return IOEngine.NOT_FOUND;
     }
@@ -80,8 +80,13 @@ public class BlockDataWriter implements DataWriter {
     return s.getSegmentBlockDataSize();// retValue;
   }
 
-  private long getAppendAddress(Segment s, int keySize, int valueSize) {
-    int requiredSize = Utils.requiredSize(keySize, valueSize);
+  /**
+   * Get address for a new entry, opens new block if entry does not fit the current one
+   * @param s segment
+   * @param requiredSize entry size
+   * @return address or NOT_FOUND (segment is full)
+   */
+  long getAppendAddress(Segment s, int requiredSize) {
     long fullDataSize = getFullDataSize(s, blockSize);
     if (requiredSize + fullDataSize > s.size()) {
       return IOEngine.NOT_FOUND;
@@ -129,7 +134,7 @@ public class BlockDataWriter implements DataWriter {
       int valueOffset, int valueSize) {
 
     processEmptySegment(s);
-    long addr = getAppendAddress(s, keySize, valueSize);
+    long addr = getAppendAddress(s, Utils.requiredSize(keySize, valueSize));
     if (addr < 0) {
       return IOEngine.NOT_FOUND;
     }
@@ -169,7 +174,7 @@ public class BlockDataWriter implements DataWriter {
    * @param n block number
    * @param incr increment value
    */
-  private void incrBlockDataSize(Segment s, int n, int incr) {
+  void incrBlockDataSize(Segment s, int n, int incr) {
     long ptr = s.getAddress() + n * blockSize + SIZE_OFFSET;
     int size = UnsafeAccess.toInt(ptr);
     UnsafeAccess.putInt(ptr, size + incr);
@@ -180,7 +185,7 @@ public class BlockDataWriter implements DataWriter {
    * Processes empty segment
    * @param s segment
    */
-  private void processEmptySegment(Segment s) {
+  void processEmptySegment(Segment s) {
     if (s.getTotalItems() == 0) {
       long ptr = s.getAddress();
       UnsafeAccess.setMemory(ptr, META_SIZE, (byte) 0);
@@ -19,7 +19,9 @@ package com.carrotdata.cache.io;
 
 import static com.carrotdata.cache.compression.CompressionCodec.COMP_META_SIZE;
 
+import com.carrotdata.cache.compression.KeyClassifier;
 import com.carrotdata.cache.index.MemoryIndex;
+import com.carrotdata.cache.util.CacheConfig;
 import com.carrotdata.cache.util.UnsafeAccess;
 import com.carrotdata.cache.util.Utils;
 
@@ -31,6 +33,38 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
 
   private int bufferSize;
 
+  /* Background compressor, null - synchronous compression */
+  private BlockCompressor compressor;
+
+  /* Key classifier, items of different classes are compressed with different dictionaries */
+  private KeyClassifier classifier;
+
+  @Override
+  public void init(String cacheName) {
+    super.init(cacheName);
+    CacheConfig config = CacheConfig.getInstance();
+    this.classifier = KeyClassifier.fromConfig(cacheName);
+    if (config.isCacheCompressionAsyncEnabled(cacheName)) {
+      this.compressor =
+          new BlockCompressor(cacheName, config.getCacheCompressionAsyncThreads(cacheName));
+    }
+  }
+
+  /**
+   * Get background block compressor
+   * @return compressor or null (synchronous compression)
+   */
+  public BlockCompressor getBlockCompressor() {
+    return this.compressor;
+  }
+
+  @Override
+  public void dispose() {
+    if (this.compressor != null) {
+      this.compressor.shutdown();
+    }
+  }
+
   private long getBuffer(int reqSize) {
     Integer size = bufSizeTLS.get();
     Long ptr = bufTLS.get();
@@ -54,11 +88,27 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
     return true;
   }
 
+  @Override
+  public int getKeyClass(byte[] key, int keyOffset, int keySize) {
+    return this.classifier.getKeyClass(key, keyOffset, keySize);
+  }
+
+  @Override
+  public int getKeyClass(long keyPtr, int keySize) {
+    return this.classifier.getKeyClass(keyPtr, keySize);
+  }
+
   @Override
   public WriteBatch newWriteBatch() {
     return new WriteBatch(blockSize);
   }
 
+  @Override
+  public WriteBatch getBatchToWrite(WriteBatch batch) {
+    // Asynchronous mode writes the sealed batch, the current one goes to the compressor
+    return this.compressor != null ? batch.getStaged() : batch;
+  }
+
   @Override
   public long append(Segment s, WriteBatch batch) {
     checkCodec();
@@ -69,28 +119,119 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
       // Its not possible
       throw new RuntimeException("write batch size is 0");
     }
-    
-    if (codec.isTrainingRequired()) {
-      codec.addTrainingData(src, len);
+    if (this.compressor != null) {
+      return appendAsync(s, batch);
+    }
+    int keyClass = batch.getKeyClass();
+    if (codec.isTrainingRequired(keyClass)) {
+      codec.addTrainingData(keyClass, src, len);
     }
     long dst = getBuffer(2 * len);
-    int dictVersion = this.codec.getCurrentDictionaryVersion();
+    int dictVersion = this.codec.getCurrentDictionaryVersion(keyClass);
     int compressed = this.codec.compress(src, len, dictVersion, dst, bufferSize);
     if (compressed >= len) {
       dictVersion = -1;// uncompressed
       compressed = len;
       dst = src;
     }
+    //TODO: We compressed write batch already !!! Reuse it
+    long offset = writeBlock(s, dst, compressed, len, dictVersion, batch.size());
+    if (offset < 0) {
+      return -1;
+    }
+    updateIndex(s, batch, null, offset);
+    // Reset batch to accept new writes
+    batch.reset();
+    return offset;
+  }
+
+  /**
+   * Asynchronous mode: writes previously sealed batch (if any) to the segment, then seals the
+   * current batch and submits it to the compressor. Put operation pays only for the memory copy
+   * of an already compressed block.
+   * @param s segment
+   * @param batch write batch
+   * @return offset of a written block, 0 - if there was no sealed batch, -1 - segment is full
+   */
+  private long appendAsync(Segment s, WriteBatch batch) {
+    long offset = 0;
+    StagedWriteBatch staged = (StagedWriteBatch) batch.getStaged();
+    if (staged != null) {
+      offset = install(s, batch, staged);
+      if (offset < 0) {
+        // Sealed batch stays staged, current batch is full
+        return -1;
+      }
+    }
+    StagedWriteBatch sb = (StagedWriteBatch) batch.takeSpare();
+    if (sb == null) {
+      sb = new StagedWriteBatch(batch.batchSize());
+    }
+    batch.seal(sb);
+    this.compressor.submit(sb, this.codec);
+    return offset;
+  }
+
+  /**
+   * Writes sealed batch to the segment
+   * @param s segment
+   * @param batch current (active) write batch
+   * @param staged sealed batch
+   * @return offset or -1
+   */
+  private long install(Segment s, WriteBatch batch, StagedWriteBatch staged) {
+    long src = staged.memory();
+    int len = staged.position();
+    long dst;
+    int compressed;
+    int dictVersion;
+    if (this.compressor.await(staged)) {
+      dst = staged.getCompressionBuffer();
+      compressed = staged.getCompressedSize();
+      dictVersion = staged.getDictionaryVersion();
+    } else {
+      // Was not compressed (loaded from a snapshot or compressor is shut down)
+      dst = staged.getCompressionBuffer(2 * len);
+      dictVersion = this.codec.getCurrentDictionaryVersion(staged.getKeyClass());
+      compressed = this.codec.compress(src, len, dictVersion, dst,
+        staged.getCompressionBufferSize());
+      staged.setCompressed(compressed, dictVersion);
+    }
+    if (compressed >= len) {
+      dictVersion = -1;// uncompressed
+      compressed = len;
+      dst = src;
+    }
+    long offset = writeBlock(s, dst, compressed, len, dictVersion, staged.size());
+    if (offset < 0) {
+      return -1;
+    }
+    // Keys, which were updated in the active batch after sealing, must keep pointing to it
+    updateIndex(s, staged, batch, offset);
+    batch.unstage();
+    return offset;
+  }
+
+  /**
+   * Copies block to the segment
+   * @param s segment
+   * @param dst block data address
+   * @param compressed block data size
+   * @param len uncompressed size
+   * @param dictVersion dictionary version (-1 - uncompressed)
+   * @param numEntries number of items in the block
+   * @return block offset or -1 if segment is full
+   */
+  private long writeBlock(Segment s, long dst, int compressed, int len, int dictVersion,
+      int numEntries) {
     long offset = 0;
     try {
       s.writeLock();
       if (s.isFull() || s.isSealed()) {
-        //TODO: We compressed write batch already !!! Reuse it
         return -1;
       }
       offset = s.getSegmentDataSize();
       if (s.size() - offset < compressed + COMP_META_SIZE) {
-        //TODO: We compressed write batch already !!! Reuse it
         s.setFull(true);
         return -1;
       }
@@ -104,15 +245,26 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
       // Update segment
       s.setSegmentDataSize(offset + compressed + COMP_META_SIZE);
       s.setCurrentBlockOffset(offset + compressed + COMP_META_SIZE);
-      s.incrNumEntries(batch.size());
+      s.incrNumEntries(numEntries);
     } finally {
       s.writeUnlock();
     }
+    return offset;
+  }
 
-    // Now we need update MemoryIndex
+  /**
+   * Updates memory index after batch has been written to a segment
+   * @param s segment
+   * @param batch written batch
+   * @param active active batch with the same id (keys it contains are skipped) or null
+   * @param offset block offset
+   */
+  private void updateIndex(Segment s, WriteBatch batch, WriteBatch active, long offset) {
     MemoryIndex mi = s.getMemoryIndex();
     // We do not need to read lock b/c this thread is the only writer
     // to this write batch
+    long src = batch.memory();
+    int len = batch.position();
     int off = 0;
     final short sid = (short) s.getId();
     final int id = batch.getId();
@@ -121,19 +273,19 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
       off += Utils.sizeUVInt(kSize);
       int vSize = Utils.readUVInt(src + off);
       off += Utils.sizeUVInt(vSize);
-      mi.compareAndUpdate(src + off, kSize, (short) -1, id, sid, (int) offset);
+      if (active == null || !active.contains(src + off, kSize)) {
+        mi.compareAndUpdate(src + off, kSize, (short) -1, id, sid, (int) offset);
+      }
       off += kSize + vSize;
     }
-    // Reset batch to accept new writes
-    batch.reset();
-    return offset;
   }
 
   @Override
   public long appendSingle(Segment s, long keyPtr, int keySize, long valuePtr, int valueSize) {
     checkCodec();
-    if (codec.isTrainingRequired()) {
-      codec.addTrainingData(valuePtr, valueSize);
+    int keyClass = getKeyClass(keyPtr, keySize);
+    if (codec.isTrainingRequired(keyClass)) {
+      codec.addTrainingData(keyClass, valuePtr, valueSize);
       //TODO keys
     }
     int reqSize = Utils.kvSize(keySize, valueSize);
@@ -145,7 +297,7 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
     off += keySize;
     UnsafeAccess.copy(valuePtr, dst + off, valueSize);
 
-    int dictVersion = this.codec.getCurrentDictionaryVersion();
+    int dictVersion = this.codec.getCurrentDictionaryVersion(keyClass);
     int compressed = this.codec.compress(dst, reqSize, dictVersion);
     if (compressed >= reqSize) {
       dictVersion = -1;// uncompressed
@@ -183,10 +335,7 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
   public long appendSingle(Segment s, byte[] key, int keyOffset, int keySize, byte[] value,
       int valueOffset, int valueSize) {
     checkCodec();
-    if (codec.isTrainingRequired()) {
-      codec.addTrainingData(value, valueOffset, valueSize);
-      //TODO keys
-    }
+    int keyClass = getKeyClass(key, keyOffset, keySize);
     int reqSize = Utils.kvSize(keySize, valueSize);
     long dst = getBuffer(reqSize);
     // Copy k-v to dst
@@ -194,9 +343,13 @@ public class CompressedBlockBatchDataWriter extends CompressedBlockDataWriter {
     off += Utils.writeUVInt(dst + off, valueSize);
     UnsafeAccess.copy(key, keyOffset, dst + off, keySize);
     off += keySize;
-    UnsafeAccess.copy(value, 0, dst + off, valueSize);
+    UnsafeAccess.copy(value, valueOffset, dst + off, valueSize);
 
-    int dictVersion = this.codec.getCurrentDictionaryVersion();
+    if (codec.isTrainingRequired(keyClass)) {
+      codec.addTrainingData(keyClass, dst + off, valueSize);
+      //TODO keys
+    }
+    int dictVersion = this.codec.getCurrentDictionaryVersion(keyClass);
     int compressed = this.codec.compress(dst, reqSize, dictVersion);
     if (compressed >= reqSize) {
       dictVersion = -1;// uncompressed
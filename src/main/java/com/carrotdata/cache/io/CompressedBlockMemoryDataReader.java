@@ -80,6 +80,35 @@ public class CompressedBlockMemoryDataReader implements DataReader {
     }
   }
 
+  /**
+   * Decompresses block into a thread local buffer, uses decompressed block cache if enabled
+   * @param engine I/O engine
+   * @param sid segment id
+   * @param ptr segment address
+   * @param offset block offset
+   * @param compressedSize compressed size
+   * @param uncompressedSize uncompressed size
+   * @param dictVersion dictionary version
+   * @return decompressed size or 0 (dictionary not found)
+   */
+  private int decompressBlock(IOEngine engine, int sid, long ptr, long offset, int compressedSize,
+      int uncompressedSize, int dictVersion) {
+    checkBuffer(uncompressedSize);
+    byte[] buf = buffers.get();
+    DecompressedBlockCache blockCache = engine.getDecompressedBlockCache();
+    if (blockCache != null) {
+      int dsize = blockCache.get(sid, offset, dictVersion, buf);
+      if (dsize > 0) {
+        return dsize;
+      }
+    }
+    int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
+    if (blockCache != null && dsize > 0) {
+      blockCache.put(sid, offset, dictVersion, buf, dsize);
+    }
+    return dsize;
+  }
+
   @Override
   public int read(IOEngine engine, byte[] key, int keyOffset, int keySize, int sid, long offset,
       int size, // TODO size can be -1
@@ -111,7 +140,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -119,10 +149,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         // dictionary not found
         return IOEngine.NOT_FOUND;
@@ -198,7 +227,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -206,10 +236,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         return IOEngine.NOT_FOUND;
       }
@@ -284,7 +313,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -292,10 +322,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         // dictionary not found
         return IOEngine.NOT_FOUND;
@@ -367,7 +396,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -375,10 +405,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         return IOEngine.NOT_FOUND;
       }
@@ -471,7 +500,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -479,10 +509,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         return IOEngine.NOT_FOUND;
       }
@@ -587,7 +616,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -595,10 +625,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         return IOEngine.NOT_FOUND;
       }
@@ -684,7 +713,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -692,10 +722,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         return IOEngine.NOT_FOUND;
       }
@@ -799,7 +828,8 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       return IOEngine.READ_ERROR;
     }
     long segSize = s.getSegmentDataSize();
-    if (uncompressedSize > segSize || compressedSize > segSize) {
+    // Uncompressed block can be larger than the data written so far (first blocks of a segment)
+    if (uncompressedSize > s.size() || compressedSize > segSize) {
       return IOEngine.READ_ERROR;
     }
     if (dictVersion >= 0) {
@@ -807,10 +837,9 @@ public class CompressedBlockMemoryDataReader implements DataReader {
       if (segSize < offset + COMP_META_SIZE + compressedSize) {
         return IOEngine.READ_ERROR;
       }
-      checkBuffer(uncompressedSize);
-      // Decompress
+      int dsize =
+          decompressBlock(engine, sid, ptr, offset, compressedSize, uncompressedSize, dictVersion);
       byte[] buf = buffers.get();
-      int dsize = codec.decompress(ptr + offset + COMP_META_SIZE, compressedSize, buf, dictVersion);
       if (dsize == 0) {
         return IOEngine.NOT_FOUND;
       }
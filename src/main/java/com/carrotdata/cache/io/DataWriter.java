@@ -37,6 +37,16 @@ public interface DataWriter {
     return false;
   }
 
+  /**
+   * Does writer require new segment memory to be zeroed. Segment memory can be reused without
+   * clearing (see {@link SegmentPool}), block based writers keep per - block meta which is
+   * updated incrementally, therefore they require zeroed memory by default
+   * @return true or false
+   */
+  public default boolean isZeroedMemoryRequired() {
+    return isBlockBased();
+  }
+
   /**
    * Is write batch supported
    * @return true if supported, false - otherwise
@@ -69,6 +79,38 @@ public interface DataWriter {
     return 0;
   }
 
+  /**
+   * Get write batch, whose items are written to a segment by the next
+   * {@link #append(Segment, WriteBatch)} call. Asynchronous writers write a previously sealed
+   * batch instead of the current one
+   * @param batch current write batch
+   * @return write batch or null (nothing is written)
+   */
+  public default WriteBatch getBatchToWrite(WriteBatch batch) {
+    return batch;
+  }
+
+  /**
+   * Get class of a key. Items of different classes are written into different blocks
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return key class (0 - default)
+   */
+  public default int getKeyClass(byte[] key, int keyOffset, int keySize) {
+    return 0;
+  }
+
+  /**
+   * Get class of a key. Items of different classes are written into different blocks
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return key class (0 - default)
+   */
+  public default int getKeyClass(long keyPtr, int keySize) {
+    return 0;
+  }
+
   /**
    * Get block size
    * @return block size
@@ -83,6 +125,12 @@ public interface DataWriter {
    */
   public void init(String cacheName);
 
+  /**
+   * Releases resources (background threads) held by a data writer
+   */
+  public default void dispose() {
+  }
+
   /**
    * Appends entry to a segment
    * @param keyPtr key address
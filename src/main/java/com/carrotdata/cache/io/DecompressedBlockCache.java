@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * Bounded cache of recently decompressed blocks of compressed memory segments. Blocks are keyed by
+ * (segment id, block offset, dictionary version) and kept off - heap in fixed size slots.
+ * <p>
+ * The cache is set - associative: a key maps to a set of {@link #WAYS} slots, sets are protected
+ * by striped locks. It is scan - resistant: a block is admitted into a full set only on a second
+ * miss (recently missed keys are remembered in a small per - set filter), the victim is a slot
+ * with the lowest hit counter. Blocks of a recycled segment are invalidated all at once by
+ * incrementing the segment's epoch.
+ */
+public class DecompressedBlockCache {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(DecompressedBlockCache.class);
+
+  /** Number of slots in a set */
+  static final int WAYS = 8;
+
+  private static final int MAX_FREQ = 3;
+
+  private static final int MAX_LOCKS = 1024;
+
+  /* Slot size */
+  private final int slotSize;
+
+  /* Number of sets */
+  private final int numSets;
+
+  /* Slots memory */
+  private final long memory;
+
+  /* Slot tags: segment id (high 32 bits) and block offset, -1 - empty */
+  private final long[] tags;
+
+  /* Slot dictionary versions */
+  private final int[] dictVersions;
+
+  /* Epoch of a segment at the time block was cached */
+  private final int[] slotEpochs;
+
+  /* Block sizes */
+  private final int[] sizes;
+
+  /* Hit counters */
+  private final byte[] freqs;
+
+  /* Recently missed keys (admission filter) */
+  private final int[] missed;
+
+  /* Admission filter positions */
+  private final int[] missedPos;
+
+  /* Current segment epochs, incremented on segment recycle */
+  private final int[] epochs;
+
+  /* Striped locks */
+  private final Object[] locks;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Creates decompressed block cache for a given cache if it is enabled
+   * @param cacheName cache name
+   * @param maxSegments maximum number of data segments
+   * @return block cache or null
+   */
+  public static DecompressedBlockCache fromConfig(String cacheName, int maxSegments) {
+    CacheConfig config = CacheConfig.getInstance();
+    if (!config.isCacheCompressionEnabled(cacheName)) {
+      return null;
+    }
+    long size = config.getCacheCompressionBlockCacheSize(cacheName);
+    if (size <= 0) {
+      return null;
+    }
+    // Write batch capacity is two compression blocks, larger blocks are not cached
+    int slotSize = 2 * config.getCacheCompressionBlockSize(cacheName);
+    DecompressedBlockCache cache = new DecompressedBlockCache(size, slotSize, maxSegments);
+    LOG.info("Decompressed block cache for cache [{}]: size={} slot size={} slots={}", cacheName,
+      size, slotSize, cache.getCapacity());
+    return cache;
+  }
+
+  /**
+   * Constructor
+   * @param maxMemory memory budget
+   * @param slotSize maximum size of a cached block
+   * @param maxSegments maximum number of data segments
+   */
+  public DecompressedBlockCache(long maxMemory, int slotSize, int maxSegments) {
+    this.slotSize = slotSize;
+    this.numSets = (int) Math.max(1, Math.min(Integer.MAX_VALUE / WAYS, maxMemory / slotSize / WAYS));
+    int slots = this.numSets * WAYS;
+    this.memory = UnsafeAccess.malloc((long) slots * slotSize);
+    this.tags = new long[slots];
+    Arrays.fill(this.tags, -1L);
+    this.dictVersions = new int[slots];
+    this.slotEpochs = new int[slots];
+    this.sizes = new int[slots];
+    this.freqs = new byte[slots];
+    this.missed = new int[slots];
+    this.missedPos = new int[this.numSets];
+    this.epochs = new int[maxSegments];
+    this.locks = new Object[Math.min(MAX_LOCKS, this.numSets)];
+    for (int i = 0; i < this.locks.length; i++) {
+      this.locks[i] = new Object();
+    }
+  }
+
+  private static long tag(int sid, long offset) {
+    return ((long) sid << 32) | (offset & 0xffffffffL);
+  }
+
+  private static long hash(long tag, int dictVersion) {
+    long h = tag * 0x9E3779B97F4A7C15L + dictVersion;
+    return h ^ (h >>> 29);
+  }
+
+  private int set(long hash) {
+    return (int) Long.remainderUnsigned(hash, this.numSets);
+  }
+
+  private static int fingerprint(long hash) {
+    return (int) (hash >>> 32) | 1;
+  }
+
+  private int find(int base, long tag, int dictVersion, int epoch) {
+    for (int i = base; i < base + WAYS; i++) {
+      if (this.tags[i] == tag && this.dictVersions[i] == dictVersion
+          && this.slotEpochs[i] == epoch) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get decompressed block
+   * @param sid segment id
+   * @param offset block offset
+   * @param dictVersion dictionary version
+   * @param buffer buffer to copy block to
+   * @return block size or -1 if not found (or buffer is too small)
+   */
+  public int get(int sid, long offset, int dictVersion, byte[] buffer) {
+    long tag = tag(sid, offset);
+    int set = set(hash(tag, dictVersion));
+    int base = set * WAYS;
+    synchronized (this.locks[set % this.locks.length]) {
+      int slot = find(base, tag, dictVersion, this.epochs[sid]);
+      if (slot < 0 || this.sizes[slot] > buffer.length) {
+        this.misses.incrementAndGet();
+        return -1;
+      }
+      if (this.freqs[slot] < MAX_FREQ) {
+        this.freqs[slot]++;
+      }
+      int size = this.sizes[slot];
+      UnsafeAccess.copy(this.memory + (long) slot * this.slotSize, buffer, 0, size);
+      this.hits.incrementAndGet();
+      return size;
+    }
+  }
+
+  /**
+   * Put decompressed block
+   * @param sid segment id
+   * @param offset block offset
+   * @param dictVersion dictionary version
+   * @param buffer buffer containing block
+   * @param size block size
+   * @return true if block was admitted
+   */
+  public boolean put(int sid, long offset, int dictVersion, byte[] buffer, int size) {
+    if (size > this.slotSize || size <= 0) {
+      return false;
+    }
+    long tag = tag(sid, offset);
+    long hash = hash(tag, dictVersion);
+    int set = set(hash);
+    int base = set * WAYS;
+    synchronized (this.locks[set % this.locks.length]) {
+      int epoch = this.epochs[sid];
+      if (find(base, tag, dictVersion, epoch) >= 0) {
+        // Another reader cached it already
+        return true;
+      }
+      int victim = -1;
+      int minFreq = Integer.MAX_VALUE;
+      for (int i = base; i < base + WAYS; i++) {
+        if (this.tags[i] == -1L || this.slotEpochs[i] != this.epochs[(int) (this.tags[i] >>> 32)]) {
+          // Empty or invalidated
+          victim = i;
+          minFreq = -1;
+          break;
+        }
+        if (this.freqs[i] < minFreq) {
+          minFreq = this.freqs[i];
+          victim = i;
+        }
+      }
+      if (minFreq >= 0 && !admit(set, base, fingerprint(hash))) {
+        this.rejected.incrementAndGet();
+        return false;
+      }
+      if (minFreq > 0) {
+        // Age the set, so blocks which are not accessed anymore can be replaced
+        for (int i = base; i < base + WAYS; i++) {
+          this.freqs[i]--;
+        }
+      }
+      UnsafeAccess.copy(buffer, 0, this.memory + (long) victim * this.slotSize, size);
+      this.tags[victim] = tag;
+      this.dictVersions[victim] = dictVersion;
+      this.slotEpochs[victim] = epoch;
+      this.sizes[victim] = size;
+      this.freqs[victim] = 0;
+      return true;
+    }
+  }
+
+  /**
+   * Admission filter: key is admitted into a full set only if it was missed recently
+   * @param set set index
+   * @param base first slot of the set
+   * @param fp key fingerprint
+   * @return true if admitted
+   */
+  private boolean admit(int set, int base, int fp) {
+    for (int i = base; i < base + WAYS; i++) {
+      if (this.missed[i] == fp) {
+        this.missed[i] = 0;
+        return true;
+      }
+    }
+    int pos = this.missedPos[set];
+    this.missed[base + pos] = fp;
+    this.missedPos[set] = (pos + 1) % WAYS;
+    return false;
+  }
+
+  /**
+   * Invalidates all blocks of a segment. Must be called when segment is recycled or its id is
+   * reused
+   * @param sid segment id
+   */
+  public void invalidate(int sid) {
+    // Epochs are read under set locks, racy increment is not possible - segment is write locked
+    this.epochs[sid]++;
+    UnsafeAccess.storeFence();
+  }
+
+  /**
+   * Get number of hits
+   * @return hits
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * Get number of misses
+   * @return misses
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  /**
+   * Get number of blocks rejected by admission filter
+   * @return number of blocks
+   */
+  public long getRejected() {
+    return this.rejected.get();
+  }
+
+  /**
+   * Get hit rate
+   * @return hit rate
+   */
+  public double getHitRate() {
+    long h = this.hits.get();
+    long total = h + this.misses.get();
+    return total == 0 ? 0. : (double) h / total;
+  }
+
+  /**
+   * Get number of slots
+   * @return number of slots
+   */
+  public int getCapacity() {
+    return this.numSets * WAYS;
+  }
+
+  /**
+   * Get allocated memory
+   * @return memory size
+   */
+  public long getAllocatedMemory() {
+    return (long) getCapacity() * this.slotSize;
+  }
+
+  /**
+   * Get maximum size of a cached block
+   * @return slot size
+   */
+  public int getSlotSize() {
+    return this.slotSize;
+  }
+
+  /**
+   * Release memory
+   */
+  public void dispose() {
+    UnsafeAccess.free(this.memory);
+  }
+}
@@ -0,0 +1,606 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.Persistent;
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Content - addressed store of large values. Byte - identical values are kept off - heap only
+ * once, data segments keep a small reference record instead of a value: magic (8 bytes), content
+ * hash (8 bytes) and value size (4 bytes). Every stored value has a reference counter, value is
+ * freed when the last reference is released (by Scavenger, when it frees a reference record).
+ * <p>
+ * Values are located by (hash, size), two different values with the same 64 bit hash and the
+ * same size can not be stored at the same time - the second one is rejected and must be stored
+ * inline. Reference records are recognized by their size and a magic. A user value of
+ * {@link #REFERENCE_SIZE} bytes starting with the magic is escaped: it is kept in the store
+ * regardless of its size, so data segments never contain such a value inline (see
+ * {@link #mustStore(byte[], int, int, boolean)}).
+ * <p>
+ * Entry format: next entry in a chain (8), hash (8), size (4), reference count (4), value.
+ */
+public class DedupValueStore implements Persistent {
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(DedupValueStore.class);
+
+  /** Reference record magic */
+  static final long MAGIC = 0x4445445550524546L;
+
+  /** Size of a reference record */
+  public static final int REFERENCE_SIZE = 20;
+
+  /* Entry header size */
+  static final int HEADER_SIZE = 24;
+
+  private static final int HASH_OFFSET = 8;
+
+  private static final int SIZE_OFFSET = 16;
+
+  private static final int REFS_OFFSET = 20;
+
+  private static final int MAX_LOCKS = 1024;
+
+  private static final int MIN_BUCKETS = 1 << 10;
+
+  private static final int MAX_BUCKETS = 1 << 24;
+
+  /* Hash table: addresses of chain heads */
+  private final long[] buckets;
+
+  /* Striped locks */
+  private final Object[] locks;
+
+  /* Minimum value size to deduplicate */
+  private final int minValueSize;
+
+  /* Number of unique values */
+  private final AtomicLong entries = new AtomicLong();
+
+  /* Number of references to all values */
+  private final AtomicLong references = new AtomicLong();
+
+  /* Total size of unique values */
+  private final AtomicLong storedSize = new AtomicLong();
+
+  /* Total size of all referenced values (what they would take w/o deduplication) */
+  private final AtomicLong logicalSize = new AtomicLong();
+
+  /* Allocated memory, including entry headers */
+  private final AtomicLong allocated = new AtomicLong();
+
+  /* Number of puts of an already stored value */
+  private final AtomicLong hits = new AtomicLong();
+
+  /* Number of values rejected due to hash collision */
+  private final AtomicLong collisions = new AtomicLong();
+
+  /**
+   * Creates value store for a given cache if it is enabled
+   * @param cacheName cache name
+   * @param maxStorageSize cache maximum storage size
+   * @return value store or null
+   */
+  public static DedupValueStore fromConfig(String cacheName, long maxStorageSize) {
+    CacheConfig config = CacheConfig.getInstance();
+    if (!config.isValueDedupEnabled(cacheName)) {
+      return null;
+    }
+    int minSize = Math.max(REFERENCE_SIZE + 1, config.getValueDedupMinSize(cacheName));
+    // Chains have one entry on average when all storage is taken by minimum size values
+    long num = Math.min(MAX_BUCKETS, Math.max(MIN_BUCKETS, maxStorageSize / minSize));
+    DedupValueStore store = new DedupValueStore((int) num, minSize);
+    LOG.info("Value deduplication for cache [{}]: min value size={} buckets={}", cacheName,
+      minSize, store.buckets.length);
+    return store;
+  }
+
+  /**
+   * Constructor
+   * @param numBuckets number of hash table buckets (rounded up to a power of 2)
+   * @param minValueSize minimum size of a value to deduplicate
+   */
+  public DedupValueStore(int numBuckets, int minValueSize) {
+    int num = Integer.highestOneBit(Math.max(1, numBuckets - 1)) << 1;
+    this.buckets = new long[num];
+    this.minValueSize = minValueSize;
+    this.locks = new Object[Math.min(MAX_LOCKS, num)];
+    for (int i = 0; i < this.locks.length; i++) {
+      this.locks[i] = new Object();
+    }
+    this.allocated.set((long) num * Utils.SIZEOF_LONG);
+  }
+
+  /**
+   * Get minimum value size to deduplicate
+   * @return size
+   */
+  public int getMinValueSize() {
+    return this.minValueSize;
+  }
+
+  /**
+   * Is value of a given size subject to deduplication
+   * @param size value size
+   * @return true or false
+   */
+  public boolean isDedupCandidate(int size) {
+    return size >= this.minValueSize;
+  }
+
+  /**
+   * Must a value be kept in the store. Values of a minimum size and larger are deduplicated,
+   * user values which look like reference records are escaped. Scavenger moves reference records
+   * as is, a reference - like value it puts is escaped only if it is not a known reference (it
+   * comes from a parent cache)
+   * @param value value buffer
+   * @param off value offset
+   * @param size value size
+   * @param scavenger true - put by scavenger
+   * @return true or false
+   */
+  public boolean mustStore(byte[] value, int off, int size, boolean scavenger) {
+    if (isReference(value, off, size)) {
+      return !scavenger || !contains(getHash(value, off), getValueSize(value, off));
+    }
+    return !scavenger && isDedupCandidate(size);
+  }
+
+  /**
+   * Must a value be kept in the store (see {@link #mustStore(byte[], int, int, boolean)})
+   * @param valuePtr value address
+   * @param size value size
+   * @param scavenger true - put by scavenger
+   * @return true or false
+   */
+  public boolean mustStore(long valuePtr, int size, boolean scavenger) {
+    if (isReference(valuePtr, size)) {
+      return !scavenger || !contains(UnsafeAccess.toLong(valuePtr + Utils.SIZEOF_LONG),
+        UnsafeAccess.toInt(valuePtr + 2 * Utils.SIZEOF_LONG));
+    }
+    return !scavenger && isDedupCandidate(size);
+  }
+
+  private boolean contains(long hash, int size) {
+    int bucket = bucket(hash);
+    synchronized (lockFor(bucket)) {
+      return find(bucket, hash, size) != 0;
+    }
+  }
+
+  private int bucket(long hash) {
+    return (int) (hash & (this.buckets.length - 1));
+  }
+
+  private Object lockFor(int bucket) {
+    return this.locks[bucket & (this.locks.length - 1)];
+  }
+
+  private static long next(long entry) {
+    return UnsafeAccess.toLong(entry);
+  }
+
+  private static long hash(long entry) {
+    return UnsafeAccess.toLong(entry + HASH_OFFSET);
+  }
+
+  private static int size(long entry) {
+    return UnsafeAccess.toInt(entry + SIZE_OFFSET);
+  }
+
+  private static int refs(long entry) {
+    return UnsafeAccess.toInt(entry + REFS_OFFSET);
+  }
+
+  /**
+   * Find entry in a chain, bucket lock must be held
+   */
+  private long find(int bucket, long hash, int size) {
+    long entry = this.buckets[bucket];
+    while (entry != 0) {
+      if (hash(entry) == hash && size(entry) == size) {
+        return entry;
+      }
+      entry = next(entry);
+    }
+    return 0;
+  }
+
+  /**
+   * Adds reference to an existing entry or allocates a new one, bucket lock must be held
+   * @return entry address or 0 - collision with a different value
+   */
+  private long retain(int bucket, long hash, int size, byte[] value, int off, long valuePtr) {
+    long entry = find(bucket, hash, size);
+    if (entry != 0) {
+      boolean same = value != null
+          ? Utils.equals(value, off, size, entry + HEADER_SIZE, size)
+          : Utils.equals(valuePtr, size, entry + HEADER_SIZE, size);
+      if (!same) {
+        this.collisions.incrementAndGet();
+        return 0;
+      }
+      UnsafeAccess.putInt(entry + REFS_OFFSET, refs(entry) + 1);
+      this.hits.incrementAndGet();
+    } else {
+      entry = UnsafeAccess.malloc(HEADER_SIZE + size);
+      UnsafeAccess.putLong(entry + HASH_OFFSET, hash);
+      UnsafeAccess.putInt(entry + SIZE_OFFSET, size);
+      UnsafeAccess.putInt(entry + REFS_OFFSET, 1);
+      if (value != null) {
+        UnsafeAccess.copy(value, off, entry + HEADER_SIZE, size);
+      } else {
+        UnsafeAccess.copy(valuePtr, entry + HEADER_SIZE, size);
+      }
+      UnsafeAccess.putLong(entry, this.buckets[bucket]);
+      this.buckets[bucket] = entry;
+      this.entries.incrementAndGet();
+      this.storedSize.addAndGet(size);
+      this.allocated.addAndGet(HEADER_SIZE + size);
+    }
+    this.references.incrementAndGet();
+    this.logicalSize.addAndGet(size);
+    return entry;
+  }
+
+  /**
+   * Stores value (or adds a reference to an identical one) and writes a reference record
+   * @param value value buffer
+   * @param off value offset
+   * @param size value size
+   * @param ref buffer for a reference record
+   * @param refOff reference record offset
+   * @return true on success, false - value must be stored inline (hash collision)
+   */
+  public boolean put(byte[] value, int off, int size, byte[] ref, int refOff) {
+    long hash = Utils.hash64(value, off, size);
+    int bucket = bucket(hash);
+    synchronized (lockFor(bucket)) {
+      if (retain(bucket, hash, size, value, off, 0) == 0) {
+        return false;
+      }
+    }
+    writeReference(hash, size, ref, refOff);
+    return true;
+  }
+
+  /**
+   * Stores value (or adds a reference to an identical one) and writes a reference record
+   * @param valuePtr value address
+   * @param size value size
+   * @param refPtr address of a reference record
+   * @return true on success, false - value must be stored inline (hash collision)
+   */
+  public boolean put(long valuePtr, int size, long refPtr) {
+    long hash = Utils.hash64(valuePtr, size);
+    int bucket = bucket(hash);
+    synchronized (lockFor(bucket)) {
+      if (retain(bucket, hash, size, null, 0, valuePtr) == 0) {
+        return false;
+      }
+    }
+    UnsafeAccess.putLong(refPtr, MAGIC);
+    UnsafeAccess.putLong(refPtr + Utils.SIZEOF_LONG, hash);
+    UnsafeAccess.putInt(refPtr + 2 * Utils.SIZEOF_LONG, size);
+    return true;
+  }
+
+  private static void writeReference(long hash, int size, byte[] ref, int off) {
+    UnsafeAccess.putLong(ref, off, MAGIC);
+    UnsafeAccess.putLong(ref, off + Utils.SIZEOF_LONG, hash);
+    UnsafeAccess.putInt(ref, off + 2 * Utils.SIZEOF_LONG, size);
+  }
+
+  /**
+   * Is a value a reference record
+   * @param value value buffer
+   * @param off value offset
+   * @param size value size
+   * @return true or false
+   */
+  public static boolean isReference(byte[] value, int off, int size) {
+    return size == REFERENCE_SIZE && UnsafeAccess.toLong(value, off) == MAGIC;
+  }
+
+  /**
+   * Is a value a reference record
+   * @param valuePtr value address
+   * @param size value size
+   * @return true or false
+   */
+  public static boolean isReference(long valuePtr, int size) {
+    return size == REFERENCE_SIZE && UnsafeAccess.toLong(valuePtr) == MAGIC;
+  }
+
+  /**
+   * Get size of a referenced value
+   * @param ref reference record buffer
+   * @param off reference record offset
+   * @return value size
+   */
+  public static int getValueSize(byte[] ref, int off) {
+    return UnsafeAccess.toInt(ref, off + 2 * Utils.SIZEOF_LONG);
+  }
+
+  private static long getHash(byte[] ref, int off) {
+    return UnsafeAccess.toLong(ref, off + Utils.SIZEOF_LONG);
+  }
+
+  /**
+   * Copies range of a referenced value to a buffer
+   * @param ref reference record buffer
+   * @param refOff reference record offset
+   * @param rangeStart range start
+   * @param rangeSize range size (value size - copy the whole value)
+   * @param buffer buffer
+   * @param bufOffset buffer offset
+   * @return number of bytes copied or -1 (value is not in the store)
+   */
+  public int get(byte[] ref, int refOff, int rangeStart, int rangeSize, byte[] buffer,
+      int bufOffset) {
+    long hash = getHash(ref, refOff);
+    int size = getValueSize(ref, refOff);
+    int bucket = bucket(hash);
+    synchronized (lockFor(bucket)) {
+      long entry = find(bucket, hash, size);
+      if (entry == 0) {
+        return -1;
+      }
+      rangeSize = Math.max(0, Math.min(rangeSize, size - rangeStart));
+      UnsafeAccess.copy(entry + HEADER_SIZE + rangeStart, buffer, bufOffset, rangeSize);
+      return rangeSize;
+    }
+  }
+
+  /**
+   * Copies range of a referenced value to a memory buffer
+   * @param ref reference record buffer
+   * @param refOff reference record offset
+   * @param rangeStart range start
+   * @param rangeSize range size (value size - copy the whole value)
+   * @param ptr memory address
+   * @return number of bytes copied or -1 (value is not in the store)
+   */
+  public int get(byte[] ref, int refOff, int rangeStart, int rangeSize, long ptr) {
+    long hash = getHash(ref, refOff);
+    int size = getValueSize(ref, refOff);
+    int bucket = bucket(hash);
+    synchronized (lockFor(bucket)) {
+      long entry = find(bucket, hash, size);
+      if (entry == 0) {
+        return -1;
+      }
+      rangeSize = Math.max(0, Math.min(rangeSize, size - rangeStart));
+      UnsafeAccess.copy(entry + HEADER_SIZE + rangeStart, ptr, rangeSize);
+      return rangeSize;
+    }
+  }
+
+  /**
+   * Get referenced value
+   * @param ref reference record buffer
+   * @param refOff reference record offset
+   * @return value or null
+   */
+  public byte[] getValue(byte[] ref, int refOff) {
+    byte[] value = new byte[getValueSize(ref, refOff)];
+    return get(ref, refOff, 0, value.length, value, 0) < 0 ? null : value;
+  }
+
+  /**
+   * Releases reference, value is freed when the last reference is released
+   * @param ref reference record buffer
+   * @param refOff reference record offset
+   * @return true if value was found, false - otherwise
+   */
+  public boolean release(byte[] ref, int refOff) {
+    long hash = getHash(ref, refOff);
+    int size = getValueSize(ref, refOff);
+    int bucket = bucket(hash);
+    synchronized (lockFor(bucket)) {
+      long prev = 0;
+      long entry = this.buckets[bucket];
+      while (entry != 0 && (hash(entry) != hash || size(entry) != size)) {
+        prev = entry;
+        entry = next(entry);
+      }
+      if (entry == 0) {
+        return false;
+      }
+      int refs = refs(entry) - 1;
+      this.references.decrementAndGet();
+      this.logicalSize.addAndGet(-size);
+      if (refs > 0) {
+        UnsafeAccess.putInt(entry + REFS_OFFSET, refs);
+        return true;
+      }
+      if (prev == 0) {
+        this.buckets[bucket] = next(entry);
+      } else {
+        UnsafeAccess.putLong(prev, next(entry));
+      }
+      UnsafeAccess.free(entry);
+      this.entries.decrementAndGet();
+      this.storedSize.addAndGet(-size);
+      this.allocated.addAndGet(-(HEADER_SIZE + size));
+      return true;
+    }
+  }
+
+  /**
+   * Releases reference
+   * @param refPtr address of a reference record
+   * @return true if value was found, false - otherwise
+   */
+  public boolean release(long refPtr) {
+    byte[] ref = new byte[REFERENCE_SIZE];
+    UnsafeAccess.copy(refPtr, ref, 0, REFERENCE_SIZE);
+    return release(ref, 0);
+  }
+
+  /**
+   * Get number of unique values
+   * @return number
+   */
+  public long getNumberOfEntries() {
+    return this.entries.get();
+  }
+
+  /**
+   * Get number of references to stored values
+   * @return number
+   */
+  public long getNumberOfReferences() {
+    return this.references.get();
+  }
+
+  /**
+   * Get total size of unique values
+   * @return size
+   */
+  public long getStoredSize() {
+    return this.storedSize.get();
+  }
+
+  /**
+   * Get total size of all referenced values (as if they were stored w/o deduplication)
+   * @return size
+   */
+  public long getLogicalSize() {
+    return this.logicalSize.get();
+  }
+
+  /**
+   * Get deduplication ratio: logical size / stored size
+   * @return ratio (1.0 if store is empty)
+   */
+  public double getDedupRatio() {
+    long stored = this.storedSize.get();
+    return stored == 0 ? 1.0 : (double) this.logicalSize.get() / stored;
+  }
+
+  /**
+   * Get memory allocated by the store
+   * @return memory size
+   */
+  public long getAllocatedMemory() {
+    return this.allocated.get();
+  }
+
+  /**
+   * Get number of puts of already stored values
+   * @return number
+   */
+  public long getTotalHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * Get number of values rejected due to a hash collision
+   * @return number
+   */
+  public long getTotalCollisions() {
+    return this.collisions.get();
+  }
+
+  /**
+   * Frees all stored values
+   */
+  public void dispose() {
+    for (int i = 0; i < this.buckets.length; i++) {
+      synchronized (lockFor(i)) {
+        long entry = this.buckets[i];
+        while (entry != 0) {
+          long next = next(entry);
+          UnsafeAccess.free(entry);
+          entry = next;
+        }
+        this.buckets[i] = 0;
+      }
+    }
+    this.entries.set(0);
+    this.references.set(0);
+    this.storedSize.set(0);
+    this.logicalSize.set(0);
+    this.allocated.set((long) this.buckets.length * Utils.SIZEOF_LONG);
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    byte[] buffer = new byte[4096];
+    dos.writeLong(this.entries.get());
+    for (int i = 0; i < this.buckets.length; i++) {
+      synchronized (lockFor(i)) {
+        long entry = this.buckets[i];
+        while (entry != 0) {
+          int size = size(entry);
+          dos.writeLong(hash(entry));
+          dos.writeInt(size);
+          dos.writeInt(refs(entry));
+          if (buffer.length < size) {
+            buffer = new byte[size];
+          }
+          UnsafeAccess.copy(entry + HEADER_SIZE, buffer, 0, size);
+          dos.write(buffer, 0, size);
+          entry = next(entry);
+        }
+      }
+    }
+    dos.writeLong(this.hits.get());
+    dos.writeLong(this.collisions.get());
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    DataInputStream dis = Utils.toDataInputStream(is);
+    dispose();
+    byte[] buffer = new byte[4096];
+    long num = dis.readLong();
+    for (long i = 0; i < num; i++) {
+      long hash = dis.readLong();
+      int size = dis.readInt();
+      int refs = dis.readInt();
+      if (buffer.length < size) {
+        buffer = new byte[size];
+      }
+      dis.readFully(buffer, 0, size);
+      int bucket = bucket(hash);
+      synchronized (lockFor(bucket)) {
+        long entry = retain(bucket, hash, size, buffer, 0, 0);
+        UnsafeAccess.putInt(entry + REFS_OFFSET, refs);
+      }
+      this.references.addAndGet(refs - 1);
+      this.logicalSize.addAndGet((long) (refs - 1) * size);
+    }
+    this.hits.set(dis.readLong());
+    this.collisions.set(dis.readLong());
+  }
+}
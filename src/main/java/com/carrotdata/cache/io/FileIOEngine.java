@@ -44,7 +44,6 @@ import org.slf4j.LoggerFactory;
 
 import com.carrotdata.cache.util.CacheConfig;
 
-import com.carrotdata.cache.util.UnsafeAccess;
 
 public class FileIOEngine extends IOEngine {
   /** Logger */
@@ -133,7 +132,7 @@ public class FileIOEngine extends IOEngine {
         long ptr = data.getAddress();
         data.setAddress(0);
         data.seal();
-        UnsafeAccess.free(ptr);
+        releaseSegmentMemory(ptr);
         
       } catch (IOException e) {
         LOG.error("saveInternal segmentId=" + data.getId() + " s=" + data, e);
@@ -63,6 +63,9 @@ public abstract class IOEngine implements Persistent {
 
   protected static final String FILE_NAME = "data_";
 
+  /* Initial buffer size for range reads of items with deduplicated values */
+  private static final int RANGE_ITEM_BUFFER_SIZE = 256;
+
   public static int NOT_FOUND = -1;
 
   public static int READ_ERROR = -2;
@@ -147,6 +150,12 @@ public abstract class IOEngine implements Persistent {
   /* Recycling selector */
   protected RecyclingSelector recyclingSelector;
 
+  /* Cache of decompressed blocks (compressed memory segments only) */
+  protected DecompressedBlockCache blockCache;
+
+  /* Store of deduplicated values (null - disabled) */
+  protected DedupValueStore dedupStore;
+
   /* Data embedding supported */
   boolean dataEmbedded;
 
@@ -235,6 +244,12 @@ public abstract class IOEngine implements Persistent {
       if (this.dataWriter.isWriteBatchSupported()) {
         this.writeBatches = new WriteBatches(this.dataWriter);
       }
+      this.segmentPool = SegmentPool.fromConfig(this.cacheName, this.segmentSize);
+      this.blockCache = DecompressedBlockCache.fromConfig(this.cacheName, this.numSegments);
+      this.dedupStore = DedupValueStore.fromConfig(this.cacheName, this.maxStorageSize);
+      if (this.writeBatches != null) {
+        this.writeBatches.setDedupValueStore(this.dedupStore);
+      }
 
     } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
       LOG.error("FATAL", e);
@@ -295,6 +310,9 @@ public abstract class IOEngine implements Persistent {
    */
   public long getTotalAllocated() {
     long size =  this.storageAllocated.get() + this.index.getAllocatedMemory();
+    if (this.dedupStore != null) {
+      size += this.dedupStore.getAllocatedMemory();
+    }
     return size;
   }
   
@@ -328,6 +346,9 @@ public abstract class IOEngine implements Persistent {
    */
   public final long getTotalUsed() {
     long size = this.storageUsed.get() + this.index.getAllocatedMemory();
+    if (this.dedupStore != null) {
+      size += this.dedupStore.getAllocatedMemory();
+    }
     return size;
   }
   
@@ -531,10 +552,44 @@ public abstract class IOEngine implements Persistent {
     return getMemoryIndex().maybeExists(keyPtr, size);
   }
   
+  /**
+   * Checks if an item, which was not found in a write batch, has been moved to a data segment
+   * (or to another write batch) after the index lookup
+   * @param keyPtr key address
+   * @param keySize key size
+   * @param buf index entry buffer
+   * @param entrySize index entry size
+   * @param batchOffset write batch offset found by the index lookup
+   * @return true if index now points to a different location
+   */
+  private boolean isMovedFromWriteBatch(long keyPtr, int keySize, long buf, int entrySize,
+      long batchOffset) {
+    long result = this.index.find(keyPtr, keySize, false, buf, entrySize);
+    return result >= 0 && this.index.getIndexFormat().getOffset(buf) != batchOffset;
+  }
+
+  /**
+   * Checks if an item, which was not found in a write batch, has been moved to a data segment
+   * (or to another write batch) after the index lookup
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @param buf index entry buffer
+   * @param entrySize index entry size
+   * @param batchOffset write batch offset found by the index lookup
+   * @return true if index now points to a different location
+   */
+  private boolean isMovedFromWriteBatch(byte[] key, int keyOffset, int keySize, long buf,
+      int entrySize, long batchOffset) {
+    long result = this.index.find(key, keyOffset, keySize, false, buf, entrySize);
+    return result >= 0 && this.index.getIndexFormat().getOffset(buf) != batchOffset;
+  }
+
   /**
    * Get key-value into a given byte buffer
    * @param keyPtr key address
    * @param keySize size of a key
+   * @param hit record hit if true
    * @param buffer buffer
    * @param bufOffset buffer offset
    * @return length of an item or -1
@@ -542,6 +597,338 @@ public abstract class IOEngine implements Persistent {
    */
   public long get(long keyPtr, int keySize, boolean hit, byte[] buffer, int bufOffset)
       throws IOException {
+    long result = getItem(keyPtr, keySize, hit, buffer, bufOffset);
+    if (this.dedupStore == null || result < 0 || result > buffer.length - bufOffset) {
+      return result;
+    }
+    return resolveReference(buffer, bufOffset, (int) result);
+  }
+
+  /**
+   * Get key-value into a given byte buffer
+   * @param key key buffer
+   * @param keyOffset offset
+   * @param keySize size of a key
+   * @param hit record hit if true
+   * @param buffer buffer
+   * @param bufOffset buffer offset
+   * @return length of an item or -1
+   * @throws IOException
+   */
+  public long get(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer,
+      int bufOffset) throws IOException {
+    long result = getItem(key, keyOffset, keySize, hit, buffer, bufOffset);
+    if (this.dedupStore == null || result < 0 || result > buffer.length - bufOffset) {
+      return result;
+    }
+    return resolveReference(buffer, bufOffset, (int) result);
+  }
+
+  /**
+   * Get key-value into a given byte buffer
+   * @param keyPtr key address
+   * @param keySize size of a key
+   * @param hit record hit if true
+   * @param buffer byte buffer
+   * @return length of an item or -1
+   * @throws IOException
+   */
+  public long get(long keyPtr, int keySize, boolean hit, ByteBuffer buffer) throws IOException {
+    long result = getItem(keyPtr, keySize, hit, buffer);
+    if (this.dedupStore == null || result < 0 || result > buffer.remaining()) {
+      return result;
+    }
+    return resolveReference(buffer, (int) result);
+  }
+
+  /**
+   * Get key-value into a given byte buffer
+   * @param key key buffer
+   * @param keyOffset offset
+   * @param keySize size of a key
+   * @param hit record hit if true
+   * @param buffer byte buffer
+   * @return length of an item or -1
+   * @throws IOException
+   */
+  public long get(byte[] key, int keyOffset, int keySize, boolean hit, ByteBuffer buffer)
+      throws IOException {
+    long result = getItem(key, keyOffset, keySize, hit, buffer);
+    if (this.dedupStore == null || result < 0 || result > buffer.remaining()) {
+      return result;
+    }
+    return resolveReference(buffer, (int) result);
+  }
+
+  /**
+   * Get value range into a given byte buffer
+   * @param keyPtr key address
+   * @param keySize size of a key
+   * @param rangeStart range start
+   * @param rangeSize range size
+   * @param hit record hit if true
+   * @param buffer buffer
+   * @param bufOffset buffer offset
+   * @return length of a range or -1
+   * @throws IOException
+   */
+  public long getRange(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
+      byte[] buffer, int bufOffset) throws IOException {
+    if (this.dedupStore == null) {
+      return getRangeItem(keyPtr, keySize, rangeStart, rangeSize, hit, buffer, bufOffset);
+    }
+    byte[] item = new byte[RANGE_ITEM_BUFFER_SIZE];
+    long result = getItem(keyPtr, keySize, hit, item, 0);
+    if (result > item.length) {
+      item = new byte[(int) result];
+      result = getItem(keyPtr, keySize, false, item, 0);
+    }
+    if (result < 0 || result > item.length) {
+      return result < 0 ? result : NOT_FOUND;
+    }
+    return copyRange(item, rangeStart, Math.min(rangeSize, buffer.length - bufOffset), buffer,
+      bufOffset, 0);
+  }
+
+  /**
+   * Get value range into a given byte buffer
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize size of a key
+   * @param rangeStart range start
+   * @param rangeSize range size
+   * @param hit record hit if true
+   * @param buffer buffer
+   * @param bufOffset buffer offset
+   * @return length of a range or -1
+   * @throws IOException
+   */
+  public long getRange(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
+      boolean hit, byte[] buffer, int bufOffset) throws IOException {
+    if (this.dedupStore == null) {
+      return getRangeItem(key, keyOffset, keySize, rangeStart, rangeSize, hit, buffer,
+        bufOffset);
+    }
+    byte[] item = new byte[RANGE_ITEM_BUFFER_SIZE];
+    long result = getItem(key, keyOffset, keySize, hit, item, 0);
+    if (result > item.length) {
+      item = new byte[(int) result];
+      result = getItem(key, keyOffset, keySize, false, item, 0);
+    }
+    if (result < 0 || result > item.length) {
+      return result < 0 ? result : NOT_FOUND;
+    }
+    return copyRange(item, rangeStart, Math.min(rangeSize, buffer.length - bufOffset), buffer,
+      bufOffset, 0);
+  }
+
+  /**
+   * Get value range into a given byte buffer
+   * @param keyPtr key address
+   * @param keySize size of a key
+   * @param rangeStart range start
+   * @param rangeSize range size
+   * @param hit record hit if true
+   * @param buffer byte buffer
+   * @return length of a range or -1
+   * @throws IOException
+   */
+  public long getRange(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
+      ByteBuffer buffer) throws IOException {
+    if (this.dedupStore == null) {
+      return getRangeItem(keyPtr, keySize, rangeStart, rangeSize, hit, buffer);
+    }
+    byte[] item = new byte[RANGE_ITEM_BUFFER_SIZE];
+    long result = getItem(keyPtr, keySize, hit, item, 0);
+    if (result > item.length) {
+      item = new byte[(int) result];
+      result = getItem(keyPtr, keySize, false, item, 0);
+    }
+    if (result < 0 || result > item.length) {
+      return result < 0 ? result : NOT_FOUND;
+    }
+    return copyRange(item, rangeStart, rangeSize, buffer);
+  }
+
+  /**
+   * Get value range into a given byte buffer
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize size of a key
+   * @param rangeStart range start
+   * @param rangeSize range size
+   * @param hit record hit if true
+   * @param buffer byte buffer
+   * @return length of a range or -1
+   * @throws IOException
+   */
+  public long getRange(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
+      boolean hit, ByteBuffer buffer) throws IOException {
+    if (this.dedupStore == null) {
+      return getRangeItem(key, keyOffset, keySize, rangeStart, rangeSize, hit, buffer);
+    }
+    byte[] item = new byte[RANGE_ITEM_BUFFER_SIZE];
+    long result = getItem(key, keyOffset, keySize, hit, item, 0);
+    if (result > item.length) {
+      item = new byte[(int) result];
+      result = getItem(key, keyOffset, keySize, false, item, 0);
+    }
+    if (result < 0 || result > item.length) {
+      return result < 0 ? result : NOT_FOUND;
+    }
+    return copyRange(item, rangeStart, rangeSize, buffer);
+  }
+
+  /**
+   * Replaces reference to a deduplicated value in a key-value item with the value itself
+   * @param buffer buffer which contains the item
+   * @param off item offset
+   * @param itemSize item size
+   * @return new item size (greater than available space - retry with a larger buffer) or -1 -
+   *     value was released after the read
+   */
+  private int resolveReference(byte[] buffer, int off, int itemSize) {
+    int keySize = Utils.readUVInt(buffer, off);
+    int kSizeSize = Utils.sizeUVInt(keySize);
+    int valueSize = Utils.readUVInt(buffer, off + kSizeSize);
+    int keyOff = off + kSizeSize + Utils.sizeUVInt(valueSize);
+    if (!DedupValueStore.isReference(buffer, keyOff + keySize, valueSize)) {
+      return itemSize;
+    }
+    byte[] ref = new byte[DedupValueStore.REFERENCE_SIZE];
+    System.arraycopy(buffer, keyOff + keySize, ref, 0, ref.length);
+    valueSize = DedupValueStore.getValueSize(ref, 0);
+    int requiredSize = Utils.kvSize(keySize, valueSize);
+    if (requiredSize > buffer.length - off) {
+      return requiredSize;
+    }
+    // Value size takes more bytes than the reference size - shift the key
+    int newKeyOff = off + kSizeSize + Utils.sizeUVInt(valueSize);
+    System.arraycopy(buffer, keyOff, buffer, newKeyOff, keySize);
+    Utils.writeUVInt(buffer, off + kSizeSize, valueSize);
+    if (this.dedupStore.get(ref, 0, 0, valueSize, buffer, newKeyOff + keySize) < 0) {
+      return NOT_FOUND;
+    }
+    return requiredSize;
+  }
+
+  /**
+   * Replaces reference to a deduplicated value in a key-value item with the value itself
+   * @param buffer byte buffer which contains the item at the current position
+   * @param itemSize item size
+   * @return new item size (greater than available space - retry with a larger buffer) or -1 -
+   *     value was released after the read
+   */
+  private int resolveReference(ByteBuffer buffer, int itemSize) {
+    if (buffer.hasArray()) {
+      int off = buffer.arrayOffset() + buffer.position();
+      byte[] array = buffer.array();
+      int avail = buffer.remaining();
+      if (array.length - off == avail) {
+        return resolveReference(array, off, itemSize);
+      }
+      // Byte buffer is a slice of a larger array, resolve in a temporary buffer
+      byte[] item = new byte[avail];
+      System.arraycopy(array, off, item, 0, itemSize);
+      int result = resolveReference(item, 0, itemSize);
+      if (result > 0 && result <= avail) {
+        System.arraycopy(item, 0, array, off, result);
+      }
+      return result;
+    }
+    long ptr = UnsafeAccess.address(buffer) + buffer.position();
+    int keySize = Utils.readUVInt(ptr);
+    int kSizeSize = Utils.sizeUVInt(keySize);
+    int valueSize = Utils.readUVInt(ptr + kSizeSize);
+    long keyPtr = ptr + kSizeSize + Utils.sizeUVInt(valueSize);
+    if (!DedupValueStore.isReference(keyPtr + keySize, valueSize)) {
+      return itemSize;
+    }
+    byte[] ref = new byte[DedupValueStore.REFERENCE_SIZE];
+    UnsafeAccess.copy(keyPtr + keySize, ref, 0, ref.length);
+    valueSize = DedupValueStore.getValueSize(ref, 0);
+    int requiredSize = Utils.kvSize(keySize, valueSize);
+    if (requiredSize > buffer.remaining()) {
+      return requiredSize;
+    }
+    byte[] key = new byte[keySize];
+    UnsafeAccess.copy(keyPtr, key, 0, keySize);
+    keyPtr = ptr + kSizeSize + Utils.sizeUVInt(valueSize);
+    UnsafeAccess.copy(key, 0, keyPtr, keySize);
+    Utils.writeUVInt(ptr + kSizeSize, valueSize);
+    if (this.dedupStore.get(ref, 0, 0, valueSize, keyPtr + keySize) < 0) {
+      return NOT_FOUND;
+    }
+    return requiredSize;
+  }
+
+  /**
+   * Copies value range of a key-value item, resolves reference to a deduplicated value
+   * @param item key-value item
+   * @param rangeStart range start
+   * @param rangeSize range size
+   * @param buffer buffer
+   * @param bufOffset buffer offset
+   * @param ptr memory address (if buffer is null)
+   * @return length of a range or -1
+   */
+  private int copyRange(byte[] item, int rangeStart, int rangeSize, byte[] buffer, int bufOffset,
+      long ptr) {
+    int keySize = Utils.readUVInt(item, 0);
+    int kSizeSize = Utils.sizeUVInt(keySize);
+    int valueSize = Utils.readUVInt(item, kSizeSize);
+    int valueOff = kSizeSize + Utils.sizeUVInt(valueSize) + keySize;
+    if (DedupValueStore.isReference(item, valueOff, valueSize)) {
+      valueSize = DedupValueStore.getValueSize(item, valueOff);
+      if (valueSize < rangeStart) {
+        return NOT_FOUND;
+      }
+      return buffer != null
+          ? this.dedupStore.get(item, valueOff, rangeStart, rangeSize, buffer, bufOffset)
+          : this.dedupStore.get(item, valueOff, rangeStart, rangeSize, ptr);
+    }
+    if (valueSize < rangeStart) {
+      return NOT_FOUND;
+    }
+    rangeSize = Math.min(rangeSize, valueSize - rangeStart);
+    if (buffer != null) {
+      System.arraycopy(item, valueOff + rangeStart, buffer, bufOffset, rangeSize);
+    } else {
+      UnsafeAccess.copy(item, valueOff + rangeStart, ptr, rangeSize);
+    }
+    return rangeSize;
+  }
+
+  /**
+   * Copies value range of a key-value item into a byte buffer (position is not changed), resolves
+   * reference to a deduplicated value
+   * @param item key-value item
+   * @param rangeStart range start
+   * @param rangeSize range size
+   * @param buffer byte buffer
+   * @return length of a range or -1
+   */
+  private int copyRange(byte[] item, int rangeStart, int rangeSize, ByteBuffer buffer) {
+    rangeSize = Math.min(rangeSize, buffer.remaining());
+    if (buffer.hasArray()) {
+      return copyRange(item, rangeStart, rangeSize, buffer.array(),
+        buffer.arrayOffset() + buffer.position(), 0);
+    }
+    return copyRange(item, rangeStart, rangeSize, null, 0,
+      UnsafeAccess.address(buffer) + buffer.position());
+  }
+
+  /**
+   * Get key-value into a given byte buffer
+   * @param keyPtr key address
+   * @param keySize size of a key
+   * @param buffer buffer
+   * @param bufOffset buffer offset
+   * @return length of an item or -1
+   * @throws IOException
+   */
+  private long getItem(long keyPtr, int keySize, boolean hit, byte[] buffer, int bufOffset)
+      throws IOException {
 
     IndexFormat format = this.index.getIndexFormat();
     int entrySize = format.indexEntrySize();
@@ -572,6 +959,10 @@ public abstract class IOEngine implements Persistent {
         if (size >= 0) {
           return size;
         } else {
+          if (isMovedFromWriteBatch(keyPtr, keySize, buf, entrySize, offset)) {
+            // Write batch was flushed to a data segment after index lookup
+            return getItem(keyPtr, keySize, false, buffer, bufOffset);
+          }
           // Collision: key was overridden by another key from some write buffer
           return NOT_FOUND;
         }
@@ -598,7 +989,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return get(keyPtr, keySize, hit, buffer, bufOffset);
+          return getItem(keyPtr, keySize, hit, buffer, bufOffset);
         }
         // Read the data
         res = get(sid, offset, keyValueSize, keyPtr, keySize, buffer, bufOffset);
@@ -625,7 +1016,7 @@ public abstract class IOEngine implements Persistent {
    * @return length of an item or -1
    * @throws IOException
    */
-  public long getRange(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
+  private long getRangeItem(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
       byte[] buffer, int bufOffset) throws IOException {
     IndexFormat format = this.index.getIndexFormat();
     // TODO: embedded entry case
@@ -666,7 +1057,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return getRange(keyPtr, keySize, rangeStart, rangeSize, hit, buffer, bufOffset);
+          return getRangeItem(keyPtr, keySize, rangeStart, rangeSize, hit, buffer, bufOffset);
         }
         // Read the data
         int res = getRange(sid, offset, keyValueSize, keyPtr, keySize, rangeStart, rangeSize,
@@ -690,8 +1081,8 @@ public abstract class IOEngine implements Persistent {
    * @return length of an item or -1
    * @throws IOException
    */
-  public long get(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer, int bufOffset)
-      throws IOException {
+  private long getItem(byte[] key, int keyOffset, int keySize, boolean hit, byte[] buffer,
+      int bufOffset) throws IOException {
 
     IndexFormat format = this.index.getIndexFormat();
     int entrySize = format.indexEntrySize();
@@ -723,6 +1114,10 @@ public abstract class IOEngine implements Persistent {
         if (size >= 0) {
           return size;
         } else {
+          if (isMovedFromWriteBatch(key, keyOffset, keySize, buf, entrySize, offset)) {
+            // Write batch was flushed to a data segment after index lookup
+            return getItem(key, keyOffset, keySize, false, buffer, bufOffset);
+          }
           // Collision: key was overridden by another key from some write buffer
           return NOT_FOUND;
         }
@@ -749,7 +1144,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return get(key, keyOffset, keySize, hit, buffer, bufOffset);
+          return getItem(key, keyOffset, keySize, hit, buffer, bufOffset);
         }
         // Read the data
         res = get(sid, offset, keyValueSize, key, keyOffset, keySize, buffer, bufOffset);
@@ -778,7 +1173,7 @@ public abstract class IOEngine implements Persistent {
    * @return length of a range or -1
    * @throws IOException
    */
-  public long getRange(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
+  private long getRangeItem(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
       boolean hit, byte[] buffer, int bufOffset) throws IOException {
 
     IndexFormat format = this.index.getIndexFormat();
@@ -818,7 +1213,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return getRange(key, keyOffset, keySize, rangeStart, rangeSize, hit, buffer, bufOffset);
+          return getRangeItem(key, keyOffset, keySize, rangeStart, rangeSize, hit, buffer, bufOffset);
         }
         // Read the data
         int res = getRange(sid, offset, keyValueSize, key, keyOffset, keySize, rangeStart,
@@ -841,7 +1236,7 @@ public abstract class IOEngine implements Persistent {
    * @return length of an item or -1
    * @throws IOException
    */
-  public long get(long keyPtr, int keySize, boolean hit, ByteBuffer buffer) throws IOException {
+  private long getItem(long keyPtr, int keySize, boolean hit, ByteBuffer buffer) throws IOException {
     IndexFormat format = this.index.getIndexFormat();
     int entrySize = format.indexEntrySize();
     long buf = UnsafeAccess.mallocZeroed(entrySize);
@@ -871,6 +1266,10 @@ public abstract class IOEngine implements Persistent {
         if (size >= 0) {
           return size;
         } else {
+          if (isMovedFromWriteBatch(keyPtr, keySize, buf, entrySize, offset)) {
+            // Write batch was flushed to a data segment after index lookup
+            return getItem(keyPtr, keySize, false, buffer);
+          }
           // Collision: key was overridden by another key from some write buffer
           return NOT_FOUND;
         }
@@ -900,7 +1299,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return get(keyPtr, keySize, hit, buffer);
+          return getItem(keyPtr, keySize, hit, buffer);
         }
         // Read the data
         res = get(sid, offset, keyValueSize, keyPtr, keySize, buffer);
@@ -927,7 +1326,7 @@ public abstract class IOEngine implements Persistent {
    * @return length of an item or -1
    * @throws IOException
    */
-  public long getRange(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
+  private long getRangeItem(long keyPtr, int keySize, int rangeStart, int rangeSize, boolean hit,
       ByteBuffer buffer) throws IOException {
     IndexFormat format = this.index.getIndexFormat();
     int entrySize = format.indexEntrySize();
@@ -969,7 +1368,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return getRange(keyPtr, keySize, rangeStart, rangeSize, hit, buffer);
+          return getRangeItem(keyPtr, keySize, rangeStart, rangeSize, hit, buffer);
         }
         // Read the data
         int res =
@@ -993,7 +1392,7 @@ public abstract class IOEngine implements Persistent {
    * @return length of an item or -1 (not found)
    * @throws IOException
    */
-  public long get(byte[] key, int keyOffset, int keySize, boolean hit, ByteBuffer buffer)
+  private long getItem(byte[] key, int keyOffset, int keySize, boolean hit, ByteBuffer buffer)
       throws IOException {
 
     IndexFormat format = this.index.getIndexFormat();
@@ -1025,6 +1424,10 @@ public abstract class IOEngine implements Persistent {
         if (size >= 0) {
           return size;
         } else {
+          if (isMovedFromWriteBatch(key, keyOffset, keySize, buf, entrySize, offset)) {
+            // Write batch was flushed to a data segment after index lookup
+            return getItem(key, keyOffset, keySize, false, buffer);
+          }
           // Collision: key was overriden by another key from some write buffer
           return NOT_FOUND;
         }
@@ -1052,7 +1455,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return get(key, keyOffset, keySize, hit, buffer);
+          return getItem(key, keyOffset, keySize, hit, buffer);
         }
         // Read the data
         res = get(sid, offset, keyValueSize, key, keyOffset, keySize, buffer);
@@ -1081,7 +1484,7 @@ public abstract class IOEngine implements Persistent {
    * @return length of an item or -1
    * @throws IOException
    */
-  public long getRange(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
+  private long getRangeItem(byte[] key, int keyOffset, int keySize, int rangeStart, int rangeSize,
       boolean hit, ByteBuffer buffer) throws IOException {
 
     IndexFormat format = this.index.getIndexFormat();
@@ -1121,7 +1524,7 @@ public abstract class IOEngine implements Persistent {
         }
         if (id != sid) {
           s.readUnlock();
-          return getRange(key, keyOffset, keySize, rangeStart, rangeSize, hit, buffer);
+          return getRangeItem(key, keyOffset, keySize, rangeStart, rangeSize, hit, buffer);
         }
         // Read the data
         int res = getRange(sid, offset, keyValueSize, key, keyOffset, keySize, rangeStart,
@@ -1896,6 +2299,9 @@ public abstract class IOEngine implements Persistent {
     try {
       seg.writeLock();
       seg.dispose();
+      if (this.blockCache != null) {
+        this.blockCache.invalidate(seg.getId());
+      }
       dataSegments[seg.getId()] = null;
       reportAllocation(-this.segmentSize);
       // FIXME: must update actual usage (compressed)
@@ -2079,7 +2485,37 @@ public abstract class IOEngine implements Persistent {
       int valueLength, long expire, int rank, int groupRank, boolean scavenger) throws IOException {
     checkRank(rank);
     checkRank(groupRank);
+    // Scavenger moves reference records as is
+    if (this.dedupStore != null
+        && this.dedupStore.mustStore(value, valueOff, valueLength, scavenger)) {
+      byte[] ref = new byte[DedupValueStore.REFERENCE_SIZE];
+      if (this.dedupStore.put(value, valueOff, valueLength, ref, 0)) {
+        boolean result = false;
+        try {
+          result = putInline(key, keyOff, keyLength, ref, 0, ref.length, expire, rank,
+            groupRank, scavenger);
+        } finally {
+          if (!result) {
+            this.dedupStore.release(ref, 0);
+          }
+        }
+        return result;
+      }
+      if (DedupValueStore.isReference(value, valueOff, valueLength)) {
+        // Can not be escaped, must not be stored inline
+        return false;
+      }
+    }
+    return putInline(key, keyOff, keyLength, value, valueOff, valueLength, expire, rank,
+      groupRank, scavenger);
+  }
 
+  /**
+   * Put key-value into a current RAM segment as is, bypassing value deduplication
+   */
+  private boolean putInline(byte[] key, int keyOff, int keyLength, byte[] value, int valueOff,
+      int valueLength, long expire, int rank, int groupRank, boolean scavenger)
+      throws IOException {
     Segment s = getRAMSegmentByRank(groupRank);
 
     if (s == null) {
@@ -2163,6 +2599,39 @@ public abstract class IOEngine implements Persistent {
       int rank, int groupRank, boolean scavenger) throws IOException {
     checkRank(rank);
     checkRank(groupRank);
+    // Scavenger moves reference records as is
+    if (this.dedupStore != null && this.dedupStore.mustStore(valuePtr, valueLength, scavenger)) {
+      long ref = UnsafeAccess.malloc(DedupValueStore.REFERENCE_SIZE);
+      try {
+        if (this.dedupStore.put(valuePtr, valueLength, ref)) {
+          boolean result = false;
+          try {
+            result = putInline(keyPtr, keyLength, ref, DedupValueStore.REFERENCE_SIZE, expire,
+              rank, groupRank, scavenger);
+          } finally {
+            if (!result) {
+              this.dedupStore.release(ref);
+            }
+          }
+          return result;
+        }
+      } finally {
+        UnsafeAccess.free(ref);
+      }
+      if (DedupValueStore.isReference(valuePtr, valueLength)) {
+        // Can not be escaped, must not be stored inline
+        return false;
+      }
+    }
+    return putInline(keyPtr, keyLength, valuePtr, valueLength, expire, rank, groupRank,
+      scavenger);
+  }
+
+  /**
+   * Put key-value into a current RAM segment as is, bypassing value deduplication
+   */
+  private boolean putInline(long keyPtr, int keyLength, long valuePtr, int valueLength,
+      long expire, int rank, int groupRank, boolean scavenger) throws IOException {
     Segment s = getRAMSegmentByRank(groupRank);
     if (s == null) {
       // We silently ignore PUT operation due to lack of resources
@@ -2201,6 +2670,9 @@ public abstract class IOEngine implements Persistent {
 
   protected ReentrantLock ramBufferLock = new ReentrantLock();
 
+  /* Pool of segment buffers (null - disabled) */
+  protected SegmentPool segmentPool;
+
   /**
    * FIXME: the source of thread contention
    * @param rank
@@ -2220,7 +2692,7 @@ public abstract class IOEngine implements Persistent {
           return null;
         }
         if (this.dataSegments[id] == null) {
-          long ptr = UnsafeAccess.mallocZeroed(this.segmentSize);
+          long ptr = allocateSegmentMemory();
           s = Segment.newSegment(ptr, (int) this.segmentSize, id, rank);
           s.init(this.cacheName);
           reportAllocation(this.segmentSize);
@@ -2230,6 +2702,9 @@ public abstract class IOEngine implements Persistent {
 
         } else {
           s = this.dataSegments[id];
+          if (this.blockCache != null) {
+            this.blockCache.invalidate(id);
+          }
           s.reuse(id, rank, System.currentTimeMillis());
         }
         this.ramBuffers[rank] = s;
@@ -2240,6 +2715,37 @@ public abstract class IOEngine implements Persistent {
     return s;
   }
 
+  /**
+   * Allocates memory for a new data segment
+   * @return memory address
+   */
+  protected long allocateSegmentMemory() {
+    if (this.segmentPool == null) {
+      return UnsafeAccess.mallocZeroed(this.segmentSize);
+    }
+    return this.segmentPool.allocate(this.dataWriter.isZeroedMemoryRequired());
+  }
+
+  /**
+   * Releases memory of a data segment
+   * @param ptr memory address
+   */
+  public void releaseSegmentMemory(long ptr) {
+    if (this.segmentPool == null) {
+      UnsafeAccess.free(ptr);
+    } else {
+      this.segmentPool.release(ptr);
+    }
+  }
+
+  /**
+   * Get segment memory pool
+   * @return segment pool or null
+   */
+  public SegmentPool getSegmentPool() {
+    return this.segmentPool;
+  }
+
   private void checkRank(int rank) {
     if (rank < 0 || rank >= ramBuffers.length) {
       throw new IllegalArgumentException(String.format("Illegal rank value: %d", rank));
@@ -2276,6 +2782,9 @@ public abstract class IOEngine implements Persistent {
     if (this.writeBatches != null) {
       this.writeBatches.save(dos);
     }
+    if (this.dedupStore != null) {
+      this.dedupStore.save(dos);
+    }
   }
 
   protected int getNumberOfActiveSegments() {
@@ -2314,6 +2823,9 @@ public abstract class IOEngine implements Persistent {
     if (this.writeBatches != null) {
       this.writeBatches.load(dis);
     }
+    if (this.dedupStore != null) {
+      this.dedupStore.load(dis);
+    }
     dis.close();
   }
 
@@ -2328,6 +2840,10 @@ public abstract class IOEngine implements Persistent {
 
   /** Dispose I/O engine - used for testing */
   public void dispose() {
+    // 0. Stop data writer background threads
+    if (this.dataWriter != null) {
+      this.dataWriter.dispose();
+    }
     // 1. dispose memory segments
     for (Segment s : this.dataSegments) {
       if (s == null) {
@@ -2341,6 +2857,18 @@ public abstract class IOEngine implements Persistent {
     if (this.writeBatches != null) {
       this.writeBatches.dispose();
     }
+    // 4. Release pooled segment memory
+    if (this.segmentPool != null) {
+      this.segmentPool.dispose();
+    }
+    // 5. Release decompressed block cache
+    if (this.blockCache != null) {
+      this.blockCache.dispose();
+    }
+    // 6. Release deduplicated values
+    if (this.dedupStore != null) {
+      this.dedupStore.dispose();
+    }
   }
 
   /**
@@ -2434,7 +2962,10 @@ public abstract class IOEngine implements Persistent {
   }
 
   public void shutdown() {
-    // do nothing, delegate to subclass
+    // Stop data writer background threads, subclasses must call super
+    if (this.dataWriter != null) {
+      this.dataWriter.dispose();
+    }
   }
 
   public Segment[] getDataSegmentsSorted() {
@@ -2451,6 +2982,30 @@ public abstract class IOEngine implements Persistent {
     return this.dataSegments;
   }
 
+  /**
+   * Get data writer
+   * @return data writer
+   */
+  public DataWriter getDataWriter() {
+    return this.dataWriter;
+  }
+
+  /**
+   * Get decompressed block cache
+   * @return block cache or null (if disabled)
+   */
+  public DecompressedBlockCache getDecompressedBlockCache() {
+    return this.blockCache;
+  }
+
+  /**
+   * Get store of deduplicated values
+   * @return value store or null (deduplication is disabled)
+   */
+  public DedupValueStore getDedupValueStore() {
+    return this.dedupStore;
+  }
+
   /**
    * Get write batches
    * @return write batches
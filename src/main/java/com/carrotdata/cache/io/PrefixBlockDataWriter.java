@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.META_SIZE;
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.getFullDataSize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.entrySize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getEntrySize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getSharedLength;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getSuffixAddress;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getSuffixSize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.writeEntryHeader;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * Block data writer with key prefix compression. Blocks have the same layout as in
+ * {@link BlockDataWriter}, but keys inside a block are front coded: every entry stores length of
+ * a prefix shared with the previous key in the block and the remaining key suffix (see
+ * {@link PrefixBlockReaderWriterSupport} for the entry format). Every N-th entry of a block
+ * (restart point) stores full key. Writer keeps the last key of a current block of every segment,
+ * so it decodes keys (at most N) only when a block was modified by someone else. Saves memory and
+ * disk space for workloads with long common key prefixes and small values at the cost of a scan
+ * (not a copy) of key suffixes.
+ * <p>
+ * Must be used with {@link PrefixBlockMemoryDataReader} and {@link PrefixBlockFileDataReader}.
+ */
+public class PrefixBlockDataWriter extends BlockDataWriter {
+
+  /* Last entry of a current block of a segment */
+  private static final class BlockState {
+    Segment segment;
+    /* Block address */
+    long blockPtr;
+    /* Block data size after the last entry */
+    int blockDataSize;
+    /* Number of entries in the block */
+    int count;
+    /* Last key */
+    byte[] key = new byte[256];
+    int keySize;
+  }
+
+  /* Segment id -> current block state. Appends to a segment are done under its write lock */
+  private ConcurrentHashMap<Integer, BlockState> blockStates =
+      new ConcurrentHashMap<Integer, BlockState>();
+
+  /* Restart interval */
+  private int restartInterval = CacheConfig.DEFAULT_CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL;
+
+  @Override
+  public void init(String cacheName) {
+    super.init(cacheName);
+    this.restartInterval =
+        Math.max(1, CacheConfig.getInstance().getBlockWriterPrefixRestartInterval(cacheName));
+  }
+
+  /**
+   * Sets restart interval
+   * @param interval restart interval
+   */
+  public void setRestartInterval(int interval) {
+    this.restartInterval = Math.max(1, interval);
+  }
+
+  /**
+   * Get restart interval
+   * @return restart interval
+   */
+  public int getRestartInterval() {
+    return this.restartInterval;
+  }
+
+  @Override
+  public long append(Segment s, long keyPtr, int keySize, long valuePtr, int valueSize) {
+    return append(s, null, 0, keyPtr, keySize, null, 0, valuePtr, valueSize);
+  }
+
+  @Override
+  public long append(Segment s, byte[] key, int keyOffset, int keySize, byte[] value,
+      int valueOffset, int valueSize) {
+    return append(s, key, keyOffset, 0, keySize, value, valueOffset, 0, valueSize);
+  }
+
+  /**
+   * Appends entry, key and value are either arrays or addresses (when arrays are null)
+   */
+  private long append(Segment s, byte[] key, int keyOffset, long keyPtr, int keySize,
+      byte[] value, int valueOffset, long valuePtr, int valueSize) {
+    processEmptySegment(s);
+    int blockSize = getBlockSize();
+    long fullDataSize = getFullDataSize(s, blockSize);
+    boolean notEmptySegment = s.getTotalItems() > 0;
+
+    int shared = notEmptySegment ? sharedPrefix(s, key, keyOffset, keyPtr, keySize) : 0;
+    int requiredSize = entrySize(shared, keySize - shared, valueSize);
+    long addr = getAppendAddress(s, requiredSize);
+    if (addr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    boolean crossedBlockBoundary = notEmptySegment && addr > s.getAddress() + fullDataSize;
+    if (crossedBlockBoundary && shared > 0) {
+      // First entry in a new block - full key
+      shared = 0;
+      requiredSize = entrySize(0, keySize, valueSize);
+      addr = getAppendAddress(s, requiredSize);
+      if (addr < 0) {
+        return IOEngine.NOT_FOUND;
+      }
+    }
+    long retValue =
+        crossedBlockBoundary ? addr - META_SIZE - s.getSegmentBlockDataSize() - s.getAddress() : 0;
+    int currentBlock = crossedBlockBoundary ? (int) (addr - s.getAddress()) / blockSize
+        : (int) (s.getSegmentBlockDataSize() / blockSize);
+
+    int suffixSize = keySize - shared;
+    addr += writeEntryHeader(addr, shared, suffixSize, valueSize);
+    // Copy key suffix
+    if (key != null) {
+      UnsafeAccess.copy(key, keyOffset + shared, addr, suffixSize);
+    } else {
+      UnsafeAccess.copy(keyPtr + shared, addr, suffixSize);
+    }
+    addr += suffixSize;
+    // Copy value (item)
+    if (value != null) {
+      UnsafeAccess.copy(value, valueOffset, addr, valueSize);
+    } else {
+      UnsafeAccess.copy(valuePtr, addr, valueSize);
+    }
+    incrBlockDataSize(s, currentBlock, requiredSize);
+    s.incrBlockDataSize((int) retValue);
+    updateBlockState(s, !notEmptySegment || crossedBlockBoundary, key, keyOffset, keyPtr,
+      keySize);
+    return s.getSegmentBlockDataSize();
+  }
+
+  private BlockState getBlockState(Segment s) {
+    BlockState state = this.blockStates.get(s.getId());
+    if (state == null) {
+      state = new BlockState();
+      BlockState prev = this.blockStates.putIfAbsent(s.getId(), state);
+      if (prev != null) {
+        state = prev;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Records appended entry as the last entry of the current block
+   * @param newBlock true if entry is the first one in a block
+   */
+  private void updateBlockState(Segment s, boolean newBlock, byte[] key, int keyOffset,
+      long keyPtr, int keySize) {
+    BlockState state = getBlockState(s);
+    long blockPtr = s.getAddress() + s.getSegmentBlockDataSize();
+    state.segment = s;
+    state.blockPtr = blockPtr;
+    state.blockDataSize = BlockReaderWriterSupport.getBlockDataSize(blockPtr);
+    state.count = newBlock ? 1 : state.count + 1;
+    if (keySize > state.key.length) {
+      state.key = new byte[2 * keySize];
+    }
+    if (key != null) {
+      System.arraycopy(key, keyOffset, state.key, 0, keySize);
+    } else {
+      UnsafeAccess.copy(keyPtr, state.key, 0, keySize);
+    }
+    state.keySize = keySize;
+  }
+
+  /**
+   * Decodes the last key of a block, when block state is not known (or stale)
+   */
+  private void loadBlockState(BlockState state, Segment s, long blockPtr, int blockDataSize) {
+    long ptr = blockPtr + META_SIZE;
+    long end = ptr + blockDataSize;
+    long restart = ptr;
+    int count = 0;
+    // Skip to the last restart point
+    while (ptr < end) {
+      if (count % this.restartInterval == 0) {
+        restart = ptr;
+      }
+      ptr += getEntrySize(ptr);
+      count++;
+    }
+    // Decode the last key
+    byte[] buf = state.key;
+    int prevSize = 0;
+    ptr = restart;
+    while (ptr < end) {
+      int shared = getSharedLength(ptr);
+      int suffixSize = getSuffixSize(ptr);
+      prevSize = shared + suffixSize;
+      if (prevSize > buf.length) {
+        byte[] b = new byte[2 * prevSize];
+        System.arraycopy(buf, 0, b, 0, shared);
+        buf = b;
+      }
+      UnsafeAccess.copy(getSuffixAddress(ptr), buf, shared, suffixSize);
+      ptr += getEntrySize(ptr);
+    }
+    state.segment = s;
+    state.blockPtr = blockPtr;
+    state.blockDataSize = blockDataSize;
+    state.count = count;
+    state.key = buf;
+    state.keySize = prevSize;
+  }
+
+  /**
+   * Computes length of a prefix shared by a new key and the last key in the current block
+   * @return shared prefix length, 0 - if new entry is a restart point
+   */
+  private int sharedPrefix(Segment s, byte[] key, int keyOffset, long keyPtr, int keySize) {
+    long blockPtr = s.getAddress() + s.getSegmentBlockDataSize();
+    int blockDataSize = BlockReaderWriterSupport.getBlockDataSize(blockPtr);
+    BlockState state = getBlockState(s);
+    if (state.segment != s || state.blockPtr != blockPtr
+        || state.blockDataSize != blockDataSize) {
+      loadBlockState(state, s, blockPtr, blockDataSize);
+    }
+    if (state.count % this.restartInterval == 0) {
+      // New entry is a restart point
+      return 0;
+    }
+    byte[] buf = state.key;
+    int prevSize = state.keySize;
+    int max = Math.min(prevSize, keySize);
+    int i = 0;
+    if (key != null) {
+      while (i < max && buf[i] == key[keyOffset + i]) {
+        i++;
+      }
+    } else {
+      while (i < max && buf[i] == UnsafeAccess.toByte(keyPtr + i)) {
+        i++;
+      }
+    }
+    return i;
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.META_SIZE;
+import static com.carrotdata.cache.io.IOUtils.readFully;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.findInBlock;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getValueOffset;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getValueSize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.writeItemHeader;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * File data reader for blocks with front coded keys (see {@link PrefixBlockDataWriter}). Block is
+ * read into an internal buffer, found item is assembled from the searched key and the value.
+ */
+public class PrefixBlockFileDataReader implements DataReader {
+
+  private ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+  private int blockSize;
+
+  @Override
+  public void init(String cacheName) {
+    this.blockSize = CacheConfig.getInstance().getBlockWriterBlockSize(cacheName);
+  }
+
+  /**
+   * Get segment's file, performs sanity checks
+   * @return file or null
+   */
+  private RandomAccessFile getFile(IOEngine engine, int sid, long offset, int size)
+      throws IOException {
+    // TODO prevent file from being closed/deleted
+    FileIOEngine fileEngine = (FileIOEngine) engine;
+    RandomAccessFile file = fileEngine.getFileFor(sid);
+    if (file == null) {
+      return null;
+    }
+    if (file.length() < offset + Math.max(size, META_SIZE)) {
+      // Rare situation - wrong segment - hash collision
+      return null;
+    }
+    return file;
+  }
+
+  /**
+   * Reads block into an internal buffer. Block can be larger than block size if it contains single
+   * large item
+   * @param file file
+   * @param offset block offset in the file
+   * @return block buffer, must be released after use
+   * @throws IOException
+   */
+  private byte[] readBlock(RandomAccessFile file, long offset) throws IOException {
+    byte[] buf = getBuffer();
+    int toRead = (int) Math.min(blockSize, file.length() - offset);
+    readFully(file, offset, buf, 0, toRead);
+    int dataSize = UnsafeAccess.toInt(buf, 0);
+    if (dataSize > blockSize - META_SIZE) {
+      // means that this is a single item larger than a block
+      byte[] bbuf = new byte[dataSize + META_SIZE];
+      System.arraycopy(buf, 0, bbuf, 0, blockSize);
+      releaseBuffer(buf);
+      buf = bbuf;
+      readFully(file, offset + blockSize, buf, blockSize, dataSize - blockSize + META_SIZE);
+    }
+    return buf;
+  }
+
+  @Override
+  public int read(IOEngine engine, byte[] key, int keyOffset, int keySize, int sid, long offset,
+      int size, // can be -1 (unknown)
+      byte[] buffer, int bufOffset) throws IOException {
+    // every segment in a file system has 8 bytes meta prefix
+    offset += Segment.META_SIZE;
+    int avail = buffer.length - bufOffset;
+    // sanity check
+    if (size > avail) {
+      return size;
+    }
+    RandomAccessFile file = getFile(engine, sid, offset, size);
+    if (file == null) {
+      return IOEngine.NOT_FOUND;
+    }
+    byte[] buf = readBlock(file, offset);
+    try {
+      int off = findInBlock(buf, 0, UnsafeAccess.toInt(buf, 0), key, keyOffset, keySize);
+      if (off < 0) {
+        return IOEngine.NOT_FOUND;
+      }
+      int valueSize = getValueSize(buf, off);
+      int requiredSize = Utils.kvSize(keySize, valueSize);
+      if (requiredSize > avail) {
+        return requiredSize;
+      }
+      int $off = bufOffset + writeItemHeader(buffer, bufOffset, keySize, valueSize);
+      System.arraycopy(key, keyOffset, buffer, $off, keySize);
+      System.arraycopy(buf, getValueOffset(buf, off), buffer, $off + keySize, valueSize);
+      return requiredSize;
+    } finally {
+      releaseBuffer(buf);
+    }
+  }
+
+  @Override
+  public int read(IOEngine engine, byte[] key, int keyOffset, int keySize, int sid, long offset,
+      int size, ByteBuffer buffer) throws IOException {
+    offset += Segment.META_SIZE;
+    int avail = buffer.remaining();
+    // sanity check
+    if (size > avail) {
+      return size;
+    }
+    RandomAccessFile file = getFile(engine, sid, offset, size);
+    if (file == null) {
+      return IOEngine.NOT_FOUND;
+    }
+    byte[] buf = readBlock(file, offset);
+    try {
+      int off = findInBlock(buf, 0, UnsafeAccess.toInt(buf, 0), key, keyOffset, keySize);
+      if (off < 0) {
+        return IOEngine.NOT_FOUND;
+      }
+      int valueSize = getValueSize(buf, off);
+      int requiredSize = Utils.kvSize(keySize, valueSize);
+      if (requiredSize > avail) {
+        return requiredSize;
+      }
+      int pos = buffer.position();
+      writeItemHeader(buffer, keySize, valueSize);
+      buffer.put(key, keyOffset, keySize);
+      buffer.put(buf, getValueOffset(buf, off), valueSize);
+      buffer.position(pos);
+      return requiredSize;
+    } finally {
+      releaseBuffer(buf);
+    }
+  }
+
+  @Override
+  public int read(IOEngine engine, long keyPtr, int keySize, int sid, long offset, int size,
+      byte[] buffer, int bufOffset) throws IOException {
+    offset += Segment.META_SIZE;
+    int avail = buffer.length - bufOffset;
+    // sanity check
+    if (size > avail) {
+      return size;
+    }
+    RandomAccessFile file = getFile(engine, sid, offset, size);
+    if (file == null) {
+      return IOEngine.NOT_FOUND;
+    }
+    byte[] buf = readBlock(file, offset);
+    try {
+      int off = findInBlock(buf, 0, UnsafeAccess.toInt(buf, 0), keyPtr, keySize);
+      if (off < 0) {
+        return IOEngine.NOT_FOUND;
+      }
+      int valueSize = getValueSize(buf, off);
+      int requiredSize = Utils.kvSize(keySize, valueSize);
+      if (requiredSize > avail) {
+        return requiredSize;
+      }
+      int $off = bufOffset + writeItemHeader(buffer, bufOffset, keySize, valueSize);
+      UnsafeAccess.copy(keyPtr, buffer, $off, keySize);
+      System.arraycopy(buf, getValueOffset(buf, off), buffer, $off + keySize, valueSize);
+      return requiredSize;
+    } finally {
+      releaseBuffer(buf);
+    }
+  }
+
+  @Override
+  public int read(IOEngine engine, long keyPtr, int keySize, int sid, long offset, int size,
+      ByteBuffer buffer) throws IOException {
+    offset += Segment.META_SIZE;
+    int avail = buffer.remaining();
+    // sanity check
+    if (size > avail) {
+      return size;
+    }
+    RandomAccessFile file = getFile(engine, sid, offset, size);
+    if (file == null) {
+      return IOEngine.NOT_FOUND;
+    }
+    byte[] buf = readBlock(file, offset);
+    try {
+      int off = findInBlock(buf, 0, UnsafeAccess.toInt(buf, 0), keyPtr, keySize);
+      if (off < 0) {
+        return IOEngine.NOT_FOUND;
+      }
+      int valueSize = getValueSize(buf, off);
+      int requiredSize = Utils.kvSize(keySize, valueSize);
+      if (requiredSize > avail) {
+        return requiredSize;
+      }
+      int pos = buffer.position();
+      writeItemHeader(buffer, keySize, valueSize);
+      UnsafeAccess.copy(keyPtr, buffer, keySize);
+      buffer.put(buf, getValueOffset(buf, off), valueSize);
+      buffer.position(pos);
+      return requiredSize;
+    } finally {
+      releaseBuffer(buf);
+    }
+  }
+
+  private byte[] getBuffer() {
+    byte[] buffer = buffers.poll();
+    if (buffer == null) {
+      buffer = new byte[blockSize];
+    }
+    return buffer;
+  }
+
+  private void releaseBuffer(byte[] buffer) {
+    if (buffer.length == blockSize) {
+      buffers.offer(buffer);
+    }
+  }
+
+  @Override
+  public SegmentScanner getSegmentScanner(IOEngine engine, Segment s) throws IOException {
+    String cacheName = engine.getCacheName();
+    int blockSize = CacheConfig.getInstance().getBlockWriterBlockSize(cacheName);
+    return new PrefixBlockFileSegmentScanner(s, (FileIOEngine) engine, blockSize);
+  }
+}
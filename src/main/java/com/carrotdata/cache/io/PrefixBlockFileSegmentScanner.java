@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.META_SIZE;
+import static com.carrotdata.cache.io.IOUtils.readFully;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * File segment scanner for blocks with front coded keys (see {@link PrefixBlockDataWriter}).
+ * Segment file is read block by block, current key is decoded incrementally into an internal
+ * buffer. Direct access to keys and values is not supported.
+ */
+public final class PrefixBlockFileSegmentScanner implements SegmentScanner {
+
+  /** Data segment */
+  Segment segment;
+
+  /** File */
+  RandomAccessFile file;
+
+  /** Number of entries in the segment */
+  int numEntries;
+
+  /** Current entry */
+  int currentEntry = 0;
+
+  /** Block size */
+  int blockSize;
+
+  /** Current block */
+  byte[] block;
+
+  /** Current block data size */
+  int blockDataSize;
+
+  /** Offset of a current entry in the block */
+  int blockOffset;
+
+  /** Current block offset in the file */
+  long fileOffset = Segment.META_SIZE;
+
+  /** Current key */
+  byte[] key = new byte[256];
+
+  /** Current key size */
+  int keySize;
+
+  /** Current value size */
+  int valueSize;
+
+  /** Current value offset in the block */
+  int valueOffset;
+
+  /** Current entry size */
+  int entrySize;
+
+  PrefixBlockFileSegmentScanner(Segment s, FileIOEngine engine, int blockSize)
+      throws IOException {
+    this.segment = s;
+    this.file = engine.getFileFor(s.getId());
+    if (this.file == null) {
+      String fileName = engine.getSegmentFileName(s.getId());
+      throw new IOException(String.format("File %s does not exists", fileName));
+    }
+    this.numEntries = s.getInfo().getTotalItems();
+    this.blockSize = blockSize;
+    this.block = new byte[blockSize];
+    s.readLock();
+    if (this.numEntries > 0) {
+      readBlock();
+      decodeEntry();
+    }
+  }
+
+  private void readBlock() throws IOException {
+    readFully(this.file, this.fileOffset, this.block, 0, META_SIZE);
+    this.blockDataSize = UnsafeAccess.toInt(this.block, 0);
+    if (this.blockDataSize + META_SIZE > this.block.length) {
+      // single item larger than a block
+      this.block = new byte[this.blockDataSize + META_SIZE];
+    }
+    readFully(this.file, this.fileOffset + META_SIZE, this.block, META_SIZE, this.blockDataSize);
+    this.blockOffset = META_SIZE;
+  }
+
+  private void decodeEntry() {
+    int off = this.blockOffset;
+    int shared = Utils.readUVInt(this.block, off);
+    off += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(this.block, off);
+    off += Utils.sizeUVInt(suffixSize);
+    this.valueSize = Utils.readUVInt(this.block, off);
+    off += Utils.sizeUVInt(this.valueSize);
+    this.keySize = shared + suffixSize;
+    if (this.keySize > this.key.length) {
+      byte[] k = new byte[2 * this.keySize];
+      System.arraycopy(this.key, 0, k, 0, shared);
+      this.key = k;
+    }
+    System.arraycopy(this.block, off, this.key, shared, suffixSize);
+    this.valueOffset = off + suffixSize;
+    this.entrySize = this.valueOffset + this.valueSize - this.blockOffset;
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    return this.currentEntry < this.numEntries;
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    this.currentEntry++;
+    if (this.currentEntry >= this.numEntries) {
+      return false;
+    }
+    int off = this.blockOffset + this.entrySize;
+    if (off == this.blockDataSize + META_SIZE) {
+      this.fileOffset +=
+          (long) ((this.blockDataSize + META_SIZE - 1) / this.blockSize + 1) * this.blockSize;
+      readBlock();
+    } else {
+      this.blockOffset = off;
+    }
+    decodeEntry();
+    return true;
+  }
+
+  @Override
+  public int keyLength() throws IOException {
+    return this.keySize;
+  }
+
+  @Override
+  public int valueLength() throws IOException {
+    return this.valueSize;
+  }
+
+  @Override
+  public long keyAddress() {
+    return 0;
+  }
+
+  @Override
+  public long valueAddress() {
+    return 0;
+  }
+
+  @Override
+  public long getExpire() {
+    return -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    segment.readUnlock();
+  }
+
+  @Override
+  public int getKey(ByteBuffer b) throws IOException {
+    if (this.keySize <= b.remaining()) {
+      b.put(this.key, 0, this.keySize);
+    }
+    return this.keySize;
+  }
+
+  @Override
+  public int getValue(ByteBuffer b) throws IOException {
+    if (this.valueSize <= b.remaining()) {
+      b.put(this.block, this.valueOffset, this.valueSize);
+    }
+    return this.valueSize;
+  }
+
+  @Override
+  public boolean isDirect() {
+    return false;
+  }
+
+  @Override
+  public int getKey(byte[] buffer, int offset) throws IOException {
+    if (this.keySize > buffer.length - offset) {
+      return this.keySize;
+    }
+    System.arraycopy(this.key, 0, buffer, offset, this.keySize);
+    return this.keySize;
+  }
+
+  @Override
+  public int getValue(byte[] buffer, int offset) throws IOException {
+    if (this.valueSize > buffer.length - offset) {
+      return this.valueSize;
+    }
+    System.arraycopy(this.block, this.valueOffset, buffer, offset, this.valueSize);
+    return this.valueSize;
+  }
+
+  @Override
+  public Segment getSegment() {
+    return this.segment;
+  }
+
+  @Override
+  public long getOffset() {
+    return this.fileOffset - Segment.META_SIZE + this.blockOffset;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.getFullDataSize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.findInBlock;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getValueAddress;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.getValueSize;
+import static com.carrotdata.cache.io.PrefixBlockReaderWriterSupport.writeItemHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Memory data reader for blocks with front coded keys (see {@link PrefixBlockDataWriter}). Key of
+ * a found item is equal to the searched one, therefore item is assembled from the searched key and
+ * the value in a block.
+ */
+public class PrefixBlockMemoryDataReader implements DataReader {
+
+  private int blockSize;
+
+  public PrefixBlockMemoryDataReader() {
+  }
+
+  @Override
+  public void init(String cacheName) {
+    this.blockSize = CacheConfig.getInstance().getBlockWriterBlockSize(cacheName);
+  }
+
+  /**
+   * Get address of a block, performs sanity checks
+   * @return block address or NOT_FOUND
+   */
+  private long getBlockAddress(IOEngine engine, int sid, long offset, int size) {
+    // Segment read lock is already held by this thread
+    Segment s = engine.getSegmentById(sid);
+    if (s == null || !s.isMemory()) {
+      return IOEngine.NOT_FOUND;
+    }
+    long dataSize = getFullDataSize(s, blockSize);
+    if (size > 0 && dataSize < offset + size) {
+      // Rare situation - wrong segment - hash collision
+      return IOEngine.NOT_FOUND;
+    }
+    return s.getAddress() + offset;
+  }
+
+  @Override
+  public int read(IOEngine engine, byte[] key, int keyOffset, int keySize, int sid, long offset,
+      int size, /* can be unknown -1 */
+      byte[] buffer, int bufOffset) {
+    int avail = buffer.length - bufOffset;
+    // sanity check
+    if (size > avail) {
+      return size;
+    }
+    long ptr = getBlockAddress(engine, sid, offset, size);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    ptr = findInBlock(ptr, key, keyOffset, keySize);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    int valueSize = getValueSize(ptr);
+    int requiredSize = Utils.kvSize(keySize, valueSize);
+    if (requiredSize > avail) {
+      return requiredSize;
+    }
+    int off = bufOffset + writeItemHeader(buffer, bufOffset, keySize, valueSize);
+    System.arraycopy(key, keyOffset, buffer, off, keySize);
+    UnsafeAccess.copy(getValueAddress(ptr), buffer, off + keySize, valueSize);
+    return requiredSize;
+  }
+
+  @Override
+  public int read(IOEngine engine, byte[] key, int keyOffset, int keySize, int sid, long offset,
+      int size, ByteBuffer buffer) {
+    int avail = buffer.remaining();
+    // Sanity check
+    if (size > avail) {
+      return size;
+    }
+    long ptr = getBlockAddress(engine, sid, offset, size);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    ptr = findInBlock(ptr, key, keyOffset, keySize);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    int valueSize = getValueSize(ptr);
+    int requiredSize = Utils.kvSize(keySize, valueSize);
+    if (requiredSize > avail) {
+      return requiredSize;
+    }
+    int pos = buffer.position();
+    writeItemHeader(buffer, keySize, valueSize);
+    buffer.put(key, keyOffset, keySize);
+    UnsafeAccess.copy(getValueAddress(ptr), buffer, valueSize);
+    buffer.position(pos);
+    return requiredSize;
+  }
+
+  @Override
+  public int read(IOEngine engine, long keyPtr, int keySize, int sid, long offset, int size,
+      byte[] buffer, int bufOffset) {
+    int avail = buffer.length - bufOffset;
+    // Sanity check
+    if (size > avail) {
+      return size;
+    }
+    long ptr = getBlockAddress(engine, sid, offset, size);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    ptr = findInBlock(ptr, keyPtr, keySize);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    int valueSize = getValueSize(ptr);
+    int requiredSize = Utils.kvSize(keySize, valueSize);
+    if (requiredSize > avail) {
+      return requiredSize;
+    }
+    int off = bufOffset + writeItemHeader(buffer, bufOffset, keySize, valueSize);
+    UnsafeAccess.copy(keyPtr, buffer, off, keySize);
+    UnsafeAccess.copy(getValueAddress(ptr), buffer, off + keySize, valueSize);
+    return requiredSize;
+  }
+
+  @Override
+  public int read(IOEngine engine, long keyPtr, int keySize, int sid, long offset, int size,
+      ByteBuffer buffer) {
+    int avail = buffer.remaining();
+    // Sanity check
+    if (size > avail) {
+      return size;
+    }
+    long ptr = getBlockAddress(engine, sid, offset, size);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    ptr = findInBlock(ptr, keyPtr, keySize);
+    if (ptr < 0) {
+      return IOEngine.NOT_FOUND;
+    }
+    int valueSize = getValueSize(ptr);
+    int requiredSize = Utils.kvSize(keySize, valueSize);
+    if (requiredSize > avail) {
+      return requiredSize;
+    }
+    int pos = buffer.position();
+    writeItemHeader(buffer, keySize, valueSize);
+    UnsafeAccess.copy(keyPtr, buffer, keySize);
+    UnsafeAccess.copy(getValueAddress(ptr), buffer, valueSize);
+    buffer.position(pos);
+    return requiredSize;
+  }
+
+  @Override
+  public SegmentScanner getSegmentScanner(IOEngine engine, Segment s) throws IOException {
+    CacheConfig config = CacheConfig.getInstance();
+    String cacheName = engine.getCacheName();
+    int blockSize = config.getBlockWriterBlockSize(cacheName);
+    return new PrefixBlockMemorySegmentScanner(s, blockSize);
+  }
+}
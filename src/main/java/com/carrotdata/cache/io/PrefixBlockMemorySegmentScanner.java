@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.META_SIZE;
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.getBlockDataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Segment scanner for blocks with front coded keys (see {@link PrefixBlockDataWriter}). Current
+ * key is decoded incrementally into an internal off - heap buffer, so {@link #keyAddress()} points
+ * to the full key. Usage: while(scanner.hasNext()){ // do job // ... // next() scanner.next(); }
+ */
+public final class PrefixBlockMemorySegmentScanner implements SegmentScanner {
+  /*
+   * Data segment
+   */
+  Segment segment;
+  /*
+   * Current scanner index
+   */
+  int currentItemIndex = 0;
+
+  /**
+   * Total number of items in a segment
+   */
+  int totalItems = 0;
+  /**
+   * Current offset in a parent segment
+   */
+  int segmentOffset = 0;
+
+  /**
+   * Offset in a current block
+   */
+  int blockOffset = 0;
+
+  /**
+   * Block data size
+   */
+  int blockDataSize = 0;
+
+  /**
+   * Block size
+   */
+  int blockSize;
+
+  /**
+   * Current block number
+   */
+  int currentBlockIndex = -1;
+
+  /**
+   * Current key buffer
+   */
+  long keyBuffer;
+
+  /**
+   * Current key buffer size
+   */
+  int keyBufferSize = 256;
+
+  /**
+   * Current key size
+   */
+  int keySize;
+
+  /**
+   * Current value size
+   */
+  int valueSize;
+
+  /**
+   * Current value address
+   */
+  long valueAddress;
+
+  /**
+   * Current entry size
+   */
+  int entrySize;
+
+  /*
+   * Private constructor
+   */
+  PrefixBlockMemorySegmentScanner(Segment s, int blockSize) {
+    // Make sure it is sealed
+    if (s.isSealed() == false) {
+      throw new RuntimeException("segment is not sealed");
+    }
+    this.segment = s;
+    this.blockSize = blockSize;
+    this.totalItems = s.getTotalItems();
+    this.keyBuffer = UnsafeAccess.malloc(this.keyBufferSize);
+    s.readLock();
+    this.currentBlockIndex = -1;
+    initNextBlock();
+    if (this.totalItems > 0) {
+      decodeEntry();
+    }
+  }
+
+  private void initNextBlock() {
+    int blockIndexIncrement = this.currentBlockIndex < 0 ? 1
+        : ((this.blockDataSize + META_SIZE - 1) / this.blockSize + 1);
+    this.currentBlockIndex += blockIndexIncrement;
+    this.segmentOffset = this.currentBlockIndex * this.blockSize;
+    this.blockDataSize = getBlockDataSize(this.segment.getAddress() + this.segmentOffset);
+    this.blockOffset = META_SIZE;
+  }
+
+  private void decodeEntry() {
+    long ptr = this.segment.getAddress() + this.segmentOffset + this.blockOffset;
+    long start = ptr;
+    int shared = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(suffixSize);
+    this.valueSize = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(this.valueSize);
+    this.keySize = shared + suffixSize;
+    if (this.keySize > this.keyBufferSize) {
+      this.keyBufferSize = 2 * this.keySize;
+      this.keyBuffer = UnsafeAccess.realloc(this.keyBuffer, this.keyBufferSize);
+    }
+    UnsafeAccess.copy(ptr, this.keyBuffer + shared, suffixSize);
+    this.valueAddress = ptr + suffixSize;
+    this.entrySize = (int) (this.valueAddress + this.valueSize - start);
+  }
+
+  public boolean hasNext() {
+    return this.currentItemIndex < this.totalItems;
+  }
+
+  public boolean next() {
+
+    this.currentItemIndex++;
+
+    if (this.currentItemIndex == this.totalItems) {
+      return false;
+    }
+    int off = this.blockOffset + this.entrySize;
+    if (off == this.blockDataSize + META_SIZE) {
+      initNextBlock();
+    } else {
+      this.blockOffset = off;
+    }
+    decodeEntry();
+    return true;
+  }
+
+  /**
+   * Get expiration time of a current cached entry
+   * @return expiration time
+   * @deprecated use memory index to retrieve expiration time
+   */
+  public final long getExpire() {
+    return -1;
+  }
+
+  /**
+   * Get key size of a current cached entry
+   * @return key size
+   */
+  public final int keyLength() {
+    return this.keySize;
+  }
+
+  /**
+   * Get current value size
+   * @return value size
+   */
+  public final int valueLength() {
+    return this.valueSize;
+  }
+
+  /**
+   * Get current key's address (internal buffer)
+   * @return keys address
+   */
+  public final long keyAddress() {
+    return this.keyBuffer;
+  }
+
+  /**
+   * Get current value's address
+   * @return values address
+   */
+  public final long valueAddress() {
+    return this.valueAddress;
+  }
+
+  @Override
+  public void close() throws IOException {
+    segment.readUnlock();
+    if (this.keyBuffer != 0) {
+      UnsafeAccess.free(this.keyBuffer);
+      this.keyBuffer = 0;
+    }
+  }
+
+  @Override
+  public int getKey(ByteBuffer b) {
+    if (this.keySize <= b.remaining()) {
+      UnsafeAccess.copy(this.keyBuffer, b, this.keySize);
+    }
+    return this.keySize;
+  }
+
+  @Override
+  public int getValue(ByteBuffer b) {
+    if (this.valueSize <= b.remaining()) {
+      UnsafeAccess.copy(this.valueAddress, b, this.valueSize);
+    }
+    return this.valueSize;
+  }
+
+  @Override
+  public int getKey(byte[] buffer, int offset) throws IOException {
+    if (this.keySize > buffer.length - offset) {
+      return this.keySize;
+    }
+    UnsafeAccess.copy(this.keyBuffer, buffer, offset, this.keySize);
+    return this.keySize;
+  }
+
+  @Override
+  public int getValue(byte[] buffer, int offset) throws IOException {
+    if (this.valueSize > buffer.length - offset) {
+      return this.valueSize;
+    }
+    UnsafeAccess.copy(this.valueAddress, buffer, offset, this.valueSize);
+    return this.valueSize;
+  }
+
+  @Override
+  public Segment getSegment() {
+    return this.segment;
+  }
+
+  @Override
+  public final long getOffset() {
+    return this.segmentOffset + this.blockOffset;
+  }
+}
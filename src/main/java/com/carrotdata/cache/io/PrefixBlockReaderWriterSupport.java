@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static com.carrotdata.cache.io.BlockReaderWriterSupport.META_SIZE;
+
+import java.nio.ByteBuffer;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+/**
+ * Block format with front coded keys (see {@link PrefixBlockDataWriter}). Block layout (meta
+ * section and block boundaries) is the same as in {@link BlockDataWriter}, entry format is:
+ * shared prefix length (varint), key suffix length (varint), value size (varint), key suffix,
+ * value. The shared prefix is a prefix of a previous key in the same block, the first entry of a
+ * block and every restart entry have shared prefix length 0.
+ * <p>
+ * Lookups do not reconstruct keys: a scan keeps the length of a common prefix of the searched key
+ * and the previous key, which is enough to compare the searched key with every next entry.
+ * Readers return items in a regular K-V format: key size, value size, key, value.
+ */
+public class PrefixBlockReaderWriterSupport {
+
+  /**
+   * Entry size
+   * @param shared shared prefix length
+   * @param suffixSize suffix size
+   * @param valueSize value size
+   * @return size of an entry in a block
+   */
+  public static int entrySize(int shared, int suffixSize, int valueSize) {
+    return Utils.sizeUVInt(shared) + Utils.sizeUVInt(suffixSize) + Utils.sizeUVInt(valueSize)
+        + suffixSize + valueSize;
+  }
+
+  /**
+   * Writes entry header
+   * @param ptr address
+   * @param shared shared prefix length
+   * @param suffixSize suffix size
+   * @param valueSize value size
+   * @return header size
+   */
+  public static int writeEntryHeader(long ptr, int shared, int suffixSize, int valueSize) {
+    int off = Utils.writeUVInt(ptr, shared);
+    off += Utils.writeUVInt(ptr + off, suffixSize);
+    off += Utils.writeUVInt(ptr + off, valueSize);
+    return off;
+  }
+
+  /**
+   * Get shared prefix length of an entry
+   * @param ptr entry address
+   * @return shared prefix length
+   */
+  public static int getSharedLength(long ptr) {
+    return Utils.readUVInt(ptr);
+  }
+
+  /**
+   * Get key suffix size of an entry
+   * @param ptr entry address
+   * @return suffix size
+   */
+  public static int getSuffixSize(long ptr) {
+    int shared = Utils.readUVInt(ptr);
+    return Utils.readUVInt(ptr + Utils.sizeUVInt(shared));
+  }
+
+  /**
+   * Get key size of an entry
+   * @param ptr entry address
+   * @return key size
+   */
+  public static int getKeySize(long ptr) {
+    int shared = Utils.readUVInt(ptr);
+    return shared + Utils.readUVInt(ptr + Utils.sizeUVInt(shared));
+  }
+
+  /**
+   * Get address of a key suffix of an entry
+   * @param ptr entry address
+   * @return suffix address
+   */
+  public static long getSuffixAddress(long ptr) {
+    int shared = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(suffixSize);
+    int valueSize = Utils.readUVInt(ptr);
+    return ptr + Utils.sizeUVInt(valueSize);
+  }
+
+  /**
+   * Get value size of an entry
+   * @param ptr entry address
+   * @return value size
+   */
+  public static int getValueSize(long ptr) {
+    int shared = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(suffixSize);
+    return Utils.readUVInt(ptr);
+  }
+
+  /**
+   * Get value address of an entry
+   * @param ptr entry address
+   * @return value address
+   */
+  public static long getValueAddress(long ptr) {
+    int shared = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(ptr);
+    ptr += Utils.sizeUVInt(suffixSize);
+    int valueSize = Utils.readUVInt(ptr);
+    return ptr + Utils.sizeUVInt(valueSize) + suffixSize;
+  }
+
+  /**
+   * Get entry size
+   * @param ptr entry address
+   * @return entry size
+   */
+  public static int getEntrySize(long ptr) {
+    int shared = Utils.readUVInt(ptr);
+    int suffixSize = Utils.readUVInt(ptr + Utils.sizeUVInt(shared));
+    int valueSize =
+        Utils.readUVInt(ptr + Utils.sizeUVInt(shared) + Utils.sizeUVInt(suffixSize));
+    return entrySize(shared, suffixSize, valueSize);
+  }
+
+  /**
+   * Get value size of an entry
+   * @param block block buffer
+   * @param off entry offset
+   * @return value size
+   */
+  public static int getValueSize(byte[] block, int off) {
+    int shared = Utils.readUVInt(block, off);
+    off += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(block, off);
+    off += Utils.sizeUVInt(suffixSize);
+    return Utils.readUVInt(block, off);
+  }
+
+  /**
+   * Get value offset of an entry
+   * @param block block buffer
+   * @param off entry offset
+   * @return value offset
+   */
+  public static int getValueOffset(byte[] block, int off) {
+    int shared = Utils.readUVInt(block, off);
+    off += Utils.sizeUVInt(shared);
+    int suffixSize = Utils.readUVInt(block, off);
+    off += Utils.sizeUVInt(suffixSize);
+    int valueSize = Utils.readUVInt(block, off);
+    return off + Utils.sizeUVInt(valueSize) + suffixSize;
+  }
+
+  /**
+   * Find key in a memory block
+   * @param ptr block address
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return address of an entry or -1 (not found)
+   */
+  public static long findInBlock(long ptr, byte[] key, int keyOffset, int keySize) {
+    int blockDataSize = BlockReaderWriterSupport.getBlockDataSize(ptr);
+    return findInBlock(ptr, blockDataSize, key, keyOffset, keySize);
+  }
+
+  /**
+   * Find key in a memory block. The last matching entry wins (see
+   * {@link BlockReaderWriterSupport#findInBlock(long, long, int)})
+   * @param ptr block address
+   * @param blockDataSize block data size
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return address of an entry or -1 (not found)
+   */
+  public static long findInBlock(long ptr, int blockDataSize, byte[] key, int keyOffset,
+      int keySize) {
+    long $ptr = ptr + META_SIZE;
+    long end = $ptr + blockDataSize;
+    long found = IOEngine.NOT_FOUND;
+    // Length of a common prefix of a searched key and a previous key
+    int match = 0;
+    while ($ptr < end) {
+      long entry = $ptr;
+      int shared = Utils.readUVInt($ptr);
+      $ptr += Utils.sizeUVInt(shared);
+      int suffixSize = Utils.readUVInt($ptr);
+      $ptr += Utils.sizeUVInt(suffixSize);
+      int valueSize = Utils.readUVInt($ptr);
+      $ptr += Utils.sizeUVInt(valueSize);
+      if (shared <= match) {
+        // previous key matched first 'shared' bytes, compare the suffix
+        match = shared;
+        int max = Math.min(suffixSize, keySize - shared);
+        int i = 0;
+        while (i < max && UnsafeAccess.toByte($ptr + i) == key[keyOffset + shared + i]) {
+          i++;
+        }
+        match += i;
+      }
+      // shared > match: key differs from the searched one at the same position as previous key
+      if (match == keySize && shared + suffixSize == keySize) {
+        found = entry;
+      }
+      $ptr += suffixSize + valueSize;
+    }
+    return found;
+  }
+
+  /**
+   * Find key in a memory block
+   * @param ptr block address
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return address of an entry or -1 (not found)
+   */
+  public static long findInBlock(long ptr, long keyPtr, int keySize) {
+    int blockDataSize = BlockReaderWriterSupport.getBlockDataSize(ptr);
+    return findInBlock(ptr, blockDataSize, keyPtr, keySize);
+  }
+
+  /**
+   * Find key in a memory block
+   * @param ptr block address
+   * @param blockDataSize block data size
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return address of an entry or -1 (not found)
+   */
+  public static long findInBlock(long ptr, int blockDataSize, long keyPtr, int keySize) {
+    long $ptr = ptr + META_SIZE;
+    long end = $ptr + blockDataSize;
+    long found = IOEngine.NOT_FOUND;
+    int match = 0;
+    while ($ptr < end) {
+      long entry = $ptr;
+      int shared = Utils.readUVInt($ptr);
+      $ptr += Utils.sizeUVInt(shared);
+      int suffixSize = Utils.readUVInt($ptr);
+      $ptr += Utils.sizeUVInt(suffixSize);
+      int valueSize = Utils.readUVInt($ptr);
+      $ptr += Utils.sizeUVInt(valueSize);
+      if (shared <= match) {
+        match = shared;
+        int max = Math.min(suffixSize, keySize - shared);
+        int i = 0;
+        while (i < max && UnsafeAccess.toByte($ptr + i) == UnsafeAccess.toByte(keyPtr + shared + i)) {
+          i++;
+        }
+        match += i;
+      }
+      if (match == keySize && shared + suffixSize == keySize) {
+        found = entry;
+      }
+      $ptr += suffixSize + valueSize;
+    }
+    return found;
+  }
+
+  /**
+   * Find key in a block buffer
+   * @param block block buffer
+   * @param blockOff block offset
+   * @param blockDataSize block data size
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return offset of an entry or -1 (not found)
+   */
+  public static int findInBlock(byte[] block, int blockOff, int blockDataSize, byte[] key,
+      int keyOffset, int keySize) {
+    int off = blockOff + META_SIZE;
+    int end = off + blockDataSize;
+    int found = (int) IOEngine.NOT_FOUND;
+    int match = 0;
+    while (off < end) {
+      int entry = off;
+      int shared = Utils.readUVInt(block, off);
+      off += Utils.sizeUVInt(shared);
+      int suffixSize = Utils.readUVInt(block, off);
+      off += Utils.sizeUVInt(suffixSize);
+      int valueSize = Utils.readUVInt(block, off);
+      off += Utils.sizeUVInt(valueSize);
+      if (shared <= match) {
+        match = shared;
+        int max = Math.min(suffixSize, keySize - shared);
+        int i = 0;
+        while (i < max && block[off + i] == key[keyOffset + shared + i]) {
+          i++;
+        }
+        match += i;
+      }
+      if (match == keySize && shared + suffixSize == keySize) {
+        found = entry;
+      }
+      off += suffixSize + valueSize;
+    }
+    return found;
+  }
+
+  /**
+   * Find key in a block buffer
+   * @param block block buffer
+   * @param blockOff block offset
+   * @param blockDataSize block data size
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return offset of an entry or -1 (not found)
+   */
+  public static int findInBlock(byte[] block, int blockOff, int blockDataSize, long keyPtr,
+      int keySize) {
+    int off = blockOff + META_SIZE;
+    int end = off + blockDataSize;
+    int found = (int) IOEngine.NOT_FOUND;
+    int match = 0;
+    while (off < end) {
+      int entry = off;
+      int shared = Utils.readUVInt(block, off);
+      off += Utils.sizeUVInt(shared);
+      int suffixSize = Utils.readUVInt(block, off);
+      off += Utils.sizeUVInt(suffixSize);
+      int valueSize = Utils.readUVInt(block, off);
+      off += Utils.sizeUVInt(valueSize);
+      if (shared <= match) {
+        match = shared;
+        int max = Math.min(suffixSize, keySize - shared);
+        int i = 0;
+        while (i < max && block[off + i] == UnsafeAccess.toByte(keyPtr + shared + i)) {
+          i++;
+        }
+        match += i;
+      }
+      if (match == keySize && shared + suffixSize == keySize) {
+        found = entry;
+      }
+      off += suffixSize + valueSize;
+    }
+    return found;
+  }
+
+  /**
+   * Writes header of an item in a K-V format (key size, value size), key and value must follow
+   * @param buf buffer
+   * @param off offset
+   * @param keySize key size
+   * @param valueSize value size
+   * @return header size
+   */
+  static int writeItemHeader(byte[] buf, int off, int keySize, int valueSize) {
+    int size = Utils.writeUVInt(buf, off, keySize);
+    return size + Utils.writeUVInt(buf, off + size, valueSize);
+  }
+
+  /**
+   * Writes header of an item in a K-V format (key size, value size) to a byte buffer, key and
+   * value must follow
+   * @param buffer byte buffer
+   * @param keySize key size
+   * @param valueSize value size
+   * @return header size
+   */
+  static int writeItemHeader(ByteBuffer buffer, int keySize, int valueSize) {
+    byte[] buf = new byte[2 * Utils.SIZEOF_INT];
+    int size = writeItemHeader(buf, 0, keySize, valueSize);
+    buffer.put(buf, 0, size);
+    return size;
+  }
+}
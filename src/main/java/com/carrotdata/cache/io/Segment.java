@@ -112,6 +112,9 @@ public class Segment implements Persistent {
     /* Tracks maximum item expiration time - absolute in ms since 01-01-1970 Jan 1st 12am */
     private AtomicLong maxExpireAt = new AtomicLong(0);
 
+    /* Number of references to deduplicated values (see DedupValueStore) */
+    private AtomicInteger totalReferences = new AtomicInteger(0);
+
     Info() {
     }
 
@@ -362,6 +365,22 @@ public class Segment implements Persistent {
       this.totalExpiredItems.incrementAndGet();
     }
 
+    /**
+     * Get number of references to deduplicated values, stored in this segment
+     * @return number of references
+     */
+    public int getTotalReferences() {
+      return this.totalReferences.get();
+    }
+
+    /**
+     * Increment number of references to deduplicated values
+     * @param incr increment
+     */
+    public void incrementReferences(int incr) {
+      this.totalReferences.addAndGet(incr);
+    }
+
     /**
      * Increment data size
      * @param incr increment
@@ -447,6 +466,9 @@ public class Segment implements Persistent {
       dos.writeLong(this.blockDataSize.get());
       // Block offset
       dos.writeLong(getBlockOffset());
+      // References to deduplicated values. Not versioned: snapshots saved without this field
+      // can not be loaded
+      dos.writeInt(getTotalReferences());
       dos.flush();
     }
 
@@ -467,6 +489,7 @@ public class Segment implements Persistent {
       this.memory = dis.readBoolean();
       this.blockDataSize.set(dis.readLong());
       this.blockOffset.set(dis.readLong());
+      this.totalReferences.set(dis.readInt());
     }
   }
 
@@ -576,7 +599,11 @@ public class Segment implements Persistent {
     if (!this.valid) return;
     if (isMemory()) {
       if (this.address != 0) {
-        UnsafeAccess.free(this.address);
+        if (this.engine != null) {
+          this.engine.releaseSegmentMemory(this.address);
+        } else {
+          UnsafeAccess.free(this.address);
+        }
         this.address = 0;
       } else {
         throw new RuntimeException ("Segment memory address is 0");
@@ -897,23 +924,60 @@ public class Segment implements Persistent {
   }
 
   WriteBatch getWriteBatch() {
+    return getWriteBatch(0);
+  }
+
+  /**
+   * Get write batch of a current thread for a key. Items of different key classes (see
+   * {@link DataWriter#getKeyClass(byte[], int, int)}) are batched separately
+   * @param key key buffer
+   * @param keyOffset key offset
+   * @param keySize key size
+   * @return write batch or null
+   */
+  WriteBatch getWriteBatch(byte[] key, int keyOffset, int keySize) {
+    if (this.writeBatches == null) {
+      return null;
+    }
+    return getWriteBatch(this.dataWriter.getKeyClass(key, keyOffset, keySize));
+  }
+
+  /**
+   * Get write batch of a current thread for a key
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return write batch or null
+   */
+  WriteBatch getWriteBatch(long keyPtr, int keySize) {
+    if (this.writeBatches == null) {
+      return null;
+    }
+    return getWriteBatch(this.dataWriter.getKeyClass(keyPtr, keySize));
+  }
+
+  private WriteBatch getWriteBatch(int keyClass) {
     if (this.writeBatches == null) {
       return null;
     }
     // Thread Id is long value, but it starts with 0 and increments by 1
     // for every new thread created. We are safe, b/c we have limited number
     // of working thread in the system, far less than 32K
-    int tid = makeIdForThread(Thread.currentThread().getId());
+    int tid = makeIdForThread(Thread.currentThread().getId(), keyClass);
     return writeBatches.getWriteBatch(tid);
   }
 
   int makeIdForThread(long tid) {
+    return makeIdForThread(tid, 0);
+  }
+
+  int makeIdForThread(long tid, int keyClass) {
     // Rank is a low number, default maximum is 7
     int rank = this.info.getGroupRank();
     // Id for a thread is a negative which is intentionally less than -1 (used as NOT_FOUND,
     // FAILED moniker) This Id is used as the address for the k-v during look up operation
-    // when k-v resides in a write buffer, belonging to some thread
-    return -(rank << 16 | (int) tid + 2);
+    // when k-v resides in a write buffer, belonging to some thread. Key class takes
+    // bits 24-30, rank - bits 16-23
+    return -(keyClass << 24 | rank << 16 | (int) tid + 2);
 
   }
 
@@ -949,7 +1013,7 @@ public class Segment implements Persistent {
     int kvSize = Utils.kvSize(keySize, valueSize);
     // Write batch is thread local object
     // Only one thread can write, but many can read
-    WriteBatch wb = getWriteBatch();
+    WriteBatch wb = getWriteBatch(key, keyOffset, keySize);
     long offset = 0;
     if (wb != null) {
 
@@ -958,10 +1022,13 @@ public class Segment implements Persistent {
           // data writer MUST acquire write lock (only for copy data operation)
           // and call setFull(true) while holding write lock
           // reset write buffer on success
+          // Batched items land in this segment only now
+          int refs = isDedupEnabled() ? references(this.dataWriter.getBatchToWrite(wb)) : 0;
           offset = this.dataWriter.append(this, wb);
           if (offset == -1) {
             return -1;
           }
+          this.info.incrementReferences(refs);
         }
         // Add to write buffer
         wb.addOrUpdate(key, keyOffset, keySize, value, valueOffset, valueSize);
@@ -970,6 +1037,10 @@ public class Segment implements Persistent {
         // Add single as a batch
         offset = this.dataWriter.appendSingle(this, key, keyOffset, keySize, value, valueOffset,
           valueSize);
+        if (offset != -1 && isDedupEnabled()
+            && DedupValueStore.isReference(value, valueOffset, valueSize)) {
+          this.info.incrementReferences(1);
+        }
       }
     } else {
       try {
@@ -984,6 +1055,9 @@ public class Segment implements Persistent {
           return -1;
         }
         incrNumEntries(1);
+        if (isDedupEnabled() && DedupValueStore.isReference(value, valueOffset, valueSize)) {
+          this.info.incrementReferences(1);
+        }
       } finally {
         writeUnlock();
       }
@@ -999,6 +1073,14 @@ public class Segment implements Persistent {
     return offset/* offset in a segment, can be negative to identify write to a write batch */;
   }
 
+  private static int references(WriteBatch wb) {
+    return wb == null ? 0 : wb.references();
+  }
+
+  private boolean isDedupEnabled() {
+    return this.engine != null && this.engine.getDedupValueStore() != null;
+  }
+
   /**
    * Checks max expire against given expire and set max to a new value if: a. old max value > 0 b.
    * new expire is greater than old max value
@@ -1046,7 +1128,7 @@ public class Segment implements Persistent {
       return -1;
     }
     int kvSize = Utils.kvSize(keySize, valueSize);
-    WriteBatch wb = getWriteBatch();
+    WriteBatch wb = getWriteBatch(keyPtr, keySize);
     long offset = 0;
     if (wb != null) {
       if (kvSize < wb.batchSize()) {
@@ -1054,10 +1136,13 @@ public class Segment implements Persistent {
           // data writer MUST acquire write lock (only for copy data operation)
           // and call setFull(true) while holding write lock
           // reset write buffer on success
+          // Batched items land in this segment only now
+          int refs = isDedupEnabled() ? references(this.dataWriter.getBatchToWrite(wb)) : 0;
           offset = this.dataWriter.append(this, wb);
           if (offset == -1) {
             return -1;
           }
+          this.info.incrementReferences(refs);
         } 
         // Append to write batch
         wb.addOrUpdate(keyPtr, keySize, valuePtr, valueSize);
@@ -1065,6 +1150,9 @@ public class Segment implements Persistent {
       } else {
         // Append to the segment as single element batch
         offset = this.dataWriter.appendSingle(this, keyPtr, keySize, valuePtr, valueSize);
+        if (offset != -1 && isDedupEnabled() && DedupValueStore.isReference(valuePtr, valueSize)) {
+          this.info.incrementReferences(1);
+        }
       }
     } else {
       try {
@@ -1078,6 +1166,9 @@ public class Segment implements Persistent {
           return -1;
         }
         incrNumEntries(1);
+        if (isDedupEnabled() && DedupValueStore.isReference(valuePtr, valueSize)) {
+          this.info.incrementReferences(1);
+        }
       } finally {
         writeUnlock();
       }
@@ -1104,6 +1195,14 @@ public class Segment implements Persistent {
     return null;
   }
 
+  /**
+   * Get number of references to deduplicated values, stored in this segment
+   * @return number of references
+   */
+  public int getTotalReferences() {
+    return this.info.getTotalReferences();
+  }
+
   /**
    * Update segment's statistics
    */
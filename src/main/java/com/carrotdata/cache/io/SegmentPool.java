@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * Pool (arena) of fixed - size off - heap segment buffers. Released buffers (memory of recycled
+ * segments, RAM buffers of file segments flushed to disk) are kept in the pool and reused for new
+ * segments, so segment rollover does not go through the system allocator and does not page fault
+ * on freshly mapped memory. Buffers above the pool capacity are returned to the system.
+ * <p>
+ * Pooled buffers are not zeroed on reuse unless caller requests it - segments are written
+ * sequentially and every reader is bounded by the segment's data size. Optionally buffers are
+ * aligned to a huge page (2MB) boundary, so transparent huge pages can back whole segments.
+ */
+public class SegmentPool {
+
+  /** Logger */
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentPool.class);
+
+  /** Huge page size */
+  public final static long HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+  /* Segment size */
+  private final long segmentSize;
+
+  /* Free buffers */
+  private final long[] free;
+
+  /* Number of free buffers */
+  private int numFree;
+
+  /* Huge page aligned buffers */
+  private final boolean hugePageAligned;
+
+  /*
+   * Buffer address -> allocated address of all buffers allocated by the pool, buffers of other
+   * sizes (e.g. loaded from a snapshot) are not in the map and are never pooled
+   */
+  private final Map<Long, Long> owned = new HashMap<Long, Long>();
+
+  /* Statistics */
+  private long totalAllocated;
+
+  private long totalReused;
+
+  private long totalReleased;
+
+  /**
+   * Create pool from cache configuration
+   * @param cacheName cache name
+   * @param segmentSize segment size
+   * @return segment pool or null if pool is disabled
+   */
+  public static SegmentPool fromConfig(String cacheName, long segmentSize) {
+    CacheConfig conf = CacheConfig.getInstance();
+    if (!conf.isSegmentPoolEnabled(cacheName)) {
+      return null;
+    }
+    int maxFree = conf.getSegmentPoolMaxFree(cacheName);
+    int preallocate = conf.getSegmentPoolPreallocate(cacheName);
+    boolean hugePageAligned = conf.isSegmentPoolHugePageAligned(cacheName);
+    SegmentPool pool = new SegmentPool(segmentSize, maxFree, preallocate, hugePageAligned);
+    LOG.info("Segment pool for cache [{}]: segment size={} max free={} preallocated={} aligned={}",
+      cacheName, segmentSize, maxFree, preallocate, hugePageAligned);
+    return pool;
+  }
+
+  /**
+   * Constructor
+   * @param segmentSize segment size
+   * @param maxFree maximum number of free buffers kept in the pool
+   * @param preallocate number of buffers to allocate at start
+   * @param hugePageAligned align buffers to huge page boundary
+   */
+  public SegmentPool(long segmentSize, int maxFree, int preallocate, boolean hugePageAligned) {
+    this.segmentSize = segmentSize;
+    this.free = new long[Math.max(0, Math.max(maxFree, preallocate))];
+    this.hugePageAligned = hugePageAligned;
+    for (int i = 0; i < preallocate; i++) {
+      // Touch all pages now
+      long ptr = allocateNew();
+      UnsafeAccess.setMemory(ptr, segmentSize, (byte) 0);
+      this.free[this.numFree++] = ptr;
+    }
+  }
+
+  private long allocateNew() {
+    this.totalAllocated++;
+    if (!this.hugePageAligned) {
+      long ptr = UnsafeAccess.malloc(this.segmentSize);
+      this.owned.put(ptr, ptr);
+      return ptr;
+    }
+    long ptr = UnsafeAccess.malloc(this.segmentSize + HUGE_PAGE_SIZE);
+    long alignedPtr = (ptr + HUGE_PAGE_SIZE - 1) & ~(HUGE_PAGE_SIZE - 1);
+    this.owned.put(alignedPtr, ptr);
+    return alignedPtr;
+  }
+
+  /**
+   * Get segment buffer
+   * @param zeroed buffer must be zeroed
+   * @return buffer address
+   */
+  public synchronized long allocate(boolean zeroed) {
+    long ptr;
+    if (this.numFree > 0) {
+      ptr = this.free[--this.numFree];
+      this.totalReused++;
+    } else {
+      ptr = allocateNew();
+    }
+    if (zeroed) {
+      UnsafeAccess.setMemory(ptr, this.segmentSize, (byte) 0);
+    }
+    return ptr;
+  }
+
+  /**
+   * Returns segment buffer to the pool
+   * @param ptr buffer address
+   */
+  public synchronized void release(long ptr) {
+    boolean own = this.owned.containsKey(ptr);
+    if (own && this.numFree < this.free.length) {
+      this.free[this.numFree++] = ptr;
+      return;
+    }
+    // Pool is full or buffer was not allocated by the pool (loaded segment)
+    this.totalReleased++;
+    freeBuffer(ptr);
+  }
+
+  private void freeBuffer(long ptr) {
+    Long base = this.owned.remove(ptr);
+    UnsafeAccess.free(base != null ? base : ptr);
+  }
+
+  /**
+   * Get segment size
+   * @return segment size
+   */
+  public long getSegmentSize() {
+    return this.segmentSize;
+  }
+
+  /**
+   * Get number of free buffers in the pool
+   * @return number of free buffers
+   */
+  public synchronized int getFreeCount() {
+    return this.numFree;
+  }
+
+  /**
+   * Get total number of buffers allocated from the system
+   * @return total allocated
+   */
+  public synchronized long getTotalAllocated() {
+    return this.totalAllocated;
+  }
+
+  /**
+   * Get total number of buffers reused from the pool
+   * @return total reused
+   */
+  public synchronized long getTotalReused() {
+    return this.totalReused;
+  }
+
+  /**
+   * Get total number of buffers returned to the system
+   * @return total released
+   */
+  public synchronized long getTotalReleased() {
+    return this.totalReleased;
+  }
+
+  /**
+   * Releases all free buffers
+   */
+  public synchronized void dispose() {
+    for (int i = 0; i < this.numFree; i++) {
+      freeBuffer(this.free[i]);
+    }
+    this.numFree = 0;
+  }
+}
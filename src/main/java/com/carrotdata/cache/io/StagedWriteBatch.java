@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+
+/**
+ * Sealed write batch, which is compressed by a background compressor thread (see
+ * {@link BlockCompressor}) and then written to a data segment by the owner thread.
+ */
+class StagedWriteBatch extends WriteBatch {
+
+  /* Compression output buffer */
+  private long buffer;
+
+  /* Compression output buffer size */
+  private int bufferSize;
+
+  /* Compressed size */
+  private int compressedSize;
+
+  /* Dictionary version used for compression */
+  private int dictVersion;
+
+  /* Time the batch was sealed at (nanoseconds) */
+  private long sealTime;
+
+  /* Compression task, null - batch is not compressed */
+  private volatile Future<?> task;
+
+  StagedWriteBatch() {
+    super();
+  }
+
+  StagedWriteBatch(int batchSize) {
+    super(batchSize);
+  }
+
+  /**
+   * Get compression output buffer, allocates it on demand
+   * @param required required size
+   * @return buffer address
+   */
+  long getCompressionBuffer(int required) {
+    if (this.bufferSize < required) {
+      if (this.buffer != 0) {
+        UnsafeAccess.free(this.buffer);
+      }
+      this.bufferSize = Math.max(required, 2 * capacity());
+      this.buffer = UnsafeAccess.malloc(this.bufferSize);
+    }
+    return this.buffer;
+  }
+
+  long getCompressionBuffer() {
+    return this.buffer;
+  }
+
+  int getCompressionBufferSize() {
+    return this.bufferSize;
+  }
+
+  void setCompressed(int compressedSize, int dictVersion) {
+    this.compressedSize = compressedSize;
+    this.dictVersion = dictVersion;
+  }
+
+  int getCompressedSize() {
+    return this.compressedSize;
+  }
+
+  int getDictionaryVersion() {
+    return this.dictVersion;
+  }
+
+  void setSealTime(long time) {
+    this.sealTime = time;
+  }
+
+  long getSealTime() {
+    return this.sealTime;
+  }
+
+  void setTask(Future<?> task) {
+    this.task = task;
+  }
+
+  Future<?> getTask() {
+    return this.task;
+  }
+
+  /**
+   * Waits for the compression task to complete
+   * @return true - batch is compressed, false - compression was not scheduled or failed
+   */
+  boolean awaitCompressed() {
+    Future<?> f = this.task;
+    if (f == null) {
+      return false;
+    }
+    try {
+      f.get();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      return false;
+    } finally {
+      this.task = null;
+    }
+  }
+
+  @Override
+  void dispose() {
+    super.dispose();
+    if (this.buffer != 0) {
+      UnsafeAccess.free(this.buffer);
+      this.buffer = 0;
+      this.bufferSize = 0;
+    }
+  }
+}
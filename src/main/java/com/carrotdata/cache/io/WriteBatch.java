@@ -61,6 +61,22 @@ public class WriteBatch implements Persistent {
 
   private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+  /**
+   * Value store of deduplicated values (can be null)
+   */
+  private DedupValueStore dedupStore;
+
+  /**
+   * Sealed batch, which has not been written to a data segment yet (asynchronous compression).
+   * Readers fall back to it if key is not found in this batch
+   */
+  private volatile WriteBatch staged;
+
+  /**
+   * Staged batch object, which has been written to a data segment already, kept for reuse
+   */
+  private WriteBatch spare;
+
   /**
    * Empty ctor
    */
@@ -152,6 +168,7 @@ public class WriteBatch implements Persistent {
         return ret = oldPosition;
       } else {
         // Replace found
+        releaseReference(off);
         int oldSize = Utils.kvSize(this.memory + off);
         int newSize = Utils.kvSize(keySize, valueSize);
         int toMove = this.position - oldSize - off;
@@ -212,6 +229,7 @@ public class WriteBatch implements Persistent {
         return ret = oldPosition;
       } else {
         // Replace found
+        releaseReference(off);
         int oldSize = Utils.kvSize(this.memory + off);
         int newSize = Utils.kvSize(keySize, valueSize);
         int toMove = this.position - oldSize - off;
@@ -245,7 +263,8 @@ public class WriteBatch implements Persistent {
       lock.readLock().lock();
       int off = find(keyPtr, keySize);
       if (off < 0) {
-        return -1;
+        WriteBatch sb = this.staged;
+        return sb != null ? sb.get(keyPtr, keySize, buffer, bufferSize) : -1;
       }
       int kSize = Utils.readUVInt(this.memory + off);
       int kSizeSize = Utils.sizeUVInt(kSize);
@@ -275,7 +294,8 @@ public class WriteBatch implements Persistent {
       lock.readLock().lock();
       int off = find(keyPtr, keySize);
       if (off < 0) {
-        return -1;
+        WriteBatch sb = this.staged;
+        return sb != null ? sb.get(keyPtr, keySize, buffer, bufferOffset) : -1;
       }
       int kSize = Utils.readUVInt(this.memory + off);
       int kSizeSize = Utils.sizeUVInt(kSize);
@@ -306,7 +326,8 @@ public class WriteBatch implements Persistent {
       lock.readLock().lock();
       int off = find(key, keyOffset, keySize);
       if (off < 0) {
-        return -1;
+        WriteBatch sb = this.staged;
+        return sb != null ? sb.get(key, keyOffset, keySize, buffer, bufferSize) : -1;
       }
       int kSize = Utils.readUVInt(this.memory + off);
       int kSizeSize = Utils.sizeUVInt(kSize);
@@ -337,7 +358,8 @@ public class WriteBatch implements Persistent {
       lock.readLock().lock();
       int off = find(key, keyOffset, keySize);
       if (off < 0) {
-        return -1;
+        WriteBatch sb = this.staged;
+        return sb != null ? sb.get(key, keyOffset, keySize, buffer, bufferOffset) : -1;
       }
       int kSize = Utils.readUVInt(this.memory + off);
       int kSizeSize = Utils.sizeUVInt(kSize);
@@ -467,6 +489,53 @@ public class WriteBatch implements Persistent {
     lock.writeLock().unlock();
   }
 
+  /**
+   * Sets value store of deduplicated values
+   * @param store value store
+   */
+  void setDedupValueStore(DedupValueStore store) {
+    this.dedupStore = store;
+  }
+
+  /**
+   * Replaced record is gone, it must not keep its value store reference
+   * @param off record offset
+   */
+  private void releaseReference(int off) {
+    if (this.dedupStore == null) {
+      return;
+    }
+    long ptr = this.memory + off;
+    int kSize = Utils.readUVInt(ptr);
+    int kSizeSize = Utils.sizeUVInt(kSize);
+    int vSize = Utils.readUVInt(ptr + kSizeSize);
+    long valuePtr = ptr + kSizeSize + Utils.sizeUVInt(vSize) + kSize;
+    if (DedupValueStore.isReference(valuePtr, vSize)) {
+      this.dedupStore.release(valuePtr);
+    }
+  }
+
+  /**
+   * Get number of value store references in this batch
+   * @return number of references
+   */
+  int references() {
+    int refs = 0;
+    long ptr = this.memory;
+    long end = ptr + this.position;
+    while (ptr < end) {
+      int kSize = Utils.readUVInt(ptr);
+      int kSizeSize = Utils.sizeUVInt(kSize);
+      int vSize = Utils.readUVInt(ptr + kSizeSize);
+      int vSizeSize = Utils.sizeUVInt(vSize);
+      if (DedupValueStore.isReference(ptr + kSizeSize + vSizeSize + kSize, vSize)) {
+        refs++;
+      }
+      ptr += kSizeSize + vSizeSize + kSize + vSize;
+    }
+    return refs;
+  }
+
   /**
    * Resets batch, makes it ready to accept new writes
    */
@@ -481,11 +550,91 @@ public class WriteBatch implements Persistent {
     }
   }
 
+  /**
+   * Seals current content of this batch: moves it to a staging batch and continues with an empty
+   * buffer. Memory buffers are swapped, data is not copied. Sealed content remains visible to
+   * readers until {@link #unstage()} is called. Must be called only by the owner thread.
+   * @param target staging batch, must have the same capacity as this one
+   * @return staging batch
+   */
+  WriteBatch seal(WriteBatch target) {
+    try {
+      lock.writeLock().lock();
+      target.lock.writeLock().lock();
+      long mem = target.memory;
+      target.memory = this.memory;
+      target.position = this.position;
+      target.n = this.n;
+      target.id = this.id;
+      target.batchSize = this.batchSize;
+      target.capacity = this.capacity;
+      this.memory = mem;
+      this.position = 0;
+      this.n = 0;
+      this.staged = target;
+      return target;
+    } finally {
+      target.lock.writeLock().unlock();
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Get sealed batch, which has not been written to a data segment yet
+   * @return staged batch or null
+   */
+  WriteBatch getStaged() {
+    return this.staged;
+  }
+
+  /**
+   * Called after staged batch has been written to a data segment. Staged batch object is kept for
+   * reuse, see {@link #takeSpare()}
+   */
+  void unstage() {
+    try {
+      lock.writeLock().lock();
+      this.spare = this.staged;
+      this.staged = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Takes spare staging batch object
+   * @return spare batch or null
+   */
+  WriteBatch takeSpare() {
+    WriteBatch sb = this.spare;
+    this.spare = null;
+    return sb;
+  }
+
+  /**
+   * Checks if batch contains a given key. Must be called only by the owner thread, which is the
+   * only writer, therefore no locking is required
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return true or false
+   */
+  boolean contains(long keyPtr, int keySize) {
+    return find(keyPtr, keySize) >= 0;
+  }
+
   /**
    * Deallocates memory For testing only
    */
   void dispose() {
     UnsafeAccess.free(this.memory);
+    if (this.staged != null) {
+      this.staged.dispose();
+      this.staged = null;
+    }
+    if (this.spare != null) {
+      this.spare.dispose();
+      this.spare = null;
+    }
   }
 
   /**
@@ -516,7 +665,15 @@ public class WriteBatch implements Persistent {
    * @return rank
    */
   int getRank() {
-    return -this.id >>> 16;
+    return (-this.id >>> 16) & 0xff;
+  }
+
+  /**
+   * Get key class of items in this batch
+   * @return key class
+   */
+  int getKeyClass() {
+    return -this.id >>> 24;
   }
 
   /**
@@ -552,6 +709,11 @@ public class WriteBatch implements Persistent {
       UnsafeAccess.copy(this.memory, buf, 0, this.position);
       dos.write(buf);
     }
+    WriteBatch sb = this.staged;
+    dos.writeBoolean(sb != null);
+    if (sb != null) {
+      sb.save(dos);
+    }
   }
 
   @Override
@@ -568,6 +730,12 @@ public class WriteBatch implements Persistent {
       dis.readFully(buf);
       UnsafeAccess.copy(buf, 0, this.memory, buf.length);
     }
+    if (dis.readBoolean()) {
+      // Staged batch is loaded uncompressed, it will be compressed when written to a segment
+      WriteBatch sb = new StagedWriteBatch();
+      sb.load(dis);
+      this.staged = sb;
+    }
   }
 
 }
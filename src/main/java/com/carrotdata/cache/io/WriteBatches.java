@@ -39,10 +39,20 @@ public class WriteBatches implements Persistent {
 
   private DataWriter writer;
 
+  private DedupValueStore dedupStore;
+
   WriteBatches(DataWriter writer) {
     this.writer = writer;
   }
 
+  /**
+   * Sets value store of deduplicated values, must be called before any write batch is created
+   * @param store value store
+   */
+  void setDedupValueStore(DedupValueStore store) {
+    this.dedupStore = store;
+  }
+
   /**
    * This method is thread-safe, because write batch can not be shared for write operations
    * between threads by design
@@ -54,6 +64,7 @@ public class WriteBatches implements Persistent {
     if (wb == null) {
       wb = this.writer.newWriteBatch();
       wb.setId(id);
+      wb.setDedupValueStore(this.dedupStore);
       wbMap.put(id, wb);
     }
     return wb;
@@ -96,6 +107,7 @@ public class WriteBatches implements Persistent {
     for (int i = 0; i < size; i++) {
       WriteBatch wb = new WriteBatch();
       wb.load(dis);
+      wb.setDedupValueStore(this.dedupStore);
       wbMap.put(wb.getId(), wb);
     }
   }
@@ -18,10 +18,21 @@
 package com.carrotdata.cache.jmx;
 
 import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.HotKeyCache;
 import com.carrotdata.cache.Scavenger;
+import com.carrotdata.cache.ScavengerTelemetry;
+import com.carrotdata.cache.controllers.AdmissionController;
+import com.carrotdata.cache.controllers.LearnedAdmissionController;
+import com.carrotdata.cache.controllers.ScavengerPacingController;
+import com.carrotdata.cache.io.BlockCompressor;
+import com.carrotdata.cache.io.CompressedBlockBatchDataWriter;
+import com.carrotdata.cache.io.DataWriter;
+import com.carrotdata.cache.io.DecompressedBlockCache;
+import com.carrotdata.cache.io.DedupValueStore;
 import com.carrotdata.cache.io.IOEngine;
 import com.carrotdata.cache.util.CacheConfig;
 import com.carrotdata.cache.util.Epoch;
+import com.carrotdata.cache.util.MissRatioCurveEstimator;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -213,6 +224,136 @@ public class CacheJMXSink implements CacheJMXSinkMBean {
     return gcStats.getTotalBytesFreed();
   }
 
+  @Override
+  public long getgc_segments_recycled() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalSegments();
+  }
+
+  @Override
+  public long getgc_read_bytes() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalBytesRead();
+  }
+
+  @Override
+  public long getgc_rewritten_bytes() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalBytesRewritten();
+  }
+
+  @Override
+  public long getgc_victim_bytes() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalBytesToVictim();
+  }
+
+  @Override
+  public double getgc_write_amplification() {
+    long written = cache.getTotalWritesSize();
+    if (written == 0) {
+      return 0.0;
+    }
+    return (double) (written + getgc_rewritten_bytes()) / written;
+  }
+
+  @Override
+  public long getgc_time_ms() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalTimeNs() / 1_000_000;
+  }
+
+  @Override
+  public long getgc_scan_time_ms() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalScanTimeNs()
+        / 1_000_000;
+  }
+
+  @Override
+  public long getgc_index_time_ms() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalIndexTimeNs()
+        / 1_000_000;
+  }
+
+  @Override
+  public long getgc_rewrite_time_ms() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalRewriteTimeNs()
+        / 1_000_000;
+  }
+
+  @Override
+  public long getgc_victim_time_ms() {
+    return ScavengerTelemetry.getTelemetryForCache(cache.getName()).getTotalVictimTimeNs()
+        / 1_000_000;
+  }
+
+  @Override
+  public String getgc_last_run() {
+    ScavengerTelemetry.RunRecord r =
+        ScavengerTelemetry.getTelemetryForCache(cache.getName()).getLastRun();
+    return r == null ? null : r.toString();
+  }
+
+  @Override
+  public String[] getgc_recent_segments() {
+    List<ScavengerTelemetry.SegmentRecord> list =
+        ScavengerTelemetry.getTelemetryForCache(cache.getName()).getRecentSegments();
+    String[] arr = new String[list.size()];
+    for (int i = 0; i < arr.length; i++) {
+      arr[i] = list.get(i).toString();
+    }
+    return arr;
+  }
+
+  @Override
+  public boolean getgc_pacing_enabled() {
+    return cache.getScavengerPacingController() != null;
+  }
+
+  @Override
+  public double getgc_pacing_output() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? 0.0 : pc.getOutput();
+  }
+
+  @Override
+  public int getgc_pacing_threads() {
+    return cache.getScavengerNumberOfThreads();
+  }
+
+  @Override
+  public double getgc_pacing_start_ratio() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? cache.getCacheConfig().getScavengerStartMemoryRatio(cache.getName())
+        : pc.getStartRatio();
+  }
+
+  @Override
+  public double getgc_pacing_dump_below_ratio() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? cache.getCacheConfig().getScavengerDumpEntryBelowMin(cache.getName())
+        : pc.getDumpBelowRatio();
+  }
+
+  @Override
+  public double getgc_pacing_fill_rate() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? 0.0 : pc.getFillRate();
+  }
+
+  @Override
+  public double getgc_pacing_recycle_rate() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? 0.0 : pc.getRecycleRate();
+  }
+
+  @Override
+  public long getgc_pacing_free_segments() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? 0 : pc.getFreeSegments();
+  }
+
+  @Override
+  public double getgc_pacing_rejected_writes_rate() {
+    ScavengerPacingController pc = cache.getScavengerPacingController();
+    return pc == null ? 0.0 : pc.getRejectedWritesRate();
+  }
+
   @Override
   public long gettotal_puts() {
     long totalWrites = cache.getTotalWrites();
@@ -301,6 +442,89 @@ public class CacheJMXSink implements CacheJMXSinkMBean {
     return self;
   }
 
+  @Override
+  public boolean getmrc_enabled() {
+    return cache.getMissRatioCurveEstimator() != null;
+  }
+
+  @Override
+  public double getmrc_sampling_rate() {
+    MissRatioCurveEstimator mrc = cache.getMissRatioCurveEstimator();
+    return mrc != null ? mrc.getSamplingRate() : 0;
+  }
+
+  @Override
+  public long getmrc_sampled_gets() {
+    MissRatioCurveEstimator mrc = cache.getMissRatioCurveEstimator();
+    return mrc != null ? mrc.getSampledGets() : 0;
+  }
+
+  @Override
+  public String[] getmrc_curve() {
+    MissRatioCurveEstimator mrc = cache.getMissRatioCurveEstimator();
+    if (mrc == null) {
+      return new String[0];
+    }
+    List<String> curve = mrc.getCurve();
+    return curve.toArray(new String[curve.size()]);
+  }
+
+  private LearnedAdmissionController learnedAdmissionController() {
+    AdmissionController ac = cache.getAdmissionController();
+    return ac instanceof LearnedAdmissionController ? (LearnedAdmissionController) ac : null;
+  }
+
+  @Override
+  public long getadmission_model_examples() {
+    LearnedAdmissionController ac = learnedAdmissionController();
+    return ac != null ? ac.getModel().getExamples() : 0;
+  }
+
+  @Override
+  public double getadmission_model_log_loss() {
+    LearnedAdmissionController ac = learnedAdmissionController();
+    return ac != null ? ac.getModel().getLogLoss() : Double.NaN;
+  }
+
+  @Override
+  public double getadmission_model_precision() {
+    LearnedAdmissionController ac = learnedAdmissionController();
+    return ac != null ? ac.getPrecision() : Double.NaN;
+  }
+
+  @Override
+  public long getadmission_model_rejected_reused() {
+    LearnedAdmissionController ac = learnedAdmissionController();
+    return ac != null ? ac.getRejectedReused() : 0;
+  }
+
+  @Override
+  public boolean gethotkeys_cache_enabled() {
+    return cache.getHotKeyCache() != null;
+  }
+
+  @Override
+  public int gethotkeys_cache_size() {
+    HotKeyCache l0 = cache.getHotKeyCache();
+    return l0 != null ? l0.size() : 0;
+  }
+
+  @Override
+  public long gethotkeys_cache_hits() {
+    HotKeyCache l0 = cache.getHotKeyCache();
+    return l0 != null ? l0.getHits() : 0;
+  }
+
+  @Override
+  public String[] gethot_keys() {
+    HotKeyCache l0 = cache.getHotKeyCache();
+    if (l0 == null) {
+      return new String[0];
+    }
+    List<String> keys = l0.getHotKeys();
+    return keys.toArray(new String[keys.size()]);
+  }
+
   @Override
   public long getio_avg_read_duration_us() {
     long gets = gettotal_gets();
@@ -387,6 +611,100 @@ public class CacheJMXSink implements CacheJMXSinkMBean {
     return (double) allocd / compressed;
   }
 
+  private BlockCompressor getBlockCompressor() {
+    DataWriter writer = cache.getEngine().getDataWriter();
+    if (writer instanceof CompressedBlockBatchDataWriter) {
+      return ((CompressedBlockBatchDataWriter) writer).getBlockCompressor();
+    }
+    return null;
+  }
+
+  @Override
+  public int getcompression_pending_blocks() {
+    BlockCompressor bc = getBlockCompressor();
+    return bc != null ? bc.getPendingBlocks() : 0;
+  }
+
+  @Override
+  public double getcompression_avg_lag_us() {
+    BlockCompressor bc = getBlockCompressor();
+    return bc != null ? bc.getAverageLagMicros() : 0.;
+  }
+
+  @Override
+  public long getcompression_max_lag_us() {
+    BlockCompressor bc = getBlockCompressor();
+    return bc != null ? bc.getMaxLagMicros() : 0;
+  }
+
+  @Override
+  public long getcompression_writer_waits() {
+    BlockCompressor bc = getBlockCompressor();
+    return bc != null ? bc.getTotalWaits() : 0;
+  }
+
+  private DecompressedBlockCache getBlockCache() {
+    return cache.getEngine().getDecompressedBlockCache();
+  }
+
+  @Override
+  public long getcompression_block_cache_size_bytes() {
+    DecompressedBlockCache bc = getBlockCache();
+    return bc != null ? bc.getAllocatedMemory() : 0;
+  }
+
+  @Override
+  public long getcompression_block_cache_hits() {
+    DecompressedBlockCache bc = getBlockCache();
+    return bc != null ? bc.getHits() : 0;
+  }
+
+  @Override
+  public long getcompression_block_cache_misses() {
+    DecompressedBlockCache bc = getBlockCache();
+    return bc != null ? bc.getMisses() : 0;
+  }
+
+  @Override
+  public double getcompression_block_cache_hit_rate() {
+    DecompressedBlockCache bc = getBlockCache();
+    return bc != null ? bc.getHitRate() : 0.;
+  }
+
+  private DedupValueStore getDedupStore() {
+    return cache.getEngine().getDedupValueStore();
+  }
+
+  @Override
+  public long getdedup_values() {
+    DedupValueStore store = getDedupStore();
+    return store != null ? store.getNumberOfEntries() : 0;
+  }
+
+  @Override
+  public long getdedup_references() {
+    DedupValueStore store = getDedupStore();
+    return store != null ? store.getNumberOfReferences() : 0;
+  }
+
+  @Override
+  public long getdedup_size_bytes() {
+    DedupValueStore store = getDedupStore();
+    return store != null ? store.getStoredSize() : 0;
+  }
+
+  @Override
+  public long getdedup_logical_size_bytes() {
+    DedupValueStore store = getDedupStore();
+    return store != null ? store.getLogicalSize() : 0;
+  }
+
+  @Override
+  public double getdedup_ratio() {
+    DedupValueStore store = getDedupStore();
+    return store != null ? store.getDedupRatio() : 1.;
+  }
+
   public List<String> asList() {
     List<String> list = new ArrayList<String>();
     String name = cache.getName();
@@ -493,6 +811,102 @@ public class CacheJMXSink implements CacheJMXSinkMBean {
     list.add(name + ":gc_bytes_freed");
     list.add("" + getgc_freed_bytes());
 
+    list.add(name + ":gc_segments_recycled");
+    list.add("" + getgc_segments_recycled());
+
+    list.add(name + ":gc_bytes_read");
+    list.add("" + getgc_read_bytes());
+
+    list.add(name + ":gc_bytes_rewritten");
+    list.add("" + getgc_rewritten_bytes());
+
+    list.add(name + ":gc_bytes_victim");
+    list.add("" + getgc_victim_bytes());
+
+    list.add(name + ":gc_write_amplification");
+    list.add("" + getgc_write_amplification());
+
+    list.add(name + ":gc_time");
+    list.add("" + getgc_time_ms());
+
+    list.add(name + ":gc_scan_time");
+    list.add("" + getgc_scan_time_ms());
+
+    list.add(name + ":gc_index_time");
+    list.add("" + getgc_index_time_ms());
+
+    list.add(name + ":gc_rewrite_time");
+    list.add("" + getgc_rewrite_time_ms());
+
+    list.add(name + ":gc_victim_time");
+    list.add("" + getgc_victim_time_ms());
+
+    if (getgc_pacing_enabled()) {
+      list.add(name + ":gc_pacing_output");
+      list.add("" + getgc_pacing_output());
+
+      list.add(name + ":gc_pacing_threads");
+      list.add("" + getgc_pacing_threads());
+
+      list.add(name + ":gc_pacing_start_ratio");
+      list.add("" + getgc_pacing_start_ratio());
+
+      list.add(name + ":gc_pacing_dump_below_ratio");
+      list.add("" + getgc_pacing_dump_below_ratio());
+
+      list.add(name + ":gc_pacing_fill_rate");
+      list.add("" + getgc_pacing_fill_rate());
+
+      list.add(name + ":gc_pacing_recycle_rate");
+      list.add("" + getgc_pacing_recycle_rate());
+
+      list.add(name + ":gc_pacing_free_segments");
+      list.add("" + getgc_pacing_free_segments());
+
+      list.add(name + ":gc_pacing_rejected_writes_rate");
+      list.add("" + getgc_pacing_rejected_writes_rate());
+    }
+
+    if (getmrc_enabled()) {
+      list.add(name + ":mrc_sampling_rate");
+      list.add("" + getmrc_sampling_rate());
+
+      list.add(name + ":mrc_sampled_gets");
+      list.add("" + getmrc_sampled_gets());
+
+      for (String point : getmrc_curve()) {
+        list.add(name + ":mrc_curve");
+        list.add(point);
+      }
+    }
+
+    if (learnedAdmissionController() != null) {
+      list.add(name + ":admission_model_examples");
+      list.add("" + getadmission_model_examples());
+
+      list.add(name + ":admission_model_log_loss");
+      list.add("" + getadmission_model_log_loss());
+
+      list.add(name + ":admission_model_precision");
+      list.add("" + getadmission_model_precision());
+
+      list.add(name + ":admission_model_rejected_reused");
+      list.add("" + getadmission_model_rejected_reused());
+    }
+
+    if (gethotkeys_cache_enabled()) {
+      list.add(name + ":hotkeys_cache_size");
+      list.add("" + gethotkeys_cache_size());
+
+      list.add(name + ":hotkeys_cache_hits");
+      list.add("" + gethotkeys_cache_hits());
+
+      for (String key : gethot_keys()) {
+        list.add(name + ":hot_key");
+        list.add(key);
+      }
+    }
+
     list.add(name + ":io_avg_read_duration");
     list.add("" + getio_avg_read_duration_us());
 
@@ -529,6 +943,49 @@ public class CacheJMXSink implements CacheJMXSinkMBean {
 
       list.add(name + ":compression_ratio");
       list.add("" + getcompression_ratio());
+
+      if (getBlockCompressor() != null) {
+        list.add(name + ":compression_pending_blocks");
+        list.add("" + getcompression_pending_blocks());
+
+        list.add(name + ":compression_avg_lag_us");
+        list.add("" + getcompression_avg_lag_us());
+
+        list.add(name + ":compression_max_lag_us");
+        list.add("" + getcompression_max_lag_us());
+
+        list.add(name + ":compression_writer_waits");
+        list.add("" + getcompression_writer_waits());
+      }
+      if (getBlockCache() != null) {
+        list.add(name + ":compression_block_cache_size");
+        list.add("" + getcompression_block_cache_size_bytes());
+
+        list.add(name + ":compression_block_cache_hits");
+        list.add("" + getcompression_block_cache_hits());
+
+        list.add(name + ":compression_block_cache_misses");
+        list.add("" + getcompression_block_cache_misses());
+
+        list.add(name + ":compression_block_cache_hit_rate");
+        list.add("" + getcompression_block_cache_hit_rate());
+      }
+    }
+    if (getDedupStore() != null) {
+      list.add(name + ":dedup_values");
+      list.add("" + getdedup_values());
+
+      list.add(name + ":dedup_references");
+      list.add("" + getdedup_references());
+
+      list.add(name + ":dedup_size");
+      list.add("" + getdedup_size_bytes());
+
+      list.add(name + ":dedup_logical_size");
+      list.add("" + getdedup_logical_size_bytes());
+
+      list.add(name + ":dedup_ratio");
+      list.add("" + getdedup_ratio());
     }
     return list;
   }
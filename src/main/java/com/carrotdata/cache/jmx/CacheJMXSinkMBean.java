@@ -245,6 +245,205 @@ public interface CacheJMXSinkMBean {
    */
   long getgc_freed_bytes();
 
+  /**
+   * Get number of segments recycled by GC
+   * @return number of segments
+   */
+  long getgc_segments_recycled();
+
+  /**
+   * Get bytes read by GC from recycled segments
+   * @return bytes read
+   */
+  long getgc_read_bytes();
+
+  /**
+   * Get bytes re-written by GC back to the cache
+   * @return bytes re-written
+   */
+  long getgc_rewritten_bytes();
+
+  /**
+   * Get bytes moved by GC to the victim cache
+   * @return bytes moved to victim cache
+   */
+  long getgc_victim_bytes();
+
+  /**
+   * Get cache level write amplification: (bytes written + GC bytes re-written) / bytes written
+   * @return write amplification
+   */
+  double getgc_write_amplification();
+
+  /**
+   * Get total GC time in ms
+   * @return total time
+   */
+  long getgc_time_ms();
+
+  /**
+   * Get GC time spent scanning segments in ms (requires scavenger.telemetry.enabled)
+   * @return scan time
+   */
+  long getgc_scan_time_ms();
+
+  /**
+   * Get GC time spent in index probes in ms (requires scavenger.telemetry.enabled)
+   * @return index time
+   */
+  long getgc_index_time_ms();
+
+  /**
+   * Get GC time spent re-inserting items in ms (requires scavenger.telemetry.enabled)
+   * @return re-insertion time
+   */
+  long getgc_rewrite_time_ms();
+
+  /**
+   * Get GC time spent evicting items to the victim cache in ms (requires
+   * scavenger.telemetry.enabled)
+   * @return eviction time
+   */
+  long getgc_victim_time_ms();
+
+  /**
+   * Get last GC run summary
+   * @return last run summary
+   */
+  String getgc_last_run();
+
+  /**
+   * Get recent per - segment GC records
+   * @return recent records, most recent last
+   */
+  String[] getgc_recent_segments();
+
+  /**
+   * Is adaptive scavenger pacing enabled
+   * @return true or false
+   */
+  boolean getgc_pacing_enabled();
+
+  /**
+   * Get scavenger pacing controller output [0, 1]
+   * @return controller output
+   */
+  double getgc_pacing_output();
+
+  /**
+   * Get current number of scavenger threads
+   * @return number of threads
+   */
+  int getgc_pacing_threads();
+
+  /**
+   * Get current scavenger start threshold (storage ratio)
+   * @return start ratio
+   */
+  double getgc_pacing_start_ratio();
+
+  /**
+   * Get current scavenger dump entry below ratio
+   * @return dump below ratio
+   */
+  double getgc_pacing_dump_below_ratio();
+
+  /**
+   * Get observed fill rate in bytes/sec
+   * @return fill rate
+   */
+  double getgc_pacing_fill_rate();
+
+  /**
+   * Get observed recycle rate in bytes/sec
+   * @return recycle rate
+   */
+  double getgc_pacing_recycle_rate();
+
+  /**
+   * Get number of free segments
+   * @return free segments
+   */
+  long getgc_pacing_free_segments();
+
+  /**
+   * Get observed rejected writes rate (writes/sec)
+   * @return rejected writes rate
+   */
+  double getgc_pacing_rejected_writes_rate();
+
+  /**
+   * Is miss ratio curve estimation enabled
+   * @return true or false
+   */
+  boolean getmrc_enabled();
+
+  /**
+   * Get miss ratio curve key sampling rate
+   * @return sampling rate
+   */
+  double getmrc_sampling_rate();
+
+  /**
+   * Get number of sampled get requests
+   * @return number of sampled gets
+   */
+  long getmrc_sampled_gets();
+
+  /**
+   * Get estimated miss ratio curve
+   * @return curve points as "POLICY:cache size:miss ratio"
+   */
+  String[] getmrc_curve();
+
+  /**
+   * Get number of training examples seen by the learned admission model
+   * @return number of examples (0 if learned admission is not used)
+   */
+  long getadmission_model_examples();
+
+  /**
+   * Get learned admission model log - loss (moving average)
+   * @return log loss
+   */
+  double getadmission_model_log_loss();
+
+  /**
+   * Get learned admission precision: fraction of admitted items later hit
+   * @return precision
+   */
+  double getadmission_model_precision();
+
+  /**
+   * Get number of items rejected by learned admission and requested again
+   * @return number of items
+   */
+  long getadmission_model_rejected_reused();
+
+  /**
+   * Is L0 hot keys cache enabled
+   * @return true or false
+   */
+  boolean gethotkeys_cache_enabled();
+
+  /**
+   * Get number of items in L0 hot keys cache
+   * @return number of items
+   */
+  int gethotkeys_cache_size();
+
+  /**
+   * Get number of GET requests served by L0 hot keys cache
+   * @return number of hits
+   */
+  long gethotkeys_cache_hits();
+
+  /**
+   * Get hot keys detected on sampled GET requests
+   * @return hot keys as "key:sampled count"
+   */
+  String[] gethot_keys();
+
   /**
    * Get IO average read operation duration in microseconds
    * @return duration
@@ -314,4 +513,82 @@ public interface CacheJMXSinkMBean {
    * @return compression ratio
    */
   double getcompression_ratio();
-}
\ No newline at end of file
+
+  /**
+   * Get number of sealed blocks waiting for background compression
+   * @return number of blocks
+   */
+  int getcompression_pending_blocks();
+
+  /**
+   * Get average background compression lag (seal to compressed) in microseconds
+   * @return average lag
+   */
+  double getcompression_avg_lag_us();
+
+  /**
+   * Get maximum background compression lag in microseconds
+   * @return maximum lag
+   */
+  long getcompression_max_lag_us();
+
+  /**
+   * Get number of times writers waited for background compression
+   * @return number of waits
+   */
+  long getcompression_writer_waits();
+
+  /**
+   * Get decompressed block cache memory size
+   * @return size in bytes (0 - disabled)
+   */
+  long getcompression_block_cache_size_bytes();
+
+  /**
+   * Get decompressed block cache hits
+   * @return number of hits
+   */
+  long getcompression_block_cache_hits();
+
+  /**
+   * Get decompressed block cache misses
+   * @return number of misses
+   */
+  long getcompression_block_cache_misses();
+
+  /**
+   * Get decompressed block cache hit rate
+   * @return hit rate
+   */
+  double getcompression_block_cache_hit_rate();
+
+  /**
+   * Get number of unique deduplicated values
+   * @return number of values (0 - deduplication is disabled)
+   */
+  long getdedup_values();
+
+  /**
+   * Get number of references to deduplicated values
+   * @return number of references
+   */
+  long getdedup_references();
+
+  /**
+   * Get memory size of deduplicated values
+   * @return size in bytes
+   */
+  long getdedup_size_bytes();
+
+  /**
+   * Get size of deduplicated values as if they were stored for every key
+   * @return size in bytes
+   */
+  long getdedup_logical_size_bytes();
+
+  /**
+   * Get deduplication ratio (logical size / stored size)
+   * @return ratio
+   */
+  double getdedup_ratio();
+}
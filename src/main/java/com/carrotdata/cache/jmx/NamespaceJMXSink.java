@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.jmx;
+
+import com.carrotdata.cache.NamespaceManager.Namespace;
+
+public class NamespaceJMXSink implements NamespaceJMXSinkMBean {
+
+  private final Namespace ns;
+
+  public NamespaceJMXSink(Namespace ns) {
+    this.ns = ns;
+  }
+
+  @Override
+  public String getprefix() {
+    return new String(ns.getPrefix());
+  }
+
+  @Override
+  public long getused_size_bytes() {
+    return ns.getUsedBytes();
+  }
+
+  @Override
+  public long getitems_total() {
+    return ns.getItems();
+  }
+
+  @Override
+  public long getquota_soft_bytes() {
+    return ns.getSoftQuota();
+  }
+
+  @Override
+  public long getquota_hard_bytes() {
+    return ns.getHardQuota();
+  }
+
+  @Override
+  public boolean getover_soft_quota() {
+    return ns.isOverSoftQuota();
+  }
+
+  @Override
+  public long gettotal_hits() {
+    return ns.getHits();
+  }
+
+  @Override
+  public long gettotal_misses() {
+    return ns.getMisses();
+  }
+
+  @Override
+  public double gethit_rate() {
+    return ns.getHitRate();
+  }
+
+  @Override
+  public long gettotal_rejected_writes() {
+    return ns.getRejectedWrites();
+  }
+
+  @Override
+  public long gettotal_evicted() {
+    return ns.getEvictedItems();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.jmx;
+
+public interface NamespaceJMXSinkMBean {
+
+  /**
+   * Get namespace key prefix
+   * @return key prefix
+   */
+  String getprefix();
+
+  /**
+   * Get storage used by namespace in bytes
+   * @return used size
+   */
+  long getused_size_bytes();
+
+  /**
+   * Get number of items stored by namespace
+   * @return number of items
+   */
+  long getitems_total();
+
+  /**
+   * Get soft quota in bytes
+   * @return soft quota (0 - none)
+   */
+  long getquota_soft_bytes();
+
+  /**
+   * Get hard quota in bytes
+   * @return hard quota (0 - none)
+   */
+  long getquota_hard_bytes();
+
+  /**
+   * Is namespace over its soft quota
+   * @return true or false
+   */
+  boolean getover_soft_quota();
+
+  /**
+   * Get total hits
+   * @return total hits
+   */
+  long gettotal_hits();
+
+  /**
+   * Get total misses
+   * @return total misses
+   */
+  long gettotal_misses();
+
+  /**
+   * Get hit rate
+   * @return hit rate
+   */
+  double gethit_rate();
+
+  /**
+   * Get writes rejected due to hard quota
+   * @return rejected writes
+   */
+  long gettotal_rejected_writes();
+
+  /**
+   * Get items evicted by scavenger
+   * @return evicted items
+   */
+  long gettotal_evicted();
+}
@@ -99,6 +99,9 @@ public class CacheConfig {
   /** File name for throughput controller snapshot data */
   public final static String THROUGHPUT_CONTROLLER_SNAPSHOT_NAME = "tc.data";
 
+  /** File name for namespaces snapshot data */
+  public final static String NAMESPACES_SNAPSHOT_NAME = "ns.data";
+
   /** File name for recycling selector snapshot data */
   public final static String RECYCLING_SELECTOR_SNAPSHOT_NAME = "rc.data";
 
@@ -210,6 +213,15 @@ public class CacheConfig {
   /** Evict all to victim cache. Default: false - only objects with hits > 0 */
   public static final String VICTIM_EVICT_ALL_KEY = "victim.evict.all";
 
+  /** Evict to victim cache asynchronously (in a background thread). Default: false */
+  public static final String VICTIM_EVICTION_ASYNC_KEY = "victim.eviction.async";
+
+  /** Size of a staging buffer for asynchronous eviction to victim cache */
+  public static final String VICTIM_EVICTION_BUFFER_SIZE_KEY = "victim.eviction.buffer.size";
+
+  /** Maximum number of staging buffers for asynchronous eviction to victim cache */
+  public static final String VICTIM_EVICTION_BUFFERS_MAX_KEY = "victim.eviction.buffers.max";
+
   /*
    * Some file systems : ext4, xfs, APFS etc supports sparse files and so called "hole punching" -
    * discarding regions of files. We use different algorithm of compaction when file system supports
@@ -391,6 +403,144 @@ public class CacheConfig {
   
   public final static String CACHE_ASYNC_IO_POOL_SIZE_KEY = "async.io.pool.size";
 
+  /** Apply victim cache admission controller to evicted items */
+  public static final String VICTIM_ADMISSION_ENABLED_KEY = "victim.admission.enabled";
+
+  /** Is value deduplication enabled */
+  public static final String CACHE_VALUE_DEDUP_ENABLED_KEY = "value.dedup.enabled";
+
+  /** Minimum size of a value to deduplicate */
+  public static final String CACHE_VALUE_DEDUP_SIZE_MIN_KEY = "value.dedup.size.min";
+
+  /** Restart interval of front coded keys in a data block */
+  public static final String CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL_KEY = "block.writer.prefix.restart.interval";
+
+  /** Key prefixes of compression dictionary classes */
+  public static final String CACHE_COMPRESSION_DICTIONARY_KEY_CLASSES_KEY = "compression.dictionary.key.classes";
+
+  /** Skip compression of blocks estimated as incompressible */
+  public static final String CACHE_COMPRESSION_BYPASS_ENABLED_KEY = "compression.bypass.enabled";
+
+  /** Entropy threshold (bits per byte) for compression bypass */
+  public static final String CACHE_COMPRESSION_BYPASS_ENTROPY_THRESHOLD_KEY = "compression.bypass.entropy.threshold";
+
+  /** Memory budget of a decompressed block cache */
+  public static final String CACHE_COMPRESSION_BLOCK_CACHE_SIZE_KEY = "compression.block.cache.size";
+
+  /** Compress write batches in background threads */
+  public static final String CACHE_COMPRESSION_ASYNC_ENABLED_KEY = "compression.async.enabled";
+
+  /** Number of compressor threads */
+  public static final String CACHE_COMPRESSION_ASYNC_THREADS_KEY = "compression.async.threads";
+
+  /** Recycle memory of released data segments */
+  public static final String SEGMENT_POOL_ENABLED_KEY = "segment.pool.enabled";
+
+  /** Maximum number of free segment buffers kept in the pool */
+  public static final String SEGMENT_POOL_MAX_FREE_KEY = "segment.pool.max.free";
+
+  /** Number of segment buffers allocated at startup */
+  public static final String SEGMENT_POOL_PREALLOCATE_KEY = "segment.pool.preallocate";
+
+  /** Align segment buffers to huge page boundary */
+  public static final String SEGMENT_POOL_HUGE_PAGE_ALIGNED_KEY = "segment.pool.huge.page.aligned";
+
+  /** Number of independent shards of a sharded cache */
+  public static final String CACHE_SHARDS_KEY = "cache.shards";
+
+  /** Coalesce concurrent victim cache reads of the same key */
+  public static final String VICTIM_SINGLE_FLIGHT_ENABLED_KEY = "victim.single.flight.enabled";
+
+  /** Maximum number of hot items in on - heap L0 cache (0 - disabled) */
+  public static final String HOTKEYS_CACHE_MAX_ITEMS_KEY = "hotkeys.cache.max.items";
+
+  /** Maximum size of key - value pair in L0 cache */
+  public static final String HOTKEYS_CACHE_MAX_ITEM_SIZE_KEY = "hotkeys.cache.max.item.size";
+
+  /** Hot key detector samples one of every N GET requests */
+  public static final String HOTKEYS_SAMPLE_INTERVAL_KEY = "hotkeys.sample.interval";
+
+  /** Number of counters in hot key detector (0 - 4 x L0 cache maximum items) */
+  public static final String HOTKEYS_DETECTOR_COUNTERS_KEY = "hotkeys.detector.counters";
+
+  /** Namespaces: comma - separated list of name|prefix[|soft quota[|hard quota]] */
+  public static final String CACHE_NAMESPACES_KEY = "namespaces";
+
+  /** Frequency promotion controller: minimum frequency threshold */
+  public static final String PROMOTION_FREQUENCY_THRESHOLD_KEY = "promotion.frequency.threshold";
+
+  /** Frequency promotion controller: promotion write rate budget */
+  public static final String PROMOTION_MAX_BYTES_PER_SEC_KEY = "promotion.max.bytes.per.sec";
+
+  /** Frequency promotion controller: sketch expected number of items */
+  public static final String PROMOTION_SKETCH_ITEMS_KEY = "promotion.sketch.items";
+
+  /** Learned admission model learning rate */
+  public static final String ML_ADMISSION_LEARNING_RATE_KEY = "ml.admission.learning.rate";
+
+  /** Learned admission model decision threshold */
+  public static final String ML_ADMISSION_THRESHOLD_KEY = "ml.admission.threshold";
+
+  /** Learned admission model history size (slots) */
+  public static final String ML_ADMISSION_HISTORY_SIZE_KEY = "ml.admission.history.size";
+
+  /** Learned admission model key prefix length */
+  public static final String ML_ADMISSION_KEY_PREFIX_LENGTH_KEY = "ml.admission.key.prefix.length";
+
+  /** Learned admission model training interval */
+  public static final String ML_ADMISSION_TRAIN_INTERVAL_MS_KEY = "ml.admission.train.interval.ms";
+
+  /** Miss ratio curve estimation enabled */
+  public static final String MRC_ENABLED_KEY = "mrc.enabled";
+
+  /** Miss ratio curve key sampling rate */
+  public static final String MRC_SAMPLING_RATE_KEY = "mrc.sampling.rate";
+
+  /** Miss ratio curve simulated cache sizes (multipliers of maximum cache size) */
+  public static final String MRC_SIZE_MULTIPLIERS_KEY = "mrc.size.multipliers";
+
+  /** Miss ratio curve simulated eviction policies */
+  public static final String MRC_POLICIES_KEY = "mrc.policies";
+
+  /** Lazy (CLOCK - style) promotion: hits only mark index entries */
+  public static final String EVICTION_LAZY_PROMOTION_KEY = "eviction.lazy.promotion";
+
+  /** S3-FIFO eviction policy: small (probationary) region ratio */
+  public static final String S3FIFO_SMALL_RATIO_KEY = "eviction.s3fifo.small.ratio";
+
+  /** S3-FIFO eviction policy: ghost queue size as a fraction of an estimated number of cached items */
+  public static final String S3FIFO_GHOST_RATIO_KEY = "eviction.s3fifo.ghost.ratio";
+
+  /** TinyLFU admission controller: expected number of items tracked by frequency sketch */
+  public static final String TINYLFU_SKETCH_ITEMS_KEY = "tinylfu.sketch.items";
+
+  /** TinyLFU admission controller: doorkeeper (Bloom filter) enabled */
+  public static final String TINYLFU_DOORKEEPER_ENABLED_KEY = "tinylfu.doorkeeper.enabled";
+
+  /** Scavenger detailed cost accounting (per item timing of index probes and re-insertion) */
+  public static final String SCAVENGER_TELEMETRY_ENABLED_KEY = "scavenger.telemetry.enabled";
+
+  /** Number of recent per-segment GC records to keep */
+  public static final String SCAVENGER_TELEMETRY_HISTORY_SIZE_KEY = "scavenger.telemetry.history.size";
+
+  /** Log per-segment and per-run GC records */
+  public static final String SCAVENGER_TELEMETRY_LOG_ENABLED_KEY = "scavenger.telemetry.log.enabled";
+
+  /** Adaptive scavenger pacing controller enabled. Default: false */
+  public static final String SCAVENGER_PACING_ENABLED_KEY = "scavenger.pacing.enabled";
+
+  /** Scavenger pacing controller check interval in ms */
+  public static final String SCAVENGER_PACING_INTERVAL_MS_KEY = "scavenger.pacing.interval.ms";
+
+  /** Scavenger pacing controller look-ahead horizon in ms */
+  public static final String SCAVENGER_PACING_HORIZON_MS_KEY = "scavenger.pacing.horizon.ms";
+
+  /** Scavenger pacing controller proportional gain */
+  public static final String SCAVENGER_PACING_KP_KEY = "scavenger.pacing.kp";
+
+  /** Scavenger pacing controller integral gain (1/sec) */
+  public static final String SCAVENGER_PACING_KI_KEY = "scavenger.pacing.ki";
+
   /** Defaults section */
 
   public static final long DEFAULT_CACHE_SEGMENT_SIZE = 4 * 1024 * 1024;
@@ -483,6 +633,15 @@ public class CacheConfig {
   /** Default Scavenger evict all to a victim cache */
   public static final boolean DEFAULT_VICTIM_EVICT_ALL = true;// 1min
 
+  /** Default asynchronous eviction to victim cache */
+  public static final boolean DEFAULT_VICTIM_EVICTION_ASYNC = false;
+
+  /** Default staging buffer size for asynchronous eviction to victim cache */
+  public static final int DEFAULT_VICTIM_EVICTION_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  /** Default maximum number of staging buffers */
+  public static final int DEFAULT_VICTIM_EVICTION_BUFFERS_MAX = 4;
+
   /** Default throughput controller tolerance limit */
   public static final double DEFAULT_THROUGHPUT_CONTROLLER_TOLERANCE_LIMIT = 0.05;
 
@@ -646,6 +805,144 @@ public class CacheConfig {
   
   public final int DEFAULT_CACHE_ASYNC_IO_POOL_SIZE = 32;
 
+  /** Default victim cache admission of evicted items */
+  public static final boolean DEFAULT_VICTIM_ADMISSION_ENABLED = false;
+
+  /** Default value deduplication enabled */
+  public static final boolean DEFAULT_CACHE_VALUE_DEDUP_ENABLED = false;
+
+  /** Default minimum size of a value to deduplicate */
+  public static final int DEFAULT_CACHE_VALUE_DEDUP_SIZE_MIN = 1024;
+
+  /** Default restart interval */
+  public static final int DEFAULT_CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL = 16;
+
+  /** Default key classes (none) */
+  public static final String DEFAULT_CACHE_COMPRESSION_DICTIONARY_KEY_CLASSES = null;
+
+  /** Default compression bypass */
+  public static final boolean DEFAULT_CACHE_COMPRESSION_BYPASS_ENABLED = false;
+
+  /** Default entropy threshold */
+  public static final double DEFAULT_CACHE_COMPRESSION_BYPASS_ENTROPY_THRESHOLD = 7.5;
+
+  /** Default decompressed block cache size (disabled) */
+  public static final long DEFAULT_CACHE_COMPRESSION_BLOCK_CACHE_SIZE = 0;
+
+  /** Default asynchronous compression */
+  public static final boolean DEFAULT_CACHE_COMPRESSION_ASYNC_ENABLED = false;
+
+  /** Default number of compressor threads */
+  public static final int DEFAULT_CACHE_COMPRESSION_ASYNC_THREADS = 2;
+
+  /** Default segment pool enabled */
+  public static final boolean DEFAULT_SEGMENT_POOL_ENABLED = true;
+
+  /** Default maximum number of free segment buffers in the pool */
+  public static final int DEFAULT_SEGMENT_POOL_MAX_FREE = 4;
+
+  /** Default number of preallocated segment buffers */
+  public static final int DEFAULT_SEGMENT_POOL_PREALLOCATE = 0;
+
+  /** Default huge page alignment of segment buffers */
+  public static final boolean DEFAULT_SEGMENT_POOL_HUGE_PAGE_ALIGNED = false;
+
+  /** Default number of cache shards */
+  public static final int DEFAULT_CACHE_SHARDS = 1;
+
+  /** Default victim cache single - flight reads */
+  public static final boolean DEFAULT_VICTIM_SINGLE_FLIGHT_ENABLED = true;
+
+  /** Default maximum number of hot items in L0 cache */
+  public static final int DEFAULT_HOTKEYS_CACHE_MAX_ITEMS = 0;
+
+  /** Default maximum size of key - value pair in L0 cache */
+  public static final int DEFAULT_HOTKEYS_CACHE_MAX_ITEM_SIZE = 4096;
+
+  /** Default hot key detector sample interval */
+  public static final int DEFAULT_HOTKEYS_SAMPLE_INTERVAL = 16;
+
+  /** Default number of counters in hot key detector */
+  public static final int DEFAULT_HOTKEYS_DETECTOR_COUNTERS = 0;
+
+  /** Default namespaces (none) */
+  public static final String DEFAULT_CACHE_NAMESPACES = null;
+
+  /** Default minimum promotion frequency threshold */
+  public static final int DEFAULT_PROMOTION_FREQUENCY_THRESHOLD = 2;
+
+  /** Default promotion write rate budget (0 - unlimited) */
+  public static final long DEFAULT_PROMOTION_MAX_BYTES_PER_SEC = 0;
+
+  /** Default promotion sketch expected number of items (0 - derived) */
+  public static final long DEFAULT_PROMOTION_SKETCH_ITEMS = 0;
+
+  /** Default learned admission model learning rate */
+  public static final double DEFAULT_ML_ADMISSION_LEARNING_RATE = 0.05;
+
+  /** Default learned admission model decision threshold */
+  public static final double DEFAULT_ML_ADMISSION_THRESHOLD = 0.5;
+
+  /** Default learned admission model history size */
+  public static final int DEFAULT_ML_ADMISSION_HISTORY_SIZE = 1 << 16;
+
+  /** Default learned admission model key prefix length */
+  public static final int DEFAULT_ML_ADMISSION_KEY_PREFIX_LENGTH = 8;
+
+  /** Default learned admission model training interval */
+  public static final long DEFAULT_ML_ADMISSION_TRAIN_INTERVAL_MS = 1000;
+
+  /** Default miss ratio curve estimation enabled */
+  public static final boolean DEFAULT_MRC_ENABLED = false;
+
+  /** Default miss ratio curve key sampling rate */
+  public static final double DEFAULT_MRC_SAMPLING_RATE = 0.001;
+
+  /** Default miss ratio curve size multipliers */
+  public static final String DEFAULT_MRC_SIZE_MULTIPLIERS = "0.25,0.5,1,2,4,8";
+
+  /** Default miss ratio curve simulated policies */
+  public static final String DEFAULT_MRC_POLICIES = "LRU,FIFO";
+
+  /** Default lazy promotion */
+  public static final boolean DEFAULT_EVICTION_LAZY_PROMOTION = false;
+
+  /** Default S3-FIFO small region ratio */
+  public static final double DEFAULT_S3FIFO_SMALL_RATIO = 0.1;
+
+  /** Default S3-FIFO ghost queue ratio */
+  public static final double DEFAULT_S3FIFO_GHOST_RATIO = 0.9;
+
+  /** Default TinyLFU sketch number of items (0 - derived from cache size) */
+  public static final long DEFAULT_TINYLFU_SKETCH_ITEMS = 0;
+
+  /** Default TinyLFU doorkeeper enabled */
+  public static final boolean DEFAULT_TINYLFU_DOORKEEPER_ENABLED = true;
+
+  /** Default scavenger detailed cost accounting */
+  public static final boolean DEFAULT_SCAVENGER_TELEMETRY_ENABLED = false;
+
+  /** Default number of recent per-segment GC records */
+  public static final int DEFAULT_SCAVENGER_TELEMETRY_HISTORY_SIZE = 64;
+
+  /** Default GC records logging */
+  public static final boolean DEFAULT_SCAVENGER_TELEMETRY_LOG_ENABLED = false;
+
+  /** Default scavenger pacing controller enabled */
+  public static final boolean DEFAULT_SCAVENGER_PACING_ENABLED = false;
+
+  /** Default scavenger pacing controller interval in ms */
+  public static final long DEFAULT_SCAVENGER_PACING_INTERVAL_MS = 1000;
+
+  /** Default scavenger pacing look-ahead horizon in ms */
+  public static final long DEFAULT_SCAVENGER_PACING_HORIZON_MS = 5000;
+
+  /** Default scavenger pacing proportional gain */
+  public static final double DEFAULT_SCAVENGER_PACING_KP = 2.0;
+
+  /** Default scavenger pacing integral gain */
+  public static final double DEFAULT_SCAVENGER_PACING_KI = 0.5;
+
   static CacheConfig instance;
 
   public static CacheConfig getInstance() {
@@ -1126,6 +1423,74 @@ public class CacheConfig {
     props.setProperty(cacheName + "." + VICTIM_EVICT_ALL_KEY, Boolean.toString(v));
   }
 
+  /**
+   * Get asynchronous eviction to victim cache
+   * @param cacheName cache name
+   * @return true / false
+   */
+  public boolean getVictimEvictionAsync(String cacheName) {
+    String value = props.getProperty(cacheName + "." + VICTIM_EVICTION_ASYNC_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(VICTIM_EVICTION_ASYNC_KEY, DEFAULT_VICTIM_EVICTION_ASYNC);
+  }
+
+  /**
+   * Set asynchronous eviction to victim cache
+   * @param cacheName cache name
+   * @param v true or false
+   */
+  public void setVictimEvictionAsync(String cacheName, boolean v) {
+    props.setProperty(cacheName + "." + VICTIM_EVICTION_ASYNC_KEY, Boolean.toString(v));
+  }
+
+  /**
+   * Get staging buffer size for asynchronous eviction to victim cache
+   * @param cacheName cache name
+   * @return buffer size
+   */
+  public int getVictimEvictionBufferSize(String cacheName) {
+    String value = props.getProperty(cacheName + "." + VICTIM_EVICTION_BUFFER_SIZE_KEY);
+    if (value != null) {
+      return (int) Long.parseLong(value.replaceAll(CHARS_TO_REMOVE_REGEX, ""));
+    }
+    return (int) getLongProperty(VICTIM_EVICTION_BUFFER_SIZE_KEY,
+      DEFAULT_VICTIM_EVICTION_BUFFER_SIZE);
+  }
+
+  /**
+   * Set staging buffer size for asynchronous eviction to victim cache
+   * @param cacheName cache name
+   * @param size buffer size
+   */
+  public void setVictimEvictionBufferSize(String cacheName, int size) {
+    props.setProperty(cacheName + "." + VICTIM_EVICTION_BUFFER_SIZE_KEY, Integer.toString(size));
+  }
+
+  /**
+   * Get maximum number of staging buffers for asynchronous eviction to victim cache
+   * @param cacheName cache name
+   * @return maximum number of buffers
+   */
+  public int getVictimEvictionMaxBuffers(String cacheName) {
+    String value = props.getProperty(cacheName + "." + VICTIM_EVICTION_BUFFERS_MAX_KEY);
+    if (value != null) {
+      return (int) Long.parseLong(value.replaceAll(CHARS_TO_REMOVE_REGEX, ""));
+    }
+    return (int) getLongProperty(VICTIM_EVICTION_BUFFERS_MAX_KEY,
+      DEFAULT_VICTIM_EVICTION_BUFFERS_MAX);
+  }
+
+  /**
+   * Set maximum number of staging buffers for asynchronous eviction to victim cache
+   * @param cacheName cache name
+   * @param n maximum number of buffers
+   */
+  public void setVictimEvictionMaxBuffers(String cacheName, int n) {
+    props.setProperty(cacheName + "." + VICTIM_EVICTION_BUFFERS_MAX_KEY, Integer.toString(n));
+  }
+
   /**
    * Get sparse files support for a cache (only for 'file' type caches)
    * @param cacheName cache name
@@ -2931,6 +3296,1018 @@ public class CacheConfig {
       Double.toString(factor));
   }
 
+  /**
+   * Get scavenger pacing controller enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isScavengerPacingEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_PACING_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(SCAVENGER_PACING_ENABLED_KEY, DEFAULT_SCAVENGER_PACING_ENABLED);
+  }
+
+  /**
+   * Set scavenger pacing controller enabled
+   * @param cacheName cache name
+   * @param v true or false
+   */
+  public void setScavengerPacingEnabled(String cacheName, boolean v) {
+    props.setProperty(cacheName + "." + SCAVENGER_PACING_ENABLED_KEY, Boolean.toString(v));
+  }
+
+  /**
+   * Get scavenger pacing controller interval in ms
+   * @param cacheName cache name
+   * @return interval in ms
+   */
+  public long getScavengerPacingInterval(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_PACING_INTERVAL_MS_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_SCAVENGER_PACING_INTERVAL_MS);
+    }
+    return getLongProperty(SCAVENGER_PACING_INTERVAL_MS_KEY, DEFAULT_SCAVENGER_PACING_INTERVAL_MS);
+  }
+
+  /**
+   * Set scavenger pacing controller interval in ms
+   * @param cacheName cache name
+   * @param interval interval in ms
+   */
+  public void setScavengerPacingInterval(String cacheName, long interval) {
+    props.setProperty(cacheName + "." + SCAVENGER_PACING_INTERVAL_MS_KEY, Long.toString(interval));
+  }
+
+  /**
+   * Get scavenger pacing controller look-ahead horizon in ms
+   * @param cacheName cache name
+   * @return horizon in ms
+   */
+  public long getScavengerPacingHorizon(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_PACING_HORIZON_MS_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_SCAVENGER_PACING_HORIZON_MS);
+    }
+    return getLongProperty(SCAVENGER_PACING_HORIZON_MS_KEY, DEFAULT_SCAVENGER_PACING_HORIZON_MS);
+  }
+
+  /**
+   * Set scavenger pacing controller look-ahead horizon in ms
+   * @param cacheName cache name
+   * @param horizon horizon in ms
+   */
+  public void setScavengerPacingHorizon(String cacheName, long horizon) {
+    props.setProperty(cacheName + "." + SCAVENGER_PACING_HORIZON_MS_KEY, Long.toString(horizon));
+  }
+
+  /**
+   * Get scavenger pacing controller proportional gain
+   * @param cacheName cache name
+   * @return proportional gain
+   */
+  public double getScavengerPacingProportionalGain(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_PACING_KP_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(SCAVENGER_PACING_KP_KEY, DEFAULT_SCAVENGER_PACING_KP);
+  }
+
+  /**
+   * Set scavenger pacing controller proportional gain
+   * @param cacheName cache name
+   * @param gain proportional gain
+   */
+  public void setScavengerPacingProportionalGain(String cacheName, double gain) {
+    props.setProperty(cacheName + "." + SCAVENGER_PACING_KP_KEY, Double.toString(gain));
+  }
+
+  /**
+   * Get scavenger pacing controller integral gain
+   * @param cacheName cache name
+   * @return integral gain
+   */
+  public double getScavengerPacingIntegralGain(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_PACING_KI_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(SCAVENGER_PACING_KI_KEY, DEFAULT_SCAVENGER_PACING_KI);
+  }
+
+  /**
+   * Set scavenger pacing controller integral gain
+   * @param cacheName cache name
+   * @param gain integral gain
+   */
+  public void setScavengerPacingIntegralGain(String cacheName, double gain) {
+    props.setProperty(cacheName + "." + SCAVENGER_PACING_KI_KEY, Double.toString(gain));
+  }
+
+  /**
+   * Get scavenger detailed cost accounting enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isScavengerTelemetryEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_TELEMETRY_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(SCAVENGER_TELEMETRY_ENABLED_KEY, DEFAULT_SCAVENGER_TELEMETRY_ENABLED);
+  }
+
+  /**
+   * Set scavenger detailed cost accounting enabled
+   * @param cacheName cache name
+   * @param v true or false
+   */
+  public void setScavengerTelemetryEnabled(String cacheName, boolean v) {
+    props.setProperty(cacheName + "." + SCAVENGER_TELEMETRY_ENABLED_KEY, Boolean.toString(v));
+  }
+
+  /**
+   * Get number of recent per-segment GC records to keep
+   * @param cacheName cache name
+   * @return history size
+   */
+  public int getScavengerTelemetryHistorySize(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_TELEMETRY_HISTORY_SIZE_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_SCAVENGER_TELEMETRY_HISTORY_SIZE);
+    }
+    return (int) getLongProperty(SCAVENGER_TELEMETRY_HISTORY_SIZE_KEY, DEFAULT_SCAVENGER_TELEMETRY_HISTORY_SIZE);
+  }
+
+  /**
+   * Set number of recent per-segment GC records to keep
+   * @param cacheName cache name
+   * @param size history size
+   */
+  public void setScavengerTelemetryHistorySize(String cacheName, int size) {
+    props.setProperty(cacheName + "." + SCAVENGER_TELEMETRY_HISTORY_SIZE_KEY, Integer.toString(size));
+  }
+
+  /**
+   * Get scavenger GC records logging enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isScavengerTelemetryLogEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SCAVENGER_TELEMETRY_LOG_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(SCAVENGER_TELEMETRY_LOG_ENABLED_KEY, DEFAULT_SCAVENGER_TELEMETRY_LOG_ENABLED);
+  }
+
+  /**
+   * Set scavenger GC records logging enabled
+   * @param cacheName cache name
+   * @param v true or false
+   */
+  public void setScavengerTelemetryLogEnabled(String cacheName, boolean v) {
+    props.setProperty(cacheName + "." + SCAVENGER_TELEMETRY_LOG_ENABLED_KEY, Boolean.toString(v));
+  }
+
+  /**
+   * Get TinyLFU frequency sketch expected number of items
+   * @param cacheName cache name
+   * @return number of items
+   */
+  public long getTinyLFUSketchItems(String cacheName) {
+    String value = props.getProperty(cacheName + "." + TINYLFU_SKETCH_ITEMS_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_TINYLFU_SKETCH_ITEMS);
+    }
+    return getLongProperty(TINYLFU_SKETCH_ITEMS_KEY, DEFAULT_TINYLFU_SKETCH_ITEMS);
+  }
+
+  /**
+   * Set TinyLFU frequency sketch expected number of items
+   * @param cacheName cache name
+   * @param items number of items
+   */
+  public void setTinyLFUSketchItems(String cacheName, long items) {
+    props.setProperty(cacheName + "." + TINYLFU_SKETCH_ITEMS_KEY, Long.toString(items));
+  }
+
+  /**
+   * Get TinyLFU doorkeeper enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isTinyLFUDoorkeeperEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + TINYLFU_DOORKEEPER_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(TINYLFU_DOORKEEPER_ENABLED_KEY, DEFAULT_TINYLFU_DOORKEEPER_ENABLED);
+  }
+
+  /**
+   * Set TinyLFU doorkeeper enabled
+   * @param cacheName cache name
+   * @param enabled true or false
+   */
+  public void setTinyLFUDoorkeeperEnabled(String cacheName, boolean enabled) {
+    props.setProperty(cacheName + "." + TINYLFU_DOORKEEPER_ENABLED_KEY, Boolean.toString(enabled));
+  }
+
+  /**
+   * Get S3-FIFO small region ratio
+   * @param cacheName cache name
+   * @return small region ratio
+   */
+  public double getS3FIFOSmallRatio(String cacheName) {
+    String value = props.getProperty(cacheName + "." + S3FIFO_SMALL_RATIO_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(S3FIFO_SMALL_RATIO_KEY, DEFAULT_S3FIFO_SMALL_RATIO);
+  }
+
+  /**
+   * Set S3-FIFO small region ratio
+   * @param cacheName cache name
+   * @param ratio small region ratio
+   */
+  public void setS3FIFOSmallRatio(String cacheName, double ratio) {
+    props.setProperty(cacheName + "." + S3FIFO_SMALL_RATIO_KEY, Double.toString(ratio));
+  }
+
+  /**
+   * Get S3-FIFO ghost queue ratio
+   * @param cacheName cache name
+   * @return ghost queue ratio
+   */
+  public double getS3FIFOGhostRatio(String cacheName) {
+    String value = props.getProperty(cacheName + "." + S3FIFO_GHOST_RATIO_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(S3FIFO_GHOST_RATIO_KEY, DEFAULT_S3FIFO_GHOST_RATIO);
+  }
+
+  /**
+   * Set S3-FIFO ghost queue ratio
+   * @param cacheName cache name
+   * @param ratio ghost queue ratio
+   */
+  public void setS3FIFOGhostRatio(String cacheName, double ratio) {
+    props.setProperty(cacheName + "." + S3FIFO_GHOST_RATIO_KEY, Double.toString(ratio));
+  }
+
+  /**
+   * Get lazy (CLOCK - style) promotion enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isEvictionLazyPromotion(String cacheName) {
+    String value = props.getProperty(cacheName + "." + EVICTION_LAZY_PROMOTION_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(EVICTION_LAZY_PROMOTION_KEY, DEFAULT_EVICTION_LAZY_PROMOTION);
+  }
+
+  /**
+   * Set lazy (CLOCK - style) promotion enabled
+   * @param cacheName cache name
+   * @param enabled true or false
+   */
+  public void setEvictionLazyPromotion(String cacheName, boolean enabled) {
+    props.setProperty(cacheName + "." + EVICTION_LAZY_PROMOTION_KEY, Boolean.toString(enabled));
+  }
+
+  /**
+   * Get miss ratio curve estimation enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isMRCEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + MRC_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(MRC_ENABLED_KEY, DEFAULT_MRC_ENABLED);
+  }
+
+  /**
+   * Set miss ratio curve estimation enabled
+   * @param cacheName cache name
+   * @param enabled true or false
+   */
+  public void setMRCEnabled(String cacheName, boolean enabled) {
+    props.setProperty(cacheName + "." + MRC_ENABLED_KEY, Boolean.toString(enabled));
+  }
+
+  /**
+   * Get miss ratio curve key sampling rate
+   * @param cacheName cache name
+   * @return sampling rate
+   */
+  public double getMRCSamplingRate(String cacheName) {
+    String value = props.getProperty(cacheName + "." + MRC_SAMPLING_RATE_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(MRC_SAMPLING_RATE_KEY, DEFAULT_MRC_SAMPLING_RATE);
+  }
+
+  /**
+   * Set miss ratio curve key sampling rate
+   * @param cacheName cache name
+   * @param rate sampling rate (0 - 1]
+   */
+  public void setMRCSamplingRate(String cacheName, double rate) {
+    props.setProperty(cacheName + "." + MRC_SAMPLING_RATE_KEY, Double.toString(rate));
+  }
+
+  /**
+   * Get miss ratio curve size multipliers
+   * @param cacheName cache name
+   * @return comma - separated list of multipliers
+   */
+  public String getMRCSizeMultipliers(String cacheName) {
+    String value = props.getProperty(cacheName + "." + MRC_SIZE_MULTIPLIERS_KEY);
+    if (value != null) {
+      return value;
+    }
+    return getProperty(MRC_SIZE_MULTIPLIERS_KEY, DEFAULT_MRC_SIZE_MULTIPLIERS);
+  }
+
+  /**
+   * Set miss ratio curve size multipliers
+   * @param cacheName cache name
+   * @param multipliers comma - separated list of multipliers
+   */
+  public void setMRCSizeMultipliers(String cacheName, String multipliers) {
+    props.setProperty(cacheName + "." + MRC_SIZE_MULTIPLIERS_KEY, multipliers);
+  }
+
+  /**
+   * Get miss ratio curve simulated eviction policies
+   * @param cacheName cache name
+   * @return comma - separated list of policies
+   */
+  public String getMRCPolicies(String cacheName) {
+    String value = props.getProperty(cacheName + "." + MRC_POLICIES_KEY);
+    if (value != null) {
+      return value;
+    }
+    return getProperty(MRC_POLICIES_KEY, DEFAULT_MRC_POLICIES);
+  }
+
+  /**
+   * Set miss ratio curve simulated eviction policies
+   * @param cacheName cache name
+   * @param policies comma - separated list of policies (LRU, FIFO)
+   */
+  public void setMRCPolicies(String cacheName, String policies) {
+    props.setProperty(cacheName + "." + MRC_POLICIES_KEY, policies);
+  }
+
+  /**
+   * Get learned admission model learning rate
+   * @param cacheName cache name
+   * @return learning rate
+   */
+  public double getMLAdmissionLearningRate(String cacheName) {
+    String value = props.getProperty(cacheName + "." + ML_ADMISSION_LEARNING_RATE_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(ML_ADMISSION_LEARNING_RATE_KEY, DEFAULT_ML_ADMISSION_LEARNING_RATE);
+  }
+
+  /**
+   * Set learned admission model learning rate
+   * @param cacheName cache name
+   * @param rate learning rate
+   */
+  public void setMLAdmissionLearningRate(String cacheName, double rate) {
+    props.setProperty(cacheName + "." + ML_ADMISSION_LEARNING_RATE_KEY, Double.toString(rate));
+  }
+
+  /**
+   * Get learned admission model decision threshold
+   * @param cacheName cache name
+   * @return threshold
+   */
+  public double getMLAdmissionThreshold(String cacheName) {
+    String value = props.getProperty(cacheName + "." + ML_ADMISSION_THRESHOLD_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(ML_ADMISSION_THRESHOLD_KEY, DEFAULT_ML_ADMISSION_THRESHOLD);
+  }
+
+  /**
+   * Set learned admission model decision threshold
+   * @param cacheName cache name
+   * @param threshold threshold (0 - 1)
+   */
+  public void setMLAdmissionThreshold(String cacheName, double threshold) {
+    props.setProperty(cacheName + "." + ML_ADMISSION_THRESHOLD_KEY, Double.toString(threshold));
+  }
+
+  /**
+   * Get learned admission model history size
+   * @param cacheName cache name
+   * @return number of slots
+   */
+  public int getMLAdmissionHistorySize(String cacheName) {
+    String value = props.getProperty(cacheName + "." + ML_ADMISSION_HISTORY_SIZE_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_ML_ADMISSION_HISTORY_SIZE);
+    }
+    return (int) getLongProperty(ML_ADMISSION_HISTORY_SIZE_KEY, DEFAULT_ML_ADMISSION_HISTORY_SIZE);
+  }
+
+  /**
+   * Set learned admission model history size
+   * @param cacheName cache name
+   * @param size number of slots
+   */
+  public void setMLAdmissionHistorySize(String cacheName, int size) {
+    props.setProperty(cacheName + "." + ML_ADMISSION_HISTORY_SIZE_KEY, Integer.toString(size));
+  }
+
+  /**
+   * Get learned admission model key prefix length
+   * @param cacheName cache name
+   * @return prefix length
+   */
+  public int getMLAdmissionKeyPrefixLength(String cacheName) {
+    String value = props.getProperty(cacheName + "." + ML_ADMISSION_KEY_PREFIX_LENGTH_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_ML_ADMISSION_KEY_PREFIX_LENGTH);
+    }
+    return (int) getLongProperty(ML_ADMISSION_KEY_PREFIX_LENGTH_KEY, DEFAULT_ML_ADMISSION_KEY_PREFIX_LENGTH);
+  }
+
+  /**
+   * Set learned admission model key prefix length
+   * @param cacheName cache name
+   * @param length prefix length
+   */
+  public void setMLAdmissionKeyPrefixLength(String cacheName, int length) {
+    props.setProperty(cacheName + "." + ML_ADMISSION_KEY_PREFIX_LENGTH_KEY, Integer.toString(length));
+  }
+
+  /**
+   * Get learned admission model training interval in ms
+   * @param cacheName cache name
+   * @return interval
+   */
+  public long getMLAdmissionTrainIntervalMs(String cacheName) {
+    String value = props.getProperty(cacheName + "." + ML_ADMISSION_TRAIN_INTERVAL_MS_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_ML_ADMISSION_TRAIN_INTERVAL_MS);
+    }
+    return getLongProperty(ML_ADMISSION_TRAIN_INTERVAL_MS_KEY, DEFAULT_ML_ADMISSION_TRAIN_INTERVAL_MS);
+  }
+
+  /**
+   * Set learned admission model training interval in ms
+   * @param cacheName cache name
+   * @param interval interval in ms
+   */
+  public void setMLAdmissionTrainIntervalMs(String cacheName, long interval) {
+    props.setProperty(cacheName + "." + ML_ADMISSION_TRAIN_INTERVAL_MS_KEY, Long.toString(interval));
+  }
+
+  /**
+   * Get minimum promotion frequency threshold
+   * @param cacheName cache name
+   * @return threshold
+   */
+  public int getPromotionFrequencyThreshold(String cacheName) {
+    String value = props.getProperty(cacheName + "." + PROMOTION_FREQUENCY_THRESHOLD_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_PROMOTION_FREQUENCY_THRESHOLD);
+    }
+    return (int) getLongProperty(PROMOTION_FREQUENCY_THRESHOLD_KEY, DEFAULT_PROMOTION_FREQUENCY_THRESHOLD);
+  }
+
+  /**
+   * Set minimum promotion frequency threshold
+   * @param cacheName cache name
+   * @param threshold threshold (1 - 15)
+   */
+  public void setPromotionFrequencyThreshold(String cacheName, int threshold) {
+    props.setProperty(cacheName + "." + PROMOTION_FREQUENCY_THRESHOLD_KEY, Integer.toString(threshold));
+  }
+
+  /**
+   * Get promotion write rate budget in bytes per second
+   * @param cacheName cache name
+   * @return bytes per second (0 - unlimited)
+   */
+  public long getPromotionMaxBytesPerSec(String cacheName) {
+    String value = props.getProperty(cacheName + "." + PROMOTION_MAX_BYTES_PER_SEC_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_PROMOTION_MAX_BYTES_PER_SEC);
+    }
+    return getLongProperty(PROMOTION_MAX_BYTES_PER_SEC_KEY, DEFAULT_PROMOTION_MAX_BYTES_PER_SEC);
+  }
+
+  /**
+   * Set promotion write rate budget in bytes per second
+   * @param cacheName cache name
+   * @param rate bytes per second (0 - unlimited)
+   */
+  public void setPromotionMaxBytesPerSec(String cacheName, long rate) {
+    props.setProperty(cacheName + "." + PROMOTION_MAX_BYTES_PER_SEC_KEY, Long.toString(rate));
+  }
+
+  /**
+   * Get promotion frequency sketch expected number of items
+   * @param cacheName cache name
+   * @return number of items
+   */
+  public long getPromotionSketchItems(String cacheName) {
+    String value = props.getProperty(cacheName + "." + PROMOTION_SKETCH_ITEMS_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_PROMOTION_SKETCH_ITEMS);
+    }
+    return getLongProperty(PROMOTION_SKETCH_ITEMS_KEY, DEFAULT_PROMOTION_SKETCH_ITEMS);
+  }
+
+  /**
+   * Set promotion frequency sketch expected number of items
+   * @param cacheName cache name
+   * @param items number of items
+   */
+  public void setPromotionSketchItems(String cacheName, long items) {
+    props.setProperty(cacheName + "." + PROMOTION_SKETCH_ITEMS_KEY, Long.toString(items));
+  }
+
+  /**
+   * Get cache namespaces
+   * @param cacheName cache name
+   * @return namespaces definition or null
+   */
+  public String getNamespaces(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_NAMESPACES_KEY);
+    if (value != null) {
+      return value;
+    }
+    return getProperty(CACHE_NAMESPACES_KEY, DEFAULT_CACHE_NAMESPACES);
+  }
+
+  /**
+   * Set cache namespaces
+   * @param cacheName cache name
+   * @param namespaces comma - separated list of name:prefix[:soft quota[:hard quota]]
+   */
+  public void setNamespaces(String cacheName, String namespaces) {
+    props.setProperty(cacheName + "." + CACHE_NAMESPACES_KEY, namespaces);
+  }
+
+  /**
+   * Get maximum number of hot items in on - heap L0 cache
+   * @param cacheName cache name
+   * @return maximum number of items (0 - disabled)
+   */
+  public int getHotKeysCacheMaxItems(String cacheName) {
+    String value = props.getProperty(cacheName + "." + HOTKEYS_CACHE_MAX_ITEMS_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_HOTKEYS_CACHE_MAX_ITEMS);
+    }
+    return (int) getLongProperty(HOTKEYS_CACHE_MAX_ITEMS_KEY, DEFAULT_HOTKEYS_CACHE_MAX_ITEMS);
+  }
+
+  /**
+   * Set maximum number of hot items in on - heap L0 cache
+   * @param cacheName cache name
+   * @param n maximum number of items
+   */
+  public void setHotKeysCacheMaxItems(String cacheName, int n) {
+    props.setProperty(cacheName + "." + HOTKEYS_CACHE_MAX_ITEMS_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get maximum size of a key - value pair in L0 cache
+   * @param cacheName cache name
+   * @return maximum size
+   */
+  public int getHotKeysCacheMaxItemSize(String cacheName) {
+    String value = props.getProperty(cacheName + "." + HOTKEYS_CACHE_MAX_ITEM_SIZE_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_HOTKEYS_CACHE_MAX_ITEM_SIZE);
+    }
+    return (int) getLongProperty(HOTKEYS_CACHE_MAX_ITEM_SIZE_KEY, DEFAULT_HOTKEYS_CACHE_MAX_ITEM_SIZE);
+  }
+
+  /**
+   * Set maximum size of a key - value pair in L0 cache
+   * @param cacheName cache name
+   * @param size maximum size
+   */
+  public void setHotKeysCacheMaxItemSize(String cacheName, int size) {
+    props.setProperty(cacheName + "." + HOTKEYS_CACHE_MAX_ITEM_SIZE_KEY, Integer.toString(size));
+  }
+
+  /**
+   * Get hot key detector sample interval
+   * @param cacheName cache name
+   * @return sample interval
+   */
+  public int getHotKeysSampleInterval(String cacheName) {
+    String value = props.getProperty(cacheName + "." + HOTKEYS_SAMPLE_INTERVAL_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_HOTKEYS_SAMPLE_INTERVAL);
+    }
+    return (int) getLongProperty(HOTKEYS_SAMPLE_INTERVAL_KEY, DEFAULT_HOTKEYS_SAMPLE_INTERVAL);
+  }
+
+  /**
+   * Set hot key detector sample interval
+   * @param cacheName cache name
+   * @param n sample interval
+   */
+  public void setHotKeysSampleInterval(String cacheName, int n) {
+    props.setProperty(cacheName + "." + HOTKEYS_SAMPLE_INTERVAL_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get number of counters in hot key detector
+   * @param cacheName cache name
+   * @return number of counters
+   */
+  public int getHotKeysDetectorCounters(String cacheName) {
+    String value = props.getProperty(cacheName + "." + HOTKEYS_DETECTOR_COUNTERS_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_HOTKEYS_DETECTOR_COUNTERS);
+    }
+    return (int) getLongProperty(HOTKEYS_DETECTOR_COUNTERS_KEY, DEFAULT_HOTKEYS_DETECTOR_COUNTERS);
+  }
+
+  /**
+   * Set number of counters in hot key detector
+   * @param cacheName cache name
+   * @param n number of counters
+   */
+  public void setHotKeysDetectorCounters(String cacheName, int n) {
+    props.setProperty(cacheName + "." + HOTKEYS_DETECTOR_COUNTERS_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get victim cache single - flight reads enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isVictimSingleFlightEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + VICTIM_SINGLE_FLIGHT_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(VICTIM_SINGLE_FLIGHT_ENABLED_KEY, DEFAULT_VICTIM_SINGLE_FLIGHT_ENABLED);
+  }
+
+  /**
+   * Set victim cache single - flight reads enabled
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setVictimSingleFlightEnabled(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + VICTIM_SINGLE_FLIGHT_ENABLED_KEY, Boolean.toString(b));
+  }
+
+  /**
+   * Get number of cache shards
+   * @param cacheName cache name
+   * @return number of shards
+   */
+  public int getCacheShards(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_SHARDS_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_CACHE_SHARDS);
+    }
+    return (int) getLongProperty(CACHE_SHARDS_KEY, DEFAULT_CACHE_SHARDS);
+  }
+
+  /**
+   * Set number of cache shards
+   * @param cacheName cache name
+   * @param n number of shards
+   */
+  public void setCacheShards(String cacheName, int n) {
+    props.setProperty(cacheName + "." + CACHE_SHARDS_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get segment pool enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isSegmentPoolEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SEGMENT_POOL_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(SEGMENT_POOL_ENABLED_KEY, DEFAULT_SEGMENT_POOL_ENABLED);
+  }
+
+  /**
+   * Set segment pool enabled
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setSegmentPoolEnabled(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + SEGMENT_POOL_ENABLED_KEY, Boolean.toString(b));
+  }
+
+  /**
+   * Get maximum number of free segment buffers in the pool
+   * @param cacheName cache name
+   * @return maximum number of free buffers
+   */
+  public int getSegmentPoolMaxFree(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SEGMENT_POOL_MAX_FREE_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_SEGMENT_POOL_MAX_FREE);
+    }
+    return (int) getLongProperty(SEGMENT_POOL_MAX_FREE_KEY, DEFAULT_SEGMENT_POOL_MAX_FREE);
+  }
+
+  /**
+   * Set maximum number of free segment buffers in the pool
+   * @param cacheName cache name
+   * @param n maximum number of free buffers
+   */
+  public void setSegmentPoolMaxFree(String cacheName, int n) {
+    props.setProperty(cacheName + "." + SEGMENT_POOL_MAX_FREE_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get number of segment buffers preallocated at startup
+   * @param cacheName cache name
+   * @return number of buffers
+   */
+  public int getSegmentPoolPreallocate(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SEGMENT_POOL_PREALLOCATE_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_SEGMENT_POOL_PREALLOCATE);
+    }
+    return (int) getLongProperty(SEGMENT_POOL_PREALLOCATE_KEY, DEFAULT_SEGMENT_POOL_PREALLOCATE);
+  }
+
+  /**
+   * Set number of segment buffers preallocated at startup
+   * @param cacheName cache name
+   * @param n number of buffers
+   */
+  public void setSegmentPoolPreallocate(String cacheName, int n) {
+    props.setProperty(cacheName + "." + SEGMENT_POOL_PREALLOCATE_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get segment buffers huge page alignment
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isSegmentPoolHugePageAligned(String cacheName) {
+    String value = props.getProperty(cacheName + "." + SEGMENT_POOL_HUGE_PAGE_ALIGNED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(SEGMENT_POOL_HUGE_PAGE_ALIGNED_KEY, DEFAULT_SEGMENT_POOL_HUGE_PAGE_ALIGNED);
+  }
+
+  /**
+   * Set segment buffers huge page alignment
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setSegmentPoolHugePageAligned(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + SEGMENT_POOL_HUGE_PAGE_ALIGNED_KEY, Boolean.toString(b));
+  }
+
+  /**
+   * Get asynchronous block compression enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isCacheCompressionAsyncEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_COMPRESSION_ASYNC_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(CACHE_COMPRESSION_ASYNC_ENABLED_KEY, DEFAULT_CACHE_COMPRESSION_ASYNC_ENABLED);
+  }
+
+  /**
+   * Set asynchronous block compression enabled
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setCacheCompressionAsyncEnabled(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + CACHE_COMPRESSION_ASYNC_ENABLED_KEY, Boolean.toString(b));
+  }
+
+  /**
+   * Get number of background compressor threads
+   * @param cacheName cache name
+   * @return number of threads
+   */
+  public int getCacheCompressionAsyncThreads(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_COMPRESSION_ASYNC_THREADS_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_CACHE_COMPRESSION_ASYNC_THREADS);
+    }
+    return (int) getLongProperty(CACHE_COMPRESSION_ASYNC_THREADS_KEY, DEFAULT_CACHE_COMPRESSION_ASYNC_THREADS);
+  }
+
+  /**
+   * Set number of background compressor threads
+   * @param cacheName cache name
+   * @param n number of threads
+   */
+  public void setCacheCompressionAsyncThreads(String cacheName, int n) {
+    props.setProperty(cacheName + "." + CACHE_COMPRESSION_ASYNC_THREADS_KEY, Integer.toString(n));
+  }
+
+  /**
+   * Get decompressed block cache size in bytes
+   * @param cacheName cache name
+   * @return size in bytes
+   */
+  public long getCacheCompressionBlockCacheSize(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_COMPRESSION_BLOCK_CACHE_SIZE_KEY);
+    if (value != null) {
+      return getLong(value, DEFAULT_CACHE_COMPRESSION_BLOCK_CACHE_SIZE);
+    }
+    return getLongProperty(CACHE_COMPRESSION_BLOCK_CACHE_SIZE_KEY, DEFAULT_CACHE_COMPRESSION_BLOCK_CACHE_SIZE);
+  }
+
+  /**
+   * Set decompressed block cache size in bytes
+   * @param cacheName cache name
+   * @param size size in bytes
+   */
+  public void setCacheCompressionBlockCacheSize(String cacheName, long size) {
+    props.setProperty(cacheName + "." + CACHE_COMPRESSION_BLOCK_CACHE_SIZE_KEY, Long.toString(size));
+  }
+
+  /**
+   * Get compression bypass enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isCacheCompressionBypassEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_COMPRESSION_BYPASS_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(CACHE_COMPRESSION_BYPASS_ENABLED_KEY, DEFAULT_CACHE_COMPRESSION_BYPASS_ENABLED);
+  }
+
+  /**
+   * Set compression bypass enabled
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setCacheCompressionBypassEnabled(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + CACHE_COMPRESSION_BYPASS_ENABLED_KEY, Boolean.toString(b));
+  }
+
+  /**
+   * Get compression bypass entropy threshold
+   * @param cacheName cache name
+   * @return entropy in bits per byte
+   */
+  public double getCacheCompressionBypassEntropyThreshold(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_COMPRESSION_BYPASS_ENTROPY_THRESHOLD_KEY);
+    if (value != null) {
+      return Double.parseDouble(value);
+    }
+    return getDoubleProperty(CACHE_COMPRESSION_BYPASS_ENTROPY_THRESHOLD_KEY, DEFAULT_CACHE_COMPRESSION_BYPASS_ENTROPY_THRESHOLD);
+  }
+
+  /**
+   * Set compression bypass entropy threshold
+   * @param cacheName cache name
+   * @param threshold entropy in bits per byte (0 - 8)
+   */
+  public void setCacheCompressionBypassEntropyThreshold(String cacheName, double threshold) {
+    props.setProperty(cacheName + "." + CACHE_COMPRESSION_BYPASS_ENTROPY_THRESHOLD_KEY, Double.toString(threshold));
+  }
+
+  /**
+   * Get compression dictionary key classes
+   * @param cacheName cache name
+   * @return comma - separated list of key prefixes or null
+   */
+  public String getCacheCompressionDictionaryKeyClasses(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_COMPRESSION_DICTIONARY_KEY_CLASSES_KEY);
+    if (value != null) {
+      return value;
+    }
+    return getProperty(CACHE_COMPRESSION_DICTIONARY_KEY_CLASSES_KEY, DEFAULT_CACHE_COMPRESSION_DICTIONARY_KEY_CLASSES);
+  }
+
+  /**
+   * Set compression dictionary key classes
+   * @param cacheName cache name
+   * @param prefixes comma - separated list of key prefixes
+   */
+  public void setCacheCompressionDictionaryKeyClasses(String cacheName, String prefixes) {
+    props.setProperty(cacheName + "." + CACHE_COMPRESSION_DICTIONARY_KEY_CLASSES_KEY, prefixes);
+  }
+
+  /**
+   * Get restart interval of front coded keys (PrefixBlockDataWriter)
+   * @param cacheName cache name
+   * @return restart interval
+   */
+  public int getBlockWriterPrefixRestartInterval(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL);
+    }
+    return (int) getLongProperty(CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL_KEY, DEFAULT_CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL);
+  }
+
+  /**
+   * Set restart interval of front coded keys (PrefixBlockDataWriter)
+   * @param cacheName cache name
+   * @param interval restart interval
+   */
+  public void setBlockWriterPrefixRestartInterval(String cacheName, int interval) {
+    props.setProperty(cacheName + "." + CACHE_BLOCK_WRITER_PREFIX_RESTART_INTERVAL_KEY, Integer.toString(interval));
+  }
+
+  /**
+   * Get value deduplication enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isValueDedupEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_VALUE_DEDUP_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(CACHE_VALUE_DEDUP_ENABLED_KEY, DEFAULT_CACHE_VALUE_DEDUP_ENABLED);
+  }
+
+  /**
+   * Set value deduplication enabled
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setValueDedupEnabled(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + CACHE_VALUE_DEDUP_ENABLED_KEY, Boolean.toString(b));
+  }
+
+  /**
+   * Get minimum size of a value to deduplicate
+   * @param cacheName cache name
+   * @return size
+   */
+  public int getValueDedupMinSize(String cacheName) {
+    String value = props.getProperty(cacheName + "." + CACHE_VALUE_DEDUP_SIZE_MIN_KEY);
+    if (value != null) {
+      return (int) getLong(value, DEFAULT_CACHE_VALUE_DEDUP_SIZE_MIN);
+    }
+    return (int) getLongProperty(CACHE_VALUE_DEDUP_SIZE_MIN_KEY, DEFAULT_CACHE_VALUE_DEDUP_SIZE_MIN);
+  }
+
+  /**
+   * Set minimum size of a value to deduplicate
+   * @param cacheName cache name
+   * @param size minimum value size
+   */
+  public void setValueDedupMinSize(String cacheName, int size) {
+    props.setProperty(cacheName + "." + CACHE_VALUE_DEDUP_SIZE_MIN_KEY, Integer.toString(size));
+  }
+
+  /**
+   * Get victim cache admission of evicted items enabled
+   * @param cacheName cache name
+   * @return true or false
+   */
+  public boolean isVictimAdmissionEnabled(String cacheName) {
+    String value = props.getProperty(cacheName + "." + VICTIM_ADMISSION_ENABLED_KEY);
+    if (value != null) {
+      return Boolean.parseBoolean(value);
+    }
+    return getBooleanProperty(VICTIM_ADMISSION_ENABLED_KEY, DEFAULT_VICTIM_ADMISSION_ENABLED);
+  }
+
+  /**
+   * Set victim cache admission of evicted items enabled
+   * @param cacheName cache name
+   * @param b true or false
+   */
+  public void setVictimAdmissionEnabled(String cacheName, boolean b) {
+    props.setProperty(cacheName + "." + VICTIM_ADMISSION_ENABLED_KEY, Boolean.toString(b));
+  }
+
   public boolean exists(String propName, String cacheName) {
     return props.getProperty(cacheName + "." + propName) != null;
   }
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off - heap, lock - free count - min sketch with 4 - bit counters (16 counters per long) and depth
+ * 4. Counters saturate at 15. After a sample period (10 x expected number of items) all counters
+ * are halved (aging), so the sketch tracks recent popularity. Optional doorkeeper (Bloom filter,
+ * 8 bits per item, two hash functions) absorbs first occurrences of keys, so one - hit wonders do
+ * not pollute the sketch. Doorkeeper is cleared on each aging.
+ * <p>
+ * Sketch operates on 64 bit key hashes (see {@link Utils#hash64(long, int)}).
+ */
+public class FrequencySketch implements Persistent {
+
+  /* Seeds for depth hashing */
+  private final static long[] SEEDS = new long[] { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+      0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+  private final static long RESET_MASK = 0x7777777777777777L;
+
+  private final static int MAX_COUNT = 15;
+
+  /* Counters table address */
+  private long table;
+
+  /* Table size in longs (power of 2) */
+  private int tableSize;
+
+  /* Doorkeeper address (0 - disabled) */
+  private long doorkeeper;
+
+  /* Doorkeeper size in longs (power of 2) */
+  private int doorkeeperSize;
+
+  /* Number of increments before aging */
+  private long sampleSize;
+
+  /* Increments since the last aging */
+  private final AtomicLong size = new AtomicLong();
+
+  /* Aging in progress */
+  private final AtomicBoolean resetting = new AtomicBoolean();
+
+  /* Total number of aging runs */
+  private volatile long totalResets;
+
+  /**
+   * Constructor
+   * @param expectedItems expected number of items
+   * @param doorkeeperEnabled doorkeeper enabled
+   */
+  public FrequencySketch(long expectedItems, boolean doorkeeperEnabled) {
+    expectedItems = Math.max(expectedItems, 64);
+    // 16 counters (one long) per expected item
+    this.tableSize = (int) Math.min(Utils.nextPow2(expectedItems), 1 << 30);
+    this.tableSize = Math.max(this.tableSize, 16);
+    this.table = UnsafeAccess.mallocZeroed((long) this.tableSize * Utils.SIZEOF_LONG);
+    this.sampleSize = 10 * expectedItems;
+    if (doorkeeperEnabled) {
+      // 8 bits per expected item, false positive rate is about 5%
+      this.doorkeeperSize = (int) Math.min(Utils.nextPow2(expectedItems / 8), 1 << 30);
+      this.doorkeeperSize = Math.max(this.doorkeeperSize, 16);
+      this.doorkeeper = UnsafeAccess.mallocZeroed((long) this.doorkeeperSize * Utils.SIZEOF_LONG);
+    }
+  }
+
+  /**
+   * Records occurrence of a key
+   * @param hash key hash
+   */
+  public void increment(long hash) {
+    if (this.doorkeeper != 0 && setDoorkeeper(hash)) {
+      // First occurrence since the last aging
+      return;
+    }
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+    }
+    if (added && this.size.incrementAndGet() >= this.sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Estimated frequency of a key (0 - 16)
+   * @param hash key hash
+   * @return frequency
+   */
+  public int frequency(long hash) {
+    int min = MAX_COUNT;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long v = getLong(this.table + indexOf(hash, i) * Utils.SIZEOF_LONG);
+      int count = (int) ((v >>> offsetOf(hash, i)) & 0xfL);
+      min = Math.min(min, count);
+    }
+    if (this.doorkeeper != 0 && containsDoorkeeper(hash)) {
+      min++;
+    }
+    return min;
+  }
+
+  private boolean incrementAt(long index, int offset) {
+    long addr = this.table + index * Utils.SIZEOF_LONG;
+    long mask = 0xfL << offset;
+    while (true) {
+      long v = getLong(addr);
+      if ((v & mask) == mask) {
+        // saturated
+        return false;
+      }
+      if (casLong(addr, v, v + (1L << offset))) {
+        return true;
+      }
+    }
+  }
+
+  private long indexOf(long hash, int i) {
+    long h = mix(hash ^ SEEDS[i]);
+    return h & (this.tableSize - 1);
+  }
+
+  private int offsetOf(long hash, int i) {
+    // Counter position inside a long: 0, 4, ... 60
+    long h = mix(hash + SEEDS[i]);
+    return (int) (h >>> 60) << 2;
+  }
+
+  /* Counters are accessed in a native byte order, CAS requires it */
+  private static long getLong(long addr) {
+    return UnsafeAccess.theUnsafe.getLongVolatile(null, addr);
+  }
+
+  private static void putLong(long addr, long v) {
+    UnsafeAccess.theUnsafe.putLongVolatile(null, addr, v);
+  }
+
+  private static boolean casLong(long addr, long expected, long v) {
+    return UnsafeAccess.theUnsafe.compareAndSwapLong(null, addr, expected, v);
+  }
+
+  private static long mix(long h) {
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Sets doorkeeper bits
+   * @param hash key hash
+   * @return true if key was not in the doorkeeper
+   */
+  private boolean setDoorkeeper(long hash) {
+    boolean set = setBit(hash);
+    set |= setBit(mix(hash));
+    return set;
+  }
+
+  private boolean containsDoorkeeper(long hash) {
+    return getBit(hash) && getBit(mix(hash));
+  }
+
+  private boolean setBit(long h) {
+    long bits = (long) this.doorkeeperSize << 6;
+    long bit = (h >>> 1) & (bits - 1);
+    long addr = this.doorkeeper + (bit >>> 6) * Utils.SIZEOF_LONG;
+    long mask = 1L << (bit & 63);
+    while (true) {
+      long v = getLong(addr);
+      if ((v & mask) != 0) {
+        return false;
+      }
+      if (casLong(addr, v, v | mask)) {
+        return true;
+      }
+    }
+  }
+
+  private boolean getBit(long h) {
+    long bits = (long) this.doorkeeperSize << 6;
+    long bit = (h >>> 1) & (bits - 1);
+    long v = getLong(this.doorkeeper + (bit >>> 6) * Utils.SIZEOF_LONG);
+    return (v & (1L << (bit & 63))) != 0;
+  }
+
+  /**
+   * Ages the sketch: halves all counters and clears doorkeeper. Concurrent increments may be lost,
+   * which is acceptable for an approximate structure.
+   */
+  public void reset() {
+    if (!this.resetting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      for (int i = 0; i < this.tableSize; i++) {
+        long addr = this.table + (long) i * Utils.SIZEOF_LONG;
+        long v = getLong(addr);
+        putLong(addr, (v >>> 1) & RESET_MASK);
+      }
+      if (this.doorkeeper != 0) {
+        UnsafeAccess.setMemory(this.doorkeeper, (long) this.doorkeeperSize * Utils.SIZEOF_LONG,
+          (byte) 0);
+      }
+      this.size.set(this.size.get() / 2);
+      this.totalResets++;
+    } finally {
+      this.resetting.set(false);
+    }
+  }
+
+  /**
+   * Get table size in longs
+   * @return table size
+   */
+  public int getTableSize() {
+    return this.tableSize;
+  }
+
+  /**
+   * Get sample size (number of increments between aging)
+   * @return sample size
+   */
+  public long getSampleSize() {
+    return this.sampleSize;
+  }
+
+  /**
+   * Get total number of aging runs
+   * @return total resets
+   */
+  public long getTotalResets() {
+    return this.totalResets;
+  }
+
+  /**
+   * Is doorkeeper enabled
+   * @return true or false
+   */
+  public boolean isDoorkeeperEnabled() {
+    return this.doorkeeper != 0;
+  }
+
+  /**
+   * Get memory allocated by sketch in bytes
+   * @return memory size
+   */
+  public long getAllocatedMemory() {
+    return ((long) this.tableSize + this.doorkeeperSize) * Utils.SIZEOF_LONG;
+  }
+
+  /**
+   * Releases off - heap memory
+   */
+  public synchronized void dispose() {
+    if (this.table != 0) {
+      UnsafeAccess.free(this.table);
+      this.table = 0;
+    }
+    if (this.doorkeeper != 0) {
+      UnsafeAccess.free(this.doorkeeper);
+      this.doorkeeper = 0;
+    }
+  }
+
+  @Override
+  public void save(OutputStream os) throws IOException {
+    DataOutputStream dos = Utils.toDataOutputStream(os);
+    dos.writeInt(this.tableSize);
+    dos.writeInt(this.doorkeeperSize);
+    dos.writeLong(this.sampleSize);
+    dos.writeLong(this.size.get());
+    for (int i = 0; i < this.tableSize; i++) {
+      dos.writeLong(getLong(this.table + (long) i * Utils.SIZEOF_LONG));
+    }
+    if (this.doorkeeper != 0) {
+      for (int i = 0; i < this.doorkeeperSize; i++) {
+        dos.writeLong(getLong(this.doorkeeper + (long) i * Utils.SIZEOF_LONG));
+      }
+    }
+  }
+
+  @Override
+  public void load(InputStream is) throws IOException {
+    DataInputStream dis = Utils.toDataInputStream(is);
+    int tableSize = dis.readInt();
+    int doorkeeperSize = dis.readInt();
+    dispose();
+    this.tableSize = tableSize;
+    this.doorkeeperSize = doorkeeperSize;
+    this.sampleSize = dis.readLong();
+    this.size.set(dis.readLong());
+    this.table = UnsafeAccess.malloc((long) this.tableSize * Utils.SIZEOF_LONG);
+    for (int i = 0; i < this.tableSize; i++) {
+      putLong(this.table + (long) i * Utils.SIZEOF_LONG, dis.readLong());
+    }
+    if (this.doorkeeperSize > 0) {
+      this.doorkeeper = UnsafeAccess.malloc((long) this.doorkeeperSize * Utils.SIZEOF_LONG);
+      for (int i = 0; i < this.doorkeeperSize; i++) {
+        putLong(this.doorkeeper + (long) i * Utils.SIZEOF_LONG, dis.readLong());
+      }
+    }
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Top - K hot key detector based on Space - Saving algorithm. Detector monitors a fixed number of
+ * keys, a key which is not monitored replaces the monitored key with the minimum count and
+ * inherits this count as its over - estimation error. Monitored keys with the largest guaranteed
+ * counts (count - error) are reported as hot.
+ * <p>
+ * Counters are found by an open addressing hash index and kept in a min - heap ordered by counts,
+ * so an update is O(log capacity).
+ * <p>
+ * Detector is meant to be updated on a sample of requests and it never blocks callers: an update
+ * is skipped if another thread is updating detector. Hot set is published as a sorted array of
+ * key hashes, therefore {@link #isHot(long)} is lock - free. Counters are halved periodically, so
+ * detector follows recent hot keys.
+ */
+public class HotKeyDetector {
+
+  /* Minimum guaranteed count of a hot key */
+  private final static int MIN_COUNT = 2;
+
+  /* Number of hot keys */
+  private final int topK;
+
+  /* Number of counters */
+  private final int capacity;
+
+  /* Monitored key hashes */
+  private final long[] hashes;
+
+  /* Counts */
+  private final long[] counts;
+
+  /* Over - estimation errors */
+  private final long[] errors;
+
+  /* Monitored keys */
+  private final byte[][] keys;
+
+  /* Open addressing index: key hash -> counter index + 1 (0 - empty slot) */
+  private final int[] index;
+
+  private final int indexMask;
+
+  /* Min - heap of counters ordered by counts: heap position -> counter index */
+  private final int[] heap;
+
+  /* Counter index -> heap position */
+  private final int[] heapPos;
+
+  /* Number of monitored keys */
+  private int size;
+
+  /* Updates since the last aging */
+  private long updates;
+
+  /* Updates since the last hot set refresh */
+  private int sinceRefresh;
+
+  /* Number of updates between aging */
+  private final long agingInterval;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /* Sorted hashes of hot keys */
+  private volatile long[] hotHashes = new long[0];
+
+  /* Incremented every time hot set changes */
+  private volatile long generation;
+
+  /* Statistics */
+  private final AtomicLong totalUpdates = new AtomicLong();
+
+  private final AtomicLong totalSkipped = new AtomicLong();
+
+  /**
+   * Constructor
+   * @param topK number of hot keys
+   * @param capacity number of counters (should be several times larger than topK, at most 2^20)
+   */
+  public HotKeyDetector(int topK, int capacity) {
+    if (topK <= 0) {
+      throw new IllegalArgumentException("Number of hot keys must be positive");
+    }
+    this.topK = topK;
+    // Counter index must fit 20 bits (see topIndexes())
+    this.capacity = Math.min(Math.max(capacity, topK), 1 << 20);
+    this.hashes = new long[this.capacity];
+    this.counts = new long[this.capacity];
+    this.errors = new long[this.capacity];
+    this.keys = new byte[this.capacity][];
+    this.heap = new int[this.capacity];
+    this.heapPos = new int[this.capacity];
+    // Load factor at most 0.5
+    int indexSize = (int) Utils.nextPow2(2L * this.capacity);
+    this.index = new int[indexSize];
+    this.indexMask = indexSize - 1;
+    this.agingInterval = 32L * this.capacity;
+  }
+
+  /**
+   * Records occurrence of a key
+   * @param hash key hash
+   * @param key key buffer
+   * @param off key offset
+   * @param len key length
+   * @return true if key is hot
+   */
+  public boolean offer(long hash, byte[] key, int off, int len) {
+    if (!this.lock.tryLock()) {
+      this.totalSkipped.incrementAndGet();
+      return isHot(hash);
+    }
+    try {
+      int i = update(hash);
+      if (this.keys[i] == null) {
+        this.keys[i] = Arrays.copyOfRange(key, off, off + len);
+      }
+      afterUpdate();
+    } finally {
+      this.lock.unlock();
+    }
+    return isHot(hash);
+  }
+
+  /**
+   * Records occurrence of a key
+   * @param hash key hash
+   * @param keyPtr key address
+   * @param keySize key size
+   * @return true if key is hot
+   */
+  public boolean offer(long hash, long keyPtr, int keySize) {
+    if (!this.lock.tryLock()) {
+      this.totalSkipped.incrementAndGet();
+      return isHot(hash);
+    }
+    try {
+      int i = update(hash);
+      if (this.keys[i] == null) {
+        byte[] key = new byte[keySize];
+        UnsafeAccess.copy(keyPtr, key, 0, keySize);
+        this.keys[i] = key;
+      }
+      afterUpdate();
+    } finally {
+      this.lock.unlock();
+    }
+    return isHot(hash);
+  }
+
+  /**
+   * Space - Saving update, must be called under lock
+   * @param hash key hash
+   * @return index of key's counter (key is null if counter was taken over)
+   */
+  private int update(long hash) {
+    this.totalUpdates.incrementAndGet();
+    int i = find(hash);
+    if (i >= 0) {
+      this.counts[i]++;
+      siftDown(this.heapPos[i]);
+      return i;
+    }
+    if (this.size < this.capacity) {
+      i = this.size++;
+      this.counts[i] = 1;
+      this.errors[i] = 0;
+      this.heap[i] = i;
+      this.heapPos[i] = i;
+      // Aged counts can be 0
+      siftUp(i);
+    } else {
+      // Take over the counter with the minimum count
+      i = this.heap[0];
+      removeIndex(this.hashes[i]);
+      this.errors[i] = this.counts[i];
+      this.counts[i]++;
+      siftDown(0);
+    }
+    this.hashes[i] = hash;
+    this.keys[i] = null;
+    insertIndex(hash, i);
+    return i;
+  }
+
+  private int indexSlot(long hash) {
+    return (int) (hash ^ (hash >>> 32)) & this.indexMask;
+  }
+
+  /**
+   * Finds counter of a key
+   * @param hash key hash
+   * @return counter index or -1
+   */
+  private int find(long hash) {
+    for (int s = indexSlot(hash);; s = (s + 1) & this.indexMask) {
+      int v = this.index[s];
+      if (v == 0) {
+        return -1;
+      }
+      if (this.hashes[v - 1] == hash) {
+        return v - 1;
+      }
+    }
+  }
+
+  private void insertIndex(long hash, int i) {
+    int s = indexSlot(hash);
+    while (this.index[s] != 0) {
+      s = (s + 1) & this.indexMask;
+    }
+    this.index[s] = i + 1;
+  }
+
+  /**
+   * Removes monitored key from index (backward shift deletion)
+   * @param hash key hash
+   */
+  private void removeIndex(long hash) {
+    int s = indexSlot(hash);
+    while (this.hashes[this.index[s] - 1] != hash) {
+      s = (s + 1) & this.indexMask;
+    }
+    for (int j = (s + 1) & this.indexMask;; j = (j + 1) & this.indexMask) {
+      int v = this.index[j];
+      if (v == 0) {
+        break;
+      }
+      // Move entry into the hole if its home slot is not in (s, j]
+      int home = indexSlot(this.hashes[v - 1]);
+      if (((j - home) & this.indexMask) >= ((j - s) & this.indexMask)) {
+        this.index[s] = v;
+        s = j;
+      }
+    }
+    this.index[s] = 0;
+  }
+
+  private void siftUp(int pos) {
+    int i = this.heap[pos];
+    long count = this.counts[i];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      int p = this.heap[parent];
+      if (this.counts[p] <= count) {
+        break;
+      }
+      this.heap[pos] = p;
+      this.heapPos[p] = pos;
+      pos = parent;
+    }
+    this.heap[pos] = i;
+    this.heapPos[i] = pos;
+  }
+
+  private void siftDown(int pos) {
+    int i = this.heap[pos];
+    long count = this.counts[i];
+    int half = this.size >>> 1;
+    while (pos < half) {
+      int child = 2 * pos + 1;
+      int c = this.heap[child];
+      int right = child + 1;
+      if (right < this.size && this.counts[this.heap[right]] < this.counts[c]) {
+        child = right;
+        c = this.heap[child];
+      }
+      if (count <= this.counts[c]) {
+        break;
+      }
+      this.heap[pos] = c;
+      this.heapPos[c] = pos;
+      pos = child;
+    }
+    this.heap[pos] = i;
+    this.heapPos[i] = pos;
+  }
+
+  private void afterUpdate() {
+    if (++this.updates >= this.agingInterval) {
+      // Halving keeps the heap order
+      for (int i = 0; i < this.size; i++) {
+        this.counts[i] >>>= 1;
+        this.errors[i] >>>= 1;
+      }
+      this.updates = 0;
+    }
+    if (++this.sinceRefresh >= this.topK) {
+      refresh();
+    }
+  }
+
+  /**
+   * Recalculates hot set, must be called under lock
+   */
+  private void refresh() {
+    this.sinceRefresh = 0;
+    int[] top = topIndexes();
+    long[] hot = new long[top.length];
+    for (int i = 0; i < top.length; i++) {
+      hot[i] = this.hashes[top[i]];
+    }
+    Arrays.sort(hot);
+    if (!Arrays.equals(hot, this.hotHashes)) {
+      this.hotHashes = hot;
+      this.generation++;
+    }
+  }
+
+  /**
+   * Indexes of hot keys in a descending order of guaranteed counts, must be called under lock
+   * @return indexes
+   */
+  private int[] topIndexes() {
+    long[] sorted = new long[this.size];
+    for (int i = 0; i < this.size; i++) {
+      // Guaranteed count in high bits, index in low bits
+      sorted[i] = ((this.counts[i] - this.errors[i]) << 20) | i;
+    }
+    Arrays.sort(sorted);
+    int n = 0;
+    int[] top = new int[Math.min(this.topK, this.size)];
+    for (int i = this.size - 1; i >= 0 && n < top.length; i--) {
+      if ((sorted[i] >>> 20) < MIN_COUNT) {
+        break;
+      }
+      top[n++] = (int) (sorted[i] & 0xfffff);
+    }
+    return Arrays.copyOf(top, n);
+  }
+
+  /**
+   * Is key hot
+   * @param hash key hash
+   * @return true or false
+   */
+  public boolean isHot(long hash) {
+    return Arrays.binarySearch(this.hotHashes, hash) >= 0;
+  }
+
+  /**
+   * Get hot keys with their estimated (sampled) counts in a descending order of counts
+   * @return list of key:count
+   */
+  public List<String> getHotKeys() {
+    List<String> list = new ArrayList<String>();
+    this.lock.lock();
+    try {
+      for (int i : topIndexes()) {
+        if (this.keys[i] != null) {
+          list.add(toString(this.keys[i]) + ":" + this.counts[i]);
+        }
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    return list;
+  }
+
+  private static String toString(byte[] key) {
+    for (byte b : key) {
+      if (b < 0x20 || b > 0x7e) {
+        return "0x" + Utils.toHex(key);
+      }
+    }
+    return new String(key);
+  }
+
+  /**
+   * Get generation of a hot set, it is incremented every time hot set changes
+   * @return generation
+   */
+  public long getGeneration() {
+    return this.generation;
+  }
+
+  /**
+   * Get number of hot keys detector reports
+   * @return number of hot keys
+   */
+  public int getTopK() {
+    return this.topK;
+  }
+
+  /**
+   * Get number of counters
+   * @return capacity
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Get total number of updates
+   * @return total updates
+   */
+  public long getTotalUpdates() {
+    return this.totalUpdates.get();
+  }
+
+  /**
+   * Get total number of updates skipped due to contention
+   * @return total skipped
+   */
+  public long getTotalSkipped() {
+    return this.totalSkipped.get();
+  }
+}
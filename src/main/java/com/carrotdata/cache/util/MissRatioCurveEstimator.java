@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Online miss ratio curve (MRC) estimator based on SHARDS (spatially hashed sampling) and
+ * miniature simulation. A key is sampled if its (mixed) hash falls below a threshold, so the same
+ * keys are always sampled and reuse distances are preserved. Sampled requests feed several small
+ * simulated caches, each scaled down by the sampling rate, with different sizes and eviction
+ * policies. Miss ratio of a simulated cache estimates the miss ratio of a real cache of the
+ * corresponding size.
+ * <p>
+ * Simulation follows look - aside semantics: get either hits or misses, put inserts (updates) an
+ * item. Non - sampled requests cost one hash mix and a comparison.
+ */
+public class MissRatioCurveEstimator {
+
+  /**
+   * Simulated eviction policy
+   */
+  public static enum Policy {
+    LRU, FIFO
+  }
+
+  /* Sampling threshold resolution bits */
+  private final static int SAMPLING_BITS = 24;
+
+  /* Sampling rate */
+  private final double samplingRate;
+
+  /* Sampling threshold */
+  private final long threshold;
+
+  /* Simulated (full scale) cache sizes */
+  private final long[] sizes;
+
+  /* Simulated policies */
+  private final Policy[] policies;
+
+  /* Simulated caches: policy major order */
+  private final MiniCache[] caches;
+
+  /**
+   * Constructor
+   * @param referenceSize reference (maximum) cache size
+   * @param multipliers simulated cache sizes as multipliers of the reference size
+   * @param policies simulated policies
+   * @param samplingRate sampling rate (0 - 1]
+   */
+  public MissRatioCurveEstimator(long referenceSize, double[] multipliers, Policy[] policies,
+      double samplingRate) {
+    if (samplingRate <= 0 || samplingRate > 1) {
+      throw new IllegalArgumentException("Illegal sampling rate: " + samplingRate);
+    }
+    this.samplingRate = samplingRate;
+    this.threshold = Math.max(1, (long) (samplingRate * (1L << SAMPLING_BITS)));
+    this.sizes = new long[multipliers.length];
+    for (int i = 0; i < multipliers.length; i++) {
+      this.sizes[i] = (long) (referenceSize * multipliers[i]);
+    }
+    this.policies = policies;
+    this.caches = new MiniCache[policies.length * this.sizes.length];
+    for (int i = 0; i < policies.length; i++) {
+      for (int j = 0; j < this.sizes.length; j++) {
+        long capacity = Math.max(1, (long) (this.sizes[j] * samplingRate));
+        this.caches[i * this.sizes.length + j] = new MiniCache(capacity, policies[i]);
+      }
+    }
+  }
+
+  /**
+   * Creates estimator from configuration
+   * @param cacheName cache name
+   * @param referenceSize reference (maximum) cache size
+   * @return estimator or null if estimation is disabled
+   */
+  public static MissRatioCurveEstimator fromConfig(String cacheName, long referenceSize) {
+    CacheConfig conf = CacheConfig.getInstance();
+    if (!conf.isMRCEnabled(cacheName)) {
+      return null;
+    }
+    String[] parts = conf.getMRCSizeMultipliers(cacheName).split(",");
+    double[] multipliers = new double[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      multipliers[i] = Double.parseDouble(parts[i].trim());
+    }
+    parts = conf.getMRCPolicies(cacheName).split(",");
+    Policy[] policies = new Policy[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      policies[i] = Policy.valueOf(parts[i].trim().toUpperCase());
+    }
+    return new MissRatioCurveEstimator(referenceSize, multipliers, policies,
+        conf.getMRCSamplingRate(cacheName));
+  }
+
+  /**
+   * Is key sampled
+   * @param hash key hash
+   * @return true or false
+   */
+  public boolean isSampled(long hash) {
+    long h = hash * 0x9e3779b97f4a7c15L;
+    return (h >>> (64 - SAMPLING_BITS)) < this.threshold;
+  }
+
+  /**
+   * Records get request
+   * @param hash key hash
+   */
+  public void get(long hash) {
+    if (!isSampled(hash)) {
+      return;
+    }
+    for (MiniCache c : this.caches) {
+      c.get(hash);
+    }
+  }
+
+  /**
+   * Records put request
+   * @param hash key hash
+   * @param size item size
+   */
+  public void put(long hash, int size) {
+    if (!isSampled(hash)) {
+      return;
+    }
+    for (MiniCache c : this.caches) {
+      c.put(hash, size);
+    }
+  }
+
+  /**
+   * Get sampling rate
+   * @return sampling rate
+   */
+  public double getSamplingRate() {
+    return this.samplingRate;
+  }
+
+  /**
+   * Get simulated (full scale) cache sizes
+   * @return sizes
+   */
+  public long[] getSizes() {
+    return this.sizes.clone();
+  }
+
+  /**
+   * Get simulated policies
+   * @return policies
+   */
+  public Policy[] getPolicies() {
+    return this.policies.clone();
+  }
+
+  /**
+   * Get estimated miss ratios for a policy, in order of sizes
+   * @param policy policy
+   * @return miss ratios (NaN - no sampled gets yet) or null if policy is not simulated
+   */
+  public double[] getMissRatios(Policy policy) {
+    for (int i = 0; i < this.policies.length; i++) {
+      if (this.policies[i] == policy) {
+        double[] ratios = new double[this.sizes.length];
+        for (int j = 0; j < ratios.length; j++) {
+          ratios[j] = this.caches[i * this.sizes.length + j].missRatio();
+        }
+        return ratios;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get total number of sampled gets
+   * @return number of sampled gets
+   */
+  public long getSampledGets() {
+    return this.caches.length > 0 ? this.caches[0].gets() : 0;
+  }
+
+  /**
+   * Get estimated miss ratio curve as a list of "POLICY:size:miss ratio" strings
+   * @return curve
+   */
+  public List<String> getCurve() {
+    List<String> list = new ArrayList<String>();
+    for (Policy p : this.policies) {
+      double[] ratios = getMissRatios(p);
+      for (int j = 0; j < ratios.length; j++) {
+        list.add(p + ":" + this.sizes[j] + ":" + String.format("%.4f", ratios[j]));
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Clears simulated caches and statistics
+   */
+  public void reset() {
+    for (MiniCache c : this.caches) {
+      c.reset();
+    }
+  }
+
+  /**
+   * Scaled down simulated cache
+   */
+  static class MiniCache {
+
+    private final long capacity;
+
+    private final LinkedHashMap<Long, Integer> map;
+
+    private long used;
+
+    private long gets;
+
+    private long hits;
+
+    MiniCache(long capacity, Policy policy) {
+      this.capacity = capacity;
+      this.map = new LinkedHashMap<Long, Integer>(16, 0.75f, policy == Policy.LRU);
+    }
+
+    synchronized void get(long hash) {
+      this.gets++;
+      if (this.map.get(hash) != null) {
+        this.hits++;
+      }
+    }
+
+    synchronized void put(long hash, int size) {
+      Integer old = this.map.put(hash, size);
+      this.used += old == null ? size : size - old;
+      Iterator<Map.Entry<Long, Integer>> it = this.map.entrySet().iterator();
+      while (this.used > this.capacity && it.hasNext()) {
+        Map.Entry<Long, Integer> e = it.next();
+        this.used -= e.getValue();
+        it.remove();
+      }
+    }
+
+    synchronized double missRatio() {
+      return this.gets == 0 ? Double.NaN : 1.0 - (double) this.hits / this.gets;
+    }
+
+    synchronized long gets() {
+      return this.gets;
+    }
+
+    synchronized void reset() {
+      this.map.clear();
+      this.used = 0;
+      this.gets = 0;
+      this.hits = 0;
+    }
+  }
+}
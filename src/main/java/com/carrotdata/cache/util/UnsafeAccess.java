@@ -754,6 +754,48 @@ public final class UnsafeAccess {
     return theUnsafe.getInt(ref, offset);
   }
 
+  /**
+   * Reads a byte at the given Object's offset (null object - offset is a memory address)
+   * @param ref object
+   * @param offset offset
+   * @return byte value at offset
+   */
+  public static byte toByte(Object ref, long offset) {
+    return theUnsafe.getByte(ref, offset);
+  }
+
+  /**
+   * Writes a byte at the given Object's offset (null object - offset is a memory address)
+   * @param ref object
+   * @param offset offset
+   * @param val value
+   */
+  public static void putByte(Object ref, long offset, byte val) {
+    theUnsafe.putByte(ref, offset, val);
+  }
+
+  /**
+   * Reads a int value at the given Object's offset in a native byte order (null object - offset is
+   * a memory address)
+   * @param ref object
+   * @param offset offset
+   * @return int value at offset
+   */
+  public static int toIntNative(Object ref, long offset) {
+    return theUnsafe.getInt(ref, offset);
+  }
+
+  /**
+   * Reads a long value at the given Object's offset in a native byte order (null object - offset
+   * is a memory address)
+   * @param ref object
+   * @param offset offset
+   * @return long value at offset
+   */
+  public static long toLongNative(Object ref, long offset) {
+    return theUnsafe.getLong(ref, offset);
+  }
+
   /**
    * Reads integer value at a given address
    * @param addr memory address
@@ -928,6 +970,18 @@ public final class UnsafeAccess {
     platform.copy_no_dst_check(src, dst, len);
   }
 
+  /**
+   * Copy between objects (null object - offset is a memory address)
+   * @param src source object
+   * @param srcOffset source offset
+   * @param dst destination object
+   * @param dstOffset destination offset
+   * @param len number of bytes to copy
+   */
+  public static void copy(Object src, long srcOffset, Object dst, long dstOffset, long len) {
+    unsafeCopy(src, srcOffset, dst, dstOffset, len);
+  }
+
   /**
    * Unsafe copy
    * @param src source
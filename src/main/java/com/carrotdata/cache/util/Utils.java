@@ -514,6 +514,22 @@ public class Utils {
     return 0;
   }
 
+  /**
+   * Writes unsigned variable integer to a byte array
+   * @param buf buffer
+   * @param off offset
+   * @param value value
+   * @return number of bytes written
+   */
+  public static int writeUVInt(byte[] buf, int off, int value) {
+    int size = sizeUVInt(value);
+    for (int i = 0; i < size - 1; i++) {
+      buf[off + i] = (byte) ((value >>> (7 * i)) | 0x80);
+    }
+    buf[off + size - 1] = (byte) (value >>> (7 * (size - 1)));
+    return size;
+  }
+
   /**
    * Murmur3hash implementation with native pointer.
    * @param ptr the address of memory
@@ -104,6 +104,8 @@ public abstract class TestCacheMultithreadedZipfBase {
 
   protected boolean hybridCacheInverseMode = false;
 
+  protected boolean lazyPromotion = false;
+
   @After
   public void tearDown() throws IOException {
     this.cache.printStats();
@@ -139,7 +141,8 @@ public abstract class TestCacheMultithreadedZipfBase {
         .withScavengerNumberOfThreads(scavNumberThreads)
         .withCacheHybridInverseMode(hybridCacheInverseMode)
         .withPromotionController(pcController.getName())
-        .withPromotionQueueStartSizeRatio(pqStartRatio);
+        .withPromotionQueueStartSizeRatio(pqStartRatio)
+        .withEvictionLazyPromotion(lazyPromotion);
     builder = withAddedConfigurations(builder);
     Cache c = null;
     if (memory) {
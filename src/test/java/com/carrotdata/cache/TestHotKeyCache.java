@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.carrotdata.cache.util.HotKeyDetector;
+import com.carrotdata.cache.util.Utils;
+
+public class TestHotKeyCache {
+
+  private static byte[] key(String prefix, int i) {
+    return (prefix + i).getBytes();
+  }
+
+  private static long hash(byte[] key) {
+    return Utils.hash64(key, 0, key.length);
+  }
+
+  @Test
+  public void testDetector() {
+    HotKeyDetector detector = new HotKeyDetector(10, 40);
+    Random r = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      // Half of requests go to 10 hot keys
+      byte[] key = r.nextBoolean() ? key("hot-", r.nextInt(10)) : key("cold-", r.nextInt(100000));
+      detector.offer(hash(key), key, 0, key.length);
+    }
+    for (int i = 0; i < 10; i++) {
+      assertTrue(detector.isHot(hash(key("hot-", i))));
+    }
+    int cold = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (detector.isHot(hash(key("cold-", i)))) {
+        cold++;
+      }
+    }
+    assertTrue(cold <= 10);
+    List<String> hotKeys = detector.getHotKeys();
+    assertTrue(hotKeys.size() >= 10);
+    assertTrue(hotKeys.get(0).startsWith("hot-"));
+  }
+
+  @Test
+  public void testVersionAndExpire() {
+    HotKeyCache l0 = new HotKeyCache(16, 1024, 1, 64);
+    byte[] key = "key".getBytes();
+    byte[] kv = new byte[] { 3, 1, 'k', 'e', 'y', 'v' };
+    long h = hash(key);
+    long version = l0.getVersion(h);
+    l0.invalidate(h);
+    // Concurrent invalidation - not inserted
+    assertFalse(l0.put(h, version, kv, 0, kv.length, 0));
+    version = l0.getVersion(h);
+    assertTrue(l0.put(h, version, kv, 0, kv.length, 0));
+    byte[] buffer = new byte[16];
+    assertEquals(kv.length, l0.get(h, key, 0, key.length, buffer, 0));
+    byte[] other = "kez".getBytes();
+    assertEquals(-1, l0.get(h, other, 0, other.length, buffer, 0));
+    // Expired
+    version = l0.getVersion(h);
+    assertTrue(l0.put(h, version, kv, 0, kv.length, System.currentTimeMillis() - 1));
+    assertEquals(-1, l0.get(h, key, 0, key.length, buffer, 0));
+    assertEquals(0, l0.size());
+  }
+
+  @Test
+  public void testRemoveNotHot() {
+    HotKeyCache l0 = new HotKeyCache(4, 1024, 1, 16);
+    byte[] key = key("old-", 0);
+    byte[] kv = new byte[] { 5, 1, 'o', 'l', 'd', '-', '0', 'v' };
+    long h = hash(key);
+    for (int i = 0; i < 100; i++) {
+      l0.record(h, key, 0, key.length);
+    }
+    assertTrue(l0.getDetector().isHot(h));
+    assertTrue(l0.put(h, l0.getVersion(h), kv, 0, kv.length, 0));
+    byte[] buffer = new byte[16];
+    assertEquals(kv.length, l0.get(h, key, 0, key.length, buffer, 0));
+    // Hot set changes, counts of the old key are aged out
+    for (int i = 0; i < 10000; i++) {
+      byte[] k = key("new-", i % 4);
+      l0.record(hash(k), k, 0, k.length);
+    }
+    assertFalse(l0.getDetector().isHot(h));
+    assertEquals(1, l0.size());
+    assertEquals(-1, l0.get(h, key, 0, key.length, buffer, 0));
+    assertEquals(0, l0.size());
+  }
+
+  @Test
+  public void testCacheWithL0() throws IOException {
+    Builder builder = new Builder("hotkeys-test");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withHotKeysCacheMaxItems(16).withHotKeysSampleInterval(4);
+    Cache cache = builder.buildMemoryCache();
+    try {
+      HotKeyCache l0 = cache.getHotKeyCache();
+      byte[] value = new byte[100];
+      for (int i = 0; i < 1000; i++) {
+        assertTrue(cache.put(key("key-", i), value, 0));
+      }
+      for (int k = 0; k < 200; k++) {
+        for (int i = 0; i < 8; i++) {
+          assertArrayEquals(value, cache.get(key("key-", i)));
+        }
+      }
+      assertTrue(l0.getHits() > 0);
+      assertTrue(l0.size() > 0);
+      assertEquals(1600, cache.getTotalGets());
+      assertEquals(1600, cache.getTotalHits());
+
+      byte[] hot = key("key-", 0);
+      assertTrue(l0.getDetector().isHot(hash(hot)));
+      byte[] newValue = new byte[50];
+      assertTrue(cache.put(hot, newValue, 0));
+      for (int k = 0; k < 100; k++) {
+        assertArrayEquals(newValue, cache.get(hot));
+      }
+      assertTrue(cache.delete(hot));
+      for (int k = 0; k < 100; k++) {
+        assertNull(cache.get(hot));
+      }
+      assertTrue(l0.getInvalidations() > 0);
+    } finally {
+      cache.dispose();
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package com.carrotdata.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -25,6 +26,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
@@ -95,6 +99,92 @@ public class TestLoadingObjectCache {
     runTest(16);
   }
 
+  @Test
+  public void testLoaderCalledOnce() throws IOException {
+    this.failed = false;
+    int numIterations = 20;
+    Thread[] workers = new Thread[8];
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch[] arrived = new CountDownLatch[numIterations];
+    for (int i = 0; i < numIterations; i++) {
+      arrived[i] = new CountDownLatch(workers.length);
+    }
+    Runnable r = () -> {
+      for (int i = 0; i < numIterations; i++) {
+        final int ii = i;
+        Callable<Integer> call = () -> {
+          calls.incrementAndGet();
+          // Loader completes only after all threads have requested the key
+          arrived[ii].await(10, TimeUnit.SECONDS);
+          Thread.sleep(20);
+          return ii;
+        };
+        try {
+          arrived[i].countDown();
+          Integer v = (Integer) cache.get(Integer.valueOf(i), call);
+          assertEquals(i, v.intValue());
+        } catch (Throwable e) {
+          e.printStackTrace();
+          failed = true;
+        }
+      }
+    };
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(r);
+      workers[i].start();
+    }
+    for (int i = 0; i < workers.length; i++) {
+      try {
+        workers[i].join();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+    }
+    if (failed) {
+      fail();
+    }
+    // Waiters share loader's result. A thread which missed the cache just before the loader
+    // stored the value and released waiters can still load the key again
+    assertTrue(calls.get() >= numIterations);
+    assertTrue(calls.get() <= 2 * numIterations);
+  }
+
+  @Test
+  public void testLoaderErrorReleasesWaiters() throws Exception {
+    Integer key = Integer.valueOf(1000);
+    CountDownLatch started = new CountDownLatch(1);
+    Callable<Integer> call = () -> {
+      started.countDown();
+      Thread.sleep(200);
+      throw new AssertionError("loader error");
+    };
+    Thread leader = new Thread(() -> {
+      try {
+        cache.get(key, call);
+      } catch (Throwable e) {
+        // expected
+      }
+    });
+    leader.start();
+    started.await();
+    AtomicInteger errors = new AtomicInteger();
+    Thread waiter = new Thread(() -> {
+      try {
+        cache.get(key, () -> 1);
+      } catch (IOException e) {
+        errors.incrementAndGet();
+      } catch (Throwable e) {
+        e.printStackTrace();
+      }
+    });
+    waiter.start();
+    leader.join();
+    waiter.join(10000);
+    // Waiter must not block forever
+    assertEquals(false, waiter.isAlive());
+    assertEquals(1, errors.get());
+  }
+
   private void runTest(int numThreads) throws IOException {
     this.failed = false;
     this.numThreads = numThreads;
@@ -30,6 +30,7 @@ import com.carrotdata.cache.controllers.LRCRecyclingSelector;
 import com.carrotdata.cache.controllers.MRCRecyclingSelector;
 import com.carrotdata.cache.controllers.MinAliveRecyclingSelector;
 import com.carrotdata.cache.eviction.LRUEvictionPolicy;
+import com.carrotdata.cache.eviction.S3FIFOEvictionPolicy;
 import com.carrotdata.cache.eviction.SLRUEvictionPolicy;
 
 public class TestMemoryCacheMultithreadedZipf extends TestCacheMultithreadedZipfBase {
@@ -230,4 +231,36 @@ public class TestMemoryCacheMultithreadedZipf extends TestCacheMultithreadedZipf
     super.testContinuosLoadMemoryRun();
   }
 
+  @Test
+  public void testS3FIFOEvictionAndLRCSelectorBytesAPI() throws IOException {
+    LOG.info("Bytes API: eviction=S3FIFO, selector=LRC");
+    this.evictionDisabled = false;
+    this.scavengerInterval = 2; // scavenger interval in sec
+    this.epClz = S3FIFOEvictionPolicy.class;
+    this.rsClz = LRCRecyclingSelector.class;
+    super.testContinuosLoadBytesRun();
+  }
+
+  @Test
+  public void testS3FIFOEvictionAndLRCSelectorMemoryAPI() throws IOException {
+    LOG.info("Memory API: eviction=S3FIFO, selector=LRC");
+
+    this.evictionDisabled = false;
+    this.scavengerInterval = 2; // scavenger interval in sec
+    this.epClz = S3FIFOEvictionPolicy.class;
+    this.rsClz = LRCRecyclingSelector.class;
+    super.testContinuosLoadMemoryRun();
+  }
+
+  @Test
+  public void testSLRUEvictionLazyPromotionAndLRCSelectorBytesAPI() throws IOException {
+    LOG.info("Bytes API: eviction=SLRU (lazy promotion), selector=LRC");
+    this.evictionDisabled = false;
+    this.scavengerInterval = 2; // scavenger interval in sec
+    this.epClz = SLRUEvictionPolicy.class;
+    this.rsClz = LRCRecyclingSelector.class;
+    this.lazyPromotion = true;
+    super.testContinuosLoadBytesRun();
+  }
+
 }
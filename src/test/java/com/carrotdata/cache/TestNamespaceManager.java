@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.carrotdata.cache.NamespaceManager.Namespace;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestNamespaceManager {
+
+  @Test
+  public void testPrefixMatching() throws IOException {
+    String cacheName = "ns-matching-test";
+    CacheConfig conf = CacheConfig.getInstance();
+    assertNull(NamespaceManager.fromConfig(cacheName));
+    conf.setNamespaces(cacheName, "users|u/|1m|2m,vip|u/vip/,sessions|s/|0|64k,acme|acme:|0|1m");
+    NamespaceManager nsm = NamespaceManager.fromConfig(cacheName);
+    assertNotNull(nsm);
+    assertEquals(5, nsm.getNamespaces().size());
+    Namespace users = nsm.getNamespace("users");
+    assertEquals(1 << 20, users.getSoftQuota());
+    assertEquals(2 << 20, users.getHardQuota());
+    assertEquals(64 << 10, nsm.getNamespace("sessions").getHardQuota());
+
+    byte[] key = "u/vip/1".getBytes();
+    assertEquals("vip", nsm.getNamespace(key, 0, key.length).getName());
+    key = "u/1".getBytes();
+    assertEquals("users", nsm.getNamespace(key, 0, key.length).getName());
+    key = "x/1".getBytes();
+    assertEquals(NamespaceManager.DEFAULT_NAMESPACE, nsm.getNamespace(key, 0, key.length).getName());
+    key = "acme:order:42".getBytes();
+    assertEquals("acme", nsm.getNamespace(key, 0, key.length).getName());
+    assertEquals(1 << 20, nsm.getNamespace("acme").getHardQuota());
+    key = "u".getBytes();
+    assertEquals(NamespaceManager.DEFAULT_NAMESPACE, nsm.getNamespace(key, 0, key.length).getName());
+
+    key = "s/123".getBytes();
+    long ptr = UnsafeAccess.allocAndCopy(key, 0, key.length);
+    try {
+      assertEquals("sessions", nsm.getNamespace(ptr, key.length).getName());
+    } finally {
+      UnsafeAccess.free(ptr);
+    }
+
+    users.recordWrite(1000);
+    users.recordAccess(true);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    nsm.save(baos);
+    NamespaceManager copy = NamespaceManager.fromConfig(cacheName);
+    copy.load(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(1000, copy.getNamespace("users").getUsedBytes());
+    assertEquals(1, copy.getNamespace("users").getHits());
+    conf.setNamespaces(cacheName, "");
+  }
+
+  @Test
+  public void testQuotas() throws IOException {
+    Builder builder = new Builder("ns-quota-test");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withNamespaces("hard|h/|0|100k,soft|s/|1m,free|f/");
+    Cache cache = builder.buildMemoryCache();
+    try {
+      NamespaceManager nsm = cache.getNamespaceManager();
+      byte[] value = new byte[1000];
+      int stored = 0;
+      for (int i = 0; i < 200; i++) {
+        byte[] key = ("h/" + i).getBytes();
+        if (cache.put(key, value, 0)) {
+          stored++;
+        }
+      }
+      Namespace hard = nsm.getNamespace("hard");
+      assertTrue(stored < 200 && stored > 90);
+      assertTrue(hard.getUsedBytes() <= 100 << 10);
+      assertEquals(stored, hard.getItems());
+      assertEquals(200 - stored, hard.getRejectedWrites());
+
+      byte[] buffer = new byte[2000];
+      byte[] key = "h/0".getBytes();
+      assertTrue(cache.get(key, 0, key.length, buffer, 0) > 0);
+      key = "h/199".getBytes();
+      assertTrue(cache.get(key, 0, key.length, buffer, 0) < 0);
+      assertEquals(1, hard.getHits());
+      assertEquals(1, hard.getMisses());
+
+      // Soft quota: write 3 x cache size, half to each namespace
+      for (int i = 0; i < 48000; i++) {
+        key = ((i % 2 == 0 ? "s/" : "f/") + i).getBytes();
+        cache.put(key, value, 0);
+      }
+      Namespace soft = nsm.getNamespace("soft");
+      Namespace free = nsm.getNamespace("free");
+      assertTrue(soft.getEvictedItems() > 0);
+      assertTrue(soft.getUsedBytes() < free.getUsedBytes());
+    } finally {
+      cache.dispose();
+    }
+  }
+
+  @Test
+  public void testExpiredSegmentReleasesStorage() throws IOException, InterruptedException {
+    Builder builder = new Builder("ns-expire-test");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withNamespaces("ttl|t/");
+    Cache cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    try {
+      Namespace ttl = cache.getNamespaceManager().getNamespace("ttl");
+      byte[] value = new byte[1000];
+      long expire = System.currentTimeMillis() + 2000;
+      int n = 5000;
+      for (int i = 0; i < n; i++) {
+        assertTrue(cache.put(("t/" + i).getBytes(), value, expire));
+      }
+      long used = ttl.getUsedBytes();
+      assertEquals(n, ttl.getItems());
+      Thread.sleep(2500);
+      // All sealed segments are expired - they are dumped w/o index lookups
+      Scavenger scavenger = new Scavenger(cache);
+      scavenger.run();
+      // Only the active segment is not scavenged
+      assertTrue(ttl.getUsedBytes() < used / 4);
+      assertTrue(ttl.getItems() < n / 4);
+      assertTrue(ttl.getItems() >= 0);
+    } finally {
+      cache.dispose();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.carrotdata.cache.ParallelTasks.IOTask;
+
+public class TestParallelTasks {
+
+  private static List<IOTask> tasks(int n, int nested) {
+    List<IOTask> tasks = new ArrayList<IOTask>();
+    for (int i = 0; i < n; i++) {
+      final int index = i;
+      tasks.add(() -> {
+        if (nested > 0) {
+          // Composite cache of composite caches
+          return ParallelTasks.runAll(tasks(n, nested - 1), "nested").size() + index;
+        }
+        return index;
+      });
+    }
+    return tasks;
+  }
+
+  @Test
+  public void testRunAll() throws IOException {
+    int n = 4 * Runtime.getRuntime().availableProcessors();
+    List<Object> result = ParallelTasks.runAll(tasks(n, 0), "test");
+    assertEquals(n, result.size());
+    for (int i = 0; i < n; i++) {
+      assertEquals(i, ((Integer) result.get(i)).intValue());
+    }
+    // Nested tasks do not wait for the pool threads
+    result = ParallelTasks.runAll(tasks(n, 2), "test");
+    for (int i = 0; i < n; i++) {
+      assertEquals(n + i, ((Integer) result.get(i)).intValue());
+    }
+  }
+
+  @Test
+  public void testError() {
+    List<IOTask> tasks = tasks(8, 0);
+    final int[] completed = new int[1];
+    tasks.add(0, () -> {
+      throw new IOException("task failed");
+    });
+    tasks.add(() -> {
+      synchronized (completed) {
+        completed[0]++;
+      }
+      throw new IllegalStateException();
+    });
+    try {
+      ParallelTasks.runAll(tasks, "test");
+      fail();
+    } catch (IOException e) {
+      assertEquals("task failed", e.getMessage());
+    }
+    // All tasks are run
+    assertEquals(1, completed[0]);
+  }
+}
@@ -18,6 +18,7 @@
 package com.carrotdata.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -166,6 +167,13 @@ public abstract class TestScavengerBase extends IOTestBase {
     // After Scavenger run we still have active segment, which is not sealed yet
     assertTrue(actualUsed <= allocated);
     assertEquals(0, activeSize);
+
+    ScavengerTelemetry telemetry = ScavengerTelemetry.getTelemetryForCache(cache.getName());
+    assertTrue(telemetry.getTotalSegments() > 0);
+    assertEquals(0, telemetry.getTotalBytesRewritten());
+    assertNotNull(telemetry.getLastRun());
+    assertEquals(telemetry.getTotalSegments(), telemetry.getLastRun().getSegments());
+    assertTrue(telemetry.getRecentSegments().size() > 0);
   }
 
   @Test
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+public class TestShardedCache {
+
+  ShardedCache cache;
+
+  String rootDir;
+
+  @Before
+  public void setUp() throws IOException {
+    Path path = Files.createTempDirectory(null);
+    File dir = path.toFile();
+    dir.deleteOnExit();
+    rootDir = dir.getAbsolutePath();
+    Builder builder = new Builder("sharded-test");
+    builder.withCacheMaximumSize(64 << 20).withCacheDataSegmentSize(1 << 20)
+        .withCacheRootDirs(new String[] { rootDir }).withCacheShards(4);
+    cache = builder.buildShardedMemoryCache();
+    cache.disableScavengers();
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  private static byte[] value(int i) {
+    return ("value-" + i).getBytes();
+  }
+
+  @Test
+  public void testShardsConfiguration() {
+    CacheConfig conf = cache.getCacheConfig();
+    assertEquals(4, cache.getNumberOfShards());
+    assertEquals(64 << 20, cache.getMaximumCacheSize());
+    for (int i = 0; i < 4; i++) {
+      Cache shard = cache.getShard(i);
+      assertEquals(ShardedCache.shardName("sharded-test", i), shard.getName());
+      assertEquals(16 << 20, shard.getMaximumCacheSize());
+      assertEquals(1 << 20, conf.getCacheSegmentSize(shard.getName()));
+      String[] dirs = conf.getCacheRootDirs(shard.getName());
+      assertEquals(rootDir + File.separator + "sharded-test", dirs[0]);
+    }
+  }
+
+  @Test
+  public void testPutGetDelete() throws IOException {
+    int n = 10000;
+    for (int i = 0; i < n; i++) {
+      assertTrue(cache.put(key(i), value(i), 0));
+    }
+    assertEquals(n, cache.getTotalWrites());
+    long sum = 0;
+    for (int i = 0; i < 4; i++) {
+      long writes = cache.getShard(i).getTotalWrites();
+      // Keys are distributed between all shards
+      assertTrue(writes > n / 8);
+      sum += writes;
+    }
+    assertEquals(n, sum);
+    for (int i = 0; i < n; i++) {
+      assertArrayEquals(value(i), cache.get(key(i)));
+    }
+    assertEquals(n, cache.getTotalHits());
+    assertEquals(1.0, cache.getHitRate(), 0.0);
+    for (int i = 0; i < n; i++) {
+      byte[] k = key(i);
+      assertTrue(cache.getShardFor(k, 0, k.length).existsExact(k, 0, k.length));
+    }
+    for (int i = 0; i < n; i += 2) {
+      assertTrue(cache.delete(key(i)));
+    }
+    for (int i = 0; i < n; i++) {
+      byte[] v = cache.get(key(i));
+      if (i % 2 == 0) {
+        assertNull(v);
+      } else {
+        assertArrayEquals(value(i), v);
+      }
+    }
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    int n = 10000;
+    for (int i = 0; i < n; i++) {
+      assertTrue(cache.put(key(i), value(i), 0));
+    }
+    cache.save();
+    ShardedCache loaded = ShardedCache.loadCache("sharded-test");
+    assertNotNull(loaded);
+    try {
+      assertEquals(4, loaded.getNumberOfShards());
+      assertEquals(cache.size(), loaded.size());
+      assertEquals(cache.getTotalWrites(), loaded.getTotalWrites());
+      for (int i = 0; i < n; i++) {
+        assertArrayEquals(value(i), loaded.get(key(i)));
+      }
+    } finally {
+      loaded.dispose();
+    }
+    // Disposed shards delete their snapshots
+    assertNull(ShardedCache.loadCache("sharded-test"));
+  }
+
+  @Test
+  public void testFailedLoadDisposesShards() throws IOException {
+    int n = 10000;
+    for (int i = 0; i < n; i++) {
+      assertTrue(cache.put(key(i), value(i), 0));
+    }
+    cache.save();
+    CacheConfig conf = CacheConfig.getInstance();
+    // Corrupt snapshot of the last shard
+    Path corrupted = Paths.get(conf.getSnapshotDir(ShardedCache.shardName("sharded-test", 3)),
+      CacheConfig.CACHE_SNAPSHOT_NAME);
+    Files.write(corrupted, new byte[0]);
+    try {
+      ShardedCache.loadCache("sharded-test");
+      fail("IOException expected");
+    } catch (IOException e) {
+      // expected
+    }
+    // Loaded shards are disposed and delete their snapshots
+    for (int i = 0; i < 3; i++) {
+      assertNull(Cache.loadCache(ShardedCache.shardName("sharded-test", i)));
+    }
+  }
+}
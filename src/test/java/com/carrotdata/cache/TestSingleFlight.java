@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.carrotdata.cache.util.Utils;
+
+public class TestSingleFlight {
+
+  @Test
+  public void testFollowersShareResult() throws InterruptedException {
+    SingleFlight sf = new SingleFlight();
+    byte[] key = "key".getBytes();
+    long hash = Utils.hash64(key, 0, key.length);
+    SingleFlight.Flight leader = sf.acquire(hash, key, 0, key.length);
+    assertTrue(leader.isLeader());
+    int n = 4;
+    byte[][] buffers = new byte[n][16];
+    AtomicLong[] results = new AtomicLong[n];
+    Thread[] followers = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      final int ii = i;
+      results[i] = new AtomicLong();
+      SingleFlight.Flight f = sf.acquire(hash, key, 0, key.length);
+      assertFalse(f.isLeader());
+      followers[i] = new Thread(() -> results[ii].set(sf.await(f, buffers[ii], 1)));
+      followers[i].start();
+    }
+    byte[] kv = new byte[] { 0, 3, 1, 'k', 'e', 'y', 'v' };
+    sf.complete(leader, kv.length - 1, kv, 1);
+    for (int i = 0; i < n; i++) {
+      followers[i].join();
+      assertEquals(kv.length - 1, results[i].get());
+      assertArrayEquals(kv, Arrays.copyOf(buffers[i], kv.length));
+    }
+    assertEquals(n, sf.getTotalCoalesced());
+    assertEquals(0, sf.size());
+    // New read after completion starts a new flight
+    assertTrue(sf.acquire(hash, key, 0, key.length).isLeader());
+  }
+
+  @Test
+  public void testNotFoundAndRetry() {
+    SingleFlight sf = new SingleFlight();
+    byte[] key = "key".getBytes();
+    long hash = Utils.hash64(key, 0, key.length);
+    SingleFlight.Flight leader = sf.acquire(hash, key, 0, key.length);
+    SingleFlight.Flight follower = sf.acquire(hash, key, 0, key.length);
+    sf.complete(leader, -1, new byte[0], 0);
+    assertEquals(-1, sf.await(follower, new byte[16], 0));
+
+    // Leader's buffer was too small - follower must read itself
+    leader = sf.acquire(hash, key, 0, key.length);
+    follower = sf.acquire(hash, key, 0, key.length);
+    sf.complete(leader, 100, ByteBuffer.allocate(10));
+    assertEquals(SingleFlight.RETRY, sf.await(follower, ByteBuffer.allocate(200)));
+
+    // Hash collision with a different key is not coalesced
+    leader = sf.acquire(hash, key, 0, key.length);
+    byte[] other = "other".getBytes();
+    assertNull(sf.acquire(hash, other, 0, other.length));
+  }
+}
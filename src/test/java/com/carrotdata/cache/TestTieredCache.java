@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+public class TestTieredCache {
+
+  TieredCache cache;
+
+  private static String tempDir() throws IOException {
+    Path path = Files.createTempDirectory(null);
+    File dir = path.toFile();
+    dir.deleteOnExit();
+    return dir.getAbsolutePath();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    Builder ram = new Builder("tiered-ram");
+    ram.withCacheMaximumSize(4 << 20).withCacheDataSegmentSize(1 << 20)
+        .withCacheRootDirs(new String[] { tempDir() }).withVictimEvictAll(true)
+        .withScavengerStartMemoryRatio(0.9).withScavengerStopMemoryRatio(0.8);
+    Builder cram = new Builder("tiered-cram");
+    cram.withCacheMaximumSize(8 << 20).withCacheDataSegmentSize(1 << 20)
+        .withCacheRootDirs(new String[] { tempDir() }).withCacheCompressionEnabled(true)
+        .withVictimEvictAll(true).withVictimCachePromoteOnHit(false)
+        .withScavengerStartMemoryRatio(0.9).withScavengerStopMemoryRatio(0.8)
+        .withScavengerRunInterval(1);
+    Builder ssd = new Builder("tiered-ssd");
+    ssd.withCacheMaximumSize(64 << 20).withCacheDataSegmentSize(4 << 20)
+        .withCacheRootDirs(new String[] { tempDir() }).withVictimCachePromoteOnHit(false);
+    cache = ram.withMemoryTier(cram).withDiskTier(ssd).buildTieredCache();
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  private static byte[] value(int i) {
+    // Half random, half repeated - compresses about 2x
+    byte[] v = new byte[200];
+    new Random(i).nextBytes(v);
+    byte[] s = ("value-" + i).getBytes();
+    for (int off = v.length / 2; off < v.length; off += s.length) {
+      System.arraycopy(s, 0, v, off, Math.min(s.length, v.length - off));
+    }
+    return v;
+  }
+
+  private void flushDemotions() {
+    for (int i = 0; i < cache.getNumberOfTiers() - 1; i++) {
+      cache.getTier(i).getVictimEvictionPipeline().flush();
+    }
+  }
+
+  @Test
+  public void testChain() {
+    CacheConfig conf = cache.getCacheConfig();
+    assertEquals(3, cache.getNumberOfTiers());
+    assertEquals("tiered-ram", cache.getName());
+    assertEquals("tiered-cram", conf.getVictimCacheName("tiered-ram"));
+    assertEquals("tiered-ssd", conf.getVictimCacheName("tiered-cram"));
+    for (int i = 0; i < 2; i++) {
+      Cache tier = cache.getTier(i);
+      assertTrue(tier.getVictimCache() == cache.getTier(i + 1));
+      assertNotNull(tier.getVictimEvictionPipeline());
+    }
+    assertNull(cache.getTier(2).getVictimCache());
+    assertEquals(Cache.Type.DISK, cache.getTier(2).getCacheType());
+  }
+
+  @Test
+  public void testDemotionAndTierStats() throws IOException, InterruptedException {
+    int n = 100000;
+    for (int i = 0; i < n; i++) {
+      cache.put(key(i), value(i), 0);
+    }
+    flushDemotions();
+    assertTrue(cache.getTier(0).getVictimEvictionPipeline().getTotalItems() > 0);
+    // Compressed tier is filled by its parent's scavenger, its own scavenger is started by timer
+    long start = System.currentTimeMillis();
+    while (cache.getTier(2).size() == 0 && System.currentTimeMillis() - start < 10000) {
+      Thread.sleep(100);
+      flushDemotions();
+    }
+    assertTrue(cache.getTier(2).size() > 0);
+
+    int found = 0;
+    for (int i = 0; i < n; i++) {
+      byte[] v = cache.get(key(i));
+      if (v != null) {
+        assertArrayEquals(value(i), v);
+        found++;
+      }
+    }
+    assertTrue(found > n / 2);
+    assertEquals(n, cache.getTotalGets());
+    assertEquals(found, cache.getTotalHits());
+    long served = 0;
+    for (int i = 0; i < cache.getNumberOfTiers(); i++) {
+      TieredCache.TierStats stats = cache.getTierStats(i);
+      assertEquals(cache.getTier(i).getTotalHits(), stats.getCount());
+      served += stats.getCount();
+    }
+    assertEquals(found, served);
+    assertEquals(n - found, cache.getMissStats().getCount());
+    // Every tier has served some requests
+    for (int i = 0; i < cache.getNumberOfTiers(); i++) {
+      TieredCache.TierStats stats = cache.getTierStats(i);
+      assertTrue(stats.getCount() > 0);
+      assertTrue(stats.getAverageLatency() > 0);
+      assertTrue(stats.getLatencyPercentile(0.99) >= stats.getLatencyPercentile(0.5));
+      assertTrue(stats.getLatencyPercentile(1.0) <= stats.getMaxLatency());
+    }
+    cache.printStats();
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    cache.disableScavengers();
+    int n = 1000;
+    // Put items directly into tiers
+    for (int t = 0; t < cache.getNumberOfTiers(); t++) {
+      for (int i = t * n; i < (t + 1) * n; i++) {
+        assertTrue(cache.getTier(t).put(key(i), value(i), 0));
+      }
+    }
+    cache.save();
+    TieredCache loaded = TieredCache.loadCache("tiered-ram");
+    assertNotNull(loaded);
+    try {
+      assertEquals(3, loaded.getNumberOfTiers());
+      for (int t = 0; t < loaded.getNumberOfTiers(); t++) {
+        Cache tier = loaded.getTier(t);
+        assertEquals(cache.getTier(t).getName(), tier.getName());
+        assertEquals(cache.getTier(t).size(), tier.size());
+        assertTrue(tier.getVictimCache() == (t < 2 ? loaded.getTier(t + 1) : null));
+      }
+      loaded.disableScavengers();
+      for (int i = 0; i < 3 * n; i++) {
+        assertArrayEquals(value(i), loaded.get(key(i)));
+      }
+      for (int t = 0; t < loaded.getNumberOfTiers(); t++) {
+        assertEquals(n, loaded.getTierStats(t).getCount());
+      }
+    } finally {
+      loaded.dispose();
+    }
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.compression.CodecFactory;
+import com.carrotdata.cache.compression.CompressionCodec;
+import com.carrotdata.cache.io.DedupValueStore;
+import com.carrotdata.cache.io.IOEngine;
+import com.carrotdata.cache.io.Segment;
+import com.carrotdata.cache.io.SegmentScanner;
+
+public class TestValueDedup {
+  private static final Logger LOG = LoggerFactory.getLogger(TestValueDedup.class);
+
+  Cache cache;
+
+  DedupValueStore store;
+
+  byte[][] values;
+
+  int numKeys = 100000;
+
+  @Before
+  public void setUp() throws IOException {
+    Scavenger.clear();
+    Builder builder = new Builder("dedup-test");
+    builder.withCacheMaximumSize(64 << 20).withCacheDataSegmentSize(1 << 20)
+        .withScavengerStartMemoryRatio(0.0).withScavengerStopMemoryRatio(0.0)
+        .withValueDedupEnabled(true).withValueDedupMinSize(256);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    store = cache.getEngine().getDedupValueStore();
+    Random r = new Random();
+    // A few distinct values shared by all keys and one small value, which is stored inline
+    values = new byte[5][];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = new byte[i == 0 ? 100 : 1000 * i];
+      r.nextBytes(values[i]);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  private byte[] value(int i) {
+    return values[i % values.length];
+  }
+
+  private void load(long expire) throws IOException {
+    for (int i = 0; i < numKeys; i++) {
+      byte[] key = key(i);
+      byte[] value = value(i);
+      assertTrue(cache.put(key, 0, key.length, value, 0, value.length, expire));
+    }
+  }
+
+  private void verify(int from, int to) throws IOException {
+    byte[] buffer = new byte[5000];
+    ByteBuffer bb = ByteBuffer.allocateDirect(5000);
+    for (int i = from; i < to; i++) {
+      byte[] key = key(i);
+      byte[] value = value(i);
+      long size = cache.get(key, 0, key.length, false, buffer, 0);
+      assertEquals(value.length, (int) size);
+      assertEquals(0, compare(value, buffer));
+
+      bb.clear();
+      size = cache.get(key, 0, key.length, false, bb);
+      assertEquals(value.length, (int) size);
+      byte[] b = new byte[value.length];
+      bb.get(b);
+      assertEquals(0, compare(value, b));
+
+      size = cache.getRange(key, 0, key.length, 50, 20, false, buffer, 0);
+      assertEquals(20, (int) size);
+      for (int k = 0; k < 20; k++) {
+        assertEquals(value[50 + k], buffer[k]);
+      }
+    }
+  }
+
+  private static int compare(byte[] value, byte[] buffer) {
+    for (int i = 0; i < value.length; i++) {
+      if (value[i] != buffer[i]) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  @Test
+  public void testPutGet() throws IOException {
+    load(0);
+    // Values of a size >= 256 are stored once
+    assertEquals(values.length - 1, store.getNumberOfEntries());
+    assertEquals(numKeys - numKeys / values.length, store.getNumberOfReferences());
+    LOG.info("dedup ratio={} stored={} logical={} cache used={}", store.getDedupRatio(),
+      store.getStoredSize(), store.getLogicalSize(), cache.getStorageUsedActual());
+    assertTrue(store.getDedupRatio() > 1000);
+    // Logical size is not counted in storage usage
+    assertTrue(cache.getStorageUsedActual() < store.getLogicalSize() / 10);
+    verify(0, numKeys);
+    // Small buffer - retry with a required size
+    byte[] key = key(4);
+    byte[] buffer = new byte[100];
+    long size = cache.getKeyValue(key, 0, key.length, false, buffer, 0);
+    assertTrue(size > buffer.length);
+    buffer = new byte[(int) size];
+    assertEquals(size, cache.getKeyValue(key, 0, key.length, false, buffer, 0));
+  }
+
+  /**
+   * Every reference record in a segment holds one reference in the value store. Items of
+   * a current write batch are not in any segment yet, but keep their references too.
+   */
+  private void verifyReferenceAccounting() throws IOException {
+    IOEngine engine = cache.getEngine();
+    long total = 0;
+    for (int i = 0; i < engine.getNumberOfSegments(); i++) {
+      Segment s = engine.getSegmentById(i);
+      if (s == null) {
+        continue;
+      }
+      total += s.getTotalReferences();
+      if (!s.isSealed()) {
+        continue;
+      }
+      SegmentScanner scanner = engine.getScanner(s);
+      int refs = 0;
+      while (scanner.hasNext()) {
+        if (DedupValueStore.isReference(scanner.valueAddress(), scanner.valueLength())) {
+          refs++;
+        }
+        scanner.next();
+      }
+      scanner.close();
+      assertEquals(refs, s.getTotalReferences());
+    }
+    assertTrue(total <= store.getNumberOfReferences());
+  }
+
+  @Test
+  public void testScavengerReleasesReferences() throws IOException {
+    load(0);
+    long refs = store.getNumberOfReferences();
+    verifyReferenceAccounting();
+    // Delete first half of the keys
+    for (int i = 0; i < numKeys / 2; i++) {
+      byte[] key = key(i);
+      assertTrue(cache.delete(key, 0, key.length));
+    }
+    Scavenger scavenger = new Scavenger(cache);
+    scavenger.run();
+    LOG.info("references before={} after={}", refs, store.getNumberOfReferences());
+    assertTrue(store.getNumberOfReferences() < refs);
+    // References of freed items are released, live ones are moved to new segments
+    verifyReferenceAccounting();
+    byte[] buffer = new byte[5000];
+    int found = 0;
+    for (int i = numKeys / 2; i < numKeys; i++) {
+      byte[] key = key(i);
+      long size = cache.get(key, 0, key.length, false, buffer, 0);
+      if (size < 0) {
+        // evicted
+        continue;
+      }
+      found++;
+      byte[] value = value(i);
+      assertEquals(value.length, (int) size);
+      assertEquals(0, compare(value, buffer));
+    }
+    LOG.info("found={}", found);
+  }
+
+  @Test
+  public void testExpiredSegmentsReleaseReferences() throws IOException {
+    load(System.currentTimeMillis() + 1000);
+    long refs = store.getNumberOfReferences();
+    verifyReferenceAccounting();
+    try {
+      Thread.sleep(1100);
+    } catch (InterruptedException e) {
+    }
+    Scavenger scavenger = new Scavenger(cache);
+    scavenger.run();
+    LOG.info("references before={} after={}", refs, store.getNumberOfReferences());
+    // Expired segments are dumped w/o index lookups, references must be released anyway
+    assertTrue(store.getNumberOfReferences() < refs / 2);
+    verifyReferenceAccounting();
+  }
+
+  @Test
+  public void testReferenceLikeValuesAreEscaped() throws IOException {
+    // User value, which is byte - identical to a reference record of a stored value
+    byte[] forged = new byte[DedupValueStore.REFERENCE_SIZE];
+    assertTrue(store.put(values[1], 0, values[1].length, forged, 0));
+    assertTrue(store.release(forged, 0));
+    assertEquals(0, store.getNumberOfEntries());
+    load(0);
+    long refs = store.getNumberOfReferences();
+    int n = 1000;
+    for (int i = 0; i < n; i++) {
+      byte[] key = ("forged-" + i).getBytes();
+      assertTrue(cache.put(key, 0, key.length, forged, 0, forged.length, 0));
+    }
+    // Escaped values are kept in the store, they do not reference values[1]
+    assertEquals(values.length, store.getNumberOfEntries());
+    assertEquals(refs + n, store.getNumberOfReferences());
+    byte[] buffer = new byte[100];
+    for (int i = 0; i < n; i++) {
+      byte[] key = ("forged-" + i).getBytes();
+      assertEquals(forged.length, (int) cache.get(key, 0, key.length, false, buffer, 0));
+      assertEquals(0, compare(forged, buffer));
+    }
+    verify(0, numKeys);
+  }
+
+  @Test
+  public void testReferenceAccountingWithAsyncCompression() throws IOException {
+    cache.dispose();
+    Builder builder = new Builder("dedup-async-compression-test");
+    builder.withCacheMaximumSize(64 << 20).withCacheDataSegmentSize(1 << 20)
+        .withValueDedupEnabled(true).withValueDedupMinSize(256)
+        .withCacheCompressionEnabled(true)
+        .withCacheCompressionCodecType(CompressionCodec.Type.LZ4)
+        .withCacheCompressionAsyncEnabled(true);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    store = cache.getEngine().getDedupValueStore();
+    try {
+      // Adjacent batches hold different number of references, data spans several segments
+      Random r = new Random();
+      for (int i = 0; i < 4 * numKeys; i++) {
+        byte[] key = key(i);
+        byte[] value = r.nextInt(4) == 0 ? values[0] : value(i | 1);
+        assertTrue(cache.put(key, 0, key.length, value, 0, value.length, 0));
+      }
+      // References of a batch are charged to the segment the batch is written to
+      verifyReferenceAccounting();
+    } finally {
+      CodecFactory.getInstance().clear();
+    }
+  }
+
+  @Test
+  public void testFailedRewriteReleasesReferences() throws IOException {
+    cache.dispose();
+    // Eviction disabled, storage is full - scavenger can not re - write live items
+    Builder builder = new Builder("dedup-full-test");
+    builder.withCacheMaximumSize(4 << 20).withCacheDataSegmentSize(1 << 20)
+        .withScavengerStartMemoryRatio(0.0).withScavengerStopMemoryRatio(0.0)
+        .withScavengerDumpEntryBelowMin(0.0).withScavengerDumpEntryBelowMax(0.0)
+        .withEvictionDisabledMode(true).withValueDedupEnabled(true).withValueDedupMinSize(256);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    store = cache.getEngine().getDedupValueStore();
+    int count = 0;
+    while (count < numKeys) {
+      byte[] key = key(count);
+      byte[] value = value(count | 1);
+      if (!cache.put(key, 0, key.length, value, 0, value.length, 0)) {
+        break;
+      }
+      count++;
+    }
+    assertTrue(count < numKeys);
+    long refs = store.getNumberOfReferences();
+    assertTrue(refs > 0);
+    new Scavenger(cache).run();
+    LOG.info("references before={} after={}", refs, store.getNumberOfReferences());
+    assertTrue(store.getNumberOfReferences() < refs);
+    verifyReferenceAccounting();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.controllers.BaseAdmissionController;
+import com.carrotdata.cache.util.TestUtils;
+
+public class TestVictimEvictionPipeline {
+
+  Cache parent;
+
+  Cache victim;
+
+  @Before
+  public void setUp() throws IOException {
+    Builder b = new Builder("pipeline-parent");
+    b.withCacheDataSegmentSize(1 << 20).withCacheMaximumSize(16 << 20)
+        .withCacheRootDirs(new String[] { Files.createTempDirectory(null).toString() })
+        .withVictimEvictionAsync(true).withVictimEvictionBufferSize(4096)
+        .withVictimEvictionMaxBuffers(2);
+    parent = b.buildMemoryCache();
+    parent.disableScavengers();
+    b = new Builder("pipeline-victim");
+    b.withCacheDataSegmentSize(1 << 20).withCacheMaximumSize(16 << 20)
+        .withCacheRootDirs(new String[] { Files.createTempDirectory(null).toString() });
+    victim = b.buildMemoryCache();
+    victim.disableScavengers();
+    parent.setVictimCache(victim);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    parent.dispose();
+    TestUtils.deleteCacheFiles(parent);
+    TestUtils.deleteCacheFiles(victim);
+  }
+
+  @Test
+  public void testPipeline() throws IOException {
+    VictimEvictionPipeline pipeline = parent.getVictimEvictionPipeline();
+    assertNotNull(pipeline);
+    int n = 10000;
+    VictimEvictionPipeline.Batch batch = pipeline.acquire();
+    for (int i = 0; i < n; i++) {
+      byte[] key = ("key" + i).getBytes();
+      byte[] value = ("value" + i).getBytes();
+      if (!batch.append(key, 0, key.length, value, 0, value.length, 0L, 0, 0)) {
+        pipeline.submit(batch);
+        // Can block until writer releases a batch
+        batch = pipeline.acquire();
+        assertTrue(batch.append(key, 0, key.length, value, 0, value.length, 0L, 0, 0));
+      }
+    }
+    pipeline.submit(batch);
+    pipeline.flush();
+
+    assertEquals(n, pipeline.getTotalItems());
+    assertEquals(0, pipeline.getTotalFailedItems());
+    assertTrue(pipeline.getTotalBatches() > 2);
+
+    for (int i = 0; i < n; i++) {
+      byte[] key = ("key" + i).getBytes();
+      byte[] value = ("value" + i).getBytes();
+      byte[] buf = new byte[64];
+      long size = victim.get(key, 0, key.length, false, buf, 0);
+      assertEquals(value.length, (int) size);
+      assertEquals(new String(value), new String(buf, 0, (int) size));
+    }
+    pipeline.close();
+    assertTrue(pipeline.isClosed());
+    assertEquals(null, pipeline.acquire());
+  }
+
+  @Test
+  public void testSynchronousVictimAdmission() throws IOException, InterruptedException {
+    Builder b = new Builder("sync-parent");
+    b.withCacheDataSegmentSize(1 << 20).withCacheMaximumSize(4 << 20)
+        .withCacheRootDirs(new String[] { Files.createTempDirectory(null).toString() })
+        .withVictimEvictAll(true).withScavengerStartMemoryRatio(0.9)
+        .withScavengerStopMemoryRatio(0.8);
+    Cache syncParent = b.buildMemoryCache();
+    b = new Builder("sync-victim");
+    b.withCacheDataSegmentSize(1 << 20).withCacheMaximumSize(16 << 20)
+        .withCacheRootDirs(new String[] { Files.createTempDirectory(null).toString() })
+        .withVictimAdmissionEnabled(true);
+    Cache syncVictim = b.buildMemoryCache();
+    syncVictim.disableScavengers();
+    // Rejects all evicted items
+    syncVictim.setAdmissionController(new BaseAdmissionController() {
+      @Override
+      public boolean admit(long keyPtr, int keySize, int valueSize) {
+        return false;
+      }
+
+      @Override
+      public boolean admit(byte[] key, int keyOffset, int keySize, int valueSize) {
+        return false;
+      }
+    });
+    syncParent.setVictimCache(syncVictim);
+    try {
+      assertEquals(null, syncParent.getVictimEvictionPipeline());
+      int n = 50000;
+      byte[] value = new byte[200];
+      for (int i = 0; i < n; i++) {
+        byte[] key = ("key" + i).getBytes();
+        syncParent.put(key, 0, key.length, value, 0, value.length, 0L);
+      }
+      long start = System.currentTimeMillis();
+      while (syncParent.size() == n && System.currentTimeMillis() - start < 10000) {
+        Thread.sleep(100);
+      }
+      assertTrue(syncParent.size() < n);
+      assertEquals(0, syncVictim.size());
+    } finally {
+      syncParent.dispose();
+      TestUtils.deleteCacheFiles(syncParent);
+      TestUtils.deleteCacheFiles(syncVictim);
+    }
+  }
+}
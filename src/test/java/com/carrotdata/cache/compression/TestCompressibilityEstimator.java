@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.compression.CompressionCodec.Stats;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestCompressibilityEstimator {
+
+  static final String CACHE_NAME = "bypass-test";
+
+  Random r = new Random(1);
+
+  long ptr;
+
+  @Before
+  public void setUp() {
+    CacheConfig config = CacheConfig.getInstance();
+    config.setCacheCompressionBypassEnabled(CACHE_NAME, true);
+    config.setCacheCompressionBypassEntropyThreshold(CACHE_NAME, 7.5);
+    ptr = UnsafeAccess.malloc(1 << 16);
+  }
+
+  @After
+  public void tearDown() {
+    UnsafeAccess.free(ptr);
+    CacheConfig.getInstance().setCacheCompressionBypassEnabled(CACHE_NAME, false);
+  }
+
+  private void fillRandom(int size) {
+    byte[] b = new byte[size];
+    r.nextBytes(b);
+    UnsafeAccess.copy(b, 0, ptr, size);
+  }
+
+  private void fillText(int size) {
+    String[] words = new String[] { "cache", "segment", "index", "block", "value", "key", " " };
+    byte[] b = new byte[size];
+    int off = 0;
+    while (off < size) {
+      byte[] w = words[r.nextInt(words.length)].getBytes();
+      int n = Math.min(w.length, size - off);
+      System.arraycopy(w, 0, b, off, n);
+      off += n;
+    }
+    UnsafeAccess.copy(b, 0, ptr, size);
+  }
+
+  @Test
+  public void testEntropy() {
+    fillRandom(4096);
+    assertTrue(CompressibilityEstimator.entropy(ptr, 4096) > 7.8);
+    fillRandom(512);
+    assertTrue(CompressibilityEstimator.entropy(ptr, 512) > 7.5);
+    fillText(4096);
+    assertTrue(CompressibilityEstimator.entropy(ptr, 4096) < 4.5);
+    UnsafeAccess.setMemory(ptr, 4096, (byte) 7);
+    assertEquals(0., CompressibilityEstimator.entropy(ptr, 4096), 0.);
+  }
+
+  private void testCodec(CompressionCodec.Type type) throws IOException {
+    CompressionCodec codec = type.newCodec();
+    codec.init(CACHE_NAME);
+    Stats stats = codec.getStats();
+    int size = 4096;
+    long buf = UnsafeAccess.malloc(2 * size);
+    try {
+      fillRandom(size);
+      assertEquals(size, codec.compress(ptr, size, 0, buf, 2 * size));
+      assertEquals(size, codec.compress(ptr, size, 0));
+      assertEquals(2, stats.getBypassedBlocks());
+      assertEquals(2 * size, stats.getBypassedSize());
+      assertEquals(0, stats.getCompressedRawSize());
+
+      fillText(size);
+      assertTrue(codec.compress(ptr, size, 0, buf, 2 * size) < size);
+      assertEquals(2, stats.getBypassedBlocks());
+      assertEquals(size, stats.getCompressedRawSize());
+      assertEquals(2. / 3, stats.getBypassRate(), 0.001);
+      assertTrue(stats.getEstimationTime() > 0);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      stats.save(baos);
+      Stats copy = new Stats();
+      copy.load(new ByteArrayInputStream(baos.toByteArray()));
+      assertEquals(stats.getBypassedBlocks(), copy.getBypassedBlocks());
+      assertEquals(stats.getBypassedSize(), copy.getBypassedSize());
+      assertEquals(stats.getEstimationTime(), copy.getEstimationTime());
+      assertEquals(stats.getBypassRate(), copy.getBypassRate(), 0.);
+    } finally {
+      UnsafeAccess.free(buf);
+    }
+  }
+
+  @Test
+  public void testLZ4Bypass() throws IOException {
+    testCodec(CompressionCodec.Type.LZ4);
+  }
+
+  @Test
+  public void testZstdBypass() throws IOException {
+    testCodec(CompressionCodec.Type.ZSTD);
+  }
+
+  @Test
+  public void testNoBypass() throws IOException {
+    CacheConfig.getInstance().setCacheCompressionBypassEnabled(CACHE_NAME, false);
+    CompressionCodec codec = CompressionCodec.Type.LZ4.newCodec();
+    codec.init(CACHE_NAME);
+    fillRandom(4096);
+    assertTrue(codec.compress(ptr, 4096, 0) >= 4096);
+    Stats stats = codec.getStats();
+    assertEquals(0, stats.getBypassedBlocks());
+    assertEquals(4096, stats.getIncompressibleSize());
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.compression.CompressionBenchmark.Result;
+import com.carrotdata.cache.compression.CompressionCodec.Type;
+import com.carrotdata.cache.util.Utils;
+
+public class TestCompressionBenchmark {
+  private static final Logger LOG = LoggerFactory.getLogger(TestCompressionBenchmark.class);
+
+  private static final String[] WORDS = new String[] { "user", "order", "status", "active",
+      "pending", "shipped", "amount", "currency", "USD", "EUR", "country", "city", "created" };
+
+  private static byte[] key(int i) {
+    return ("object:" + i).getBytes();
+  }
+
+  private static byte[] value(Random r) {
+    StringBuilder sb = new StringBuilder("{");
+    int n = 5 + r.nextInt(10);
+    for (int i = 0; i < n; i++) {
+      sb.append('"').append(WORDS[r.nextInt(WORDS.length)]).append("\":\"")
+          .append(WORDS[r.nextInt(WORDS.length)]).append(r.nextInt(1000)).append("\",");
+    }
+    return sb.append('}').toString().getBytes();
+  }
+
+  private static byte[] record(byte[] key, byte[] value) {
+    byte[] rec = new byte[Utils.kvSize(key.length, value.length)];
+    int off = Utils.writeUVInt(rec, 0, key.length);
+    off += Utils.writeUVInt(rec, off, value.length);
+    System.arraycopy(key, 0, rec, off, key.length);
+    System.arraycopy(value, 0, rec, off + key.length, value.length);
+    return rec;
+  }
+
+  private static List<byte[]> sample(int n) {
+    Random r = new Random(1);
+    List<byte[]> list = new ArrayList<byte[]>();
+    for (int i = 0; i < n; i++) {
+      list.add(record(key(i), value(r)));
+    }
+    return list;
+  }
+
+  @Test
+  public void testSweepAndRecommend() throws IOException {
+    CompressionBenchmark benchmark = new CompressionBenchmark(sample(20000))
+        .withCodecs(Type.ZSTD, Type.LZ4).withLevels(1, 3).withDictionarySizes(0, 4096)
+        .withBlockSizes(4096, 16384).withGets(10000);
+    List<Result> results = benchmark.run();
+    // ZSTD: 2 block sizes x 2 levels x 2 dictionary sizes, LZ4: 2 block sizes
+    assertEquals(10, results.size());
+    for (Result r : results) {
+      assertTrue(r.toString(), r.getCompressionRatio() > 1.0);
+      assertTrue(r.getDecompressionThroughput() > 0);
+      assertTrue(r.getLatencyP50() <= r.getLatencyP99());
+      assertTrue(r.getLatencyP99() <= r.getLatencyP999());
+    }
+    // Dictionary helps small blocks
+    Result noDict = find(results, Type.ZSTD, 3, 0, 4096);
+    Result dict = find(results, Type.ZSTD, 3, 4096, 4096);
+    LOG.info("no dictionary: {}", noDict);
+    LOG.info("dictionary: {}", dict);
+    assertTrue(dict.getCompressionRatio() > noDict.getCompressionRatio());
+
+    // Unlimited latency budget - the best ratio wins
+    Result best = CompressionBenchmark.recommend(results, Double.MAX_VALUE);
+    assertNotNull(best);
+    for (Result r : results) {
+      assertTrue(best.getCompressionRatio() >= r.getCompressionRatio());
+    }
+    List<String> config = best.toConfig();
+    LOG.info("recommended: {} {}", best, config);
+    assertTrue(config.contains("compression.codec=" + best.getCodecType().name()));
+    assertTrue(config.contains("compression.block.size=" + best.getBlockSize()));
+    // The tightest budget selects among the fastest
+    best = CompressionBenchmark.recommend(results, 1.0);
+    long min = results.stream().mapToLong(Result::getLatencyP99).min().getAsLong();
+    assertEquals(min, best.getLatencyP99());
+  }
+
+  private static Result find(List<Result> results, Type type, int level, int dictSize,
+      int blockSize) {
+    for (Result r : results) {
+      if (r.getCodecType() == type && r.getCompressionLevel() == level
+          && r.getDictionarySize() == dictSize && r.getBlockSize() == blockSize) {
+        return r;
+      }
+    }
+    throw new AssertionError("Result not found");
+  }
+
+  @Test
+  public void testDumpAndReadSample() throws IOException {
+    Builder builder = new Builder("compression-benchmark-dump");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20);
+    Cache cache = builder.buildMemoryCache();
+    try {
+      cache.disableScavengers();
+      Random r = new Random(1);
+      int n = 30000;
+      for (int i = 0; i < n; i++) {
+        byte[] key = key(i);
+        byte[] value = value(r);
+        assertTrue(cache.put(key, 0, key.length, value, 0, value.length, 0));
+      }
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      long size = CompressionBenchmark.dump(cache, baos, Long.MAX_VALUE);
+      assertEquals(size, baos.size());
+      List<byte[]> sample =
+          CompressionBenchmark.readSample(new ByteArrayInputStream(baos.toByteArray()),
+            Long.MAX_VALUE);
+      // Only sealed segments are dumped
+      assertTrue(sample.size() > 0 && sample.size() < n);
+      List<byte[]> expected = sample(n);
+      for (byte[] rec : sample) {
+        int keySize = Utils.readUVInt(rec, 0);
+        int valueSize = Utils.readUVInt(rec, Utils.sizeUVInt(keySize));
+        int off = Utils.sizeUVInt(keySize) + Utils.sizeUVInt(valueSize);
+        int i = Integer.parseInt(new String(rec, off, keySize).substring("object:".length()));
+        assertArrayEquals(expected.get(i), rec);
+      }
+      // Limited sample
+      sample = CompressionBenchmark.readSample(new ByteArrayInputStream(baos.toByteArray()), 1000);
+      long total = 0;
+      for (byte[] rec : sample) {
+        total += rec.length;
+      }
+      assertTrue(total >= 1000 && total < 1000 + sample.get(sample.size() - 1).length);
+    } finally {
+      cache.dispose();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestSampleReservoir {
+
+  SampleReservoir reservoir;
+
+  @Before
+  public void setUp() {
+    reservoir = new SampleReservoir(64 * 1024, 1024);
+  }
+
+  @After
+  public void tearDown() {
+    reservoir.dispose();
+  }
+
+  @Test
+  public void testFillAndFreeze() {
+    assertEquals(64, reservoir.getNumberOfSlots());
+    for (int i = 0; i < 64; i++) {
+      byte[] b = new byte[100];
+      b[0] = (byte) i;
+      assertFalse(reservoir.add(b, 0, b.length));
+    }
+    byte[][] samples = reservoir.freeze();
+    assertEquals(64, samples.length);
+    for (int i = 0; i < 64; i++) {
+      assertEquals(100, samples[i].length);
+      assertEquals(i, samples[i][0]);
+    }
+    // Frozen reservoir drops samples
+    byte[] b = new byte[100];
+    reservoir.add(b, 0, b.length);
+    assertEquals(64, reservoir.getSeen());
+  }
+
+  @Test
+  public void testReadyAndTruncation() {
+    long ptr = UnsafeAccess.mallocZeroed(4096);
+    try {
+      int n = SampleReservoir.SAMPLING_WINDOW_FACTOR * reservoir.getNumberOfSlots();
+      for (int i = 0; i < n - 1; i++) {
+        assertFalse(reservoir.add(ptr, 4096));
+      }
+      assertTrue(reservoir.add(ptr, 4096));
+      assertTrue(reservoir.isReady());
+    } finally {
+      UnsafeAccess.free(ptr);
+    }
+    byte[][] samples = reservoir.freeze();
+    assertEquals(64, samples.length);
+    for (byte[] b : samples) {
+      assertEquals(1024, b.length);
+    }
+  }
+
+  @Test
+  public void testConcurrentWriters() throws InterruptedException {
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      final byte v = (byte) (t + 1);
+      Thread th = new Thread(() -> {
+        byte[] b = new byte[200];
+        for (int i = 0; i < b.length; i++) {
+          b[i] = v;
+        }
+        for (int i = 0; i < 100000; i++) {
+          reservoir.add(b, 0, b.length);
+        }
+      });
+      threads.add(th);
+      th.start();
+    }
+    byte[][] samples = reservoir.freeze();
+    for (Thread th : threads) {
+      th.join();
+    }
+    assertTrue(samples.length <= 64);
+    // Samples are never torn
+    for (byte[] b : samples) {
+      assertEquals(200, b.length);
+      for (int i = 1; i < b.length; i++) {
+        assertEquals(b[0], b[i]);
+      }
+    }
+  }
+}
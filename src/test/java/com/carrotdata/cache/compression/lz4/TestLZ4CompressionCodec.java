@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression.lz4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.compression.CodecFactory;
+import com.carrotdata.cache.compression.CompressionCodec;
+import com.carrotdata.cache.compression.CompressionCodec.Stats;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestLZ4CompressionCodec {
+  private static final Logger LOG = LoggerFactory.getLogger(TestLZ4CompressionCodec.class);
+
+  CompressionCodec codec;
+
+  Random r;
+
+  @Before
+  public void setUp() throws IOException {
+    codec = CompressionCodec.Type.LZ4.newCodec();
+    codec.init("lz4-test");
+    long seed = System.currentTimeMillis();
+    r = new Random(seed);
+    LOG.info("seed={}", seed);
+  }
+
+  private byte[] randomData(int size) {
+    byte[] b = new byte[size];
+    r.nextBytes(b);
+    return b;
+  }
+
+  private byte[] textData(int size) {
+    String[] words = new String[] { "cache", "segment", "index", "block", "compression", "memory",
+        "scavenger", "the", "of", "and", "value", "key", " ", "\n" };
+    byte[] b = new byte[size];
+    int off = 0;
+    while (off < size) {
+      byte[] w = words[r.nextInt(words.length)].getBytes();
+      int n = Math.min(w.length, size - off);
+      System.arraycopy(w, 0, b, off, n);
+      off += n;
+    }
+    return b;
+  }
+
+  private byte[] runData(int size) {
+    byte[] b = new byte[size];
+    int off = 0;
+    while (off < size) {
+      int len = Math.min(1 + r.nextInt(300), size - off);
+      byte v = (byte) r.nextInt(4);
+      for (int i = 0; i < len; i++) {
+        b[off + i] = v;
+      }
+      off += len;
+    }
+    return b;
+  }
+
+  private void verifyRoundTrip(byte[] data) {
+    int len = data.length;
+    int max = LZ4.maxCompressedLength(len);
+    long src = UnsafeAccess.malloc(len + 1);
+    long dst = UnsafeAccess.malloc(max);
+    long out = UnsafeAccess.malloc(len + 1);
+    try {
+      UnsafeAccess.copy(data, 0, src, len);
+      int compressedSize = codec.compress(src, len, 0, dst, max);
+      assertTrue(compressedSize > 0 && compressedSize <= max);
+      // native -> native
+      assertEquals(len, codec.decompress(dst, compressedSize, out, len + 1, 0));
+      byte[] result = new byte[len];
+      UnsafeAccess.copy(out, result, 0, len);
+      assertArrayEquals(data, result);
+      // native -> byte array
+      result = new byte[len];
+      assertEquals(len, codec.decompress(dst, compressedSize, result, 0));
+      assertArrayEquals(data, result);
+      // byte array -> byte array
+      byte[] comp = new byte[compressedSize + 3];
+      UnsafeAccess.copy(dst, comp, 3, compressedSize);
+      result = new byte[len];
+      assertEquals(len, codec.decompress(comp, 3, compressedSize, result, 0));
+      assertArrayEquals(data, result);
+      // in - place
+      int size = codec.compress(src, len, 0);
+      assertEquals(compressedSize, size);
+      if (size < len) {
+        result = new byte[len];
+        assertEquals(len, codec.decompress(src, size, result, 0));
+        assertArrayEquals(data, result);
+      }
+    } finally {
+      UnsafeAccess.free(src);
+      UnsafeAccess.free(dst);
+      UnsafeAccess.free(out);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    int[] sizes = new int[] { 0, 1, 5, 12, 13, 16, 100, 1000, 4096, 65536, 200000 };
+    for (int size : sizes) {
+      verifyRoundTrip(randomData(size));
+      verifyRoundTrip(textData(size));
+      verifyRoundTrip(runData(size));
+    }
+    for (int i = 0; i < 1000; i++) {
+      int size = r.nextInt(20000);
+      verifyRoundTrip(i % 2 == 0 ? textData(size) : runData(size));
+    }
+  }
+
+  @Test
+  public void testCompressionRatio() {
+    byte[] text = textData(64 * 1024);
+    long src = UnsafeAccess.malloc(text.length);
+    UnsafeAccess.copy(text, 0, src, text.length);
+    int size = codec.compress(src, text.length, 0);
+    UnsafeAccess.free(src);
+    LOG.info("text ratio={}", (double) text.length / size);
+    assertTrue(size < text.length / 2);
+
+    byte[] rand = randomData(64 * 1024);
+    src = UnsafeAccess.malloc(rand.length);
+    UnsafeAccess.copy(rand, 0, src, rand.length);
+    size = codec.compress(src, rand.length, 0);
+    UnsafeAccess.free(src);
+    assertTrue(size >= rand.length);
+    assertTrue(size <= LZ4.maxCompressedLength(rand.length));
+  }
+
+  @Test
+  public void testSmallBuffer() {
+    byte[] rand = randomData(4096);
+    long src = UnsafeAccess.malloc(rand.length);
+    long dst = UnsafeAccess.malloc(rand.length);
+    UnsafeAccess.copy(rand, 0, src, rand.length);
+    // Incompressible data does not fit into buffer of the same size
+    assertEquals(rand.length, codec.compress(src, rand.length, 0, dst, rand.length));
+    UnsafeAccess.free(src);
+    UnsafeAccess.free(dst);
+  }
+
+  @Test
+  public void testMalformedInput() {
+    byte[] text = textData(10000);
+    long src = UnsafeAccess.malloc(text.length);
+    UnsafeAccess.copy(text, 0, src, text.length);
+    int size = codec.compress(src, text.length, 0);
+    byte[] comp = new byte[size];
+    UnsafeAccess.copy(src, comp, 0, size);
+    UnsafeAccess.free(src);
+    // Buffer is too small
+    assertEquals(0, codec.decompress(comp, 0, size, new byte[text.length - 1], 0));
+    // Truncated input (may end on a sequence boundary, which is not detectable)
+    assertTrue(codec.decompress(comp, 0, size / 2, new byte[text.length], 0) < text.length);
+    // Random garbage must never crash
+    for (int i = 0; i < 1000; i++) {
+      byte[] garbage = randomData(1 + r.nextInt(1000));
+      int n = codec.decompress(garbage, 0, garbage.length, new byte[2000], 0);
+      assertTrue(n >= 0 && n <= 2000);
+    }
+  }
+
+  @Test
+  public void testStatsSaveLoad() throws IOException {
+    assertEquals(CompressionCodec.Type.LZ4, codec.getCodecType());
+    verifyRoundTrip(textData(10000));
+    Stats stats = codec.getStats();
+    assertEquals(CompressionCodec.Type.LZ4, stats.getCodecType());
+    assertTrue(stats.getCompressedRawSize() > 0);
+    assertTrue(stats.getCompressionRatio() > 1.0);
+    assertTrue(stats.getDecompressedRawSize() >= 30000);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    codec.save(baos);
+    CompressionCodec loaded = CompressionCodec.Type.LZ4.newCodec();
+    loaded.init("lz4-test");
+    loaded.load(new ByteArrayInputStream(baos.toByteArray()));
+    Stats ls = loaded.getStats();
+    assertEquals(CompressionCodec.Type.LZ4, ls.getCodecType());
+    assertEquals(stats.getCompressedRawSize(), ls.getCompressedRawSize());
+    assertEquals(stats.getCompressedSize(), ls.getCompressedSize());
+    assertEquals(stats.getDecompressedRawSize(), ls.getDecompressedRawSize());
+  }
+
+  @Test
+  public void testMemoryCache() throws IOException {
+    String cacheName = "lz4-cache";
+    Builder builder = new Builder(cacheName);
+    builder.withCacheMaximumSize(64 << 20).withCacheDataSegmentSize(4 << 20)
+        .withCacheCompressionEnabled(true)
+        .withCacheCompressionCodecType(CompressionCodec.Type.LZ4);
+    Cache cache = builder.buildMemoryCache();
+    try {
+      CompressionCodec c = CodecFactory.getInstance().getCompressionCodecForCache(cacheName);
+      assertTrue(c instanceof LZ4CompressionCodec);
+      int n = 20000;
+      for (int i = 0; i < n; i++) {
+        byte[] key = ("key-" + i).getBytes();
+        byte[] value = textData(100 + (i % 400));
+        assertTrue(cache.put(key, value, 0L));
+      }
+      byte[] buffer = new byte[1000];
+      for (int i = 0; i < n; i++) {
+        byte[] key = ("key-" + i).getBytes();
+        long size = cache.get(key, 0, key.length, buffer, 0);
+        assertEquals(100 + (i % 400), size);
+      }
+      assertTrue(c.getStats().getCompressionRatio() > 1.0);
+      LOG.info("cache compression ratio={}", c.getStats().getCompressionRatio());
+    } finally {
+      cache.dispose();
+      CodecFactory.getInstance().clear();
+    }
+  }
+}
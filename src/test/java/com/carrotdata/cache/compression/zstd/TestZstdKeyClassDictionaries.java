@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.compression.zstd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.compression.KeyClassifier;
+import com.carrotdata.cache.util.CacheConfig;
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestZstdKeyClassDictionaries {
+
+  static final String CACHE_NAME = "key-class-dict-test";
+
+  static final int BLOCK_SIZE = 4096;
+
+  Random r = new Random(1);
+
+  long ptr;
+
+  long buf;
+
+  @Before
+  public void setUp() {
+    CacheConfig config = CacheConfig.getInstance();
+    config.setCacheCompressionEnabled(CACHE_NAME, true);
+    config.setCacheCompressionDictionaryEnabled(CACHE_NAME, true);
+    config.setCacheCompressionDictionaryTrainingAsync(CACHE_NAME, false);
+    config.setCacheCompressionDictionarySize(CACHE_NAME, 1 << 12);
+    config.setCacheCompressionDictionaryKeyClasses(CACHE_NAME, "user:, session:");
+    ptr = UnsafeAccess.malloc(BLOCK_SIZE);
+    buf = UnsafeAccess.malloc(2 * BLOCK_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+    UnsafeAccess.free(ptr);
+    UnsafeAccess.free(buf);
+    CacheConfig config = CacheConfig.getInstance();
+    config.setCacheCompressionEnabled(CACHE_NAME, false);
+    config.setCacheCompressionDictionaryKeyClasses(CACHE_NAME, "");
+  }
+
+  private void fill(String[] words) {
+    byte[] b = new byte[BLOCK_SIZE];
+    int off = 0;
+    while (off < BLOCK_SIZE) {
+      byte[] w = (words[r.nextInt(words.length)] + r.nextInt(100)).getBytes();
+      int n = Math.min(w.length, BLOCK_SIZE - off);
+      System.arraycopy(w, 0, b, off, n);
+      off += n;
+    }
+    UnsafeAccess.copy(b, 0, ptr, BLOCK_SIZE);
+  }
+
+  @Test
+  public void testKeyClassifier() {
+    KeyClassifier kc = KeyClassifier.fromConfig(CACHE_NAME);
+    assertEquals(3, kc.getNumberOfClasses());
+    byte[] key = "session:12345".getBytes();
+    assertEquals(2, kc.getKeyClass(key, 0, key.length));
+    key = "user:1".getBytes();
+    assertEquals(1, kc.getKeyClass(key, 0, key.length));
+    key = "xuser:1".getBytes();
+    assertEquals(0, kc.getKeyClass(key, 0, key.length));
+    key = "user".getBytes();
+    assertEquals(0, kc.getKeyClass(key, 0, key.length));
+    long keyPtr = UnsafeAccess.allocAndCopy("session:1", 0, 9);
+    try {
+      assertEquals(2, kc.getKeyClass(keyPtr, 9));
+    } finally {
+      UnsafeAccess.free(keyPtr);
+    }
+  }
+
+  @Test
+  public void testDictionaryPerKeyClass() throws IOException {
+    ZstdCompressionCodec codec = new ZstdCompressionCodec();
+    codec.init(CACHE_NAME);
+    assertEquals(3, codec.getNumberOfKeyClasses());
+    String[] users = new String[] { "{\"name\":\"", "\"email\":\"", "\"age\":", "\"city\":\"" };
+    String[] sessions = new String[] { "<token>", "<expires>", "<ip>", "<agent>" };
+    // Train class 1 only
+    int count = 0;
+    while (codec.isTrainingRequired(1) && count++ < 1000) {
+      fill(users);
+      codec.addTrainingData(1, ptr, BLOCK_SIZE);
+    }
+    int userVersion = codec.getCurrentDictionaryVersion(1);
+    assertTrue(userVersion > 0);
+    assertEquals(0, codec.getCurrentDictionaryVersion(0));
+    assertEquals(0, codec.getCurrentDictionaryVersion(2));
+    assertTrue(codec.isTrainingRequired(2));
+    count = 0;
+    while (codec.isTrainingRequired(2) && count++ < 1000) {
+      fill(sessions);
+      codec.addTrainingData(2, ptr, BLOCK_SIZE);
+    }
+    int sessionVersion = codec.getCurrentDictionaryVersion(2);
+    assertTrue(sessionVersion > 0);
+    assertFalse(sessionVersion == userVersion);
+    assertEquals(userVersion, codec.getCurrentDictionaryVersion(1));
+    assertEquals(0, codec.getCurrentDictionaryVersion());
+
+    // Every block is decompressed by the dictionary version only
+    byte[] expected = new byte[BLOCK_SIZE];
+    byte[] actual = new byte[BLOCK_SIZE];
+    int[] versions = new int[] { 0, userVersion, sessionVersion };
+    for (int v : versions) {
+      fill(v == sessionVersion ? sessions : users);
+      UnsafeAccess.copy(ptr, expected, 0, BLOCK_SIZE);
+      int size = codec.compress(ptr, BLOCK_SIZE, v, buf, 2 * BLOCK_SIZE);
+      assertTrue(size < BLOCK_SIZE);
+      int decompressed = codec.decompress(buf, size, actual, v);
+      assertEquals(BLOCK_SIZE, decompressed);
+      assertTrue(Arrays.equals(expected, actual));
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+
+public class TestFrequencyPromotionController {
+
+  Cache cache;
+
+  FrequencyPromotionController pc;
+
+  @Before
+  public void setUp() throws IOException {
+    Builder builder = new Builder("frequency-promotion-test");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withPromotionController(FrequencyPromotionController.class.getName())
+        .withPromotionFrequencyThreshold(2).withPromotionMaxBytesPerSec(10000)
+        .withPromotionSketchItems(1 << 14);
+    cache = builder.buildMemoryCache();
+    pc = (FrequencyPromotionController) cache.getPromotionController();
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  @Test
+  public void testOneHitNotPromoted() {
+    byte[] k = key(1);
+    assertFalse(pc.promote(k, 0, k.length, 100));
+    assertTrue(pc.promote(k, 0, k.length, 100));
+    assertEquals(1, pc.getTotalPromoted());
+    assertEquals(1, pc.getTotalRejected());
+  }
+
+  @Test
+  public void testRateBudget() {
+    int promoted = 0;
+    for (int i = 0; i < 100; i++) {
+      byte[] k = key(i);
+      pc.promote(k, 0, k.length, 1000);
+      if (pc.promote(k, 0, k.length, 1000)) {
+        promoted++;
+      }
+    }
+    // Budget is 10000 bytes per second, ~1010 bytes per item
+    assertTrue(promoted < 10);
+    assertTrue(pc.getTotalPromotedBytes() <= 10000);
+    // Saturated interval - threshold goes up
+    pc.maybeAdjust(System.currentTimeMillis() + 1000);
+    assertEquals(3, pc.getThreshold());
+    // Idle interval - threshold goes down to the minimum
+    pc.maybeAdjust(System.currentTimeMillis() + 2000);
+    assertEquals(2, pc.getThreshold());
+    pc.maybeAdjust(System.currentTimeMillis() + 3000);
+    assertEquals(2, pc.getThreshold());
+  }
+}
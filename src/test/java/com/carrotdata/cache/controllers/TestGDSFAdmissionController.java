@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+
+public class TestGDSFAdmissionController {
+
+  Cache cache;
+
+  GDSFAdmissionController ac;
+
+  @Before
+  public void setUp() throws IOException {
+    Builder builder = new Builder("gdsf-test");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withScavengerStartMemoryRatio(0.0).withScavengerStopMemoryRatio(0.0)
+        .withAdmissionController(GDSFAdmissionController.class.getName())
+        .withTinyLFUSketchItems(1 << 14).withEstimatedAvgKeyValueSize(1000);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    ac = (GDSFAdmissionController) cache.getAdmissionController();
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  @Test
+  public void testSizeAwareAdmission() {
+    // Evict average sized items accessed 3 times
+    for (int i = 0; i < 100; i++) {
+      byte[] k = key(i);
+      for (int j = 0; j < 3; j++) {
+        ac.access(k, 0, k.length);
+      }
+      ac.onEviction(k, 0, k.length, 990);
+    }
+    double victim = ac.getVictimFrequency();
+    assertTrue(victim > 2);
+    // Same access frequency: small item is admitted, large one is not
+    byte[] small = key(1000);
+    byte[] large = key(1001);
+    for (int j = 0; j < 3; j++) {
+      ac.access(small, 0, small.length);
+      ac.access(large, 0, large.length);
+    }
+    assertTrue(ac.admit(small, 0, small.length, 100));
+    assertFalse(ac.admit(large, 0, large.length, 100000));
+  }
+}
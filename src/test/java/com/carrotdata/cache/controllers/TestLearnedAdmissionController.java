@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+
+public class TestLearnedAdmissionController {
+
+  Cache cache;
+
+  LearnedAdmissionController ac;
+
+  @Before
+  public void setUp() throws IOException {
+    Builder builder = new Builder("learned-admission-test");
+    // Start ratio 0 - admission decisions are always made by the model; training is manual
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withScavengerStartMemoryRatio(0.0).withScavengerStopMemoryRatio(0.0)
+        .withAdmissionController(LearnedAdmissionController.class.getName())
+        .withMLAdmissionHistorySize(1 << 12).withMLAdmissionKeyPrefixLength(4)
+        .withMLAdmissionTrainIntervalMs(3600 * 1000L).withMLAdmissionLearningRate(0.05)
+        .withMLAdmissionThreshold(0.5);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    ac = (LearnedAdmissionController) cache.getAdmissionController();
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  @Test
+  public void testModel() {
+    LogisticRegressionModel model = new LogisticRegressionModel(2, 4, 0.1);
+    float[] pos = new float[] { 1f, 1f };
+    float[] neg = new float[] { 1f, 0f };
+    for (int i = 0; i < 2000; i++) {
+      model.update(pos, 0, 0, true);
+      model.update(neg, 0, 1, false);
+    }
+    // Not published yet
+    assertEquals(0.5, model.predict(pos, 0, 0), 0.0);
+    model.publish();
+    assertTrue(model.predict(pos, 0, 0) > 0.9);
+    assertTrue(model.predict(neg, 0, 1) < 0.1);
+    assertTrue(model.getLogLoss() < 0.5);
+  }
+
+  @Test
+  public void testLearnsKeyPrefixes() throws IOException {
+    Random r = new Random(1);
+    int cold = 0;
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 2000; i++) {
+        if (r.nextBoolean()) {
+          // Hot keys are read after every write
+          byte[] k = ("hot:" + r.nextInt(200)).getBytes();
+          ac.admit(k, 0, k.length, 100, 0, 0);
+          ac.access(k, 0, k.length);
+        } else {
+          // Cold keys are written once
+          byte[] k = ("cld:" + cold++).getBytes();
+          ac.admit(k, 0, k.length, 100, 0, 0);
+        }
+      }
+      ac.train();
+    }
+    assertTrue(ac.getModel().getExamples() > 10000);
+    assertTrue(ac.getAdmittedHit() > 0);
+    assertTrue(ac.getAdmittedNotHit() > 0);
+    byte[] hot = "hot:5".getBytes();
+    byte[] k = ("cld:" + cold++).getBytes();
+    assertTrue(ac.admit(hot, 0, hot.length, 100, 0, 0));
+    assertFalse(ac.admit(k, 0, k.length, 100, 0, 0));
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ac.save(baos);
+    double[] w = ac.getModel().getWeights();
+    long examples = ac.getModel().getExamples();
+    long hit = ac.getAdmittedHit();
+    ac.load(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(examples, ac.getModel().getExamples());
+    assertEquals(hit, ac.getAdmittedHit());
+    double[] loaded = ac.getModel().getWeights();
+    for (int i = 0; i < w.length; i++) {
+      assertEquals(w[i], loaded[i], 0.0);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.util.CacheConfig;
+
+public class TestScavengerPacingController {
+
+  static final String CACHE_NAME = "pacing-test";
+
+  static final long MAX_SIZE = 1L << 30;
+
+  static final long SEGMENT_SIZE = 4 << 20;
+
+  ScavengerPacingController pc;
+
+  @Before
+  public void setUp() {
+    CacheConfig conf = CacheConfig.getInstance();
+    conf.setCacheMaximumSize(CACHE_NAME, MAX_SIZE);
+    conf.setCacheSegmentSize(CACHE_NAME, SEGMENT_SIZE);
+    conf.setScavengerStartMemoryRatio(CACHE_NAME, 0.99);
+    conf.setScavengerStopMemoryRatio(CACHE_NAME, 0.9);
+    conf.setScavengerDumpEntryBelowMin(CACHE_NAME, 0.1);
+    conf.setScavengerDumpEntryBelowMax(CACHE_NAME, 0.5);
+    conf.setScavengerNumberOfThreads(CACHE_NAME, 4);
+    pc = new ScavengerPacingController(CACHE_NAME, conf);
+  }
+
+  @Test
+  public void testIdle() {
+    long allocated = MAX_SIZE / 2;
+    pc.update(1000, allocated, 0, 0, 0);
+    pc.update(2000, allocated, 0, 0, 0);
+    assertEquals(0.0, pc.getOutput(), 0.0);
+    assertEquals(1, pc.getNumberOfThreads());
+    assertEquals(0.99, pc.getStartRatio(), 1e-9);
+    assertEquals(0.1, pc.getDumpBelowRatio(), 1e-9);
+    assertEquals((MAX_SIZE - allocated) / SEGMENT_SIZE, pc.getFreeSegments());
+    assertTrue(!pc.shouldStartScavenger(0.5));
+  }
+
+  @Test
+  public void testHeavyWrites() {
+    long allocated = (long) (0.95 * MAX_SIZE);
+    long written = 0;
+    pc.update(1000, allocated, written, 0, 0);
+    // 200MB/sec, no recycling
+    written += 200 << 20;
+    pc.update(2000, allocated, written, 0, 0);
+    assertEquals(200 << 20, pc.getFillRate(), 1.0);
+    assertEquals(1.0, pc.getOutput(), 0.0);
+    assertEquals(4, pc.getNumberOfThreads());
+    assertEquals(0.9, pc.getStartRatio(), 1e-9);
+    assertEquals(0.5, pc.getDumpBelowRatio(), 1e-9);
+    assertTrue(pc.shouldStartScavenger(0.95));
+  }
+
+  @Test
+  public void testRecyclingKeepsUp() {
+    long allocated = (long) (0.92 * MAX_SIZE);
+    long written = 0, freed = 0;
+    pc.update(1000, allocated, written, freed, 0);
+    // Fill rate is compensated by recycle rate
+    for (int i = 2; i < 4; i++) {
+      written += 100 << 20;
+      freed += 100 << 20;
+      pc.update(i * 1000, allocated, written, freed, 0);
+    }
+    double u = pc.getOutput();
+    assertTrue(u > 0 && u < 1);
+    // Usage goes down below stop ratio - controller backs off
+    allocated = (long) (0.8 * MAX_SIZE);
+    for (int i = 4; i < 10; i++) {
+      freed += 100 << 20;
+      pc.update(i * 1000, allocated, written, freed, 0);
+    }
+    assertEquals(0.0, pc.getOutput(), 0.0);
+    assertEquals(1, pc.getNumberOfThreads());
+  }
+
+  @Test
+  public void testRejectedWrites() {
+    long allocated = (long) (0.91 * MAX_SIZE);
+    pc.update(1000, allocated, 0, 0, 0);
+    pc.update(2000, allocated, 0, 0, 10);
+    assertEquals(10.0, pc.getRejectedWritesRate(), 0.0);
+    assertEquals(1.0, pc.getOutput(), 0.0);
+    assertEquals(4, pc.getNumberOfThreads());
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.util.Utils;
+
+public class TestTinyLFUAdmissionController {
+
+  Cache cache;
+
+  TinyLFUAdmissionController ac;
+
+  @Before
+  public void setUp() throws IOException {
+    Builder builder = new Builder("tinylfu-test");
+    // Start ratio 0 - admission decisions are always made on frequencies
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withScavengerStartMemoryRatio(0.0).withScavengerStopMemoryRatio(0.0)
+        .withAdmissionController(TinyLFUAdmissionController.class.getName())
+        .withTinyLFUSketchItems(1 << 14);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    ac = (TinyLFUAdmissionController) cache.getAdmissionController();
+  }
+
+  @After
+  public void tearDown() {
+    cache.dispose();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  @Test
+  public void testAdmitAllBeforeEvictions() {
+    for (int i = 0; i < 1000; i++) {
+      byte[] k = key(i);
+      assertTrue(ac.admit(k, 0, k.length, 100));
+    }
+    assertTrue(ac.getVictimFrequency() < 0);
+  }
+
+  @Test
+  public void testFrequencyComparedWithVictim() {
+    byte[] hot = key(1);
+    for (int i = 0; i < 5; i++) {
+      ac.access(hot, 0, hot.length);
+    }
+    // Evict cold items with frequency 0
+    for (int i = 100; i < 200; i++) {
+      byte[] k = key(i);
+      ac.onEviction(k, 0, k.length, 100);
+    }
+    assertEquals(0.0, ac.getVictimFrequency(), 0.0);
+    assertTrue(ac.admit(hot, 0, hot.length, 100));
+    // Now evict hot items
+    for (int i = 0; i < 1000; i++) {
+      ac.onEviction(hot, 0, hot.length, 100);
+    }
+    assertTrue(ac.getVictimFrequency() > 5);
+    byte[] cold = key(10000);
+    assertFalse(ac.admit(cold, 0, cold.length, 100));
+    assertTrue(ac.getTotalRejected() > 0);
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    byte[] hot = key(1);
+    for (int i = 0; i < 5; i++) {
+      ac.access(hot, 0, hot.length);
+    }
+    ac.onEviction(hot, 0, hot.length, 100);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ac.save(baos);
+    double victim = ac.getVictimFrequency();
+    int freq = ac.getSketch().frequency(Utils.hash64(hot, 0, hot.length));
+    ac.load(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(victim, ac.getVictimFrequency(), 0.0);
+    assertEquals(freq,
+      ac.getSketch().frequency(Utils.hash64(hot, 0, hot.length)));
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestGDSFEvictionPolicy {
+
+  GDSFEvictionPolicy policy = new GDSFEvictionPolicy(8, 4, 8, 1000);
+
+  @Test
+  public void testInsertRank() {
+    // Average sized item keeps requested rank
+    assertEquals(4, policy.getInsertRank(1L, 1000, 4));
+    // Unknown size
+    assertEquals(4, policy.getInsertRank(1L, -1, 4));
+    // Large items go down, small items go up
+    assertEquals(6, policy.getInsertRank(1L, 4000, 4));
+    assertEquals(7, policy.getInsertRank(1L, 1 << 20, 4));
+    assertEquals(3, policy.getInsertRank(1L, 500, 4));
+    assertEquals(0, policy.getInsertRank(1L, 10, 4));
+  }
+
+  @Test
+  public void testRankOnRecycle() {
+    // Average sized item without hits keeps its position - based rank
+    assertEquals(policy.getRankForIndex(8, 500, 1000),
+      policy.getRankOnRecycle(1L, 500, 1000, 8, 0, 1000, 0.1));
+    // Unknown size is treated as average
+    assertEquals(policy.getRankOnRecycle(1L, 500, 1000, 8, 0, 1000, 0.1),
+      policy.getRankOnRecycle(1L, 500, 1000, 8, 0, -1, 0.1));
+    // Same position: large item is evicted, small item survives with a top rank
+    assertEquals(-1, policy.getRankOnRecycle(1L, 500, 1000, 8, 0, 10000, 0.1));
+    assertEquals(0, policy.getRankOnRecycle(1L, 500, 1000, 8, 0, 100, 0.1));
+    // Hit improves rank
+    int noHit = policy.getRankOnRecycle(1L, 700, 1000, 8, 0, 2000, 0.1);
+    int hit = policy.getRankOnRecycle(1L, 700, 1000, 8, 1, 2000, 0.1);
+    assertTrue(noHit > hit && hit >= 0);
+    // Tail items are evicted
+    assertEquals(-1, policy.getRankOnRecycle(1L, 950, 1000, 8, 0, 1000, 0.1));
+  }
+}
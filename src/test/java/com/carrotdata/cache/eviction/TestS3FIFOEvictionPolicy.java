@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestS3FIFOEvictionPolicy {
+
+  @Test
+  public void testPolicy() {
+    S3FIFOEvictionPolicy policy = new S3FIFOEvictionPolicy(8, 0.1, 1000);
+
+    assertEquals(EvictionPolicy.Action.MARK, policy.actionOnHit());
+    assertEquals(7, policy.getSmallRank());
+    assertEquals(7, policy.getDefaultRankForInsert());
+    assertEquals(875, policy.getInsertIndex(0, 1000));
+    assertEquals(99, policy.getEvictionCandidateIndex(0, 100));
+    // No moves on hit
+    assertEquals(300, policy.getPromotionIndex(0, 300, 1000));
+  }
+
+  @Test
+  public void testRecycle() {
+    S3FIFOEvictionPolicy policy = new S3FIFOEvictionPolicy(8, 0.1, 1000);
+    long hash1 = 0x123456789abcdefL;
+    long hash2 = 0x23456789abcdef1L;
+    // Small region, hit - promoted to the main region
+    assertEquals(0, policy.getRankOnRecycle(hash1, 900, 1000, 8, 1, 100, 0.0));
+    assertFalse(policy.getGhostQueue().contains(hash1));
+    // Small region, no hit - evicted into the ghost queue
+    assertEquals(-1, policy.getRankOnRecycle(hash1, 900, 1000, 8, 0, 100, 0.0));
+    assertTrue(policy.getGhostQueue().contains(hash1));
+    // Main region, hit - re-inserted into the head of the main region
+    assertEquals(0, policy.getRankOnRecycle(hash2, 300, 1000, 8, 1, 100, 0.0));
+    // Main region, no hit - evicted, not a ghost
+    assertEquals(-1, policy.getRankOnRecycle(hash2, 300, 1000, 8, 0, 100, 0.0));
+    assertFalse(policy.getGhostQueue().contains(hash2));
+    // Ghost hit on insert - goes into the main region
+    assertEquals(0, policy.getInsertRank(hash1, 100, policy.getDefaultRankForInsert()));
+    assertEquals(7, policy.getInsertRank(hash2, 100, policy.getDefaultRankForInsert()));
+  }
+
+  @Test
+  public void testGhostQueueExpiration() {
+    GhostQueue ghost = new GhostQueue(100);
+    ghost.add(1L << 40);
+    assertTrue(ghost.contains(1L << 40));
+    for (long i = 1; i <= 100; i++) {
+      ghost.add(i * 0x9E3779B97F4A7C15L);
+    }
+    // Was added more than capacity insertions ago
+    assertFalse(ghost.contains(1L << 40));
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.compression.CodecFactory;
+import com.carrotdata.cache.compression.CompressionCodec;
+
+public class TestAsyncBlockCompression {
+  private static final Logger LOG = LoggerFactory.getLogger(TestAsyncBlockCompression.class);
+
+  static final String CACHE_NAME = "async-compression-test";
+
+  Cache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    Path path = Files.createTempDirectory(null);
+    File dir = path.toFile();
+    dir.deleteOnExit();
+    Builder builder = new Builder(CACHE_NAME);
+    builder.withCacheMaximumSize(128 << 20).withCacheDataSegmentSize(4 << 20)
+        .withCacheRootDirs(new String[] { dir.getAbsolutePath() })
+        .withCacheCompressionEnabled(true)
+        .withCacheCompressionCodecType(CompressionCodec.Type.LZ4)
+        .withCacheCompressionAsyncEnabled(true).withCacheCompressionAsyncThreads(2);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+  }
+
+  @After
+  public void tearDown() {
+    if (cache != null) {
+      cache.dispose();
+    }
+    CodecFactory.getInstance().clear();
+  }
+
+  private static byte[] key(int i) {
+    return ("key-" + i).getBytes();
+  }
+
+  private static byte[] value(int i, int version) {
+    StringBuilder sb = new StringBuilder();
+    int n = 5 + i % 20;
+    for (int k = 0; k < n; k++) {
+      sb.append("value-").append(i).append("-version-").append(version).append(' ');
+    }
+    return sb.toString().getBytes();
+  }
+
+  private BlockCompressor getCompressor(Cache c) {
+    DataWriter writer = c.getEngine().getDataWriter();
+    assertTrue(writer instanceof CompressedBlockBatchDataWriter);
+    BlockCompressor bc = ((CompressedBlockBatchDataWriter) writer).getBlockCompressor();
+    assertNotNull(bc);
+    return bc;
+  }
+
+  @Test
+  public void testPutGet() throws IOException {
+    int n = 50000;
+    for (int i = 0; i < n; i++) {
+      assertTrue(cache.put(key(i), value(i, 0), 0));
+      if (i % 10 == 0 && i > 100) {
+        // Update key which is most likely in a sealed (staged) batch
+        int k = i - 50;
+        assertTrue(cache.put(key(k), value(k, 1), 0));
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      int version = i % 10 == 0 && i + 50 < n && i + 50 > 100 ? 1 : 0;
+      assertArrayEquals("key=" + i, value(i, version), cache.get(key(i)));
+    }
+    BlockCompressor bc = getCompressor(cache);
+    assertTrue(bc.getTotalCompressedBlocks() > 0);
+    LOG.info("blocks={} avg lag={}us max lag={}us waits={}", bc.getTotalCompressedBlocks(),
+      bc.getAverageLagMicros(), bc.getMaxLagMicros(), bc.getTotalWaits());
+    CompressionCodec codec = CodecFactory.getInstance().getCompressionCodecForCache(CACHE_NAME);
+    assertTrue(codec.getStats().getCompressionRatio() > 1.0);
+  }
+
+  @Test
+  public void testConcurrentPutGet() throws Exception {
+    final int n = 20000;
+    final int threads = 4;
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int base = t * n;
+      workers[t] = new Thread(() -> {
+        try {
+          for (int i = base; i < base + n; i++) {
+            if (!cache.put(key(i), value(i, 0), 0)) {
+              throw new AssertionError("put failed " + i);
+            }
+            if (i - base >= 100 && (i % 7) == 0) {
+              // Read back recent items, served from write batches
+              int k = i - 100;
+              byte[] v = cache.get(key(k));
+              if (v == null || !new String(v).equals(new String(value(k, 0)))) {
+                throw new AssertionError("get failed " + k);
+              }
+            }
+          }
+        } catch (Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      });
+      workers[t].start();
+    }
+    for (Thread w : workers) {
+      w.join();
+    }
+    assertEquals(errors.toString(), 0, errors.size());
+    for (int i = 0; i < threads * n; i++) {
+      assertArrayEquals("key=" + i, value(i, 0), cache.get(key(i)));
+    }
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    int n = 20000;
+    for (int i = 0; i < n; i++) {
+      assertTrue(cache.put(key(i), value(i, 0), 0));
+    }
+    cache.save();
+    Cache loaded = Cache.loadCache(CACHE_NAME);
+    assertNotNull(loaded);
+    try {
+      for (int i = 0; i < n; i++) {
+        assertArrayEquals("key=" + i, value(i, 0), loaded.get(key(i)));
+      }
+      // Staged batches loaded from the snapshot are compressed by the writer
+      for (int i = n; i < 2 * n; i++) {
+        assertTrue(loaded.put(key(i), value(i, 0), 0));
+      }
+      for (int i = 0; i < 2 * n; i++) {
+        assertArrayEquals("key=" + i, value(i, 0), loaded.get(key(i)));
+      }
+    } finally {
+      loaded.dispose();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.compression.CodecFactory;
+import com.carrotdata.cache.compression.CompressionCodec;
+
+public class TestDecompressedBlockCache {
+
+  static final int SLOT_SIZE = 1024;
+
+  DecompressedBlockCache blockCache;
+
+  Cache cache;
+
+  @After
+  public void tearDown() {
+    if (blockCache != null) {
+      blockCache.dispose();
+    }
+    if (cache != null) {
+      cache.dispose();
+    }
+    CodecFactory.getInstance().clear();
+  }
+
+  private static byte[] block(int sid, long offset, int size) {
+    byte[] b = new byte[size];
+    Arrays.fill(b, (byte) (sid * 31 + offset));
+    return b;
+  }
+
+  @Test
+  public void testGetPut() {
+    blockCache = new DecompressedBlockCache(1 << 20, SLOT_SIZE, 16);
+    byte[] buf = new byte[SLOT_SIZE];
+    assertEquals(-1, blockCache.get(1, 100, 0, buf));
+    byte[] b = block(1, 100, 500);
+    assertTrue(blockCache.put(1, 100, 0, b, b.length));
+    assertEquals(b.length, blockCache.get(1, 100, 0, buf));
+    assertArrayEquals(b, Arrays.copyOf(buf, b.length));
+    // Different dictionary version
+    assertEquals(-1, blockCache.get(1, 100, 1, buf));
+    // Buffer is too small
+    assertEquals(-1, blockCache.get(1, 100, 0, new byte[100]));
+    // Block is too large
+    assertFalse(blockCache.put(1, 200, 0, new byte[SLOT_SIZE + 1], SLOT_SIZE + 1));
+    assertEquals(1, blockCache.getHits());
+    assertEquals(3, blockCache.getMisses());
+  }
+
+  @Test
+  public void testInvalidate() {
+    blockCache = new DecompressedBlockCache(1 << 20, SLOT_SIZE, 16);
+    byte[] buf = new byte[SLOT_SIZE];
+    for (int i = 0; i < 100; i++) {
+      byte[] b = block(2, i * 1000, 100);
+      blockCache.put(2, i * 1000, 0, b, b.length);
+      b = block(3, i * 1000, 100);
+      blockCache.put(3, i * 1000, 0, b, b.length);
+    }
+    blockCache.invalidate(2);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(-1, blockCache.get(2, i * 1000, 0, buf));
+      assertEquals(100, blockCache.get(3, i * 1000, 0, buf));
+    }
+  }
+
+  @Test
+  public void testScanResistance() {
+    // Single set
+    blockCache = new DecompressedBlockCache(DecompressedBlockCache.WAYS * SLOT_SIZE, SLOT_SIZE, 16);
+    assertEquals(DecompressedBlockCache.WAYS, blockCache.getCapacity());
+    byte[] buf = new byte[SLOT_SIZE];
+    byte[] b = block(0, 0, 100);
+    for (int i = 0; i < DecompressedBlockCache.WAYS; i++) {
+      assertTrue(blockCache.put(0, i, 0, b, b.length));
+      // Make hot
+      blockCache.get(0, i, 0, buf);
+    }
+    // Scan over blocks which are accessed once
+    for (int i = 0; i < 1000; i++) {
+      blockCache.put(1, i, 0, b, b.length);
+    }
+    assertTrue(blockCache.getRejected() >= 1000 - DecompressedBlockCache.WAYS);
+    int hot = 0;
+    for (int i = 0; i < DecompressedBlockCache.WAYS; i++) {
+      if (blockCache.get(0, i, 0, buf) > 0) {
+        hot++;
+      }
+    }
+    assertEquals(DecompressedBlockCache.WAYS, hot);
+    // Block which is missed twice is admitted
+    assertFalse(blockCache.put(2, 0, 0, b, b.length));
+    assertTrue(blockCache.put(2, 0, 0, b, b.length));
+    assertEquals(b.length, blockCache.get(2, 0, 0, buf));
+  }
+
+  @Test
+  public void testMemoryCache() throws IOException {
+    Builder builder = new Builder("block-cache-test");
+    builder.withCacheMaximumSize(64 << 20).withCacheDataSegmentSize(4 << 20)
+        .withCacheCompressionEnabled(true)
+        .withCacheCompressionCodecType(CompressionCodec.Type.LZ4)
+        .withCacheCompressionBlockCacheSize(1 << 20);
+    cache = builder.buildMemoryCache();
+    cache.disableScavengers();
+    DecompressedBlockCache bc = cache.getEngine().getDecompressedBlockCache();
+    assertNotNull(bc);
+    int n = 10000;
+    for (int i = 0; i < n; i++) {
+      assertTrue(cache.put(("key-" + i).getBytes(), ("value-value-value-" + i).getBytes(), 0));
+    }
+    // Hot range, read several times
+    for (int k = 0; k < 3; k++) {
+      for (int i = 0; i < 500; i++) {
+        assertArrayEquals(("value-value-value-" + i).getBytes(),
+          cache.get(("key-" + i).getBytes()));
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      assertArrayEquals(("value-value-value-" + i).getBytes(), cache.get(("key-" + i).getBytes()));
+    }
+    assertTrue(bc.getHits() > 0);
+    assertTrue(bc.getHitRate() > 0.5);
+  }
+}
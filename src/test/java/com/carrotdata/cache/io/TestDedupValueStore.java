@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestDedupValueStore {
+
+  DedupValueStore store;
+
+  Random r = new Random();
+
+  @Before
+  public void setUp() {
+    store = new DedupValueStore(1 << 10, 100);
+  }
+
+  @After
+  public void tearDown() {
+    store.dispose();
+  }
+
+  private byte[] randomValue(int size) {
+    byte[] value = new byte[size];
+    r.nextBytes(value);
+    return value;
+  }
+
+  @Test
+  public void testPutGetRelease() {
+    byte[] v1 = randomValue(1000);
+    byte[] v2 = randomValue(1000);
+    byte[] ref1 = new byte[DedupValueStore.REFERENCE_SIZE];
+    byte[] ref2 = new byte[DedupValueStore.REFERENCE_SIZE];
+    byte[] ref3 = new byte[DedupValueStore.REFERENCE_SIZE];
+    assertTrue(store.put(v1, 0, v1.length, ref1, 0));
+    assertTrue(store.put(v2, 0, v2.length, ref2, 0));
+    // Identical copy of v1
+    assertTrue(store.put(v1.clone(), 0, v1.length, ref3, 0));
+    assertArrayEquals(ref1, ref3);
+    assertTrue(DedupValueStore.isReference(ref1, 0, ref1.length));
+    assertFalse(DedupValueStore.isReference(v1, 0, v1.length));
+
+    assertEquals(2, store.getNumberOfEntries());
+    assertEquals(3, store.getNumberOfReferences());
+    assertEquals(2000, store.getStoredSize());
+    assertEquals(3000, store.getLogicalSize());
+    assertEquals(1.5, store.getDedupRatio(), 0.0);
+    assertEquals(1, store.getTotalHits());
+
+    assertArrayEquals(v1, store.getValue(ref1, 0));
+    assertArrayEquals(v2, store.getValue(ref2, 0));
+    byte[] range = new byte[10];
+    assertEquals(10, store.get(ref2, 0, 100, 10, range, 0));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(v2[100 + i], range[i]);
+    }
+    // Range is clipped by the value size
+    assertEquals(5, store.get(ref2, 0, 995, 10, range, 0));
+
+    assertTrue(store.release(ref1, 0));
+    assertArrayEquals(v1, store.getValue(ref3, 0));
+    assertTrue(store.release(ref3, 0));
+    assertNull(store.getValue(ref1, 0));
+    assertFalse(store.release(ref1, 0));
+    assertEquals(1, store.getNumberOfEntries());
+    assertEquals(1, store.getNumberOfReferences());
+    assertEquals(1000, store.getStoredSize());
+  }
+
+  @Test
+  public void testMemoryAndArrayValues() {
+    byte[] v = randomValue(500);
+    long ptr = UnsafeAccess.malloc(v.length);
+    long refPtr = UnsafeAccess.malloc(DedupValueStore.REFERENCE_SIZE);
+    try {
+      UnsafeAccess.copy(v, 0, ptr, v.length);
+      assertTrue(store.put(ptr, v.length, refPtr));
+      assertTrue(DedupValueStore.isReference(refPtr, DedupValueStore.REFERENCE_SIZE));
+      byte[] ref = new byte[DedupValueStore.REFERENCE_SIZE];
+      // Same content from a byte array - same entry
+      assertTrue(store.put(v, 0, v.length, ref, 0));
+      assertEquals(1, store.getNumberOfEntries());
+      assertEquals(2, store.getNumberOfReferences());
+      long buf = UnsafeAccess.malloc(v.length);
+      try {
+        assertEquals(v.length, store.get(ref, 0, 0, v.length, buf));
+        byte[] copy = new byte[v.length];
+        UnsafeAccess.copy(buf, copy, 0, v.length);
+        assertArrayEquals(v, copy);
+      } finally {
+        UnsafeAccess.free(buf);
+      }
+      assertTrue(store.release(refPtr));
+      assertTrue(store.release(ref, 0));
+      assertEquals(0, store.getNumberOfEntries());
+    } finally {
+      UnsafeAccess.free(ptr);
+      UnsafeAccess.free(refPtr);
+    }
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    int num = 100;
+    byte[][] values = new byte[num][];
+    byte[][] refs = new byte[num][];
+    for (int i = 0; i < num; i++) {
+      values[i] = randomValue(200 + i);
+      refs[i] = new byte[DedupValueStore.REFERENCE_SIZE];
+      // Every value is referenced twice
+      store.put(values[i], 0, values[i].length, refs[i], 0);
+      store.put(values[i], 0, values[i].length, refs[i], 0);
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    store.save(baos);
+    long allocated = store.getAllocatedMemory();
+    store.dispose();
+    assertEquals(0, store.getNumberOfEntries());
+
+    store.load(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(num, store.getNumberOfEntries());
+    assertEquals(2 * num, store.getNumberOfReferences());
+    assertEquals(2.0, store.getDedupRatio(), 0.0);
+    assertEquals(allocated, store.getAllocatedMemory());
+    for (int i = 0; i < num; i++) {
+      assertArrayEquals(values[i], store.getValue(refs[i], 0));
+      assertTrue(store.release(refs[i], 0));
+      assertTrue(store.release(refs[i], 0));
+    }
+    assertEquals(0, store.getNumberOfEntries());
+    assertEquals(0, store.getLogicalSize());
+  }
+}
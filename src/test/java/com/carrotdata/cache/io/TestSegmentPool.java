@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.carrotdata.cache.util.UnsafeAccess;
+
+public class TestSegmentPool {
+
+  @Test
+  public void testReuse() {
+    long size = 1 << 16;
+    SegmentPool pool = new SegmentPool(size, 2, 1, false);
+    assertEquals(1, pool.getFreeCount());
+    assertEquals(1, pool.getTotalAllocated());
+    long p1 = pool.allocate(false);
+    long p2 = pool.allocate(false);
+    long p3 = pool.allocate(false);
+    assertEquals(0, pool.getFreeCount());
+    assertEquals(3, pool.getTotalAllocated());
+    assertEquals(1, pool.getTotalReused());
+    UnsafeAccess.setMemory(p1, size, (byte) 1);
+    pool.release(p1);
+    pool.release(p2);
+    // Pool is full
+    pool.release(p3);
+    assertEquals(2, pool.getFreeCount());
+    assertEquals(1, pool.getTotalReleased());
+    // Last released buffer is reused first
+    assertEquals(p2, pool.allocate(false));
+    long p = pool.allocate(true);
+    assertEquals(p1, p);
+    for (int i = 0; i < size; i++) {
+      assertEquals(0, UnsafeAccess.toByte(p + i));
+    }
+    pool.release(p);
+    assertEquals(1, pool.getFreeCount());
+    // Buffer of a loaded segment (snapshot size) is freed, not pooled
+    long loaded = UnsafeAccess.malloc(size / 2);
+    pool.release(loaded);
+    assertEquals(1, pool.getFreeCount());
+    assertEquals(2, pool.getTotalReleased());
+    pool.dispose();
+    assertEquals(0, pool.getFreeCount());
+  }
+
+  @Test
+  public void testHugePageAligned() {
+    long size = 1 << 20;
+    SegmentPool pool = new SegmentPool(size, 1, 0, true);
+    long p1 = pool.allocate(true);
+    long p2 = pool.allocate(false);
+    assertEquals(0, p1 & (SegmentPool.HUGE_PAGE_SIZE - 1));
+    assertEquals(0, p2 & (SegmentPool.HUGE_PAGE_SIZE - 1));
+    // Whole segment is writable
+    UnsafeAccess.setMemory(p1, size, (byte) 1);
+    pool.release(p1);
+    pool.release(p2);
+    assertEquals(1, pool.getFreeCount());
+    // Buffer not allocated by the pool is freed
+    long foreign = UnsafeAccess.malloc(size);
+    pool.release(foreign);
+    assertEquals(1, pool.getFreeCount());
+    assertTrue(pool.getTotalReleased() == 2);
+    pool.dispose();
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotdata.cache.index.MemoryIndex;
+import com.carrotdata.cache.index.MemoryIndex.Type;
+import com.carrotdata.cache.util.TestUtils;
+import com.carrotdata.cache.util.UnsafeAccess;
+import com.carrotdata.cache.util.Utils;
+
+public class TestSegmentPrefixBlockDataWriterReader extends IOTestBase {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(TestSegmentPrefixBlockDataWriterReader.class);
+
+  PrefixBlockDataWriter writer;
+
+  @Before
+  public void setUp() {
+    this.index = new MemoryIndex("default", Type.MQ);
+    this.segmentSize = 15 * 1024 * 1024;
+    this.numRecords = 10000;
+
+    this.r = new Random();
+    long seed = System.currentTimeMillis();
+    r.setSeed(seed);
+
+    LOG.info("r.seed=" + seed);
+    long ptr = UnsafeAccess.mallocZeroed(this.segmentSize);
+    segment = Segment.newSegment(ptr, this.segmentSize, 1, 1);
+    segment.init("default");
+    prepareRandomData(this.numRecords);
+    addKeyPrefixes();
+    writer = new PrefixBlockDataWriter();
+    writer.setBlockSize(blockSize);
+    writer.setRestartInterval(8);
+    segment.setDataWriterAndEngine(writer, null);
+  }
+
+  /**
+   * Keys of the same group share long prefix: tenant-N:object-type:random
+   */
+  private void addKeyPrefixes() {
+    for (int i = 0; i < numRecords; i++) {
+      byte[] prefix = ("tenant-" + (i / 100) % 4 + ":object-type:").getBytes();
+      byte[] key = new byte[prefix.length + keys[i].length];
+      System.arraycopy(prefix, 0, key, 0, prefix.length);
+      System.arraycopy(keys[i], 0, key, prefix.length, keys[i].length);
+      long mKey = UnsafeAccess.malloc(key.length);
+      UnsafeAccess.copy(prefix, 0, mKey, prefix.length);
+      UnsafeAccess.copy(mKeys[i], mKey + prefix.length, keys[i].length);
+      UnsafeAccess.free(mKeys[i]);
+      mKeys[i] = mKey;
+      keys[i] = key;
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    super.tearDown();
+    this.segment.dispose();
+  }
+
+  private IOEngine memoryEngine() {
+    IOEngine engine = Mockito.mock(IOEngine.class);
+    Mockito.when(engine.getSegmentById(Mockito.anyInt())).thenReturn(segment);
+    return engine;
+  }
+
+  private FileIOEngine fileEngine(RandomAccessFile file) {
+    FileIOEngine engine = Mockito.mock(FileIOEngine.class);
+    Mockito.when(engine.getSegmentById(Mockito.anyInt())).thenReturn(segment);
+    Mockito.when(engine.getFileFor(Mockito.anyInt())).thenReturn(file);
+    return engine;
+  }
+
+  @Test
+  public void testWritesBytes() throws IOException {
+    int count = loadBytes();
+    long expire = expires[count - 1];
+    assertEquals(expire, segment.getInfo().getMaxExpireAt());
+    // Keys are front coded
+    long rawSize = 0;
+    for (int i = 0; i < count; i++) {
+      rawSize += Utils.kvSize(keys[i].length, values[i].length);
+    }
+    LOG.info("raw={} written={}", rawSize, segment.getSegmentDataSize());
+    assertTrue(segment.getSegmentDataSize() < rawSize);
+
+    DataReader reader = new PrefixBlockMemoryDataReader();
+    reader.init("default");
+    IOEngine engine = memoryEngine();
+    verifyBytesWithReader(count, reader, engine);
+    verifyBytesWithReaderByteBuffer(count, reader, engine);
+  }
+
+  @Test
+  public void testWritesMemory() throws IOException {
+    int count = loadMemory();
+    long expire = expires[count - 1];
+    assertEquals(expire, segment.getInfo().getMaxExpireAt());
+
+    DataReader reader = new PrefixBlockMemoryDataReader();
+    reader.init("default");
+    IOEngine engine = memoryEngine();
+    verifyMemoryWithReader(count, reader, engine);
+    verifyMemoryWithReaderByteBuffer(count, reader, engine);
+  }
+
+  @Test
+  public void testSegmentScanner() throws IOException {
+    int count = loadBytes();
+    DataReader reader = new PrefixBlockMemoryDataReader();
+    reader.init("default");
+    IOEngine engine = memoryEngine();
+    Mockito.when(engine.getCacheName()).thenReturn("default");
+    // Must be sealed for scanner
+    segment.seal();
+    SegmentScanner scanner = reader.getSegmentScanner(engine, segment);
+    verifyScanner(scanner, count);
+  }
+
+  @Test
+  public void testFileReader() throws IOException {
+    int count = loadBytes();
+    RandomAccessFile file = TestUtils.saveToFile(segment);
+
+    DataReader reader = new PrefixBlockFileDataReader();
+    reader.init("default");
+    FileIOEngine engine = fileEngine(file);
+    verifyBytesWithReader(count, reader, engine);
+    verifyBytesWithReaderByteBuffer(count, reader, engine);
+  }
+
+  @Test
+  public void testFileSegmentScanner() throws IOException {
+    int count = loadBytes();
+    RandomAccessFile file = TestUtils.saveToFile(segment);
+
+    DataReader reader = new PrefixBlockFileDataReader();
+    reader.init("default");
+    FileIOEngine engine = fileEngine(file);
+    Mockito.when(engine.getCacheName()).thenReturn("default");
+    // Must be sealed for scanner
+    segment.seal();
+    SegmentScanner scanner = reader.getSegmentScanner(engine, segment);
+    verifyScannerFile(scanner, count);
+  }
+
+  @Test
+  public void testInterleavedSegments() throws IOException {
+    // Writer is shared by segments, it keeps the last key of every segment
+    long ptr = UnsafeAccess.mallocZeroed(this.segmentSize);
+    Segment other = Segment.newSegment(ptr, this.segmentSize, 2, 1);
+    other.init("default");
+    other.setDataWriterAndEngine(writer, null);
+    try {
+      int count = 0;
+      for (; count < numRecords; count++) {
+        int i = count, j = numRecords - count - 1;
+        if (segment.append(keys[i], 0, keys[i].length, values[i], 0, values[i].length,
+          expires[i]) == -1) {
+          break;
+        }
+        if (other.append(keys[j], 0, keys[j].length, values[j], 0, values[j].length,
+          expires[j]) == -1) {
+          break;
+        }
+      }
+      assertTrue(count > 100);
+      int otherCount = count;
+      if (count < numRecords && segment.getTotalItems() > count) {
+        // Last append to the first segment succeeded
+        count++;
+      }
+      DataReader reader = new PrefixBlockMemoryDataReader();
+      reader.init("default");
+      IOEngine engine = memoryEngine();
+      Mockito.when(engine.getCacheName()).thenReturn("default");
+      segment.seal();
+      verifyScanner(reader.getSegmentScanner(engine, segment), count);
+      other.seal();
+      SegmentScanner scanner = reader.getSegmentScanner(engine, other);
+      int n = numRecords;
+      while (scanner.hasNext()) {
+        n--;
+        assertEquals(keys[n].length, scanner.keyLength());
+        assertTrue(Utils.compareTo(keys[n], 0, keys[n].length, scanner.keyAddress(),
+          scanner.keyLength()) == 0);
+        assertTrue(Utils.compareTo(values[n], 0, values[n].length, scanner.valueAddress(),
+          scanner.valueLength()) == 0);
+        scanner.next();
+      }
+      scanner.close();
+      assertEquals(numRecords - otherCount, n);
+    } finally {
+      other.dispose();
+    }
+  }
+}
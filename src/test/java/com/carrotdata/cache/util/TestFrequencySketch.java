@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestFrequencySketch {
+
+  FrequencySketch sketch;
+
+  @After
+  public void tearDown() {
+    if (sketch != null) {
+      sketch.dispose();
+    }
+  }
+
+  @Test
+  public void testIncrementAndSaturation() {
+    sketch = new FrequencySketch(1 << 16, false);
+    long hash = 12345678901L;
+    assertEquals(0, sketch.frequency(hash));
+    for (int i = 1; i <= 15; i++) {
+      sketch.increment(hash);
+      assertEquals(i, sketch.frequency(hash));
+    }
+    sketch.increment(hash);
+    assertEquals(15, sketch.frequency(hash));
+  }
+
+  @Test
+  public void testDoorkeeper() {
+    sketch = new FrequencySketch(1 << 16, true);
+    long hash = 987654321L;
+    sketch.increment(hash);
+    // First occurrence goes to doorkeeper only
+    assertEquals(1, sketch.frequency(hash));
+    sketch.increment(hash);
+    assertEquals(2, sketch.frequency(hash));
+    sketch.reset();
+    // Doorkeeper is cleared, counter is halved
+    assertEquals(0, sketch.frequency(hash));
+  }
+
+  @Test
+  public void testAging() {
+    int items = 1 << 12;
+    sketch = new FrequencySketch(items, false);
+    long hot = 1L;
+    for (int i = 0; i < 8; i++) {
+      sketch.increment(hot);
+    }
+    assertEquals(8, sketch.frequency(hot));
+    Random r = new Random(1);
+    long n = sketch.getSampleSize();
+    for (long i = 0; i < n; i++) {
+      sketch.increment(r.nextLong());
+    }
+    assertTrue(sketch.getTotalResets() >= 1);
+    assertTrue(sketch.frequency(hot) < 8);
+  }
+
+  @Test
+  public void testSkewedAccuracy() {
+    int items = 1 << 14;
+    sketch = new FrequencySketch(items, true);
+    Random r = new Random(2);
+    // 100 hot keys accessed 10 times each, many cold keys accessed once
+    for (int k = 0; k < 10; k++) {
+      for (long h = 0; h < 100; h++) {
+        sketch.increment(Utils.hash64(new byte[] { (byte) h, (byte) (h >>> 8) }, 0, 2));
+      }
+    }
+    for (int i = 0; i < items; i++) {
+      sketch.increment(r.nextLong());
+    }
+    int hotMin = Integer.MAX_VALUE;
+    for (long h = 0; h < 100; h++) {
+      hotMin = Math.min(hotMin,
+        sketch.frequency(Utils.hash64(new byte[] { (byte) h, (byte) (h >>> 8) }, 0, 2)));
+    }
+    long coldTotal = 0;
+    for (int i = 0; i < 1000; i++) {
+      int f = sketch.frequency(r.nextLong());
+      coldTotal += f;
+    }
+    assertTrue(hotMin >= 10);
+    assertTrue((double) coldTotal / 1000 < 1.0);
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    sketch = new FrequencySketch(1 << 12, true);
+    Random r = new Random(3);
+    long[] hashes = new long[1000];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = r.nextLong();
+      int n = r.nextInt(5) + 1;
+      for (int k = 0; k < n; k++) {
+        sketch.increment(hashes[i]);
+      }
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    sketch.save(baos);
+    FrequencySketch copy = new FrequencySketch(64, false);
+    try {
+      copy.load(new ByteArrayInputStream(baos.toByteArray()));
+      assertEquals(sketch.getTableSize(), copy.getTableSize());
+      assertTrue(copy.isDoorkeeperEnabled());
+      for (long h : hashes) {
+        assertEquals(sketch.frequency(h), copy.frequency(h));
+      }
+    } finally {
+      copy.dispose();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.carrotdata.cache.compression.lz4.LZ4;
+
+/**
+ * Compares compression ratio and throughput of the pure Java LZ4 codec and ZSTD (no dictionary) on
+ * the same corpora as TestZstdCompressionText and TestZstdCompressionCSV. Data is split into blocks
+ * of a cache compression block size, every block is compressed and decompressed off - heap.
+ * <p>
+ * Usage: TestLZ4VsZstdCompression file [block size] [zstd level]
+ */
+public class TestLZ4VsZstdCompression {
+  private static final Logger LOG = LoggerFactory.getLogger(TestLZ4VsZstdCompression.class);
+
+  private static int BLOCK_SIZE = 4096;
+
+  private static int COMP_LEVEL = 3;
+
+  private static int ITERATIONS = 10;
+
+  public static void main(String[] args) throws IOException {
+    String file = args.length > 0 ? args[0] : "/Users/vrodionov/Development/carrotdata/data/dickens";
+    if (args.length > 1) {
+      BLOCK_SIZE = Integer.parseInt(args[1]);
+    }
+    if (args.length > 2) {
+      COMP_LEVEL = Integer.parseInt(args[2]);
+    }
+    byte[] data = Files.readAllBytes(Path.of(file));
+    List<byte[]> blocks = getBlocks(data, BLOCK_SIZE);
+    LOG.info("File={} size={} blocks={} block size={}", file, data.length, blocks.size(),
+      BLOCK_SIZE);
+
+    long src = UnsafeAccess.malloc(BLOCK_SIZE);
+    long dst = UnsafeAccess.malloc(2 * LZ4.maxCompressedLength(BLOCK_SIZE));
+    long out = UnsafeAccess.malloc(BLOCK_SIZE);
+    int[] table = new int[LZ4.HASH_TABLE_SIZE];
+    ZstdCompressCtx compContext = new ZstdCompressCtx();
+    compContext.setLevel(COMP_LEVEL);
+    ZstdDecompressCtx decompContext = new ZstdDecompressCtx();
+    int dstSize = 2 * LZ4.maxCompressedLength(BLOCK_SIZE);
+
+    for (int iter = 0; iter < ITERATIONS; iter++) {
+      // LZ4
+      long compTime = 0, decompTime = 0, compSize = 0;
+      for (byte[] b : blocks) {
+        UnsafeAccess.copy(b, 0, src, b.length);
+        long t1 = System.nanoTime();
+        int size = LZ4.compress(null, src, b.length, null, dst, table);
+        long t2 = System.nanoTime();
+        int dsize = LZ4.decompress(null, dst, size, null, out, BLOCK_SIZE);
+        long t3 = System.nanoTime();
+        if (dsize != b.length) {
+          throw new IOException("LZ4 decompression failed");
+        }
+        compTime += t2 - t1;
+        decompTime += t3 - t2;
+        compSize += size;
+      }
+      report("LZ4", data.length, compSize, compTime, decompTime);
+      // ZSTD
+      compTime = 0;
+      decompTime = 0;
+      compSize = 0;
+      for (byte[] b : blocks) {
+        UnsafeAccess.copy(b, 0, src, b.length);
+        long t1 = System.nanoTime();
+        int size = compContext.compressNativeNative(dst, dstSize, src, b.length);
+        long t2 = System.nanoTime();
+        int dsize = decompContext.decompressNativeNative(out, BLOCK_SIZE, dst, size);
+        long t3 = System.nanoTime();
+        if (dsize != b.length) {
+          throw new IOException("ZSTD decompression failed");
+        }
+        compTime += t2 - t1;
+        decompTime += t3 - t2;
+        compSize += size;
+      }
+      report("ZSTD(" + COMP_LEVEL + ")", data.length, compSize, compTime, decompTime);
+    }
+    compContext.close();
+    decompContext.close();
+    UnsafeAccess.free(src);
+    UnsafeAccess.free(dst);
+    UnsafeAccess.free(out);
+  }
+
+  private static void report(String codec, long rawSize, long compSize, long compTime,
+      long decompTime) {
+    LOG.info("{}: ratio={} compression={}MB/s decompression={}MB/s", codec,
+      String.format("%.3f", (double) rawSize / compSize),
+      String.format("%.1f", ((double) rawSize * 1000000000) / ((1L << 20) * compTime)),
+      String.format("%.1f", ((double) rawSize * 1000000000) / ((1L << 20) * decompTime)));
+  }
+
+  private static List<byte[]> getBlocks(byte[] b, int blockSize) {
+    List<byte[]> list = new ArrayList<byte[]>();
+    for (int off = 0; off < b.length; off += blockSize) {
+      list.add(Arrays.copyOfRange(b, off, Math.min(b.length, off + blockSize)));
+    }
+    return list;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.carrotdata.cache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.carrotdata.cache.Builder;
+import com.carrotdata.cache.Cache;
+import com.carrotdata.cache.util.MissRatioCurveEstimator.Policy;
+
+public class TestMissRatioCurveEstimator {
+
+  private static long hash(int key) {
+    byte[] buf = new byte[] { (byte) (key >>> 24), (byte) (key >>> 16), (byte) (key >>> 8),
+        (byte) key };
+    return Utils.hash64(buf, 0, buf.length);
+  }
+
+  private static void run(MissRatioCurveEstimator mrc, int numKeys, int size, int n, Random r) {
+    for (int i = 0; i < n; i++) {
+      long hash = hash(r.nextInt(numKeys));
+      mrc.get(hash);
+      // look - aside: put on every access, updates keep the size
+      mrc.put(hash, size);
+    }
+  }
+
+  @Test
+  public void testUniformLRU() {
+    int numKeys = 100000;
+    int size = 100;
+    MissRatioCurveEstimator mrc = new MissRatioCurveEstimator((long) numKeys * size,
+        new double[] { 0.25, 0.5, 1.0 }, new Policy[] { Policy.LRU, Policy.FIFO }, 0.1);
+    Random r = new Random(1);
+    // warm up
+    run(mrc, numKeys, size, 1000000, r);
+    mrc.reset();
+    run(mrc, numKeys, size, 2000000, r);
+    double[] lru = mrc.getMissRatios(Policy.LRU);
+    double[] fifo = mrc.getMissRatios(Policy.FIFO);
+    // Uniform access: miss ratio = 1 - cache size / working set
+    assertEquals(0.75, lru[0], 0.05);
+    assertEquals(0.5, lru[1], 0.05);
+    assertEquals(0.75, fifo[0], 0.05);
+    assertEquals(6, mrc.getCurve().size());
+    assertTrue(mrc.getSampledGets() > 0);
+    assertTrue(mrc.getSampledGets() < 2000000 * 0.2);
+  }
+
+  @Test
+  public void testSampledMatchesExact() {
+    int numKeys = 50000;
+    int size = 100;
+    double[] multipliers = new double[] { 0.1, 0.2, 0.4, 0.8 };
+    Policy[] policies = new Policy[] { Policy.LRU };
+    MissRatioCurveEstimator exact =
+        new MissRatioCurveEstimator((long) numKeys * size, multipliers, policies, 1.0);
+    MissRatioCurveEstimator sampled =
+        new MissRatioCurveEstimator((long) numKeys * size, multipliers, policies, 0.05);
+    Random r = new Random(2);
+    // Skewed workload (power law)
+    for (int i = 0; i < 2000000; i++) {
+      int k = (int) (numKeys * Math.pow(r.nextDouble(), 3));
+      long hash = hash(k);
+      exact.get(hash);
+      exact.put(hash, size);
+      sampled.get(hash);
+      sampled.put(hash, size);
+    }
+    double[] e = exact.getMissRatios(Policy.LRU);
+    double[] s = sampled.getMissRatios(Policy.LRU);
+    for (int i = 0; i < e.length; i++) {
+      assertEquals(e[i], s[i], 0.05);
+      if (i > 0) {
+        assertTrue(e[i] <= e[i - 1]);
+      }
+    }
+  }
+
+  @Test
+  public void testCacheIntegration() throws IOException {
+    Builder builder = new Builder("mrc-test");
+    builder.withCacheMaximumSize(16 << 20).withCacheDataSegmentSize(1 << 20)
+        .withMRCEnabled(true).withMRCSamplingRate(0.1).withMRCSizeMultipliers("0.5,1,2")
+        .withMRCPolicies("LRU");
+    Cache cache = builder.buildMemoryCache();
+    try {
+      MissRatioCurveEstimator mrc = cache.getMissRatioCurveEstimator();
+      assertNotNull(mrc);
+      byte[] value = new byte[100];
+      byte[] buffer = new byte[1000];
+      for (int i = 0; i < 10000; i++) {
+        byte[] key = ("key-" + (i % 1000)).getBytes();
+        if (cache.get(key, 0, key.length, buffer, 0) < 0) {
+          cache.put(key, value, 0);
+        }
+      }
+      assertTrue(mrc.getSampledGets() > 0);
+      // All keys fit: only cold misses
+      assertTrue(mrc.getMissRatios(Policy.LRU)[1] < 0.2);
+    } finally {
+      cache.dispose();
+      CacheConfig.getInstance().setMRCEnabled("mrc-test", false);
+    }
+  }
+}